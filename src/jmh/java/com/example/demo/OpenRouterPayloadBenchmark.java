@@ -0,0 +1,95 @@
+package com.example.demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenRouter payload encoding/decoding on its own, and a full blocking
+ * OpenRouterChatModel.call round trip against a local stub
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenRouterPayloadBenchmark {
+
+    private static final byte[] RESPONSE = ("{\"id\":\"gen-1\",\"provider\":\"Anthropic\",\"model\":\"m\","
+        + "\"object\":\"chat.completion\",\"created\":1729000000,\"choices\":[{\"logprobs\":null,"
+        + "\"finish_reason\":\"stop\",\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":"
+        + "\"Swing is a GUI toolkit for Java. It provides lightweight components.\",\"refusal\":null}}],"
+        + "\"usage\":{\"prompt_tokens\":412,\"completion_tokens\":18,\"total_tokens\":430}}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"2", "20"})
+    public int messages;
+
+    private Prompt prompt;
+
+    private StubOpenRouterServer stub;
+
+    private OpenRouterChatModel chatModel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Message> instructions = new ArrayList<>();
+        instructions.add(new SystemMessage("You are a helpful AI assistant."));
+        for (int i = 1; i < messages - 1; i += 2) {
+            instructions.add(new UserMessage("Question " + i + ": how do layout managers work in Swing?"));
+            instructions.add(new AssistantMessage("Answer " + i + ": a layout manager positions components."));
+        }
+        instructions.add(new UserMessage("And what about GridBagLayout?"));
+        prompt = new Prompt(instructions, ChatOptions.builder().temperature(0.7).maxTokens(2000).build());
+
+        stub = StubOpenRouterServer.start();
+        chatModel = stub.chatModel(64);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public OpenRouterPayloads.CompletionRequest encode() throws IOException {
+        OpenRouterPayloads.CompletionRequest encoded = OpenRouterPayloads.CompletionRequest.of(prompt, "m", false);
+        OpenRouterPayloads.write(encoded, OutputStream.nullOutputStream());
+        return encoded;
+    }
+
+    @Benchmark
+    public OpenRouterPayloads.Completion decode() throws IOException {
+        return OpenRouterPayloads.readCompletion(RESPONSE);
+    }
+
+    @Benchmark
+    public ChatResponse callThroughStub() {
+        return chatModel.call(prompt);
+    }
+}
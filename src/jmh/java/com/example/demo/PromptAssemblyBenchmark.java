@@ -0,0 +1,91 @@
+package com.example.demo;
+
+import com.example.demo.model.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body assembly for one more turn of a conversation: mapping the
+ * history to prompt messages and writing the chat/completions JSON, with
+ * every message encoded per call versus reusing the cached history fragments
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+
+    private static final String SYSTEM_PROMPT =
+        "You are a helpful AI assistant. Please provide clear, accurate, and helpful responses.";
+
+    private static final ChatOptions OPTIONS = ChatOptions.builder().temperature(0.7).maxTokens(2000).build();
+
+    @Param({"10", "50", "200"})
+    public int historyTurns;
+
+    private List<ChatMessage> history;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        history = new ArrayList<>();
+        for (int i = 0; i < historyTurns; i++) {
+            history.add(new ChatMessage("user", "Question " + i + ": how do layout managers work in Swing?"));
+            history.add(new ChatMessage("assistant", "Answer " + i + ": a layout manager positions and sizes "
+                + "the components of a container. \"BorderLayout\" splits it into five regions,\n"
+                + "FlowLayout lays components out in a row and GridLayout in equal cells."));
+        }
+    }
+
+    @Benchmark
+    public int encodeEveryMessage() throws IOException {
+        List<Message> messages = new ArrayList<>(history.size() + 2);
+        messages.add(new SystemMessage(SYSTEM_PROMPT));
+        for (ChatMessage message : history) {
+            messages.add("user".equals(message.getRole())
+                ? new UserMessage(message.getContent()) : new AssistantMessage(message.getContent()));
+        }
+        return write(messages);
+    }
+
+    @Benchmark
+    public int cachedFragments() throws IOException {
+        List<Message> messages = new ArrayList<>(history.size() + 2);
+        messages.add(PromptFragments.system(SYSTEM_PROMPT));
+        for (ChatMessage message : history) {
+            messages.add(PromptFragments.history(message));
+        }
+        return write(messages);
+    }
+
+    private static int write(List<Message> messages) throws IOException {
+        messages.add(new UserMessage("And what about GridBagLayout?"));
+        OpenRouterPayloads.CompletionRequest request =
+            OpenRouterPayloads.CompletionRequest.of(new Prompt(messages, OPTIONS), "m", false);
+        OpenRouterPayloads.write(request, OutputStream.nullOutputStream());
+        return request.messages().size();
+    }
+}
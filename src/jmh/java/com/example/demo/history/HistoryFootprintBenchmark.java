@@ -0,0 +1,117 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import com.example.demo.service.TokenEstimator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by one million history messages, as the DTOs kept before
+ * (Date, String content and the cached prompt fragment) and as
+ * {@link StoredMessage}. The {@code bytesPerMessage} counter is the result;
+ * the time is only how long filling the history took. Counters add up over
+ * iterations, hence the single measured one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class HistoryFootprintBenchmark {
+
+    private static final int MESSAGES = 1_000_000;
+
+    private static final String[] ENGLISH = {
+        "How do layout managers work in Swing?",
+        "A layout manager positions and sizes the components of a container. BorderLayout splits it into five "
+            + "regions, FlowLayout places components in a row and GridBagLayout aligns them to a grid of cells.",
+        "Why does my JTable not refresh after I change the model?",
+        "Call fireTableDataChanged() on the table model after updating it, and make sure the change happens on "
+            + "the Event Dispatch Thread, for example with SwingUtilities.invokeLater."
+    };
+
+    private static final String[] KOREAN = {
+        "스윙에서 레이아웃 매니저는 어떻게 동작하나요?",
+        "레이아웃 매니저는 컨테이너 안 컴포넌트의 위치와 크기를 정합니다. BorderLayout은 다섯 영역으로 나누고, "
+            + "FlowLayout은 한 줄로 배치하며, GridBagLayout은 셀 격자에 맞춰 정렬합니다.",
+        "모델을 바꿨는데 JTable이 갱신되지 않는 이유는 무엇인가요?",
+        "모델을 변경한 뒤 fireTableDataChanged()를 호출하고, 변경이 SwingUtilities.invokeLater 등으로 "
+            + "이벤트 디스패치 스레드에서 일어나는지 확인하세요."
+    };
+
+    @Param({"chatMessage", "storedMessage"})
+    public String representation;
+
+    @Param({"english", "korean"})
+    public String language;
+
+    private String[] texts;
+
+    private Object[] history;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+
+        public long bytesPerMessage;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        texts = "korean".equals(language) ? KOREAN : ENGLISH;
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        history = null;
+    }
+
+    @Benchmark
+    public Object fill(Footprint footprint) {
+        long before = usedHeap();
+        Object[] messages = new Object[MESSAGES];
+        boolean stored = "storedMessage".equals(representation);
+        for (int i = 0; i < MESSAGES; i++) {
+            ChatMessage message = message(i);
+            messages[i] = stored ? StoredMessage.of(message, 4096) : message;
+        }
+        history = messages;
+        footprint.bytesPerMessage = (usedHeap() - before) / MESSAGES;
+        return history;
+    }
+
+    private ChatMessage message(int i) {
+        // Distinct strings, as history built from requests and answers would be
+        String content = new String(texts[i % texts.length].toCharArray()) + " #" + i;
+        ChatMessage message = new ChatMessage(i % 2 == 0 ? "user" : "assistant", content, new Date(), null);
+        message.setTokenCount(TokenEstimator.estimate(message));
+        // What a message in the old history held once it had been part of a prompt
+        message.setJsonFragment(("{\"role\":\"" + message.getRole() + "\",\"content\":\"" + content + "\"}")
+            .getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GC cost of a store holding one million messages (50,000 idle sessions of
+ * 20), with every session on the heap or moved off it. The time is that of a
+ * full collection, which traces everything the heap holds; {@code heapBytes}
+ * is the heap occupied after it and {@code offHeapBytes} the arena blocks in use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+UseG1GC", "-Xms1g", "-Xmx1g", "-XX:MaxDirectMemorySize=1g"})
+public class HistoryGcBenchmark {
+
+    private static final int SESSIONS = 50_000;
+
+    private static final int TURNS = 10;
+
+    @Param({"heap", "offHeap"})
+    public String tier;
+
+    private InMemoryChatHistoryStore store;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Heap {
+
+        // Summed over iterations; divide by the measurement count
+        public long heapBytes;
+
+        public long offHeapBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean offHeap = "offHeap".equals(tier);
+        store = new InMemoryChatHistoryStore(2 * TURNS, SESSIONS, Duration.ofHours(1), DataSize.ofGigabytes(1),
+            DataSize.ofKilobytes(4), offHeap ? Duration.ofNanos(1) : Duration.ZERO, DataSize.ofMegabytes(768));
+        for (int s = 0; s < SESSIONS; s++) {
+            for (int t = 0; t < TURNS; t++) {
+                store.append("session-" + s, List.of(
+                    new ChatMessage("user", "Question " + t + " of session " + s
+                        + ": how do layout managers work in Swing?"),
+                    new ChatMessage("assistant", "Answer " + t + ": a layout manager positions and sizes the "
+                        + "components of a container. BorderLayout splits it into five regions.")));
+            }
+        }
+        // Moves every session off the heap when tiered
+        store.evictExpired();
+    }
+
+    @Benchmark
+    public void fullGc(Heap heap) {
+        System.gc();
+        heap.heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        heap.offHeapBytes = store.getOffHeapBytes();
+    }
+}
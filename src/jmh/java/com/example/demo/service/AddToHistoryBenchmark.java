@@ -0,0 +1,68 @@
+package com.example.demo.service;
+
+import com.example.demo.StubOpenRouterServer;
+import com.example.demo.model.ChatRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent history appends: all threads on one session (worst-case
+ * contention on a single ring buffer) versus spread over many sessions
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AddToHistoryBenchmark {
+
+    @Param({"1", "1024"})
+    public int sessions;
+
+    private StubOpenRouterServer stub;
+
+    private ChatService service;
+
+    private String[] sessionIds;
+
+    private final ChatRequest request = new ChatRequest("How do layout managers work in Swing?");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = StubOpenRouterServer.start();
+        service = BenchmarkChatServices.create(stub, BenchmarkChatServices.store(40));
+        sessionIds = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            sessionIds[i] = "session-" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public void addToHistory() {
+        String sessionId = sessionIds[ThreadLocalRandom.current().nextInt(sessions)];
+        service.addToHistory(sessionId, request, "A layout manager positions and sizes components.");
+    }
+}
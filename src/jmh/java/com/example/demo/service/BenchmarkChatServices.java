@@ -0,0 +1,42 @@
+package com.example.demo.service;
+
+import com.example.demo.StubOpenRouterServer;
+import com.example.demo.cache.ChatResponseCache;
+import com.example.demo.cache.HashingTextEmbedder;
+import com.example.demo.cache.SemanticResponseCache;
+import com.example.demo.history.ChatHistoryStore;
+import com.example.demo.history.InMemoryChatHistoryStore;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * ChatService wired to a local stub upstream with caches and summarization
+ * off, so benchmarks measure the service's own work
+ */
+final class BenchmarkChatServices {
+
+    private BenchmarkChatServices() {
+    }
+
+    static InMemoryChatHistoryStore store(int maxMessages) {
+        return new InMemoryChatHistoryStore(maxMessages, 100_000, Duration.ofHours(1), DataSize.ofGigabytes(1));
+    }
+
+    static ChatService create(StubOpenRouterServer stub, ChatHistoryStore store) {
+        ContextWindowManager contextWindowManager = new ContextWindowManager(128_000, Map.of(), 2000);
+        ConversationSummarizer summarizer = new ConversationSummarizer(stub.chatModel(64), store,
+            contextWindowManager, Runnable::run, false, 300, Duration.ofHours(1));
+        ChatService service = new ChatService(stub.chatModel(64), stub.reactiveChatModel(), store,
+            contextWindowManager, summarizer,
+            new ChatResponseCache(false, 1, Duration.ofMinutes(1)),
+            new SemanticResponseCache(new HashingTextEmbedder(384), false, 0.9, Duration.ofMinutes(1), 1, 1),
+            stub.metrics(), stub.router());
+        ReflectionTestUtils.setField(service, "defaultModel", "stub/model");
+        ReflectionTestUtils.setField(service, "temperature", 0.7);
+        ReflectionTestUtils.setField(service, "maxTokens", 2000);
+        return service;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.demo.service;
+
+import com.example.demo.StubOpenRouterServer;
+import com.example.demo.history.InMemoryChatHistoryStore;
+import com.example.demo.model.ChatRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt assembly (history snapshot, token budgeting, message mapping) for
+ * sessions with different history lengths
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildPromptBenchmark {
+
+    private static final String SESSION = "bench-session";
+
+    @Param({"0", "10", "50"})
+    public int historyTurns;
+
+    private StubOpenRouterServer stub;
+
+    private ChatService service;
+
+    private ChatRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = StubOpenRouterServer.start();
+        InMemoryChatHistoryStore store = BenchmarkChatServices.store(200);
+        service = BenchmarkChatServices.create(stub, store);
+        for (int i = 0; i < historyTurns; i++) {
+            ChatRequest turn = new ChatRequest("Question " + i + ": how do layout managers work in Swing?");
+            service.addToHistory(SESSION, turn,
+                "Answer " + i + ": a layout manager positions and sizes the components of a container.");
+        }
+        request = new ChatRequest("And what about GridBagLayout?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public Prompt buildPrompt() {
+        return service.buildPrompt(request, SESSION);
+    }
+}
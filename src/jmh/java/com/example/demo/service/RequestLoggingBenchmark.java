@@ -0,0 +1,88 @@
+package com.example.demo.service;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import com.example.demo.StubOpenRouterServer;
+import com.example.demo.model.ChatRequest;
+import com.example.demo.model.ChatResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of request-path logging on ChatService.chat: no logging, the default
+ * (synchronous, per-step INFO lines with content) and the prod profile (async
+ * structured summary event, sampled per-step lines, no content). Logs go to
+ * files under target/bench-logs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RequestLoggingBenchmark {
+
+    @Param({"off", "verbose", "prod"})
+    public String logging;
+
+    private StubOpenRouterServer stub;
+
+    private ChatService service;
+
+    private final ChatRequest request = new ChatRequest("How do layout managers work in Swing?");
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        configureLogging();
+        stub = StubOpenRouterServer.start();
+        service = BenchmarkChatServices.create(stub, BenchmarkChatServices.store(40));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+    }
+
+    @Benchmark
+    public ChatResponse chat() {
+        return service.chat(request, "session-" + ThreadLocalRandom.current().nextInt(64));
+    }
+
+    private void configureLogging() throws Exception {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        if ("off".equals(logging)) {
+            context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME).setLevel(ch.qos.logback.classic.Level.OFF);
+            return;
+        }
+        Path logDir = Files.createDirectories(Path.of("target", "bench-logs"));
+        context.putProperty("LOG_DIR", logDir.toAbsolutePath().toString());
+        // StructuredLogEncoder looks the environment up the way Boot's logging system registers it
+        context.putObject(Environment.class.getName(), new StandardEnvironment());
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        configurator.doConfigure(getClass().getResource("/logback-request-" + logging + ".xml"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.service;
+
+import com.example.demo.StubOpenRouterServer;
+import com.example.demo.model.ChatRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The /api/v1/chat/stream path from ChatService.streamChat down to SSE
+ * parsing, against a local stub that sends one chunk per word
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamChatBenchmark {
+
+    @Param({"16", "256"})
+    public int chunks;
+
+    private StubOpenRouterServer stub;
+
+    private ChatService service;
+
+    private final ChatRequest request = new ChatRequest("Explain GridBagLayout.");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = StubOpenRouterServer.start();
+        stub.setReply("word ".repeat(chunks).trim());
+        service = BenchmarkChatServices.create(stub, BenchmarkChatServices.store(40));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public long streamChat() {
+        // No session: measures chunk handling without history growth
+        return service.streamChat(request, null).count().block();
+    }
+}
@@ -1,20 +1,31 @@
 package com.example.demo;
 
+import com.example.demo.admission.AdmissionControl;
+import com.example.demo.model.BatchChatResult;
 import com.example.demo.model.ChatRequest;
 import com.example.demo.model.ChatResponse;
 import com.example.demo.model.ChatMessage;
+import com.example.demo.resilience.UpstreamUnavailableException;
+import com.example.demo.service.BatchChatService;
 import com.example.demo.service.ChatService;
+import com.example.demo.service.TokenEstimator;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import reactor.core.publisher.Flux;
-import java.time.Duration;
+import reactor.core.publisher.Mono;
+import reactor.core.Disposable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -25,10 +36,23 @@ public class ChatController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
     
+    // Message and prompt text; enable with logging.level.chat.content=DEBUG
+    private static final Logger contentLogger = LoggerFactory.getLogger("chat.content");
+    
     private final ChatService chatService;
+    
+    private final BatchChatService batchChatService;
+    
+    private final AdmissionControl admission;
+    
+    private final SseFrameCoalescer frameCoalescer;
 
-    public ChatController(ChatService chatService) {
+    public ChatController(ChatService chatService, BatchChatService batchChatService, AdmissionControl admission,
+                          SseFrameCoalescer frameCoalescer) {
         this.chatService = chatService;
+        this.batchChatService = batchChatService;
+        this.admission = admission;
+        this.frameCoalescer = frameCoalescer;
     }
 
     // 메인 채팅 UI 페이지
@@ -54,7 +78,7 @@ public class ChatController {
         logger.info("Content-Length: {}", httpRequest.getContentLength());
         
         // 요청 바디 로깅
-        logger.info("요청 바디 메시지: {}", message != null ? message.getMessage() : "null");
+        contentLogger.debug("요청 바디 메시지: {}", message != null ? message.getMessage() : "null");
         
         // GET 요청인 경우 메소드 안내
         if ("GET".equals(httpRequest.getMethod())) {
@@ -70,8 +94,8 @@ public class ChatController {
                 .body(new ChatMessageDto("시스템", "지원하지 않는 HTTP 메소드입니다: " + httpRequest.getMethod()));
         }
         
-        logger.info("POST 요청 처리 시작 - 메시지: {}", message != null ? message.getMessage() : "null");
-        logger.info("시스템 프롬프트: {}", message != null ? message.getSystemPrompt() : "null");
+        logger.info("POST 요청 처리 시작");
+        contentLogger.debug("시스템 프롬프트: {}", message != null ? message.getSystemPrompt() : "null");
         
         try {
             // 입력값 검증
@@ -85,7 +109,7 @@ public class ChatController {
             ChatRequest chatRequest = new ChatRequest(message.getMessage());
             if (message.getSystemPrompt() != null && !message.getSystemPrompt().trim().isEmpty()) {
                 chatRequest.setSystemPrompt(message.getSystemPrompt());
-                logger.info("시스템 프롬프트가 설정됨: {}", message.getSystemPrompt());
+                contentLogger.debug("시스템 프롬프트가 설정됨: {}", message.getSystemPrompt());
             }
             
             // Get or create session ID
@@ -96,12 +120,21 @@ public class ChatController {
                 session.setAttribute("chatSessionId", sessionId);
             }
             
-            // Call ChatService
-            ChatResponse response = chatService.chat(chatRequest, sessionId);
+            // Call ChatService once admitted
+            ChatResponse response;
+            try (AdmissionControl.Permit permit = admission.admit(sessionId, httpRequest.getRemoteAddr(),
+                    promptTokens(chatRequest))) {
+                response = chatService.chat(chatRequest, sessionId);
+            }
             
             logger.info("AI 응답 생성 완료");
             return ResponseEntity.ok(new ChatMessageDto("AI", response.getMessage()));
             
+        } catch (UpstreamUnavailableException e) {
+            logger.warn("업스트림 과부하로 요청 거부: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ChatMessageDto("AI", "요청이 많아 잠시 후 다시 시도해주세요."));
         } catch (Exception e) {
             logger.error("AI 응답 생성 중 오류 발생: ", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -116,7 +149,8 @@ public class ChatController {
      */
     @PostMapping("/api/v1/chat")
     @ResponseBody
-    public ResponseEntity<ChatResponse> chat(@RequestBody ChatRequest request, HttpSession session) {
+    public ResponseEntity<ChatResponse> chat(@RequestBody ChatRequest request, HttpSession session,
+                                             HttpServletRequest httpRequest) {
         try {
             // Validate request
             if (!chatService.isValidRequest(request)) {
@@ -137,10 +171,14 @@ public class ChatController {
                 }
             }
             
-            // Process chat request
-            ChatResponse response = chatService.chat(request, sessionId);
-            return ResponseEntity.ok(response);
+            // Process chat request once admitted
+            try (AdmissionControl.Permit permit = admission.admit(sessionId, httpRequest.getRemoteAddr(),
+                    promptTokens(request))) {
+                return ResponseEntity.ok(chatService.chat(request, sessionId));
+            }
             
+        } catch (UpstreamUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error in chat endpoint: ", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -152,11 +190,46 @@ public class ChatController {
     }
     
     /**
-     * Streaming chat endpoint
+     * Non-blocking chat endpoint; the servlet thread is released while the upstream call is in flight
+     */
+    @PostMapping("/api/v1/chat/reactive")
+    @ResponseBody
+    public Mono<ResponseEntity<ChatResponse>> chatReactive(@RequestBody ChatRequest request, HttpSession session,
+                                                           HttpServletRequest httpRequest) {
+        if (!chatService.isValidRequest(request)) {
+            return Mono.just(ResponseEntity.badRequest()
+                .body(ChatResponse.builder()
+                    .message("Invalid request: message is required")
+                    .error(true)
+                    .build()));
+        }
+        
+        String sessionId = request.getSessionId();
+        if (sessionId == null) {
+            sessionId = (String) session.getAttribute("chatSessionId");
+            if (sessionId == null) {
+                sessionId = UUID.randomUUID().toString();
+                session.setAttribute("chatSessionId", sessionId);
+            }
+        }
+        
+        // Admitted before the exchange starts; the permit is held until the Mono terminates
+        AdmissionControl.Permit permit = admission.admit(sessionId, httpRequest.getRemoteAddr(),
+            promptTokens(request));
+        return chatService.chatReactive(request, sessionId)
+            .map(ResponseEntity::ok)
+            .doFinally(signal -> permit.close());
+    }
+    
+    /**
+     * Streaming chat endpoint. Deltas are coalesced into frames at the pace the client
+     * reads them. When the client disconnects, the next write fails and the stream is
+     * cancelled, which aborts the upstream generation.
      */
     @GetMapping(value = "/api/v1/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @ResponseBody
-    public Flux<String> streamChat(@RequestParam String message, HttpSession session) {
+    public Flux<ServerSentEvent<String>> streamChat(@RequestParam String message, HttpSession session,
+                                                   HttpServletRequest httpRequest) {
         try {
             // Get or create session ID
             String sessionId = (String) session.getAttribute("chatSessionId");
@@ -166,12 +239,57 @@ public class ChatController {
             }
             
             ChatRequest request = new ChatRequest(message);
-            return chatService.streamChat(request, sessionId)
-                .delayElements(Duration.ofMillis(50)); // Add slight delay for streaming effect
+            AdmissionControl.Permit permit = admission.admit(sessionId, httpRequest.getRemoteAddr(),
+                promptTokens(request));
+            return frameCoalescer.frames(chatService.streamChat(request, sessionId))
+                .doFinally(signal -> permit.close());
                 
+        } catch (UpstreamUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error in streaming chat: ", e);
-            return Flux.just("Error: " + e.getMessage());
+            return Flux.just(ServerSentEvent.builder("Error: " + e.getMessage()).build());
+        }
+    }
+    
+    /**
+     * Batch endpoint: runs independent requests with bounded parallelism and writes
+     * one NDJSON result line per item as it completes
+     */
+    @PostMapping(value = "/api/v1/chat/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<ResponseBodyEmitter> chatBatch(@RequestBody List<ChatRequest> requests,
+                                                         @RequestParam(required = false) Integer concurrency,
+                                                         HttpServletRequest httpRequest) {
+        if (requests == null || requests.isEmpty() || requests.size() > batchChatService.getMaxItems()) {
+            logger.warn("잘못된 배치 요청 - 항목 수: {}", requests != null ? requests.size() : 0);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        // One permit for the whole batch, charged with the tokens of all its items
+        AdmissionControl.Permit permit = admission.admit(null, httpRequest.getRemoteAddr(),
+            requests.stream().filter(chatService::isValidRequest).mapToInt(ChatController::promptTokens).sum());
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchChatService.getBatchTimeout().toMillis());
+        // A failed write (client gone) errors the Flux, which cancels the items still running
+        Disposable batch = batchChatService.run(requests, concurrency)
+            .doFinally(signal -> permit.close())
+            .doOnNext(result -> sendLine(emitter, result))
+            .subscribe(result -> { }, emitter::completeWithError, emitter::complete);
+        emitter.onTimeout(batch::dispose);
+        emitter.onError(e -> batch.dispose());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+    
+    private static int promptTokens(ChatRequest request) {
+        return TokenEstimator.estimate(request.getMessage()) + TokenEstimator.estimate(request.getSystemPrompt());
+    }
+    
+    private static void sendLine(ResponseBodyEmitter emitter, BatchChatResult result) {
+        try {
+            emitter.send(result, MediaType.APPLICATION_JSON);
+            emitter.send("\n", MediaType.TEXT_PLAIN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
     
@@ -215,6 +333,21 @@ public class ChatController {
         return ResponseEntity.ok(models);
     }
 
+    /**
+     * Load shed by the concurrency limiter or an open circuit: 429/503 with Retry-After
+     */
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    @ResponseBody
+    public ResponseEntity<ChatResponse> upstreamUnavailable(UpstreamUnavailableException e) {
+        logger.warn("업스트림 과부하로 요청 거부: {}", e.getMessage());
+        return ResponseEntity.status(e.getStatus())
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(ChatResponse.builder()
+                .message(e.getMessage())
+                .error(true)
+                .build());
+    }
+
     // Legacy ChatMessage DTO for backward compatibility
     public static class ChatMessageDto {
         private String sender;
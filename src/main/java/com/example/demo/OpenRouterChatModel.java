@@ -1,114 +1,325 @@
 package com.example.demo;
 
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.resilience.AdaptiveConcurrencyLimiter;
+import com.example.demo.resilience.CancellationToken;
+import com.example.demo.resilience.CircuitBreaker;
+import com.example.demo.resilience.CircuitBreakers;
+import com.example.demo.resilience.UpstreamUnavailableException;
+import com.example.demo.routing.HedgePolicy;
+import com.example.demo.routing.ModelRoute;
+import com.example.demo.routing.ModelRouter;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class OpenRouterChatModel implements ChatModel {
     
     private static final Logger logger = LoggerFactory.getLogger(OpenRouterChatModel.class);
     
-    @Value("${spring.ai.openai.api-key}")
-    private String apiKey;
+    private final RestTemplate restTemplate;
     
-    @Value("${spring.ai.openai.base-url}")
-    private String baseUrl;
+    // Resolves the prompt's model option to an endpoint and upstream model name
+    private final ModelRouter router;
     
-    @Value("${spring.ai.openai.chat.options.model}")
-    private String model;
+    // Caps in-flight calls of this model; cheap to wait on when callers are virtual threads
+    private final Semaphore inFlight;
     
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final int maxInFlight;
+    
+    private final Duration acquireTimeout;
+    
+    // Runs hedged attempts; virtual threads when spring.threads.virtual.enabled=true
+    private final Scheduler ioScheduler;
+    
+    private final ChatMetrics metrics;
+    
+    private final HedgePolicy hedging;
+    
+    // Fails calls fast when the upstream is saturated (429) or a model keeps failing (503)
+    private final AdaptiveConcurrencyLimiter limiter;
+    
+    private final CircuitBreakers breakers;
+    
+    public OpenRouterChatModel(RestTemplate restTemplate, ChatMetrics metrics, ModelRouter router,
+                               HedgePolicy hedging, AdaptiveConcurrencyLimiter limiter, CircuitBreakers breakers,
+                               @Value("${openrouter.upstream.max-in-flight:100}") int maxInFlight,
+                               @Value("${openrouter.upstream.acquire-timeout:30s}") Duration acquireTimeout,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.restTemplate = restTemplate;
+        this.router = router;
+        this.inFlight = new Semaphore(maxInFlight, true);
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeout = acquireTimeout;
+        this.ioScheduler = virtualThreads
+            ? Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "openrouter-vt")
+            : Schedulers.boundedElastic();
+        this.metrics = metrics;
+        this.hedging = hedging;
+        this.limiter = limiter;
+        this.breakers = breakers;
+        metrics.registerInFlight("blocking", this, OpenRouterChatModel::getInFlightCount);
+    }
     
     @Override
     public ChatResponse call(Prompt prompt) {
+        return hedging.isEnabled() ? hedgedCall(prompt) : call(prompt, null);
+    }
+    
+    /**
+     * Race the first attempt against a second one started once the first is
+     * slower than the hedge delay; whichever answers first wins and the other
+     * is cancelled (its exchange is aborted)
+     */
+    private ChatResponse hedgedCall(Prompt prompt) {
+        String requested = requestedModel(prompt);
+        ModelRoute primary = router.resolve(requested);
+        hedging.onCall();
+        CancellationToken caller = CancellationToken.current();
+        Mono<ChatResponse> first = attempt(prompt, primary, caller);
+        Mono<ChatResponse> second = hedge(requested, primary)
+            .flatMap(alternate -> attempt(prompt, alternate, caller)
+                // A hedge refused by the limiter or breaker leaves the first attempt to finish
+                .onErrorResume(UpstreamUnavailableException.class, e -> Mono.never()))
+            .doOnNext(response -> hedging.onHedgeWon())
+            .delaySubscription(hedging.delay(hedgeKey(primary, ChatMetrics.CALL)));
+        return Mono.firstWithSignal(first, second).block();
+    }
+    
+    /**
+     * One hedged attempt on the I/O scheduler, aborted when it is cancelled or the caller's token is
+     */
+    private Mono<ChatResponse> attempt(Prompt prompt, ModelRoute route, CancellationToken caller) {
+        return Mono.defer(() -> {
+            CancellationToken token = new CancellationToken();
+            CancellationToken.Registration link = caller != null ? caller.onCancel(token::cancel) : null;
+            return Mono.fromCallable(() -> {
+                try (CancellationToken.Scope scope = token.bind()) {
+                    return call(prompt, route);
+                }
+            })
+                .subscribeOn(ioScheduler)
+                .doOnCancel(token::cancel)
+                .doFinally(signal -> {
+                    if (link != null) {
+                        link.close();
+                    }
+                });
+        });
+    }
+    
+    /**
+     * One upstream call
+     * @param pinned Route to use, or null to let the router choose
+     */
+    private ChatResponse call(Prompt prompt, ModelRoute pinned) {
+        boolean limited = false;
+        boolean saturated = false;
+        boolean acquired = false;
+        ModelRoute route = null;
+        long start = 0;
+        Throwable failure = null;
         try {
+            saturated = limiter.acquire();
+            limited = true;
+            acquirePermit();
+            acquired = true;
+            route = selectRoute(prompt, pinned);
+            start = System.nanoTime();
             logger.info("OpenRouter API 호출 시작");
             logger.info("프롬프트에 포함된 메시지 개수: {}", prompt.getInstructions().size());
             
-            // HTTP 헤더 설정
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-            
-            // 요청 바디 구성
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            requestBody.put("temperature", 0.7);
-            
-            // 메시지 구성 - 모든 메시지를 처리
-            List<Map<String, String>> messages = new ArrayList<>();
-            
-            // Prompt의 모든 메시지를 순회하며 추가
-            prompt.getInstructions().forEach(instruction -> {
-                Map<String, String> message = new HashMap<>();
-                
-                // 메시지 타입에 따라 role 설정
-                String messageType = instruction.getClass().getSimpleName();
-                logger.debug("메시지 타입: {}, 내용: {}", messageType,
-                    instruction.getText().length() > 100 ?
-                    instruction.getText().substring(0, 100) + "..." : instruction.getText());
-                
-                switch (messageType) {
-                    case "SystemMessage":
-                        message.put("role", "system");
-                        break;
-                    case "UserMessage":
-                        message.put("role", "user");
-                        break;
-                    case "AssistantMessage":
-                        message.put("role", "assistant");
-                        break;
-                    default:
-                        message.put("role", "user");
-                        break;
-                }
-                
-                message.put("content", instruction.getText());
-                messages.add(message);
-            });
-            
-            requestBody.put("messages", messages);
+            OpenRouterPayloads.CompletionRequest requestBody =
+                OpenRouterPayloads.CompletionRequest.of(prompt, route.upstreamModel(), false);
             
-            logger.info("OpenRouter로 전송할 메시지 개수: {}", messages.size());
+            logger.info("OpenRouter 요청 - URL: {}/chat/completions", route.baseUrl());
+            logger.info("OpenRouter 요청 - Model: {}", route.id());
             
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+            // API 호출 - 요청은 연결에 바로 쓰고, 응답은 필요한 필드만 스트리밍으로 읽음
+            String apiKey = route.apiKey();
+            OpenRouterPayloads.Completion completion = restTemplate.execute(
+                route.baseUrl() + OpenRouterPayloads.COMPLETIONS_PATH, HttpMethod.POST,
+                request -> writeRequest(request, requestBody, MediaType.APPLICATION_JSON, apiKey),
+                response -> {
+                    logger.info("OpenRouter 응답 수신: {}", response.getStatusCode());
+                    return OpenRouterPayloads.readCompletion(response.getBody());
+                });
             
-            logger.info("OpenRouter 요청 - URL: {}/chat/completions", baseUrl);
-            logger.info("OpenRouter 요청 - Model: {}", model);
-            
-            // API 호출
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                baseUrl + "/chat/completions", entity, Map.class
-            );
-            
-            logger.info("OpenRouter 응답 수신: {}", response.getStatusCode());
-            
-            // 응답 파싱
-            Map<String, Object> responseBody = response.getBody();
-            List<?> choices = (List<?>) responseBody.get("choices");
-            Map<String, Object> firstChoice = (Map<String, Object>) choices.get(0);
-            Map<String, Object> message = (Map<String, Object>) firstChoice.get("message");
-            String content = (String) message.get("content");
+            OpenRouterPayloads.Usage usage = completion.usage();
+            if (usage != null) {
+                metrics.recordUsage(route.id(), ChatMetrics.CALL, usage.promptTokens(), usage.completionTokens(),
+                    System.nanoTime() - start);
+            }
             
             // ChatResponse 생성
-            AssistantMessage assistantMessage = new AssistantMessage(content);
+            AssistantMessage assistantMessage = new AssistantMessage(completion.content());
             Generation generation = new Generation(assistantMessage);
-            return new ChatResponse(List.of(generation));
+            return new ChatResponse(List.of(generation), metadata(route, usage));
             
+        } catch (UpstreamUnavailableException e) {
+            logger.warn("OpenRouter 호출 거부: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
-            logger.error("OpenRouter API 호출 실패: ", e);
+            failure = e;
+            if (Thread.currentThread().isInterrupted() || CancellationToken.isCurrentCancelled()) {
+                logger.debug("OpenRouter API 호출 취소됨: {}", e.getMessage());
+            } else {
+                logger.error("OpenRouter API 호출 실패: ", e);
+            }
             throw new RuntimeException("OpenRouter API 호출 실패: " + e.getMessage(), e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            // Interrupted (lost hedge, cancelled batch item) or aborted through the caller's token
+            boolean cancelled = failure != null
+                && (Thread.currentThread().isInterrupted() || CancellationToken.isCurrentCancelled());
+            boolean upstreamFailed = route != null && !cancelled && CircuitBreakers.isUpstreamFailure(failure);
+            if (route != null) {
+                finish(route, ChatMetrics.CALL, cancelled, elapsed, elapsed, failure, upstreamFailed);
+                if (cancelled) {
+                    metrics.recordUpstreamCancelled(route.id(), ChatMetrics.CALL, 0, maxTokens(prompt));
+                }
+            }
+            if (acquired) {
+                inFlight.release();
+            }
+            if (limited) {
+                limiter.release(saturated, route != null && !cancelled ? elapsed : -1, upstreamFailed);
+            }
+        }
+    }
+    
+    /**
+     * Number of upstream calls currently holding a permit
+     */
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+    
+    /**
+     * Pick the route and pass its circuit breaker; when the request names a group
+     * and the chosen member's circuit is open, another member is tried once
+     */
+    private ModelRoute selectRoute(Prompt prompt, ModelRoute pinned) {
+        String requested = pinned != null ? pinned.id() : requestedModel(prompt);
+        ModelRoute route = router.resolve(requested);
+        if (breakers.isEnabled()) {
+            try {
+                breakers.get(route.id()).acquire();
+            } catch (UpstreamUnavailableException e) {
+                ModelRoute alternate = router.alternate(requested, route);
+                if (alternate.equals(route)) {
+                    throw e;
+                }
+                breakers.get(alternate.id()).acquire();
+                route = alternate;
+            }
+        }
+        return router.select(route.id());
+    }
+    
+    /**
+     * Report a finished call to the metrics, router and circuit breaker
+     * @param latency Sample for routing and hedging
+     */
+    private void finish(ModelRoute route, String mode, boolean cancelled, long elapsed, long latency,
+                        Throwable failure, boolean upstreamFailed) {
+        CircuitBreaker breaker = breakers.isEnabled() ? breakers.get(route.id()) : null;
+        if (cancelled) {
+            // Not a sample of the model's latency or health
+            router.abandon(route);
+            if (breaker != null) {
+                breaker.onCancelled();
+            }
+            return;
+        }
+        metrics.recordUpstream(route.id(), mode, elapsed, failure);
+        router.complete(route, latency, failure);
+        if (breaker != null) {
+            breaker.onResult(upstreamFailed);
+        }
+        if (failure == null && hedging.isEnabled() && mode.equals(ChatMetrics.CALL)) {
+            hedging.record(hedgeKey(route, mode), latency);
+        }
+    }
+    
+    /**
+     * Route for the second attempt, or a Mono that never emits when the hedge budget is spent
+     */
+    private Mono<ModelRoute> hedge(String requested, ModelRoute primary) {
+        return Mono.defer(() -> {
+            if (!hedging.tryHedge()) {
+                logger.debug("헤지 예산 부족 - 첫 번째 시도만 대기");
+                return Mono.never();
+            }
+            ModelRoute alternate = router.alternate(requested, primary);
+            logger.info("헤지 요청 시작 - {} 지연, 두 번째 시도: {}", primary.id(), alternate.id());
+            return Mono.just(alternate);
+        });
+    }
+    
+    private static String hedgeKey(ModelRoute route, String mode) {
+        return route.id() + "/" + mode;
+    }
+    
+    private static ChatResponseMetadata metadata(ModelRoute route, OpenRouterPayloads.Usage usage) {
+        ChatResponseMetadata.Builder builder = ChatResponseMetadata.builder().model(route.id());
+        if (usage != null) {
+            builder.usage(new DefaultUsage(usage.promptTokens(), usage.completionTokens()));
+        }
+        return builder.build();
+    }
+    
+    private static void writeRequest(ClientHttpRequest request, OpenRouterPayloads.CompletionRequest body,
+                                     MediaType accept, String apiKey) throws IOException {
+        request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        request.getHeaders().setAccept(List.of(accept));
+        request.getHeaders().setBearerAuth(apiKey);
+        if (request instanceof StreamingHttpOutputMessage streaming) {
+            streaming.setBody(out -> OpenRouterPayloads.write(body, out));
+        } else {
+            OpenRouterPayloads.write(body, request.getBody());
+        }
+    }
+    
+    // Model id or group from the prompt options; null selects the router's default
+    private static String requestedModel(Prompt prompt) {
+        return prompt.getOptions() != null ? prompt.getOptions().getModel() : null;
+    }
+    
+    private static Integer maxTokens(Prompt prompt) {
+        return prompt.getOptions() != null ? prompt.getOptions().getMaxTokens() : null;
+    }
+    
+    /**
+     * @throws UpstreamUnavailableException (429) if no permit frees up within the acquire timeout
+     */
+    private void acquirePermit() throws InterruptedException {
+        if (!inFlight.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw UpstreamUnavailableException.limitReached(maxInFlight, Duration.ofSeconds(1));
         }
     }
     
@@ -0,0 +1,400 @@
+package com.example.demo;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * chat/completions request/response payloads shared by the blocking and
+ * reactive OpenRouter models.
+ * <p>
+ * Requests are typed records written token by token straight to the
+ * connection's output stream. Responses are read with a streaming parser that
+ * only materializes the fields we use (message or delta content, usage,
+ * error message) and skips everything else without building a tree.
+ * <p>
+ * Messages built by {@link PromptFragments} carry their {"role","content"}
+ * object already encoded; those bytes are copied into the request as-is, so
+ * only messages new to the conversation are escaped and encoded per call.
+ */
+final class OpenRouterPayloads {
+    
+    static final String COMPLETIONS_PATH = "/chat/completions";
+    
+    // Previous fixed temperature, used when the prompt carries none
+    private static final double DEFAULT_TEMPERATURE = 0.7;
+    
+    private static final JsonFactory JSON = JsonFactory.builder()
+        .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+        .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+        .build();
+    
+    private OpenRouterPayloads() {
+    }
+    
+    /**
+     * @param fragment The message's encoded JSON object, or null to encode role and content
+     */
+    record RequestMessage(String role, String content, byte[] fragment) {
+    }
+    
+    record CompletionRequest(String model, double temperature, Integer maxTokens, boolean stream,
+                             List<RequestMessage> messages) {
+        
+        /**
+         * Map a prompt to a request; roles come from the message type
+         */
+        static CompletionRequest of(Prompt prompt, String model, boolean stream) {
+            ChatOptions options = prompt.getOptions();
+            Double temperature = options != null ? options.getTemperature() : null;
+            Integer maxTokens = options != null ? options.getMaxTokens() : null;
+            
+            List<Message> instructions = prompt.getInstructions();
+            List<RequestMessage> messages = new ArrayList<>(instructions.size());
+            for (Message instruction : instructions) {
+                messages.add(new RequestMessage(instruction.getMessageType().getValue(), instruction.getText(),
+                    PromptFragments.fragment(instruction)));
+            }
+            return new CompletionRequest(model, temperature != null ? temperature : DEFAULT_TEMPERATURE,
+                maxTokens, stream, messages);
+        }
+    }
+    
+    record Usage(int promptTokens, int completionTokens) {
+    }
+    
+    /**
+     * choices[0].message.content of a completion, plus usage when the upstream reports it
+     */
+    record Completion(String content, Usage usage) {
+    }
+    
+    /**
+     * One streamed chunk: choices[0].delta.content ("" when the chunk carries no text) and,
+     * on the final chunk, usage
+     */
+    record Chunk(String content, Usage usage) {
+    }
+    
+    /**
+     * Write the request as JSON; the stream is flushed but not closed
+     */
+    static void write(CompletionRequest request, OutputStream out) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("model", request.model());
+            generator.writeNumberField("temperature", request.temperature());
+            if (request.maxTokens() != null) {
+                generator.writeNumberField("max_tokens", request.maxTokens());
+            }
+            if (request.stream()) {
+                generator.writeBooleanField("stream", true);
+                // Ask for a final chunk carrying token usage
+                generator.writeObjectFieldStart("stream_options");
+                generator.writeBooleanField("include_usage", true);
+                generator.writeEndObject();
+            }
+            generator.writeArrayFieldStart("messages");
+            for (RequestMessage message : request.messages()) {
+                if (message.fragment() != null) {
+                    generator.writeRawValue(new RawFragment(message.fragment()));
+                } else {
+                    writeMessage(generator, message.role(), message.content());
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+    
+    /**
+     * Encode one {"role","content"} message object, byte for byte as {@link #write} would
+     */
+    static byte[] encodeMessage(String role, String content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + (content != null ? content.length() : 0));
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            writeMessage(generator, role, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+    
+    private static void writeMessage(JsonGenerator generator, String role, String content) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("role", role);
+        generator.writeStringField("content", content);
+        generator.writeEndObject();
+    }
+    
+    /**
+     * Read a non-streamed completion response
+     */
+    static Completion readCompletion(InputStream in) throws IOException {
+        try (JsonParser parser = JSON.createParser(in)) {
+            return readCompletion(parser);
+        }
+    }
+    
+    static Completion readCompletion(byte[] body) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            return readCompletion(parser);
+        }
+    }
+    
+    /**
+     * Read a streamed chunk
+     */
+    static Chunk readChunk(String chunk) throws IOException {
+        try (JsonParser parser = JSON.createParser(chunk)) {
+            expect(parser, JsonToken.START_OBJECT);
+            String content = null;
+            Usage usage = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "choices" -> content = readFirstChoice(parser, "delta");
+                    case "usage" -> usage = readUsage(parser);
+                    case "error" -> throw error(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            return new Chunk(content != null ? content : "", usage);
+        }
+    }
+    
+    private static Completion readCompletion(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        String content = null;
+        Usage usage = null;
+        boolean hasChoices = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "choices" -> {
+                    hasChoices = true;
+                    content = readFirstChoice(parser, "message");
+                }
+                case "usage" -> usage = readUsage(parser);
+                case "error" -> throw error(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        if (!hasChoices) {
+            throw new IllegalStateException("OpenRouter 응답에 choices가 없습니다");
+        }
+        return new Completion(content, usage);
+    }
+    
+    // At choices' START_ARRAY: content of the given object in the first choice; other choices are skipped
+    private static String readFirstChoice(JsonParser parser, String field) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        String content = null;
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if (field.equals(name) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    content = readContent(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else {
+            parser.skipChildren();
+        }
+        if (parser.currentToken() != JsonToken.END_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+    
+    // At a message/delta START_OBJECT: its "content" string
+    private static String readContent(JsonParser parser) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(name) && value == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+    
+    private static Usage readUsage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        int promptTokens = 0;
+        int completionTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "prompt_tokens" -> promptTokens = parser.getValueAsInt();
+                case "completion_tokens" -> completionTokens = parser.getValueAsInt();
+                default -> parser.skipChildren();
+            }
+        }
+        return new Usage(promptTokens, completionTokens);
+    }
+    
+    private static IllegalStateException error(JsonParser parser) throws IOException {
+        String message = null;
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if ("message".equals(name)) {
+                    message = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else {
+            message = parser.getValueAsString();
+        }
+        return new IllegalStateException(message != null ? message : "OpenRouter 오류 응답");
+    }
+    
+    private static void expect(JsonParser parser, JsonToken token) throws IOException {
+        if (parser.nextToken() != token) {
+            throw new IllegalStateException("OpenRouter 응답 형식 오류: " + token + " 필요, " + parser.currentToken());
+        }
+    }
+    
+    /**
+     * Already-encoded JSON handed to {@link JsonGenerator#writeRawValue(SerializableString)}. The
+     * UTF-8 generator only uses the unquoted byte forms; the text and its quoted forms are decoded
+     * on first use, for generators writing chars or callers using it as a string value
+     */
+    static final class RawFragment implements SerializableString {
+        
+        private final byte[] utf8;
+        
+        // Decoded on first use; racing threads build equal copies
+        private SerializedString decoded;
+        
+        RawFragment(byte[] utf8) {
+            this.utf8 = utf8;
+        }
+        
+        private SerializedString decoded() {
+            SerializedString value = decoded;
+            if (value == null) {
+                value = new SerializedString(new String(utf8, StandardCharsets.UTF_8));
+                decoded = value;
+            }
+            return value;
+        }
+        
+        @Override
+        public String getValue() {
+            return decoded().getValue();
+        }
+        
+        @Override
+        public int charLength() {
+            return decoded().charLength();
+        }
+        
+        @Override
+        public char[] asQuotedChars() {
+            return decoded().asQuotedChars();
+        }
+        
+        @Override
+        public byte[] asUnquotedUTF8() {
+            return utf8;
+        }
+        
+        @Override
+        public byte[] asQuotedUTF8() {
+            return decoded().asQuotedUTF8();
+        }
+        
+        @Override
+        public int appendQuotedUTF8(byte[] buffer, int offset) {
+            return decoded().appendQuotedUTF8(buffer, offset);
+        }
+        
+        @Override
+        public int appendQuoted(char[] buffer, int offset) {
+            return decoded().appendQuoted(buffer, offset);
+        }
+        
+        @Override
+        public int appendUnquotedUTF8(byte[] buffer, int offset) {
+            if (offset + utf8.length > buffer.length) {
+                // Tells the generator to flush and write the bytes directly
+                return -1;
+            }
+            System.arraycopy(utf8, 0, buffer, offset, utf8.length);
+            return utf8.length;
+        }
+        
+        @Override
+        public int appendUnquoted(char[] buffer, int offset) {
+            return decoded().appendUnquoted(buffer, offset);
+        }
+        
+        @Override
+        public int writeQuotedUTF8(OutputStream out) throws IOException {
+            return decoded().writeQuotedUTF8(out);
+        }
+        
+        @Override
+        public int writeUnquotedUTF8(OutputStream out) throws IOException {
+            out.write(utf8);
+            return utf8.length;
+        }
+        
+        @Override
+        public int putQuotedUTF8(ByteBuffer buffer) throws IOException {
+            return decoded().putQuotedUTF8(buffer);
+        }
+        
+        @Override
+        public int putUnquotedUTF8(ByteBuffer buffer) {
+            if (utf8.length > buffer.remaining()) {
+                return -1;
+            }
+            buffer.put(utf8);
+            return utf8.length;
+        }
+        
+        @Override
+        public String toString() {
+            return getValue();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo;
+
+import com.example.demo.model.ChatMessage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.Map;
+
+/**
+ * Prompt messages that carry their chat/completions JSON encoding, so a
+ * request body is assembled by copying cached bytes instead of re-escaping
+ * the whole conversation on every turn.
+ * <p>
+ * History messages keep their fragment on the {@link ChatMessage} (encoded on
+ * first use, then reused for every later turn of the session); system prompts
+ * are interned, as nearly every request shares one of a handful of them.
+ * Messages built elsewhere have no fragment and are encoded as before.
+ */
+public final class PromptFragments {
+
+    // Message metadata key holding the encoded {"role","content"} object
+    static final String FRAGMENT = "openrouter.fragment";
+
+    private static final Cache<String, Message> SYSTEM_PROMPTS = Caffeine.newBuilder()
+        .maximumSize(256)
+        .build();
+
+    private PromptFragments() {
+    }
+
+    /**
+     * System message for the prompt text, shared by all requests using the same text
+     */
+    public static Message system(String text) {
+        return SYSTEM_PROMPTS.get(text, key -> SystemMessage.builder()
+            .text(key)
+            .metadata(Map.of(FRAGMENT, OpenRouterPayloads.encodeMessage("system", key)))
+            .build());
+    }
+
+    /**
+     * User or assistant message for a history entry
+     * @return The message, or null for other roles
+     */
+    public static Message history(ChatMessage message) {
+        if ("user".equalsIgnoreCase(message.getRole())) {
+            return UserMessage.builder()
+                .text(message.getContent())
+                .metadata(Map.of(FRAGMENT, fragment(message, "user")))
+                .build();
+        }
+        if ("assistant".equalsIgnoreCase(message.getRole())) {
+            return new AssistantMessage(message.getContent(), Map.of(FRAGMENT, fragment(message, "assistant")));
+        }
+        return null;
+    }
+
+    /**
+     * Encoded JSON object of a prompt message, or null when it has none
+     */
+    static byte[] fragment(Message message) {
+        return message.getMetadata().get(FRAGMENT) instanceof byte[] fragment ? fragment : null;
+    }
+
+    private static byte[] fragment(ChatMessage message, String role) {
+        byte[] fragment = message.getJsonFragment();
+        if (fragment == null) {
+            fragment = OpenRouterPayloads.encodeMessage(role, message.getContent());
+            message.setJsonFragment(fragment);
+        }
+        return fragment;
+    }
+}
@@ -0,0 +1,433 @@
+package com.example.demo;
+
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.resilience.AdaptiveConcurrencyLimiter;
+import com.example.demo.resilience.CancellationToken;
+import com.example.demo.resilience.CircuitBreakers;
+import com.example.demo.resilience.UpstreamUnavailableException;
+import com.example.demo.routing.HedgePolicy;
+import com.example.demo.routing.ModelRoute;
+import com.example.demo.routing.ModelRouter;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking OpenRouter client on {@link WebClient}. No thread is held while
+ * waiting for the upstream, so concurrency is bounded by memory rather than
+ * by the servlet thread pool. Cancelling the returned publisher, or a read
+ * timing out, aborts the exchange, which closes the upstream stream.
+ * Streams are hedged on time to first token when {@link HedgePolicy} is enabled.
+ * <p>
+ * Exchanges share the {@link AdaptiveConcurrencyLimiter} and
+ * {@link CircuitBreakers} of the blocking model, so a saturated or failing
+ * upstream is refused with 429/503 here too.
+ */
+@Component
+public class ReactiveOpenRouterChatModel {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveOpenRouterChatModel.class);
+    
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> EVENT_TYPE =
+        new ParameterizedTypeReference<>() {};
+    
+    @Value("${openrouter.http.read-timeout:60s}")
+    private Duration readTimeout;
+    
+    @Value("${openrouter.http.total-timeout:120s}")
+    private Duration totalTimeout;
+    
+    private final WebClient webClient;
+    
+    private final ChatMetrics metrics;
+    
+    private final ModelRouter router;
+    
+    private final HedgePolicy hedging;
+    
+    private final AdaptiveConcurrencyLimiter limiter;
+    
+    private final CircuitBreakers breakers;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    public ReactiveOpenRouterChatModel(WebClient openRouterWebClient, ChatMetrics metrics, ModelRouter router,
+                                       HedgePolicy hedging, AdaptiveConcurrencyLimiter limiter,
+                                       CircuitBreakers breakers) {
+        this.webClient = openRouterWebClient;
+        this.metrics = metrics;
+        this.router = router;
+        this.hedging = hedging;
+        this.limiter = limiter;
+        this.breakers = breakers;
+        metrics.registerInFlight("reactive", this, ReactiveOpenRouterChatModel::getInFlightCount);
+    }
+    
+    /**
+     * Request a full completion without blocking the caller
+     */
+    public Mono<ChatResponse> call(Prompt prompt) {
+        return Mono.defer(() -> {
+            Guard guard = admit(prompt, null);
+            ModelRoute route = guard.route;
+            String model = route.id();
+            logger.info("OpenRouter 비동기 호출 시작 - 모델: {}, 메시지 개수: {}", model, prompt.getInstructions().size());
+            long start = System.nanoTime();
+            CancellationToken token = new CancellationToken();
+            inFlight.incrementAndGet();
+            return webClient.post()
+                .uri(route.baseUrl() + OpenRouterPayloads.COMPLETIONS_PATH)
+                .headers(headers -> headers.setBearerAuth(route.apiKey()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(requestBody(prompt, route, false))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .as(DataBufferUtils::join)
+                .timeout(totalTimeout)
+                .map(ReactiveOpenRouterChatModel::readCompletion)
+                .doOnSuccess(completion -> {
+                    long elapsed = System.nanoTime() - start;
+                    if (completion != null && completion.usage() != null) {
+                        metrics.recordUsage(model, ChatMetrics.CALL, completion.usage().promptTokens(),
+                            completion.usage().completionTokens(), elapsed);
+                    }
+                    metrics.recordUpstream(model, ChatMetrics.CALL, elapsed, null);
+                    router.complete(route, elapsed, null);
+                    guard.succeeded(elapsed);
+                })
+                .doOnError(e -> {
+                    long elapsed = System.nanoTime() - start;
+                    metrics.recordUpstream(model, ChatMetrics.CALL, elapsed, e);
+                    router.complete(route, elapsed, e);
+                    guard.failed(e);
+                })
+                .doFinally(signal -> {
+                    inFlight.decrementAndGet();
+                    if (signal != SignalType.ON_COMPLETE) {
+                        token.cancel();
+                    }
+                    if (signal == SignalType.CANCEL) {
+                        router.abandon(route);
+                        guard.cancelled();
+                        metrics.recordUpstreamCancelled(model, ChatMetrics.CALL, 0, maxTokens(prompt));
+                    }
+                })
+                .as(exchange -> subscribeBound(exchange, token));
+        })
+            .map(completion -> toChatResponse(completion.content()))
+            .doOnError(e -> logFailure("OpenRouter 비동기 호출", e));
+    }
+    
+    /**
+     * Stream completion deltas from the upstream SSE endpoint. With hedging
+     * enabled, a second attempt starts once the first has gone longer than
+     * the hedge delay without a token; the attempt that emits first is kept
+     * and the other is cancelled.
+     */
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        if (!hedging.isEnabled()) {
+            return stream(prompt, null);
+        }
+        return Flux.defer(() -> {
+            String requested = requestedModel(prompt);
+            ModelRoute primary = router.resolve(requested);
+            hedging.onCall();
+            AtomicBoolean hedgeWon = new AtomicBoolean();
+            Flux<ChatResponse> second = hedge(requested, primary)
+                .flatMapMany(alternate -> stream(prompt, alternate))
+                .doOnNext(chunk -> {
+                    if (hedgeWon.compareAndSet(false, true)) {
+                        hedging.onHedgeWon();
+                    }
+                })
+                // A hedge failing before its first token leaves the first attempt to finish
+                .onErrorResume(e -> hedgeWon.get() ? Flux.error(e) : Flux.never())
+                .delaySubscription(hedging.delay(hedgeKey(primary)));
+            return Flux.firstWithSignal(stream(prompt, primary), second);
+        });
+    }
+    
+    /**
+     * One streamed attempt
+     * @param pinned Route to use, or null to let the router choose
+     */
+    private Flux<ChatResponse> stream(Prompt prompt, ModelRoute pinned) {
+        return Flux.defer(() -> {
+            Guard guard = admit(prompt, pinned);
+            ModelRoute route = guard.route;
+            String model = route.id();
+            logger.info("OpenRouter 비동기 스트리밍 시작 - 모델: {}, 메시지 개수: {}", model, prompt.getInstructions().size());
+            long start = System.nanoTime();
+            long[] firstTokenAt = {0};
+            int[] chunks = {0};
+            OpenRouterPayloads.Usage[] usage = {null};
+            CancellationToken token = new CancellationToken();
+            inFlight.incrementAndGet();
+            return webClient.post()
+                .uri(route.baseUrl() + OpenRouterPayloads.COMPLETIONS_PATH)
+                .headers(headers -> headers.setBearerAuth(route.apiKey()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .body(requestBody(prompt, route, true))
+                .retrieve()
+                .bodyToFlux(EVENT_TYPE)
+                .timeout(readTimeout)
+                .mapNotNull(ServerSentEvent::data)
+                .takeWhile(data -> !"[DONE]".equals(data.trim()))
+                .concatMap(data -> {
+                    OpenRouterPayloads.Chunk chunk;
+                    try {
+                        chunk = OpenRouterPayloads.readChunk(data);
+                    } catch (Exception e) {
+                        return Mono.error(e);
+                    }
+                    if (chunk.usage() != null) {
+                        usage[0] = chunk.usage();
+                    }
+                    if (chunk.content().isEmpty()) {
+                        return Mono.empty();
+                    }
+                    if (firstTokenAt[0] == 0) {
+                        firstTokenAt[0] = System.nanoTime();
+                        metrics.recordTimeToFirstToken(model, firstTokenAt[0] - start);
+                        if (hedging.isEnabled()) {
+                            hedging.record(hedgeKey(route), firstTokenAt[0] - start);
+                        }
+                    }
+                    chunks[0]++;
+                    return Mono.just(toChatResponse(chunk.content()));
+                })
+                .doOnComplete(() -> {
+                    long now = System.nanoTime();
+                    if (usage[0] != null) {
+                        metrics.recordUsage(model, ChatMetrics.STREAM, usage[0].promptTokens(),
+                            usage[0].completionTokens(), firstTokenAt[0] == 0 ? 0 : now - firstTokenAt[0]);
+                    }
+                    metrics.recordUpstream(model, ChatMetrics.STREAM, now - start, null);
+                    // Streams are ranked on time to first token; their total length depends on the answer
+                    router.complete(route, (firstTokenAt[0] != 0 ? firstTokenAt[0] : now) - start, null);
+                    // Stream length depends on the answer, so only failures move the limit
+                    guard.succeeded(-1);
+                })
+                .doOnError(e -> {
+                    long elapsed = System.nanoTime() - start;
+                    metrics.recordUpstream(model, ChatMetrics.STREAM, elapsed, e);
+                    router.complete(route, elapsed, e);
+                    guard.failed(e);
+                })
+                .doFinally(signal -> {
+                    inFlight.decrementAndGet();
+                    if (signal != SignalType.ON_COMPLETE) {
+                        token.cancel();
+                    }
+                    if (signal == SignalType.CANCEL) {
+                        router.abandon(route);
+                        guard.cancelled();
+                        // Deltas are roughly one token each
+                        metrics.recordUpstreamCancelled(model, ChatMetrics.STREAM, chunks[0], maxTokens(prompt));
+                    }
+                })
+                .as(exchange -> subscribeBound(exchange, token));
+        })
+            .doOnError(e -> logFailure("OpenRouter 비동기 스트리밍", e));
+    }
+    
+    /**
+     * Number of upstream calls currently open
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+    
+    /**
+     * Take a limiter slot and pick a route whose circuit admits the call
+     * @throws UpstreamUnavailableException (429/503) if the limit is reached or the circuit is open
+     */
+    private Guard admit(Prompt prompt, ModelRoute pinned) {
+        boolean saturated = limiter.acquire();
+        try {
+            return new Guard(selectRoute(prompt, pinned), saturated);
+        } catch (RuntimeException e) {
+            limiter.release(saturated, -1, false);
+            throw e;
+        }
+    }
+    
+    /**
+     * Pick the route and pass its circuit breaker; when the request names a group
+     * and the chosen member's circuit is open, another member is tried once
+     */
+    private ModelRoute selectRoute(Prompt prompt, ModelRoute pinned) {
+        String requested = pinned != null ? pinned.id() : requestedModel(prompt);
+        ModelRoute route = router.resolve(requested);
+        if (breakers.isEnabled()) {
+            try {
+                breakers.get(route.id()).acquire();
+            } catch (UpstreamUnavailableException e) {
+                ModelRoute alternate = router.alternate(requested, route);
+                if (alternate.equals(route)) {
+                    throw e;
+                }
+                breakers.get(alternate.id()).acquire();
+                route = alternate;
+            }
+        }
+        return router.select(route.id());
+    }
+    
+    private static void logFailure(String call, Throwable e) {
+        if (e instanceof UpstreamUnavailableException) {
+            logger.warn("{} 거부: {}", call, e.getMessage());
+        } else {
+            logger.error(call + " 실패: ", e);
+        }
+    }
+    
+    /**
+     * Route for the second attempt, or a Mono that never emits when the hedge budget is spent
+     */
+    private Mono<ModelRoute> hedge(String requested, ModelRoute primary) {
+        return Mono.defer(() -> {
+            if (!hedging.tryHedge()) {
+                logger.debug("헤지 예산 부족 - 첫 번째 시도만 대기");
+                return Mono.never();
+            }
+            ModelRoute alternate = router.alternate(requested, primary);
+            logger.info("스트리밍 헤지 시작 - {} 첫 토큰 지연, 두 번째 시도: {}", primary.id(), alternate.id());
+            return Mono.just(alternate);
+        });
+    }
+    
+    // Model id and mode, as the blocking model keys its calls
+    private static String hedgeKey(ModelRoute route) {
+        return route.id() + "/" + ChatMetrics.STREAM;
+    }
+    
+    // The connector sends the request while the exchange is subscribed; with the token
+    // bound, CancellableHttpClient links the exchange to it so that cancelling aborts it
+    private static <T> Flux<T> subscribeBound(Flux<T> exchange, CancellationToken token) {
+        return Flux.from(subscriber -> {
+            try (CancellationToken.Scope scope = token.bind()) {
+                exchange.subscribe(subscriber);
+            }
+        });
+    }
+    
+    private static <T> Mono<T> subscribeBound(Mono<T> exchange, CancellationToken token) {
+        return Mono.from(subscribeBound(exchange.flux(), token));
+    }
+    
+    private static OpenRouterPayloads.Completion readCompletion(DataBuffer body) {
+        try {
+            return OpenRouterPayloads.readCompletion(body.asInputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataBufferUtils.release(body);
+        }
+    }
+    
+    // Encode the request directly into a buffer from the connection's allocator
+    private static BodyInserter<OpenRouterPayloads.CompletionRequest, ClientHttpRequest> requestBody(
+            Prompt prompt, ModelRoute route, boolean stream) {
+        OpenRouterPayloads.CompletionRequest request =
+            OpenRouterPayloads.CompletionRequest.of(prompt, route.upstreamModel(), stream);
+        return (message, context) -> {
+            DataBuffer buffer = message.bufferFactory().allocateBuffer(256);
+            try {
+                OpenRouterPayloads.write(request, buffer.asOutputStream());
+            } catch (IOException e) {
+                DataBufferUtils.release(buffer);
+                return Mono.error(e);
+            }
+            return message.writeWith(Mono.just(buffer));
+        };
+    }
+    
+    // Model id or group from the prompt options; null selects the router's default
+    private static String requestedModel(Prompt prompt) {
+        return prompt.getOptions() != null ? prompt.getOptions().getModel() : null;
+    }
+    
+    private static Integer maxTokens(Prompt prompt) {
+        return prompt.getOptions() != null ? prompt.getOptions().getMaxTokens() : null;
+    }
+    
+    private ChatResponse toChatResponse(String content) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(content))));
+    }
+    
+    /**
+     * The limiter slot and circuit breaker admission of one exchange, given
+     * back once by whichever signal ends it
+     */
+    private final class Guard {
+        
+        private final ModelRoute route;
+        
+        private final boolean saturated;
+        
+        private final AtomicBoolean settled = new AtomicBoolean();
+        
+        private Guard(ModelRoute route, boolean saturated) {
+            this.route = route;
+            this.saturated = saturated;
+        }
+        
+        /**
+         * @param latencyNanos Latency to sample for the limit, or negative for none
+         */
+        void succeeded(long latencyNanos) {
+            if (settled.compareAndSet(false, true)) {
+                onResult(false);
+                limiter.release(saturated, latencyNanos, false);
+            }
+        }
+        
+        void failed(Throwable error) {
+            if (settled.compareAndSet(false, true)) {
+                boolean upstreamFailed = CircuitBreakers.isUpstreamFailure(error);
+                onResult(upstreamFailed);
+                limiter.release(saturated, -1, upstreamFailed);
+            }
+        }
+        
+        void cancelled() {
+            if (settled.compareAndSet(false, true)) {
+                if (breakers.isEnabled()) {
+                    breakers.get(route.id()).onCancelled();
+                }
+                limiter.release(saturated, -1, false);
+            }
+        }
+        
+        private void onResult(boolean failed) {
+            if (breakers.isEnabled()) {
+                breakers.get(route.id()).onResult(failed);
+            }
+        }
+    }
+}
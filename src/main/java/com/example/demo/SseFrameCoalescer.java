@@ -0,0 +1,318 @@
+package com.example.demo;
+
+import com.example.demo.metrics.ChatMetrics;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.CoreSubscriber;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxOperator;
+import reactor.core.publisher.Operators;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Output stage of the SSE endpoint. Upstream deltas are a word or two each;
+ * writing each as its own event costs a flush and a syscall per few bytes.
+ * Deltas are merged into frames that are written once they reach
+ * {@code frameBytes} (UTF-8) or {@code frameWindow} after their first delta,
+ * whichever comes first, and at the end of the stream.
+ * <p>
+ * Backpressure is kept end to end: while the client is not reading, the
+ * pending frame fills up to {@code frameBytes} and then no more deltas are
+ * requested, so a slow reader holds at most one frame instead of the whole
+ * answer, and the upstream connection is paused by TCP flow control.
+ * <p>
+ * Per stream, {@code chat.stream.deltas}, {@code chat.stream.frames} and
+ * {@code chat.stream.flushes} (frames plus heartbeats) are recorded.
+ */
+@Component
+public class SseFrameCoalescer {
+
+    private static final ServerSentEvent<String> HEARTBEAT = ServerSentEvent.<String>builder()
+        .comment("keep-alive")
+        .build();
+
+    private final int frameBytes;
+
+    private final Duration frameWindow;
+
+    // SSE comment interval on streams; the only way to notice a client that left while no delta is due
+    private final Duration heartbeatInterval;
+
+    private final ChatMetrics metrics;
+
+    private final Scheduler scheduler;
+
+    @Autowired
+    public SseFrameCoalescer(@Value("${chat.stream.frame-bytes:64}") int frameBytes,
+                             @Value("${chat.stream.frame-window:20ms}") Duration frameWindow,
+                             @Value("${chat.stream.heartbeat-interval:5s}") Duration heartbeatInterval,
+                             ChatMetrics metrics) {
+        this(frameBytes, frameWindow, heartbeatInterval, metrics, Schedulers.parallel());
+    }
+
+    SseFrameCoalescer(int frameBytes, Duration frameWindow, Duration heartbeatInterval, ChatMetrics metrics,
+                      Scheduler scheduler) {
+        this.frameBytes = frameBytes;
+        this.frameWindow = frameWindow;
+        this.heartbeatInterval = heartbeatInterval;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Coalesce deltas into SSE data events, interleaved with heartbeats
+     */
+    public Flux<ServerSentEvent<String>> frames(Flux<String> deltas) {
+        return Flux.defer(() -> {
+            int[] deltaCount = {0};
+            int[] frameCount = {0};
+            int[] heartbeatCount = {0};
+            Flux<ServerSentEvent<String>> events = coalesce(deltas.doOnNext(delta -> deltaCount[0]++))
+                .doOnNext(frame -> frameCount[0]++)
+                .map(frame -> ServerSentEvent.builder(frame).build());
+            return withHeartbeat(events, heartbeatCount)
+                .doFinally(signal -> metrics.recordStreamFrames(deltaCount[0], frameCount[0],
+                    frameCount[0] + heartbeatCount[0]));
+        });
+    }
+
+    /**
+     * Merge deltas into frames of about {@code frameBytes}, flushed at the latest
+     * {@code frameWindow} after their first delta. A zero window disables coalescing.
+     */
+    Flux<String> coalesce(Flux<String> deltas) {
+        if (frameWindow.isZero() || frameWindow.isNegative() || frameBytes <= 1) {
+            return deltas;
+        }
+        return new FluxOperator<String, String>(deltas) {
+            @Override
+            public void subscribe(CoreSubscriber<? super String> actual) {
+                source.subscribe(new CoalescingSubscriber(actual, frameBytes, frameWindow, scheduler));
+            }
+        };
+    }
+
+    /**
+     * Interleave SSE comments, which clients ignore, while the stream is open. Servlet
+     * containers only notice a closed connection when writing to it, so without them a
+     * client that left during a long wait for the model would go unnoticed. Heartbeats
+     * are skipped, not queued, while the client is not reading.
+     */
+    private Flux<ServerSentEvent<String>> withHeartbeat(Flux<ServerSentEvent<String>> events, int[] count) {
+        if (heartbeatInterval.isZero() || heartbeatInterval.isNegative()) {
+            return events;
+        }
+        // Prefetch of one frame so that demand reaching the coalescer is the client's
+        return events.publish(shared -> Flux.merge(1, shared,
+            Flux.interval(heartbeatInterval, scheduler)
+                .onBackpressureDrop()
+                .map(tick -> HEARTBEAT)
+                .doOnNext(heartbeat -> count[0]++)
+                .takeUntilOther(shared.ignoreElements())), 1);
+    }
+
+    /**
+     * Pulls one delta at a time while the pending frame has room and emits the
+     * frame once it is full, its window has elapsed or the source has ended, and
+     * there is demand. Signals from upstream, downstream and the timer are
+     * serialized by a drain loop; state is guarded by this.
+     */
+    private static final class CoalescingSubscriber implements CoreSubscriber<String>, Subscription {
+
+        private final CoreSubscriber<? super String> actual;
+
+        private final int frameBytes;
+
+        private final Duration frameWindow;
+
+        private final Scheduler scheduler;
+
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private Subscription upstream;
+
+        private final StringBuilder frame = new StringBuilder();
+
+        private int pendingBytes;
+
+        private boolean windowElapsed;
+
+        // Frames emitted so far; tells a late timer of an earlier frame from the current one
+        private long frameCount;
+
+        private Disposable timer;
+
+        private boolean awaitingDelta;
+
+        private long requested;
+
+        private boolean done;
+
+        private Throwable error;
+
+        private boolean terminated;
+
+        CoalescingSubscriber(CoreSubscriber<? super String> actual, int frameBytes, Duration frameWindow,
+                             Scheduler scheduler) {
+            this.actual = actual;
+            this.frameBytes = frameBytes;
+            this.frameWindow = frameWindow;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (Operators.validate(upstream, subscription)) {
+                upstream = subscription;
+                actual.onSubscribe(this);
+                // Start pulling before the first request so that a frame is ready for it
+                drain();
+            }
+        }
+
+        @Override
+        public void onNext(String delta) {
+            synchronized (this) {
+                awaitingDelta = false;
+                if (terminated || delta.isEmpty()) {
+                    Operators.onDiscard(delta, actual.currentContext());
+                } else {
+                    if (pendingBytes == 0) {
+                        long current = frameCount;
+                        timer = scheduler.schedule(() -> windowElapsed(current), frameWindow.toNanos(),
+                            TimeUnit.NANOSECONDS);
+                    }
+                    frame.append(delta);
+                    pendingBytes += utf8Length(delta);
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                error = throwable;
+                done = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                done = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (Operators.validate(n)) {
+                synchronized (this) {
+                    requested = Operators.addCap(requested, n);
+                }
+                drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                terminated = true;
+                frame.setLength(0);
+                pendingBytes = 0;
+                disposeTimer();
+            }
+            upstream.cancel();
+        }
+
+        private void windowElapsed(long frame) {
+            synchronized (this) {
+                if (frame != frameCount) {
+                    return;
+                }
+                windowElapsed = true;
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                String next = null;
+                boolean complete = false;
+                boolean pull = false;
+                synchronized (this) {
+                    if (terminated) {
+                        return;
+                    }
+                    boolean due = pendingBytes >= frameBytes || windowElapsed || done;
+                    if (pendingBytes > 0 && due && requested > 0) {
+                        next = frame.toString();
+                        frame.setLength(0);
+                        pendingBytes = 0;
+                        windowElapsed = false;
+                        frameCount++;
+                        disposeTimer();
+                        requested--;
+                    }
+                    if (done && pendingBytes == 0) {
+                        terminated = true;
+                        complete = true;
+                    } else if (!done && !awaitingDelta && pendingBytes < frameBytes) {
+                        awaitingDelta = true;
+                        pull = true;
+                    }
+                }
+                if (next != null) {
+                    actual.onNext(next);
+                }
+                if (complete) {
+                    if (error != null) {
+                        actual.onError(error);
+                    } else {
+                        actual.onComplete();
+                    }
+                    return;
+                }
+                if (pull) {
+                    upstream.request(1);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void disposeTimer() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+
+        private static int utf8Length(String text) {
+            int bytes = text.length();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    // A surrogate pair is 4 bytes: 1 + 1 for each half
+                    bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+                }
+            }
+            return bytes;
+        }
+    }
+}
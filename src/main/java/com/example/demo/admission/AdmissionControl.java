@@ -0,0 +1,208 @@
+package com.example.demo.admission;
+
+import com.example.demo.resilience.UpstreamUnavailableException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission in front of ChatService for the chat endpoints.
+ * <p>
+ * A request first passes token buckets kept per session id and per client
+ * address, one counting requests and one counting estimated tokens (prompt
+ * plus an allowance for the answer). It then takes a slot of a
+ * {@link FairQueue} keyed by session, so concurrent users share the upstream
+ * concurrency evenly. Rejections are 429s with Retry-After. Buckets idle for
+ * {@code idle-timeout} are dropped.
+ */
+@Component
+public class AdmissionControl implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    /**
+     * Held while a request is being served; closing it frees the fair-queue slot
+     */
+    public interface Permit extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    private static final Permit NO_PERMIT = () -> { };
+
+    private static final String[] REASONS = {
+        "session-requests", "session-tokens", "client-requests", "client-tokens", "queue-full", "queue-timeout"
+    };
+
+    private final boolean enabled;
+
+    private final Rates sessionRates;
+
+    private final Rates clientRates;
+
+    private final int expectedOutputTokens;
+
+    private final Duration queueTimeout;
+
+    private final LongSupplier clock;
+
+    private final Cache<String, Buckets> sessions;
+
+    private final Cache<String, Buckets> clients;
+
+    private final FairQueue queue;
+
+    private final LongAdder[] rejected = new LongAdder[REASONS.length];
+
+    @Autowired
+    public AdmissionControl(@Value("${chat.admission.enabled:true}") boolean enabled,
+                            @Value("${chat.admission.session.requests-per-minute:30}") long sessionRequests,
+                            @Value("${chat.admission.session.tokens-per-minute:30000}") long sessionTokens,
+                            @Value("${chat.admission.client.requests-per-minute:120}") long clientRequests,
+                            @Value("${chat.admission.client.tokens-per-minute:120000}") long clientTokens,
+                            @Value("${chat.admission.expected-output-tokens:500}") int expectedOutputTokens,
+                            @Value("${chat.admission.max-concurrent:50}") int maxConcurrent,
+                            @Value("${chat.admission.max-queued:500}") int maxQueued,
+                            @Value("${chat.admission.queue-timeout:10s}") Duration queueTimeout,
+                            @Value("${chat.admission.quantum:1000}") long quantum,
+                            @Value("${chat.admission.idle-timeout:10m}") Duration idleTimeout) {
+        this(enabled, new Rates(sessionRequests, sessionTokens), new Rates(clientRequests, clientTokens),
+            expectedOutputTokens, new FairQueue(maxConcurrent, maxQueued, quantum), queueTimeout, idleTimeout,
+            System::nanoTime);
+    }
+
+    AdmissionControl(boolean enabled, Rates sessionRates, Rates clientRates, int expectedOutputTokens,
+                     FairQueue queue, Duration queueTimeout, Duration idleTimeout, LongSupplier clock) {
+        this.enabled = enabled;
+        this.sessionRates = sessionRates;
+        this.clientRates = clientRates;
+        this.expectedOutputTokens = expectedOutputTokens;
+        this.queue = queue;
+        this.queueTimeout = queueTimeout;
+        this.clock = clock;
+        this.sessions = Caffeine.newBuilder().expireAfterAccess(idleTimeout).build();
+        this.clients = Caffeine.newBuilder().expireAfterAccess(idleTimeout).build();
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Per-minute rates of one bucket pair; each bucket holds a minute's worth
+     */
+    record Rates(long requestsPerMinute, long tokensPerMinute) {
+
+        private Buckets create(LongSupplier clock) {
+            return new Buckets(new TokenBucket(requestsPerMinute, requestsPerMinute, clock),
+                new TokenBucket(tokensPerMinute, tokensPerMinute, clock));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getTrackedKeys() {
+        return sessions.estimatedSize() + clients.estimatedSize();
+    }
+
+    /**
+     * Admit one chat request, waiting for a fair share of the concurrency if needed
+     * @param sessionId Chat session, or null
+     * @param clientAddress Remote address of the caller
+     * @param promptTokens Estimated tokens of the request's own text
+     * @throws UpstreamUnavailableException (429) if a rate is exceeded or no slot frees up in time
+     */
+    public Permit admit(String sessionId, String clientAddress, int promptTokens) {
+        if (!enabled) {
+            return NO_PERMIT;
+        }
+        long tokens = (long) promptTokens + expectedOutputTokens;
+        Buckets session = sessionId != null ? sessions.get(sessionId, key -> sessionRates.create(clock)) : null;
+        Buckets client = clients.get(clientAddress, key -> clientRates.create(clock));
+
+        long wait;
+        if (session != null && (wait = session.requests.tryAcquire(1)) > 0) {
+            throw reject(0, wait);
+        }
+        if (session != null && (wait = session.tokens.tryAcquire(tokens)) > 0) {
+            session.requests.refund(1);
+            throw reject(1, wait);
+        }
+        if ((wait = client.requests.tryAcquire(1)) > 0) {
+            refund(session, tokens);
+            throw reject(2, wait);
+        }
+        if ((wait = client.tokens.tryAcquire(tokens)) > 0) {
+            refund(session, tokens);
+            client.requests.refund(1);
+            throw reject(3, wait);
+        }
+
+        FairQueue.Outcome outcome;
+        try {
+            outcome = queue.acquire(sessionId != null ? sessionId : clientAddress, tokens, queueTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = FairQueue.Outcome.TIMED_OUT;
+        }
+        if (outcome == FairQueue.Outcome.ACQUIRED) {
+            return queue::release;
+        }
+        // Never served: the request does not count against the rates
+        refund(session, tokens);
+        client.requests.refund(1);
+        client.tokens.refund(tokens);
+        throw reject(outcome == FairQueue.Outcome.QUEUE_FULL ? 4 : 5, Duration.ofSeconds(1).toNanos());
+    }
+
+    private static void refund(Buckets session, long tokens) {
+        if (session != null) {
+            session.requests.refund(1);
+            session.tokens.refund(tokens);
+        }
+    }
+
+    private UpstreamUnavailableException reject(int reason, long waitNanos) {
+        rejected[reason].increment();
+        logger.debug("요청 거부 ({}), {}ms 후 재시도 가능", REASONS[reason], waitNanos / 1_000_000);
+        return new UpstreamUnavailableException(HttpStatus.TOO_MANY_REQUESTS, Duration.ofNanos(waitNanos),
+            "요청 한도 초과 (" + REASONS[reason] + ")");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (int i = 0; i < REASONS.length; i++) {
+            FunctionCounter.builder("chat.admission.rejected", rejected[i], LongAdder::sum)
+                .description("Chat requests refused by admission control")
+                .tag("reason", REASONS[i])
+                .register(registry);
+        }
+        Gauge.builder("chat.admission.in-use", queue, FairQueue::getInUse)
+            .description("Admission slots held by requests being served")
+            .register(registry);
+        Gauge.builder("chat.admission.queued", queue, FairQueue::getQueued)
+            .description("Requests waiting for an admission slot")
+            .register(registry);
+        Gauge.builder("chat.admission.tracked", this, AdmissionControl::getTrackedKeys)
+            .description("Sessions and client addresses with live rate buckets")
+            .register(registry);
+    }
+
+    private record Buckets(TokenBucket requests, TokenBucket tokens) {
+    }
+}
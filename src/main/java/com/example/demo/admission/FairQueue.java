@@ -0,0 +1,202 @@
+package com.example.demo.admission;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency slots shared between flows (sessions or clients) by deficit
+ * round robin.
+ * <p>
+ * While slots are free and nobody waits, a slot is taken with a single CAS.
+ * Once they are all in use, callers queue per flow and every freed slot goes
+ * to the next flow in round-robin order whose deficit covers the cost of its
+ * oldest request; each visit adds {@code quantum} to a flow's deficit. With
+ * costs in estimated tokens, flows get an equal share of upstream work rather
+ * than of requests, so one client's burst or long prompts cannot starve the rest.
+ */
+public class FairQueue {
+
+    /**
+     * Why a caller was not given a slot
+     */
+    public enum Outcome {
+        ACQUIRED, QUEUE_FULL, TIMED_OUT
+    }
+
+    private final AtomicInteger available;
+
+    private final int slots;
+
+    private final int maxQueued;
+
+    private final long quantum;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Flows with waiters, in service order; guarded by lock
+    private final ArrayDeque<Flow> active = new ArrayDeque<>();
+
+    private final Map<String, Flow> flows = new HashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public FairQueue(int slots, int maxQueued, long quantum) {
+        this.slots = slots;
+        this.available = new AtomicInteger(slots);
+        this.maxQueued = maxQueued;
+        this.quantum = quantum;
+    }
+
+    /**
+     * Take a slot, waiting in the flow's queue if none is free
+     * @param flow Fairness key (session id or client address)
+     * @param cost Estimated cost of the request, in the same unit as the quantum
+     */
+    public Outcome acquire(String flow, long cost, Duration timeout) throws InterruptedException {
+        if (queued.get() == 0 && tryTake()) {
+            return Outcome.ACQUIRED;
+        }
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (queued.get() >= maxQueued) {
+                return Outcome.QUEUE_FULL;
+            }
+            waiter = new Waiter(Math.max(1, cost), lock.newCondition());
+            flows.computeIfAbsent(flow, key -> {
+                Flow created = new Flow(key);
+                active.addLast(created);
+                return created;
+            }).waiters.addLast(waiter);
+            queued.incrementAndGet();
+            // A slot may have been freed between the fast path and taking the lock
+            dispatch();
+            long remaining = timeout.toNanos();
+            while (!waiter.granted) {
+                if (remaining <= 0) {
+                    remove(flow, waiter);
+                    return Outcome.TIMED_OUT;
+                }
+                try {
+                    remaining = waiter.signal.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        // Too late to give up the slot silently; hand it on
+                        release();
+                    } else {
+                        remove(flow, waiter);
+                    }
+                    throw e;
+                }
+            }
+            return Outcome.ACQUIRED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return a slot taken by {@link #acquire}
+     */
+    public void release() {
+        available.incrementAndGet();
+        if (queued.get() > 0) {
+            lock.lock();
+            try {
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int getInUse() {
+        return slots - available.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    private boolean tryTake() {
+        int current;
+        do {
+            current = available.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    /**
+     * Hand free slots to waiters in deficit-round-robin order; caller holds the lock
+     */
+    private void dispatch() {
+        while (!active.isEmpty() && tryTake()) {
+            while (true) {
+                Flow flow = active.peekFirst();
+                Waiter head = flow.waiters.peekFirst();
+                if (head.cost <= flow.deficit) {
+                    flow.deficit -= head.cost;
+                    flow.waiters.pollFirst();
+                    queued.decrementAndGet();
+                    if (flow.waiters.isEmpty()) {
+                        // An idle flow does not bank credit
+                        active.pollFirst();
+                        flows.remove(flow.key);
+                    }
+                    head.granted = true;
+                    head.signal.signal();
+                    break;
+                }
+                flow.deficit += quantum;
+                active.addLast(active.pollFirst());
+            }
+        }
+    }
+
+    private void remove(String key, Waiter waiter) {
+        Flow flow = flows.get(key);
+        if (flow != null && flow.waiters.remove(waiter)) {
+            queued.decrementAndGet();
+            if (flow.waiters.isEmpty()) {
+                active.remove(flow);
+                flows.remove(key);
+            }
+        }
+    }
+
+    private static final class Flow {
+
+        final String key;
+
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        long deficit;
+
+        Flow(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Waiter {
+
+        final long cost;
+
+        final Condition signal;
+
+        boolean granted;
+
+        Waiter(long cost, Condition signal) {
+            this.cost = cost;
+            this.signal = signal;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demo.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * Implemented as the equivalent generic cell rate algorithm: instead of a
+ * token count and a refill timestamp, a single "theoretical arrival time" is
+ * kept in an {@link AtomicLong}. Taking n tokens pushes it n emission
+ * intervals forward; the request is allowed while it stays within
+ * {@code capacity} intervals of now. One CAS per decision, no refill thread.
+ */
+public final class TokenBucket {
+    
+    private final long intervalNanos;
+    
+    private final long toleranceNanos;
+    
+    private final long capacity;
+    
+    private final LongSupplier clock;
+    
+    private final AtomicLong theoreticalArrival;
+    
+    /**
+     * @param capacity Maximum burst, in tokens
+     * @param tokensPerMinute Refill rate
+     */
+    public TokenBucket(long capacity, long tokensPerMinute, LongSupplier clock) {
+        this.capacity = capacity;
+        this.intervalNanos = Math.max(1, 60_000_000_000L / tokensPerMinute);
+        this.toleranceNanos = capacity * intervalNanos;
+        this.clock = clock;
+        this.theoreticalArrival = new AtomicLong(clock.getAsLong());
+    }
+    
+    /**
+     * Take tokens if available. A request larger than the capacity takes the whole bucket.
+     * @return 0 if the tokens were taken, otherwise nanoseconds until they would be
+     */
+    public long tryAcquire(long tokens) {
+        long cost = Math.min(tokens, capacity) * intervalNanos;
+        while (true) {
+            long now = clock.getAsLong();
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + cost;
+            long excess = next - now - toleranceNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+    
+    /**
+     * Give back tokens taken by {@link #tryAcquire} for a request that was rejected elsewhere
+     */
+    public void refund(long tokens) {
+        theoreticalArrival.addAndGet(-Math.min(tokens, capacity) * intervalNanos);
+    }
+    
+    /**
+     * Tokens that could be taken right now
+     */
+    public long available() {
+        long backlog = Math.max(0, theoreticalArrival.get() - clock.getAsLong());
+        return Math.max(0, (toleranceNanos - backlog) / intervalNanos);
+    }
+}
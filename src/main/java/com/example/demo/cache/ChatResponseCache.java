@@ -0,0 +1,230 @@
+package com.example.demo.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Exact-match cache of completion texts.
+ * <p>
+ * Entries are keyed on a SHA-256 of the model, sampling options and the
+ * whitespace-normalized message list (system prompt included), bounded by
+ * entry count and expired after a fixed TTL. The cache holds futures rather
+ * than values: the first miss for a key registers its future before calling
+ * upstream, and concurrent identical requests wait on it instead of issuing
+ * their own call. Failed or cancelled loads are removed so the next request
+ * retries.
+ */
+@Component
+public class ChatResponseCache implements MeterBinder {
+    
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    private final boolean enabled;
+    
+    private final AsyncCache<String, String> cache;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    
+    public ChatResponseCache(@Value("${chat.cache.enabled:true}") boolean enabled,
+                             @Value("${chat.cache.max-entries:10000}") long maxEntries,
+                             @Value("${chat.cache.ttl:10m}") Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .buildAsync();
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Stable cache key for a prompt sent to the given model
+     */
+    public static String key(String model, Prompt prompt) {
+        MessageDigest digest = sha256();
+        update(digest, model);
+        ChatOptions options = prompt.getOptions();
+        if (options != null) {
+            update(digest, String.valueOf(options.getTemperature()));
+            update(digest, String.valueOf(options.getMaxTokens()));
+        }
+        for (Message message : prompt.getInstructions()) {
+            update(digest, message.getMessageType().getValue());
+            update(digest, normalize(message.getText()));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    /**
+     * Return the cached text for the key, or load it once for all concurrent callers
+     */
+    public String get(String key, Supplier<String> loader) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = cache.asMap().putIfAbsent(key, mine);
+        if (existing != null) {
+            recordShared(existing);
+            return join(existing);
+        }
+        misses.increment();
+        try {
+            String value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Reactive variant of {@link #get}; cancelling the loading subscriber abandons the load
+     */
+    public Mono<String> getReactive(String key, Supplier<Mono<String>> loader) {
+        return Mono.defer(() -> {
+            CompletableFuture<String> mine = new CompletableFuture<>();
+            CompletableFuture<String> existing = cache.asMap().putIfAbsent(key, mine);
+            if (existing != null) {
+                recordShared(existing);
+                return Mono.fromFuture(existing, true);
+            }
+            misses.increment();
+            return loader.get()
+                .doOnNext(mine::complete)
+                .doOnError(mine::completeExceptionally)
+                .doFinally(signal -> mine.cancel(false));
+        });
+    }
+    
+    /**
+     * Cached or in-flight text for the key; empty when nothing is cached
+     */
+    public Mono<String> lookup(String key) {
+        CompletableFuture<String> existing = cache.getIfPresent(key);
+        if (existing == null) {
+            misses.increment();
+            return Mono.empty();
+        }
+        recordShared(existing);
+        return Mono.fromFuture(existing, true);
+    }
+    
+    /**
+     * Store a text produced outside {@link #get}, e.g. by a completed stream
+     */
+    public void put(String key, String value) {
+        cache.put(key, CompletableFuture.completedFuture(value));
+    }
+    
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.cache.size", this, ChatResponseCache::size)
+            .description("Entries held by the response cache")
+            .register(registry);
+        FunctionCounter.builder("chat.cache.lookups", hits, LongAdder::sum)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("chat.cache.lookups", coalesced, LongAdder::sum)
+            .tag("result", "coalesced")
+            .register(registry);
+        FunctionCounter.builder("chat.cache.lookups", misses, LongAdder::sum)
+            .tag("result", "miss")
+            .register(registry);
+        Gauge.builder("chat.cache.hit-ratio", this, ChatResponseCache::getHitRatio)
+            .description("Share of lookups served from the cache or an identical in-flight call")
+            .register(registry);
+        FunctionCounter.builder("chat.cache.evictions", cache, c -> c.synchronous().stats().evictionCount())
+            .register(registry);
+    }
+    
+    double getHitRatio() {
+        long served = hits.sum() + coalesced.sum();
+        long total = served + misses.sum();
+        return total == 0 ? 0 : (double) served / total;
+    }
+    
+    long getHitCount() {
+        return hits.sum();
+    }
+    
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+    
+    long getMissCount() {
+        return misses.sum();
+    }
+    
+    private void recordShared(CompletableFuture<String> future) {
+        if (future.isDone()) {
+            hits.increment();
+        } else {
+            coalesced.increment();
+        }
+    }
+    
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("캐시된 응답 대기 중 인터럽트", e);
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(cause);
+        } catch (CancellationException e) {
+            throw new IllegalStateException("동일 요청의 업스트림 호출이 취소되었습니다", e);
+        }
+    }
+    
+    private static String normalize(String text) {
+        return text == null ? "" : WHITESPACE.matcher(text.strip()).replaceAll(" ");
+    }
+    
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.cache;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+
+/**
+ * {@link TextEmbedder} backed by a Spring AI {@link EmbeddingModel}. Vectors
+ * are L2-normalized here, since not every model returns unit vectors and the
+ * cache compares them by dot product.
+ */
+class EmbeddingModelTextEmbedder implements TextEmbedder {
+    
+    private final EmbeddingModel model;
+    
+    EmbeddingModelTextEmbedder(EmbeddingModel model) {
+        this.model = model;
+    }
+    
+    @Override
+    public float[] embed(String text) {
+        float[] vector = model.embed(text);
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+    
+    @Override
+    public int dimensions() {
+        return model.dimensions();
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.demo.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.BiConsumer;
+
+/**
+ * Hierarchical navigable small world graph over unit vectors (cosine
+ * similarity as a dot product).
+ * <p>
+ * Each node is linked to at most {@code m} neighbours per upper layer and
+ * {@code 2m} on layer 0; levels are drawn from an exponential distribution
+ * so upper layers thin out geometrically. Searches descend greedily through
+ * the upper layers and run a best-first search of width {@code ef} on
+ * layer 0. Nodes cannot be removed; callers rebuild the index to drop them.
+ * <p>
+ * Not thread-safe: searches may run concurrently with each other but not
+ * with {@link #add}.
+ */
+final class HnswIndex<T> {
+    
+    private final int m;
+    
+    private final int maxLinks0;
+    
+    private final int efConstruction;
+    
+    private final double levelMultiplier;
+    
+    private final SplittableRandom random;
+    
+    private final List<Node<T>> nodes = new ArrayList<>();
+    
+    private int entryPoint = -1;
+    
+    private int topLevel = -1;
+    
+    HnswIndex(int m, int efConstruction, long seed) {
+        this.m = m;
+        this.maxLinks0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+    
+    record Match<T>(T value, float similarity) {
+    }
+    
+    int size() {
+        return nodes.size();
+    }
+    
+    void add(float[] vector, T value) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int id = nodes.size();
+        Node<T> node = new Node<>(vector, value, level, m, maxLinks0);
+        nodes.add(node);
+        
+        if (entryPoint < 0) {
+            entryPoint = id;
+            topLevel = level;
+            return;
+        }
+        
+        int current = entryPoint;
+        for (int layer = topLevel; layer > level; layer--) {
+            current = greedyClosest(vector, current, layer);
+        }
+        for (int layer = Math.min(level, topLevel); layer >= 0; layer--) {
+            List<Candidate> candidates = searchLayer(vector, current, efConstruction, layer);
+            int limit = layer == 0 ? maxLinks0 : m;
+            for (int i = 0; i < Math.min(m, candidates.size()); i++) {
+                int neighbour = candidates.get(i).id;
+                node.link(layer, neighbour);
+                connectBack(neighbour, id, layer, limit);
+            }
+            current = candidates.get(0).id;
+        }
+        if (level > topLevel) {
+            entryPoint = id;
+            topLevel = level;
+        }
+    }
+    
+    /**
+     * Up to {@code k} nearest values, most similar first
+     */
+    List<Match<T>> search(float[] query, int k, int ef) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        int current = entryPoint;
+        for (int layer = topLevel; layer > 0; layer--) {
+            current = greedyClosest(query, current, layer);
+        }
+        List<Candidate> candidates = searchLayer(query, current, Math.max(ef, k), 0);
+        List<Match<T>> matches = new ArrayList<>(Math.min(k, candidates.size()));
+        for (int i = 0; i < Math.min(k, candidates.size()); i++) {
+            Candidate candidate = candidates.get(i);
+            matches.add(new Match<>(nodes.get(candidate.id).value, candidate.similarity));
+        }
+        return matches;
+    }
+    
+    /**
+     * Visit every stored vector and value in insertion order
+     */
+    void forEach(BiConsumer<float[], T> consumer) {
+        for (Node<T> node : nodes) {
+            consumer.accept(node.vector, node.value);
+        }
+    }
+    
+    private int greedyClosest(float[] query, int start, int layer) {
+        int best = start;
+        float bestSimilarity = dot(query, nodes.get(start).vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node<T> node = nodes.get(best);
+            int[] links = node.links[layer];
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                float similarity = dot(query, nodes.get(links[i]).vector);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = links[i];
+                    improved = true;
+                }
+            }
+        }
+        return best;
+    }
+    
+    // Best-first search; returns up to ef candidates, most similar first
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int layer) {
+        boolean[] visited = new boolean[nodes.size()];
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble(c -> -c.similarity));
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(c -> c.similarity));
+        
+        Candidate first = new Candidate(start, dot(query, nodes.get(start).vector));
+        visited[start] = true;
+        frontier.add(first);
+        results.add(first);
+        
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (results.size() >= ef && closest.similarity < results.peek().similarity) {
+                break;
+            }
+            Node<T> node = nodes.get(closest.id);
+            if (node.level < layer) {
+                continue;
+            }
+            int[] links = node.links[layer];
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                int neighbour = links[i];
+                if (visited[neighbour]) {
+                    continue;
+                }
+                visited[neighbour] = true;
+                float similarity = dot(query, nodes.get(neighbour).vector);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(c -> -c.similarity));
+        return sorted;
+    }
+    
+    // Add a reverse link, keeping only the most similar neighbours when over the limit
+    private void connectBack(int from, int to, int layer, int limit) {
+        Node<T> node = nodes.get(from);
+        if (node.linkCounts[layer] < limit) {
+            node.link(layer, to);
+            return;
+        }
+        int count = node.linkCounts[layer];
+        Candidate[] candidates = new Candidate[count + 1];
+        for (int i = 0; i < count; i++) {
+            int id = node.links[layer][i];
+            candidates[i] = new Candidate(id, dot(node.vector, nodes.get(id).vector));
+        }
+        candidates[count] = new Candidate(to, dot(node.vector, nodes.get(to).vector));
+        Arrays.sort(candidates, Comparator.comparingDouble(c -> -c.similarity));
+        for (int i = 0; i < limit; i++) {
+            node.links[layer][i] = candidates[i].id;
+        }
+    }
+    
+    static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+    
+    private record Candidate(int id, float similarity) {
+    }
+    
+    private static final class Node<T> {
+        
+        private final float[] vector;
+        
+        private final T value;
+        
+        private final int level;
+        
+        private final int[][] links;
+        
+        private final int[] linkCounts;
+        
+        Node(float[] vector, T value, int level, int m, int maxLinks0) {
+            this.vector = vector;
+            this.value = value;
+            this.level = level;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int layer = 0; layer <= level; layer++) {
+                links[layer] = new int[layer == 0 ? maxLinks0 : m];
+            }
+        }
+        
+        void link(int layer, int neighbour) {
+            links[layer][linkCounts[layer]++] = neighbour;
+        }
+    }
+}
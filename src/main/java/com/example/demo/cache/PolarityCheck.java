@@ -0,0 +1,121 @@
+package com.example.demo.cache;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Lexical check that two similar questions do not ask for opposite things.
+ * <p>
+ * Embeddings place "sort ascending" and "sort descending", or "is it safe"
+ * and "is it not safe", close together, so a semantic cache hit is refused
+ * when one question is negated and the other is not, or when they use the
+ * two sides of a known antonym pair. The lists cover common English and
+ * Korean forms; anything they miss is left to the similarity threshold.
+ */
+final class PolarityCheck {
+    
+    private static final Set<String> NEGATIONS = Set.of(
+        "not", "no", "never", "none", "nothing", "without", "cannot", "dont", "doesnt", "didnt", "isnt",
+        "arent", "wasnt", "werent", "cant", "couldnt", "wont", "wouldnt", "shouldnt", "havent", "hasnt",
+        "안", "못");
+    
+    // Korean negation is usually a verb ending: 않다, 없다, 못하다, 아니다
+    private static final String[] KOREAN_NEGATION_STEMS = {"않", "없", "못하", "아니"};
+    
+    private static final String[][] ANTONYMS = {
+        {"ascending", "descending"}, {"asc", "desc"}, {"increase", "decrease"}, {"increasing", "decreasing"},
+        {"enable", "disable"}, {"enabled", "disabled"}, {"min", "max"}, {"minimum", "maximum"},
+        {"before", "after"}, {"add", "remove"}, {"true", "false"}, {"open", "close"}, {"show", "hide"},
+        {"start", "stop"}, {"first", "last"}, {"upper", "lower"}, {"uppercase", "lowercase"},
+        {"left", "right"}, {"up", "down"}, {"encode", "decode"}, {"encrypt", "decrypt"},
+        {"import", "export"}, {"sync", "async"}, {"synchronous", "asynchronous"}, {"visible", "invisible"},
+        {"valid", "invalid"}, {"safe", "unsafe"}, {"more", "less"}, {"largest", "smallest"},
+        {"오름차순", "내림차순"}, {"증가", "감소"}, {"최소", "최대"}, {"활성화", "비활성화"}, {"추가", "삭제"},
+        {"표시", "숨김"}, {"시작", "종료"}, {"이전", "이후"}
+    };
+    
+    private PolarityCheck() {
+    }
+    
+    /**
+     * @return True if the questions differ in negation or use opposite words of an antonym pair
+     */
+    static boolean contradicts(String a, String b) {
+        Set<String> wordsA = words(a);
+        Set<String> wordsB = words(b);
+        if (negated(wordsA) != negated(wordsB)) {
+            return true;
+        }
+        for (String[] pair : ANTONYMS) {
+            int sideA = side(wordsA, pair);
+            int sideB = side(wordsB, pair);
+            if (sideA != 0 && sideB != 0 && sideA != sideB) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Odd number of negations, so that "not ... not" reads as positive
+    private static boolean negated(Set<String> words) {
+        int count = 0;
+        for (String word : words) {
+            if (NEGATIONS.contains(word) || hasKoreanNegation(word)) {
+                count++;
+            }
+        }
+        return count % 2 == 1;
+    }
+    
+    private static boolean hasKoreanNegation(String word) {
+        for (String stem : KOREAN_NEGATION_STEMS) {
+            if (word.contains(stem)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // 1 or -1 for the side of the pair the text uses, 0 for neither or both
+    private static int side(Set<String> words, String[] pair) {
+        boolean first = contains(words, pair[0]);
+        boolean second = contains(words, pair[1]);
+        return first == second ? 0 : first ? 1 : -1;
+    }
+    
+    // Korean words carry particles ("오름차순으로"), so they match as prefixes
+    private static boolean contains(Set<String> words, String word) {
+        if (words.contains(word)) {
+            return true;
+        }
+        if (Character.UnicodeScript.of(word.codePointAt(0)) != Character.UnicodeScript.HANGUL) {
+            return false;
+        }
+        for (String candidate : words) {
+            if (candidate.startsWith(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Lower-cased runs of letters and digits; apostrophes are dropped so "don't" reads as "dont"
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (c == '\'' || c == '’') {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (!word.isEmpty()) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.demo.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Similarity-based response cache for first-turn prompts.
+ * <p>
+ * The user message is embedded with the application's Spring AI
+ * {@link EmbeddingModel} and looked up in an {@link HnswIndex}; the nearest
+ * previously answered message is served when its similarity reaches the
+ * threshold and {@link PolarityCheck} finds no negation or antonym that
+ * turns its meaning around. Enabling the cache without an EmbeddingModel
+ * bean fails at startup; the threshold has to be tuned for that model. Only prompts without
+ * conversation history are eligible, since an answer depends on the turns
+ * before it, and indexes are partitioned by model, sampling options and
+ * system prompt so a hit never crosses those.
+ * <p>
+ * Entries expire after the TTL. HNSW nodes cannot be removed, so a partition
+ * is rebuilt from its live entries when it is full (keeping the newest
+ * half) and by the periodic sweep once expired entries accumulate.
+ */
+@Component
+public class SemanticResponseCache implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SemanticResponseCache.class);
+    
+    private static final int M = 16;
+    
+    private static final int EF_CONSTRUCTION = 100;
+    
+    private static final int EF_SEARCH = 50;
+    
+    private final TextEmbedder embedder;
+    
+    private final boolean enabled;
+    
+    private final double threshold;
+    
+    private final long ttlNanos;
+    
+    private final int maxEntriesPerPartition;
+    
+    private final int maxPartitions;
+    
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+    
+    @Autowired
+    public SemanticResponseCache(ObjectProvider<EmbeddingModel> embeddingModel,
+                                 @Value("${chat.semantic-cache.enabled:false}") boolean enabled,
+                                 @Value("${chat.semantic-cache.threshold:0.9}") double threshold,
+                                 @Value("${chat.semantic-cache.ttl:1h}") Duration ttl,
+                                 @Value("${chat.semantic-cache.max-entries-per-partition:5000}") int maxEntriesPerPartition,
+                                 @Value("${chat.semantic-cache.max-partitions:100}") int maxPartitions) {
+        this(enabled ? embedder(embeddingModel) : null, enabled, threshold, ttl, maxEntriesPerPartition,
+            maxPartitions);
+    }
+    
+    public SemanticResponseCache(TextEmbedder embedder, boolean enabled, double threshold, Duration ttl,
+                                 int maxEntriesPerPartition, int maxPartitions) {
+        this.embedder = embedder;
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntriesPerPartition = maxEntriesPerPartition;
+        this.maxPartitions = maxPartitions;
+    }
+    
+    record Entry(String question, String answer, long createdAt, long upstreamNanos) {
+    }
+    
+    private static TextEmbedder embedder(ObjectProvider<EmbeddingModel> embeddingModel) {
+        EmbeddingModel model = embeddingModel.getIfAvailable();
+        if (model == null) {
+            throw new IllegalStateException(
+                "chat.semantic-cache.enabled=true 에는 EmbeddingModel 빈이 필요합니다 (예: spring.ai.openai.embedding.*)");
+        }
+        return new EmbeddingModelTextEmbedder(model);
+    }
+    
+    /**
+     * Partition key for a prompt, or null if the prompt is not eligible
+     * (cache disabled, or the prompt carries conversation history)
+     */
+    public String partition(String model, Prompt prompt) {
+        if (!enabled) {
+            return null;
+        }
+        List<Message> messages = prompt.getInstructions();
+        StringBuilder key = new StringBuilder(model);
+        ChatOptions options = prompt.getOptions();
+        if (options != null) {
+            key.append('\u0000').append(options.getTemperature()).append('\u0000').append(options.getMaxTokens());
+        }
+        for (int i = 0; i < messages.size() - 1; i++) {
+            if (messages.get(i).getMessageType() != MessageType.SYSTEM) {
+                return null;
+            }
+            key.append('\u0000').append(messages.get(i).getText());
+        }
+        if (messages.isEmpty() || messages.get(messages.size() - 1).getMessageType() != MessageType.USER) {
+            return null;
+        }
+        return key.toString();
+    }
+    
+    /**
+     * A user message to look up and, on a miss, store the answer to; it is
+     * embedded at most once for both
+     */
+    public final class Query {
+        
+        private final String partitionKey;
+        
+        private final String message;
+        
+        private float[] vector;
+        
+        private Query(String partitionKey, String message) {
+            this.partitionKey = partitionKey;
+            this.message = message;
+        }
+        
+        private float[] vector() {
+            if (vector == null) {
+                vector = embedder.embed(message);
+            }
+            return vector;
+        }
+    }
+    
+    public Query query(String partitionKey, String userMessage) {
+        return new Query(partitionKey, userMessage);
+    }
+    
+    /**
+     * Cached answer to a sufficiently similar message in the partition
+     */
+    public Optional<String> lookup(String partitionKey, String userMessage) {
+        return lookup(query(partitionKey, userMessage));
+    }
+    
+    /**
+     * Cached answer to a sufficiently similar message in the query's partition;
+     * the message is only embedded if the partition has entries
+     */
+    public Optional<String> lookup(Query query) {
+        long start = System.nanoTime();
+        Partition partition = partitions.get(query.partitionKey);
+        if (partition != null) {
+            Optional<Entry> entry = partition.nearest(query.vector(), query.message, start);
+            if (entry.isPresent()) {
+                hits.increment();
+                savedNanos.add(Math.max(0, entry.get().upstreamNanos() - (System.nanoTime() - start)));
+                return Optional.of(entry.get().answer());
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+    
+    /**
+     * Remember an upstream answer together with how long it took to produce
+     */
+    public void store(String partitionKey, String userMessage, String answer, long upstreamNanos) {
+        store(query(partitionKey, userMessage), answer, upstreamNanos);
+    }
+    
+    /**
+     * Remember the upstream answer to a query that missed, reusing its embedding
+     */
+    public void store(Query query, String answer, long upstreamNanos) {
+        Partition partition = partitions.get(query.partitionKey);
+        if (partition == null) {
+            if (partitions.size() >= maxPartitions) {
+                return;
+            }
+            partition = partitions.computeIfAbsent(query.partitionKey, k -> new Partition());
+        }
+        partition.add(query.vector(), new Entry(query.message, answer, System.nanoTime(), upstreamNanos));
+    }
+    
+    /**
+     * Rebuild partitions without their expired entries and drop empty ones
+     */
+    @Scheduled(fixedDelayString = "${chat.history.sweep-interval:60s}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        partitions.entrySet().removeIf(e -> e.getValue().rebuild(now, Integer.MAX_VALUE) == 0);
+    }
+    
+    long getHitCount() {
+        return hits.sum();
+    }
+    
+    long getMissCount() {
+        return misses.sum();
+    }
+    
+    double getLatencySavedSeconds() {
+        return savedNanos.sum() / 1e9;
+    }
+    
+    double getHitRatio() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("chat.semantic-cache.lookups", hits, LongAdder::sum)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("chat.semantic-cache.lookups", misses, LongAdder::sum)
+            .tag("result", "miss")
+            .register(registry);
+        Gauge.builder("chat.semantic-cache.hit-ratio", this, SemanticResponseCache::getHitRatio)
+            .description("Share of eligible lookups served from the semantic cache")
+            .register(registry);
+        FunctionCounter.builder("chat.semantic-cache.latency.saved", this, SemanticResponseCache::getLatencySavedSeconds)
+            .description("Upstream latency avoided by semantic cache hits")
+            .baseUnit("seconds")
+            .register(registry);
+        Gauge.builder("chat.semantic-cache.entries", partitions,
+                p -> p.values().stream().mapToInt(Partition::size).sum())
+            .register(registry);
+    }
+    
+    private final class Partition {
+        
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        
+        private HnswIndex<Entry> index = newIndex();
+        
+        Optional<Entry> nearest(float[] query, String question, long now) {
+            lock.readLock().lock();
+            try {
+                // A few candidates in case the nearest ones have expired or ask the opposite
+                for (HnswIndex.Match<Entry> match : index.search(query, 4, EF_SEARCH)) {
+                    if (match.similarity() < threshold) {
+                        break;
+                    }
+                    if (now - match.value().createdAt() < ttlNanos
+                            && !PolarityCheck.contradicts(question, match.value().question())) {
+                        return Optional.of(match.value());
+                    }
+                }
+                return Optional.empty();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        
+        void add(float[] vector, Entry entry) {
+            lock.writeLock().lock();
+            try {
+                if (index.size() >= maxEntriesPerPartition) {
+                    rebuildLocked(System.nanoTime(), maxEntriesPerPartition / 2);
+                }
+                index.add(vector, entry);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        int rebuild(long now, int keep) {
+            lock.writeLock().lock();
+            try {
+                return rebuildLocked(now, keep);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        int size() {
+            lock.readLock().lock();
+            try {
+                return index.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        
+        // Keep the newest live entries, at most keep of them
+        private int rebuildLocked(long now, int keep) {
+            List<Indexed> live = new ArrayList<>();
+            index.forEach((vector, entry) -> {
+                if (now - entry.createdAt() < ttlNanos) {
+                    live.add(new Indexed(vector, entry));
+                }
+            });
+            if (live.size() == index.size() && live.size() <= keep) {
+                return live.size();
+            }
+            live.sort(Comparator.comparingLong(indexed -> indexed.entry().createdAt()));
+            HnswIndex<Entry> rebuilt = newIndex();
+            for (Indexed indexed : live.subList(Math.max(0, live.size() - keep), live.size())) {
+                rebuilt.add(indexed.vector(), indexed.entry());
+            }
+            logger.debug("시맨틱 캐시 파티션 재구성: {} -> {}개", index.size(), rebuilt.size());
+            index = rebuilt;
+            return rebuilt.size();
+        }
+    }
+    
+    private record Indexed(float[] vector, Entry entry) {
+    }
+    
+    private static HnswIndex<Entry> newIndex() {
+        return new HnswIndex<>(M, EF_CONSTRUCTION, 42);
+    }
+}
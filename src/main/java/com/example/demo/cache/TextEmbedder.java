@@ -0,0 +1,11 @@
+package com.example.demo.cache;
+
+/**
+ * Maps text to a unit-length vector so that cosine similarity is a dot product
+ */
+public interface TextEmbedder {
+    
+    float[] embed(String text);
+    
+    int dimensions();
+}
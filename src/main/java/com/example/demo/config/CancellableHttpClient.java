@@ -0,0 +1,177 @@
+package com.example.demo.config;
+
+import com.example.demo.resilience.CancellationToken;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * JDK {@link HttpClient} that aborts an exchange when the
+ * {@link CancellationToken} bound to the thread sending it is cancelled.
+ * <p>
+ * Spring's JDK connector caches the response body, so cancelling the
+ * WebClient Flux never reaches the exchange and the upstream keeps
+ * generating into a buffer nobody reads. Here the pending request is
+ * cancelled, or once the body is flowing its subscription, which closes the
+ * stream right away.
+ */
+public class CancellableHttpClient extends HttpClient {
+
+    private final HttpClient delegate;
+
+    public CancellableHttpClient(HttpClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+            HttpResponse.BodyHandler<T> responseBodyHandler) {
+        return sendAsync(request, responseBodyHandler, null);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+            HttpResponse.BodyHandler<T> responseBodyHandler, HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        CancellationToken token = CancellationToken.current();
+        if (token == null) {
+            return delegate.sendAsync(request, responseBodyHandler, pushPromiseHandler);
+        }
+        CompletableFuture<HttpResponse<T>> response = delegate.sendAsync(request,
+            info -> new LinkedBodySubscriber<>(responseBodyHandler.apply(info), token), pushPromiseHandler);
+        // Until the headers arrive, abort the exchange itself
+        CancellationToken.Registration registration = token.onCancel(() -> response.cancel(true));
+        response.whenComplete((r, e) -> registration.close());
+        return response;
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler)
+            throws IOException, InterruptedException {
+        return delegate.send(request, responseBodyHandler);
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+        return delegate.cookieHandler();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+        return delegate.connectTimeout();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+        return delegate.followRedirects();
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+        return delegate.proxy();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+        return delegate.sslContext();
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+        return delegate.sslParameters();
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+        return delegate.authenticator();
+    }
+
+    @Override
+    public Version version() {
+        return delegate.version();
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+        return delegate.executor();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public void shutdownNow() {
+        delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean awaitTermination(Duration duration) throws InterruptedException {
+        return delegate.awaitTermination(duration);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    /**
+     * Registers the body subscription with the token while the body is read
+     */
+    private static final class LinkedBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+
+        private final CancellationToken token;
+
+        private volatile CancellationToken.Registration registration = () -> { };
+
+        LinkedBodySubscriber(HttpResponse.BodySubscriber<T> delegate, CancellationToken token) {
+            this.delegate = delegate;
+            this.token = token;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+            registration = token.onCancel(subscription::cancel);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            registration.close();
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            registration.close();
+            delegate.onComplete();
+        }
+    }
+}
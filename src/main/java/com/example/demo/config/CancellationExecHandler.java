@@ -0,0 +1,53 @@
+package com.example.demo.config;
+
+import com.example.demo.resilience.CancellationToken;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+
+/**
+ * Aborts an exchange when the {@link CancellationToken} bound to the calling
+ * thread is cancelled. Cancelling the request closes its connection, so a
+ * read blocked on the upstream fails immediately and no more tokens are
+ * generated for a caller that is gone. The registration lasts until the
+ * response entity is closed.
+ */
+public class CancellationExecHandler implements ExecChainHandler {
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        CancellationToken token = CancellationToken.current();
+        if (token == null || !(scope.originalRequest instanceof Cancellable cancellable)) {
+            return chain.proceed(request, scope);
+        }
+
+        CancellationToken.Registration registration = token.onCancel(cancellable::cancel);
+        try {
+            ClassicHttpResponse response = chain.proceed(request, scope);
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                registration.close();
+                return response;
+            }
+            response.setEntity(new HttpEntityWrapper(entity) {
+                @Override
+                public void close() throws IOException {
+                    registration.close();
+                    super.close();
+                }
+            });
+            return response;
+        } catch (IOException | HttpException | RuntimeException e) {
+            registration.close();
+            throw e;
+        }
+    }
+}
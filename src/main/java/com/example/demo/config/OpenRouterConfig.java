@@ -1,11 +1,31 @@
 package com.example.demo.config;
 
+import com.example.demo.routing.ModelRouterProperties;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
 
 @Configuration
+@EnableConfigurationProperties(ModelRouterProperties.class)
 public class OpenRouterConfig {
     
     @Value("${spring.ai.openai.api-key}")
@@ -17,9 +37,109 @@ public class OpenRouterConfig {
     @Value("${spring.ai.openai.chat.options.model}")
     private String model;
     
+    // Connection pool / timeout settings for the upstream HTTP client
+    @Value("${openrouter.http.max-connections:200}")
+    private int maxConnections;
+    
+    @Value("${openrouter.http.max-connections-per-route:100}")
+    private int maxConnectionsPerRoute;
+    
+    @Value("${openrouter.http.connect-timeout:5s}")
+    private Duration connectTimeout;
+    
+    @Value("${openrouter.http.connection-request-timeout:10s}")
+    private Duration connectionRequestTimeout;
+    
+    @Value("${openrouter.http.read-timeout:60s}")
+    private Duration readTimeout;
+    
+    @Value("${openrouter.http.total-timeout:120s}")
+    private Duration totalTimeout;
+    
+    @Value("${openrouter.http.idle-eviction:30s}")
+    private Duration idleEviction;
+    
+    @Value("${openrouter.http.time-to-live:5m}")
+    private Duration timeToLive;
+    
+    @Bean
+    public PoolingHttpClientConnectionManager openRouterConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerRoute)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .setTimeToLive(TimeValue.of(timeToLive))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build())
+            .build();
+    }
+    
+    @Bean
+    public TotalTimeoutExecHandler totalTimeoutExecHandler() {
+        return new TotalTimeoutExecHandler(totalTimeout);
+    }
+    
+    @Bean
+    public CancellationExecHandler cancellationExecHandler() {
+        return new CancellationExecHandler();
+    }
+    
+    /**
+     * Shared keep-alive client. Connections are reused across calls and
+     * idle/expired ones are evicted in the background. Exchanges are aborted
+     * when the caller's CancellationToken is cancelled.
+     */
+    @Bean
+    public CloseableHttpClient openRouterHttpClient(PoolingHttpClientConnectionManager connectionManager,
+                                                    TotalTimeoutExecHandler totalTimeoutExecHandler,
+                                                    CancellationExecHandler cancellationExecHandler) {
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(connectionRequestTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build())
+            .addExecInterceptorFirst("total-timeout", totalTimeoutExecHandler)
+            .addExecInterceptorFirst("cancellation", cancellationExecHandler)
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.of(idleEviction))
+            .build();
+    }
+    
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient openRouterHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(openRouterHttpClient));
+    }
+    
+    /**
+     * Non-blocking client for the reactive path. The JDK client multiplexes
+     * requests over HTTP/2 where the upstream supports it and otherwise
+     * keeps HTTP/1.1 connections alive. Exchanges are aborted when the
+     * caller's CancellationToken is cancelled.
+     */
+    @Bean
+    public WebClient openRouterWebClient(WebClient.Builder webClientBuilder) {
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(connectTimeout)
+            .build();
+        JdkClientHttpConnector connector = new JdkClientHttpConnector(new CancellableHttpClient(httpClient));
+        connector.setReadTimeout(readTimeout);
+        return webClientBuilder
+            .clientConnector(connector)
+            .baseUrl(baseUrl)
+            .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+            .build();
+    }
+    
+    /**
+     * Exposes httpcomponents.httpclient.pool.* gauges (leased, available, pending, max)
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public MeterBinder openRouterPoolMetrics(PoolingHttpClientConnectionManager openRouterConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(openRouterConnectionManager, "openrouter");
     }
     
     @Bean
@@ -50,4 +170,4 @@ public class OpenRouterConfig {
             return model;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package com.example.demo.config;
+
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts an exchange that has not finished within the total timeout.
+ * The deadline covers connecting, waiting for the response and reading the
+ * body; it is cleared as soon as the response entity is closed.
+ */
+public class TotalTimeoutExecHandler implements ExecChainHandler, AutoCloseable {
+    
+    private final Duration totalTimeout;
+    
+    private final ScheduledThreadPoolExecutor scheduler;
+    
+    public TotalTimeoutExecHandler(Duration totalTimeout) {
+        this.totalTimeout = totalTimeout;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("openrouter-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+    
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        if (totalTimeout.isZero() || totalTimeout.isNegative()
+                || !(scope.originalRequest instanceof Cancellable cancellable)) {
+            return chain.proceed(request, scope);
+        }
+        
+        ScheduledFuture<?> deadline = scheduler.schedule(
+            cancellable::cancel, totalTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            ClassicHttpResponse response = chain.proceed(request, scope);
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                deadline.cancel(false);
+                return response;
+            }
+            response.setEntity(new HttpEntityWrapper(entity) {
+                @Override
+                public void close() throws IOException {
+                    deadline.cancel(false);
+                    super.close();
+                }
+            });
+            return response;
+        } catch (IOException | HttpException | RuntimeException e) {
+            deadline.cancel(false);
+            throw e;
+        }
+    }
+    
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
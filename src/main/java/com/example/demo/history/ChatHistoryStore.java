@@ -0,0 +1,38 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+
+import java.util.List;
+
+/**
+ * Session-scoped conversation history storage used by ChatService.
+ * Implementations must be safe for concurrent use and bound their own memory.
+ */
+public interface ChatHistoryStore {
+    
+    /**
+     * Get the messages of a session, oldest first
+     * @param sessionId The session ID
+     * @return Snapshot of the session's history, empty if the session is unknown or expired
+     */
+    List<ChatMessage> getHistory(String sessionId);
+    
+    /**
+     * Append messages to a session, creating it if needed.
+     * Older messages beyond the per-session limit are dropped.
+     * @param sessionId The session ID
+     * @param messages Messages to append in order
+     */
+    void append(String sessionId, List<ChatMessage> messages);
+    
+    /**
+     * Remove all history of a session
+     * @param sessionId The session ID
+     */
+    void clear(String sessionId);
+    
+    /**
+     * @return Number of sessions currently held
+     */
+    int sessionCount();
+}
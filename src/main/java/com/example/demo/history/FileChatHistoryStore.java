@@ -0,0 +1,712 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Durable history store: an append-only, segmented log on local disk.
+ * <p>
+ * Every appended message and every clear is one checksummed record (see
+ * {@link LogRecord}) written into a memory-mapped {@link LogSegment}; a
+ * scheduled flusher forces dirty segments to disk, so many appends share one
+ * fsync. A session's history is found through an in-memory index holding,
+ * per session, only the log positions of its newest {@code max-messages}
+ * records, and is decoded straight from the mapped segments.
+ * <p>
+ * Restart: the index is checkpointed to {@code index.snapshot} together with
+ * the log position it covers. Startup loads the snapshot and replays only the
+ * records written after it, verifying checksums; a torn record at the tail is
+ * discarded. Without a snapshot the whole log is replayed.
+ * <p>
+ * Compaction: segments whose live share (records still in the index) drops
+ * below {@code compaction-threshold} have their live records copied to the
+ * head of the log as RELOCATE records, then are deleted after the next
+ * checkpoint. Sessions that were cleared, trimmed or not written for
+ * {@code retention} no longer count as live. Compaction also enforces
+ * {@code max-sessions} by clearing the least recently written sessions.
+ * <p>
+ * Writers and compaction take the write lock; reads share the read lock.
+ * A checkpoint holds the read lock only to copy the index; it syncs the log
+ * and writes the snapshot after releasing it.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.history.store", havingValue = "file")
+public class FileChatHistoryStore implements ChatHistoryStore, MeterBinder, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileChatHistoryStore.class);
+
+    private static final String SNAPSHOT = "index.snapshot";
+
+    private static final int SNAPSHOT_MAGIC = 0x43485831;
+
+    private final Path dir;
+
+    private final int maxMessagesPerSession;
+
+    private final int maxSessions;
+
+    private final int segmentBytes;
+
+    private final long retentionMillis;
+
+    private final double compactionThreshold;
+
+    private final LongSupplier clock;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final Map<String, SessionIndex> sessions = new HashMap<>();
+
+    // By id; the last one is the active (written) segment. Guarded by lock
+    private final TreeMap<Integer, LogSegment> segments = new TreeMap<>();
+
+    // Compacted segments to delete once a checkpoint no longer refers to them
+    private final List<LogSegment> retired = new ArrayList<>();
+
+    // Serializes checkpoints (scheduled, after compaction, on close): they share the temp file,
+    // and a later one must not be overwritten by an older copy of the index
+    private final Object checkpointLock = new Object();
+
+    private LogSegment active;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder compactedSegments = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+
+    private final long recoveryNanos;
+
+    private final long recoveredRecords;
+
+    @Autowired
+    public FileChatHistoryStore(@Value("${chat.history.file.dir:data/history}") Path dir,
+                                @Value("${chat.history.max-messages:40}") int maxMessagesPerSession,
+                                @Value("${chat.history.max-sessions:10000}") int maxSessions,
+                                @Value("${chat.history.file.segment-size:64MB}") DataSize segmentSize,
+                                @Value("${chat.history.file.retention:7d}") Duration retention,
+                                @Value("${chat.history.file.compaction-threshold:0.5}") double compactionThreshold) {
+        this(dir, maxMessagesPerSession, maxSessions, segmentSize, retention, compactionThreshold,
+            System::currentTimeMillis);
+    }
+
+    FileChatHistoryStore(Path dir, int maxMessagesPerSession, int maxSessions, DataSize segmentSize,
+                         Duration retention, double compactionThreshold, LongSupplier clock) {
+        this.dir = dir;
+        this.maxMessagesPerSession = maxMessagesPerSession;
+        this.maxSessions = maxSessions;
+        this.segmentBytes = (int) Math.min(Integer.MAX_VALUE, segmentSize.toBytes());
+        this.retentionMillis = retention.toMillis();
+        this.compactionThreshold = compactionThreshold;
+        this.clock = clock;
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            this.recoveredRecords = recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("히스토리 로그 복구 실패: " + dir, e);
+        }
+        this.recoveryNanos = System.nanoTime() - start;
+        logger.info("히스토리 로그 복구 완료: 세션 {}개, 세그먼트 {}개, 재생 레코드 {}개, {}ms", sessions.size(),
+            segments.size(), recoveredRecords, TimeUnit.NANOSECONDS.toMillis(recoveryNanos));
+    }
+
+    @Override
+    public List<ChatMessage> getHistory(String sessionId) {
+        lock.readLock().lock();
+        try {
+            SessionIndex index = sessions.get(sessionId);
+            if (index == null || isExpired(index, clock.getAsLong())) {
+                misses.increment();
+                return List.of();
+            }
+            hits.increment();
+            long[] positions = index.positions();
+            List<ChatMessage> messages = new ArrayList<>(positions.length);
+            for (long position : positions) {
+                LogSegment segment = segments.get(LogRecord.segmentId(position));
+                messages.add(LogRecord.read(segment.buffer(), LogRecord.offset(position), false).message());
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void append(String sessionId, List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        List<byte[]> records = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            records.add(LogRecord.message(LogRecord.APPEND, now, sessionId, -1, message));
+        }
+        lock.writeLock().lock();
+        try {
+            SessionIndex index = sessions.computeIfAbsent(sessionId, id -> new SessionIndex());
+            if (isExpired(index, now)) {
+                drop(index.clear());
+            }
+            for (byte[] record : records) {
+                long position = write(record);
+                segmentOf(position).addLive(record.length);
+                drop(index.add(position, maxMessagesPerSession));
+            }
+            index.lastWrite = now;
+            appended.add(records.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear(String sessionId) {
+        lock.writeLock().lock();
+        try {
+            SessionIndex index = sessions.remove(sessionId);
+            if (index != null) {
+                drop(index.clear());
+                write(LogRecord.clear(clock.getAsLong(), sessionId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int sessionCount() {
+        lock.readLock().lock();
+        try {
+            return sessions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force written records to disk; appends in between share one fsync per segment
+     */
+    @Scheduled(fixedDelayString = "${chat.history.file.flush-interval:200ms}")
+    public void flush() {
+        List<LogSegment> current;
+        lock.readLock().lock();
+        try {
+            current = new ArrayList<>(segments.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Outside the lock: appends continue while the device syncs
+        for (LogSegment segment : current) {
+            segment.force();
+        }
+        flushes.increment();
+    }
+
+    /**
+     * Drop sessions past the retention, clear the least recently written ones
+     * beyond {@code max-sessions} and compact segments that are mostly dead
+     */
+    @Scheduled(fixedDelayString = "${chat.history.file.compaction-interval:5m}")
+    public void compact() {
+        long now = clock.getAsLong();
+        int moved = 0;
+        int compacted = 0;
+        lock.writeLock().lock();
+        try {
+            Iterator<SessionIndex> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                SessionIndex index = it.next();
+                if (isExpired(index, now)) {
+                    it.remove();
+                    drop(index.clear());
+                    expirations.increment();
+                }
+            }
+            evictBeyondMaxSessions(now);
+            for (LogSegment segment : new ArrayList<>(segments.values())) {
+                if (segment == active || segment.liveBytes() > compactionThreshold * segment.end()) {
+                    continue;
+                }
+                moved += relocateLive(segment);
+                segments.remove(segment.id());
+                synchronized (retired) {
+                    retired.add(segment);
+                }
+                compacted++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compacted > 0) {
+            // Deleted only once the snapshot points at the relocated copies
+            checkpoint();
+            compactedSegments.add(compacted);
+            logger.debug("히스토리 세그먼트 {}개 압축: 이동한 레코드 {}개", compacted, moved);
+        }
+    }
+
+    /**
+     * Persist the session index and the log position it covers, then delete compacted segments
+     */
+    @Scheduled(fixedDelayString = "${chat.history.file.checkpoint-interval:1m}")
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream(1 << 16);
+            List<LogSegment> current;
+            List<LogSegment> deletable;
+            lock.readLock().lock();
+            try {
+                writeSnapshot(new DataOutputStream(snapshot));
+                current = new ArrayList<>(segments.values());
+                // Retired before this copy, so it no longer refers to them
+                synchronized (retired) {
+                    deletable = new ArrayList<>(retired);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.readLock().unlock();
+            }
+            // Outside the lock: appends continue while the device syncs.
+            // Records the snapshot refers to must be on disk before it is
+            Path temp = dir.resolve(SNAPSHOT + ".tmp");
+            try {
+                for (LogSegment segment : current) {
+                    segment.force();
+                }
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    snapshot.writeTo(out);
+                }
+                Files.move(temp, dir.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("히스토리 인덱스 체크포인트 실패: {}", e.getMessage());
+                return;
+            }
+            synchronized (retired) {
+                retired.removeAll(deletable);
+            }
+            deletable.forEach(LogSegment::delete);
+        }
+    }
+
+    @Override
+    public void close() {
+        checkpoint();
+    }
+
+    /**
+     * @return Bytes of records written to the log, live or not
+     */
+    public long getLogBytes() {
+        lock.readLock().lock();
+        try {
+            return segments.values().stream().mapToLong(LogSegment::end).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return segments.values().stream().mapToLong(LogSegment::liveBytes).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.history.sessions", this, FileChatHistoryStore::sessionCount)
+            .description("Sessions held by the history store")
+            .register(registry);
+        Gauge.builder("chat.history.bytes", this, FileChatHistoryStore::getLiveBytes)
+            .description("Bytes of live records in the history log")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("chat.history.log.bytes", this, FileChatHistoryStore::getLogBytes)
+            .description("Bytes written to history log segments, including dead records")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("chat.history.log.segments", this, FileChatHistoryStore::getSegmentCount)
+            .register(registry);
+        FunctionCounter.builder("chat.history.lookups", hits, LongAdder::sum)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("chat.history.lookups", misses, LongAdder::sum)
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("chat.history.evictions", expirations, LongAdder::sum)
+            .tag("cause", "expired")
+            .register(registry);
+        FunctionCounter.builder("chat.history.evictions", sizeEvictions, LongAdder::sum)
+            .tag("cause", "size")
+            .register(registry);
+        FunctionCounter.builder("chat.history.log.appends", appended, LongAdder::sum)
+            .description("Messages appended to the history log")
+            .register(registry);
+        FunctionCounter.builder("chat.history.log.flushes", flushes, LongAdder::sum)
+            .register(registry);
+        FunctionCounter.builder("chat.history.log.compactions", compactedSegments, LongAdder::sum)
+            .description("Segments rewritten and removed by compaction")
+            .register(registry);
+        Timer.builder("chat.history.log.recovery")
+            .description("Time to load the index snapshot and replay the log at startup")
+            .register(registry)
+            .record(recoveryNanos, TimeUnit.NANOSECONDS);
+    }
+
+    long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    private boolean isExpired(SessionIndex index, long now) {
+        return now - index.lastWrite > retentionMillis;
+    }
+
+    private LogSegment segmentOf(long position) {
+        return segments.get(LogRecord.segmentId(position));
+    }
+
+    // Caller holds the write lock
+    private long write(byte[] record) {
+        if (record.length + Integer.BYTES > segmentBytes) {
+            throw new IllegalArgumentException("히스토리 레코드가 세그먼트보다 큽니다: " + record.length + " bytes");
+        }
+        if (!active.hasRoom(record.length)) {
+            active = LogSegment.open(dir, active.id() + 1, segmentBytes);
+            segments.put(active.id(), active);
+        }
+        return LogRecord.position(active.id(), active.append(record));
+    }
+
+    // Caller holds the write lock. A CLEAR record keeps a replay from bringing the sessions back
+    private void evictBeyondMaxSessions(long now) {
+        int excess = sessions.size() - maxSessions;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, SessionIndex>> eldest = new ArrayList<>(sessions.entrySet());
+        eldest.sort(Comparator.comparingLong(entry -> entry.getValue().lastWrite));
+        for (Map.Entry<String, SessionIndex> entry : eldest.subList(0, excess)) {
+            sessions.remove(entry.getKey());
+            drop(entry.getValue().clear());
+            write(LogRecord.clear(now, entry.getKey()));
+        }
+        sizeEvictions.add(excess);
+        logger.debug("세션 한도 초과로 히스토리 세션 {}개 제거", excess);
+    }
+
+    // Caller holds the write lock: positions no longer referenced by the index
+    private void drop(long[] positions) {
+        for (long position : positions) {
+            LogSegment segment = segmentOf(position);
+            if (segment != null) {
+                segment.addLive(-LogRecord.size(segment.buffer(), LogRecord.offset(position)));
+            }
+        }
+    }
+
+    // Caller holds the write lock
+    private int relocateLive(LogSegment segment) {
+        int moved = 0;
+        ByteBuffer buffer = segment.buffer();
+        for (int offset = 0; offset < segment.end(); offset += LogRecord.size(buffer, offset)) {
+            LogRecord record = LogRecord.read(buffer, offset, false);
+            if (record.type == LogRecord.CLEAR) {
+                continue;
+            }
+            long origin = LogRecord.position(segment.id(), offset);
+            SessionIndex index = sessions.get(record.sessionId);
+            if (index == null || !index.contains(origin)) {
+                continue;
+            }
+            byte[] copy = LogRecord.relocate(buffer, offset, origin);
+            long position = write(copy);
+            index.replace(origin, position);
+            segmentOf(position).addLive(copy.length);
+            segment.addLive(-LogRecord.size(buffer, offset));
+            moved++;
+        }
+        return moved;
+    }
+
+    // Caller holds the read lock
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(active.id());
+        out.writeInt(active.end());
+        out.writeInt(segments.size());
+        for (LogSegment segment : segments.values()) {
+            out.writeInt(segment.id());
+            out.writeInt(segment.end());
+            out.writeLong(segment.liveBytes());
+        }
+        out.writeInt(sessions.size());
+        for (Map.Entry<String, SessionIndex> entry : sessions.entrySet()) {
+            long[] positions = entry.getValue().positions();
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().lastWrite);
+            out.writeShort(positions.length);
+            for (long position : positions) {
+                out.writeLong(position);
+            }
+        }
+    }
+
+    /**
+     * Load the snapshot if any, then replay the log after it
+     * @return Records replayed
+     */
+    private long recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.matches("segment-\\d{10}\\.log"))
+                .forEach(name -> ids.add(Integer.parseInt(name.substring(8, 18))));
+        }
+        ids.sort(null);
+
+        int fromSegment = ids.isEmpty() ? 0 : ids.get(0);
+        int fromOffset = 0;
+        Map<Integer, long[]> snapshotSegments = Map.of();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(dir.resolve(SNAPSHOT)), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("알 수 없는 스냅샷 형식");
+            }
+            fromSegment = in.readInt();
+            fromOffset = in.readInt();
+            snapshotSegments = readSnapshot(in);
+        } catch (NoSuchFileException e) {
+            logger.info("히스토리 인덱스 스냅샷 없음, 전체 로그 재생");
+        }
+
+        for (int id : ids) {
+            long[] stats = snapshotSegments.get(id);
+            if (id < fromSegment && stats == null) {
+                // Compacted away before the snapshot was taken
+                Files.deleteIfExists(LogSegment.path(dir, id));
+                continue;
+            }
+            LogSegment segment = LogSegment.open(dir, id, segmentBytes);
+            if (stats != null) {
+                segment.setEnd((int) stats[0]);
+                segment.addLive(stats[1]);
+            }
+            segments.put(id, segment);
+        }
+
+        long replayed = 0;
+        for (LogSegment segment : segments.tailMap(fromSegment, true).values()) {
+            int offset = segment.id() == fromSegment ? fromOffset : 0;
+            LogRecord record;
+            while ((record = LogRecord.read(segment.buffer(), offset, true)) != null) {
+                replay(record, LogRecord.position(segment.id(), offset), segment);
+                offset += LogRecord.size(segment.buffer(), offset);
+                replayed++;
+            }
+            boolean torn = offset + Integer.BYTES <= segment.capacity() && segment.buffer().getInt(offset) != 0;
+            if (torn && segment.id() == segments.lastKey()) {
+                logger.warn("히스토리 로그 끝의 손상된 레코드 폐기: 세그먼트 {}, 위치 {}", segment.id(), offset);
+                segment.clear(offset, segment.capacity());
+            }
+            segment.setEnd(offset);
+        }
+
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (active == null) {
+            active = LogSegment.open(dir, 0, segmentBytes);
+            segments.put(active.id(), active);
+        }
+        long now = clock.getAsLong();
+        sessions.values().removeIf(index -> {
+            if (isExpired(index, now)) {
+                drop(index.clear());
+                return true;
+            }
+            return false;
+        });
+        return replayed;
+    }
+
+    private Map<Integer, long[]> readSnapshot(DataInputStream in) throws IOException {
+        int segmentCount = in.readInt();
+        Map<Integer, long[]> stats = new HashMap<>();
+        for (int i = 0; i < segmentCount; i++) {
+            int id = in.readInt();
+            stats.put(id, new long[] {in.readInt(), in.readLong()});
+        }
+        int sessionCount = in.readInt();
+        for (int i = 0; i < sessionCount; i++) {
+            String sessionId = in.readUTF();
+            SessionIndex index = new SessionIndex();
+            index.lastWrite = in.readLong();
+            int count = in.readShort();
+            for (int j = 0; j < count; j++) {
+                index.add(in.readLong(), maxMessagesPerSession);
+            }
+            sessions.put(sessionId, index);
+        }
+        return stats;
+    }
+
+    // Single-threaded, during recovery
+    private void replay(LogRecord record, long position, LogSegment segment) {
+        int size = LogRecord.size(segment.buffer(), LogRecord.offset(position));
+        switch (record.type) {
+            case LogRecord.APPEND -> {
+                SessionIndex index = sessions.computeIfAbsent(record.sessionId, id -> new SessionIndex());
+                // Same rule as append(): a session written to after its retention starts over
+                if (record.writeTime - index.lastWrite > retentionMillis) {
+                    drop(index.clear());
+                }
+                segment.addLive(size);
+                drop(index.add(position, maxMessagesPerSession));
+                index.lastWrite = Math.max(index.lastWrite, record.writeTime);
+            }
+            case LogRecord.CLEAR -> {
+                SessionIndex index = sessions.remove(record.sessionId);
+                if (index != null) {
+                    drop(index.clear());
+                }
+            }
+            case LogRecord.RELOCATE -> {
+                SessionIndex index = sessions.get(record.sessionId);
+                if (index != null && index.replace(record.origin, position)) {
+                    segment.addLive(size);
+                    drop(new long[] {record.origin});
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Log positions of one session's newest records, oldest first, in a ring
+     * that grows up to the per-session limit
+     */
+    private static final class SessionIndex {
+
+        private static final long[] NONE = new long[0];
+
+        private long[] ring = new long[4];
+
+        private int head;
+
+        private int count;
+
+        long lastWrite;
+
+        /**
+         * @return Positions pushed out by the limit
+         */
+        long[] add(long position, int limit) {
+            if (count < limit) {
+                if (count == ring.length) {
+                    long[] grown = new long[Math.min(limit, ring.length * 2)];
+                    for (int i = 0; i < count; i++) {
+                        grown[i] = ring[(head + i) % ring.length];
+                    }
+                    ring = grown;
+                    head = 0;
+                }
+                ring[(head + count++) % ring.length] = position;
+                return NONE;
+            }
+            long evicted = ring[head];
+            head = (head + 1) % ring.length;
+            ring[(head + count - 1) % ring.length] = position;
+            return new long[] {evicted};
+        }
+
+        long[] positions() {
+            long[] positions = new long[count];
+            for (int i = 0; i < count; i++) {
+                positions[i] = ring[(head + i) % ring.length];
+            }
+            return positions;
+        }
+
+        boolean contains(long position) {
+            for (int i = 0; i < count; i++) {
+                if (ring[(head + i) % ring.length] == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean replace(long from, long to) {
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % ring.length;
+                if (ring[slot] == from) {
+                    ring[slot] = to;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long[] clear() {
+            long[] positions = positions();
+            count = 0;
+            head = 0;
+            return positions;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-memory history store.
+ * <p>
+ * Sessions are looked up in a ConcurrentHashMap and each keeps its messages
+ * in a {@link SessionHistoryBuffer}, so appends and reads of a session never
+ * lock. Recency is tracked in an access-ordered LinkedHashMap that is only
+ * reordered when its lock is free; the order is approximate under contention
+ * but reads never wait on it. The lock is taken to register new sessions and
+ * to evict: least recently used sessions go first when the session count or
+ * the estimated byte budget is exceeded, and sessions idle past the TTL expire.
+ * <p>
+ * Messages are held in the compact {@link StoredMessage} form and turned back
+ * into ChatMessages only when history is read; content above
+ * {@code chat.history.compress-above} is deflated. A session keeps the
+ * messages it last read decoded until it has been idle for a minute, which
+ * the byte estimate does not include.
+ * <p>
+ * Sessions idle past {@code chat.history.cold-after} are moved off the heap:
+ * the sweep seals their buffer, serializes and deflates the messages into an
+ * {@link OffHeapHistoryArena} of {@code chat.history.off-heap-budget}, and
+ * drops the buffer, so the GC no longer traces them. The next read or append
+ * promotes the session back to a heap buffer. Sessions stay on the heap when
+ * the off-heap budget is full. The byte budget, estimate and eviction by
+ * bytes cover heap sessions only; off-heap sessions count toward the session
+ * limit and TTL as before.
+ * <p>
+ * The byte total is maintained from append deltas; an append racing with the
+ * eviction of the same session can skew it slightly, and the periodic sweep
+ * recomputes it exactly.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.history.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryChatHistoryStore implements ChatHistoryStore, MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryChatHistoryStore.class);
+    
+    // Idle time after which a session's decoded messages are dropped
+    private static final long DECODED_IDLE_NANOS = Duration.ofMinutes(1).toNanos();
+    
+    private final int maxMessagesPerSession;
+    
+    private final int maxSessions;
+    
+    private final long idleTtlNanos;
+    
+    private final long maxBytes;
+    
+    private final int compressAbove;
+    
+    // Idle time after which a session moves off the heap
+    private final long coldAfterNanos;
+    
+    // Null when sessions are never moved off the heap
+    private final OffHeapHistoryArena arena;
+    
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    
+    // Eldest (least recently used) first; guarded by lruLock
+    private final LinkedHashMap<String, Session> lru = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private final ReentrantLock lruLock = new ReentrantLock();
+    
+    private final AtomicLong totalBytes = new AtomicLong();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder byteEvictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder heapLookups = new LongAdder();
+    private final LongAdder offHeapLookups = new LongAdder();
+    private final LongAdder demotions = new LongAdder();
+    
+    @Autowired
+    public InMemoryChatHistoryStore(@Value("${chat.history.max-messages:40}") int maxMessagesPerSession,
+                                    @Value("${chat.history.max-sessions:10000}") int maxSessions,
+                                    @Value("${chat.history.idle-ttl:30m}") Duration idleTtl,
+                                    @Value("${chat.history.max-bytes:64MB}") DataSize maxBytes,
+                                    @Value("${chat.history.compress-above:4KB}") DataSize compressAbove,
+                                    @Value("${chat.history.cold-after:5m}") Duration coldAfter,
+                                    @Value("${chat.history.off-heap-budget:64MB}") DataSize offHeapBudget) {
+        this.maxMessagesPerSession = maxMessagesPerSession;
+        this.maxSessions = maxSessions;
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.maxBytes = maxBytes.toBytes();
+        this.compressAbove = (int) Math.min(Integer.MAX_VALUE, compressAbove.toBytes());
+        this.coldAfterNanos = coldAfter.toNanos();
+        boolean tiered = coldAfter.isPositive() && coldAfter.compareTo(idleTtl) < 0 && offHeapBudget.toBytes() > 0;
+        if (tiered && offHeapBudget.toBytes() < OffHeapHistoryArena.CHUNK_BYTES) {
+            // The arena reserves whole chunks, so such a budget could never hold a session
+            logger.warn("chat.history.off-heap-budget {} 이(가) 청크 하나({} bytes)보다 작아 오프힙 이동을 끕니다",
+                offHeapBudget, OffHeapHistoryArena.CHUNK_BYTES);
+            tiered = false;
+        }
+        this.arena = tiered ? new OffHeapHistoryArena(offHeapBudget.toBytes()) : null;
+    }
+    
+    /**
+     * Heap-only store that never compresses messages
+     */
+    public InMemoryChatHistoryStore(int maxMessagesPerSession, int maxSessions, Duration idleTtl, DataSize maxBytes) {
+        this(maxMessagesPerSession, maxSessions, idleTtl, maxBytes, DataSize.ofBytes(0), Duration.ZERO,
+            DataSize.ofBytes(0));
+    }
+    
+    @Override
+    public List<ChatMessage> getHistory(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            misses.increment();
+            return List.of();
+        }
+        long now = System.nanoTime();
+        if (session.isIdle(now, idleTtlNanos)) {
+            expire(sessionId, session);
+            misses.increment();
+            return List.of();
+        }
+        hits.increment();
+        session.lastAccess = now;
+        touch(sessionId);
+        return heapBuffer(session).snapshot();
+    }
+    
+    @Override
+    public void append(String sessionId, List<ChatMessage> messages) {
+        Session session = sessions.computeIfAbsent(sessionId, id -> new Session(maxMessagesPerSession, compressAbove));
+        session.lastAccess = System.nanoTime();
+        long delta = heapBuffer(session).append(messages);
+        while (delta == SessionHistoryBuffer.SEALED) {
+            // The sweep is moving the session off the heap; wait for it, then promote
+            delta = promote(session).append(messages);
+        }
+        long total = totalBytes.addAndGet(delta);
+        
+        if (!session.registered || total > maxBytes) {
+            lruLock.lock();
+            try {
+                if (!session.registered && !session.retired) {
+                    lru.put(sessionId, session);
+                    session.registered = true;
+                }
+                evictIfNeeded();
+            } finally {
+                lruLock.unlock();
+            }
+        } else {
+            touch(sessionId);
+        }
+    }
+    
+    @Override
+    public void clear(String sessionId) {
+        lruLock.lock();
+        try {
+            Session session = sessions.get(sessionId);
+            if (session != null) {
+                lru.remove(sessionId);
+                removeSession(sessionId, session);
+            }
+        } finally {
+            lruLock.unlock();
+        }
+    }
+    
+    @Override
+    public int sessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * @return Estimated heap bytes held by stored messages
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+    
+    /**
+     * Drop sessions idle past the TTL, release the decoded messages of idle
+     * sessions, reconcile the byte total and move sessions idle past
+     * {@code chat.history.cold-after} off the heap. Expiry walks from the
+     * eldest entry and stops at the first live session.
+     */
+    @Scheduled(fixedDelayString = "${chat.history.sweep-interval:60s}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        int expired = 0;
+        lruLock.lock();
+        try {
+            Iterator<Map.Entry<String, Session>> it = lru.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Session> eldest = it.next();
+                if (!eldest.getValue().isIdle(now, idleTtlNanos)) {
+                    break;
+                }
+                it.remove();
+                removeSession(eldest.getKey(), eldest.getValue());
+                expirations.increment();
+                expired++;
+            }
+            long before = totalBytes.get();
+            long live = 0;
+            for (Session session : sessions.values()) {
+                SessionHistoryBuffer buffer = session.buffer;
+                if (buffer != null) {
+                    live += buffer.bytes();
+                    if (session.isIdle(now, DECODED_IDLE_NANOS)) {
+                        buffer.releaseDecoded();
+                    }
+                }
+            }
+            // Appends and promotions update the total without lruLock; one that lands
+            // during the walk leaves the total for the next sweep to reconcile
+            totalBytes.compareAndSet(before, live);
+        } finally {
+            lruLock.unlock();
+        }
+        if (expired > 0) {
+            logger.debug("Expired {} idle chat sessions", expired);
+        }
+        if (arena != null) {
+            moveIdleSessionsOffHeap(now);
+        }
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.history.sessions", sessions, Map::size)
+            .description("Sessions held by the history store")
+            .register(registry);
+        Gauge.builder("chat.history.bytes", totalBytes, AtomicLong::get)
+            .description("Estimated bytes held by the history store")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("chat.history.lookups", hits, LongAdder::sum)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("chat.history.lookups", misses, LongAdder::sum)
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("chat.history.evictions", sizeEvictions, LongAdder::sum)
+            .tag("cause", "size")
+            .register(registry);
+        FunctionCounter.builder("chat.history.evictions", byteEvictions, LongAdder::sum)
+            .tag("cause", "bytes")
+            .register(registry);
+        FunctionCounter.builder("chat.history.evictions", expirations, LongAdder::sum)
+            .tag("cause", "expired")
+            .register(registry);
+        FunctionCounter.builder("chat.history.tier.lookups", heapLookups, LongAdder::sum)
+            .description("Session reads and appends by the tier the session was found in")
+            .tag("tier", "heap")
+            .register(registry);
+        FunctionCounter.builder("chat.history.tier.lookups", offHeapLookups, LongAdder::sum)
+            .description("Session reads and appends by the tier the session was found in")
+            .tag("tier", "off-heap")
+            .register(registry);
+        if (arena != null) {
+            FunctionCounter.builder("chat.history.tier.demotions", demotions, LongAdder::sum)
+                .description("Idle sessions moved off the heap")
+                .register(registry);
+            Gauge.builder("chat.history.off-heap.sessions", arena, OffHeapHistoryArena::entryCount)
+                .description("Sessions held off the heap")
+                .register(registry);
+            Gauge.builder("chat.history.off-heap.bytes", arena, OffHeapHistoryArena::usedBytes)
+                .description("Off-heap bytes held by sessions")
+                .baseUnit("bytes")
+                .register(registry);
+            Gauge.builder("chat.history.off-heap.reserved", arena, OffHeapHistoryArena::reservedBytes)
+                .description("Direct memory reserved for off-heap sessions")
+                .baseUnit("bytes")
+                .register(registry);
+        }
+    }
+    
+    long getHitCount() {
+        return hits.sum();
+    }
+    
+    long getMissCount() {
+        return misses.sum();
+    }
+    
+    long getEvictionCount() {
+        return sizeEvictions.sum() + byteEvictions.sum() + expirations.sum();
+    }
+    
+    int getOffHeapSessionCount() {
+        return arena != null ? arena.entryCount() : 0;
+    }
+    
+    long getOffHeapBytes() {
+        return arena != null ? arena.usedBytes() : 0;
+    }
+    
+    long getOffHeapLookupCount() {
+        return offHeapLookups.sum();
+    }
+    
+    private void touch(String sessionId) {
+        // Lossy reordering: skip when a writer holds the lock
+        if (lruLock.tryLock()) {
+            try {
+                lru.get(sessionId);
+            } finally {
+                lruLock.unlock();
+            }
+        }
+    }
+    
+    private void expire(String sessionId, Session session) {
+        lruLock.lock();
+        try {
+            if (!session.retired) {
+                lru.remove(sessionId);
+                removeSession(sessionId, session);
+                expirations.increment();
+            }
+        } finally {
+            lruLock.unlock();
+        }
+    }
+    
+    // Caller holds lruLock
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Session>> it = lru.entrySet().iterator();
+        while (it.hasNext() && (lru.size() > maxSessions || totalBytes.get() > maxBytes)) {
+            boolean overCount = lru.size() > maxSessions;
+            Map.Entry<String, Session> eldest = it.next();
+            // Off-heap sessions hold no heap bytes, so only the session limit evicts them
+            if (!overCount && eldest.getValue().buffer == null) {
+                continue;
+            }
+            it.remove();
+            removeSession(eldest.getKey(), eldest.getValue());
+            if (overCount) {
+                sizeEvictions.increment();
+            } else {
+                byteEvictions.increment();
+            }
+        }
+    }
+    
+    // Caller holds lruLock
+    private void removeSession(String sessionId, Session session) {
+        sessions.remove(sessionId, session);
+        synchronized (session) {
+            session.retired = true;
+            if (session.buffer != null) {
+                totalBytes.addAndGet(-session.buffer.bytes());
+            } else {
+                arena.free(session.offHeap);
+                session.offHeap = null;
+            }
+        }
+    }
+    
+    /**
+     * @return The session's heap buffer, promoting the session first if it is off the heap
+     */
+    private SessionHistoryBuffer heapBuffer(Session session) {
+        SessionHistoryBuffer buffer = session.buffer;
+        if (buffer != null) {
+            heapLookups.increment();
+            return buffer;
+        }
+        return promote(session);
+    }
+    
+    /**
+     * Move an off-heap session back onto the heap. Waits for a move off the
+     * heap that is in progress, then returns the current buffer.
+     */
+    private SessionHistoryBuffer promote(Session session) {
+        synchronized (session) {
+            if (session.buffer != null) {
+                heapLookups.increment();
+                return session.buffer;
+            }
+            if (session.retired) {
+                // Evicted while off the heap; like any evicted session, writes to it are dropped
+                return new SessionHistoryBuffer(maxMessagesPerSession, compressAbove);
+            }
+            offHeapLookups.increment();
+            OffHeapHistoryArena.Entry entry = session.offHeap;
+            SessionHistoryBuffer buffer = new SessionHistoryBuffer(maxMessagesPerSession, compressAbove,
+                decodeSession(arena.load(entry)));
+            arena.free(entry);
+            session.offHeap = null;
+            session.buffer = buffer;
+            totalBytes.addAndGet(buffer.bytes());
+            return buffer;
+        }
+    }
+    
+    private void moveIdleSessionsOffHeap(long now) {
+        long before = demotions.sum();
+        for (Session session : sessions.values()) {
+            if (session.buffer != null && session.isIdle(now, coldAfterNanos) && !moveOffHeap(session)) {
+                logger.warn("오프힙 히스토리 예산 부족 - 유휴 세션을 힙에 유지합니다 (사용 중 {} bytes)",
+                    arena.usedBytes());
+                break;
+            }
+        }
+        long moved = demotions.sum() - before;
+        if (moved > 0) {
+            logger.debug("Moved {} idle chat sessions off the heap", moved);
+        }
+    }
+    
+    /**
+     * @return False when the off-heap budget has no room for the session
+     */
+    private boolean moveOffHeap(Session session) {
+        synchronized (session) {
+            SessionHistoryBuffer buffer = session.buffer;
+            if (session.retired || buffer == null) {
+                return true;
+            }
+            // Appends racing with this see SEALED and wait on the session in promote()
+            List<StoredMessage> messages = buffer.seal();
+            OffHeapHistoryArena.Entry entry = arena.store(encodeSession(messages));
+            if (entry == null) {
+                session.buffer = new SessionHistoryBuffer(maxMessagesPerSession, compressAbove, messages);
+                return false;
+            }
+            session.offHeap = entry;
+            session.buffer = null;
+            totalBytes.addAndGet(-buffer.bytes());
+            demotions.increment();
+            return true;
+        }
+    }
+    
+    /**
+     * Message count, then each message as {@link StoredMessage#writeTo} lays it out;
+     * deflated when that makes it smaller, behind an int length and a flag byte
+     */
+    private static byte[] encodeSession(List<StoredMessage> messages) {
+        int size = Integer.BYTES;
+        for (StoredMessage message : messages) {
+            size += message.serializedSize();
+        }
+        ByteBuffer raw = ByteBuffer.allocate(size).putInt(messages.size());
+        for (StoredMessage message : messages) {
+            message.writeTo(raw);
+        }
+        byte[] deflated = StoredMessage.deflate(raw.array());
+        return ByteBuffer.allocate(Integer.BYTES + 1 + deflated.length)
+            .putInt(size)
+            .put((byte) (deflated != raw.array() ? 1 : 0))
+            .put(deflated)
+            .array();
+    }
+    
+    private static List<StoredMessage> decodeSession(byte[] encoded) {
+        ByteBuffer header = ByteBuffer.wrap(encoded);
+        int size = header.getInt();
+        boolean deflated = header.get() != 0;
+        ByteBuffer in = header.slice();
+        if (deflated) {
+            byte[] data = new byte[in.remaining()];
+            in.get(data);
+            in = ByteBuffer.wrap(StoredMessage.inflate(data, size));
+        }
+        int count = in.getInt();
+        List<StoredMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(StoredMessage.readFrom(in));
+        }
+        return messages;
+    }
+    
+    /**
+     * @return Heap bytes the message takes once stored, uncompressed
+     */
+    static long estimateBytes(ChatMessage message) {
+        return StoredMessage.of(message, 0).footprint();
+    }
+    
+    /**
+     * Per-session ring buffer plus bookkeeping
+     */
+    private static final class Session {
+        
+        // Null while the session is off the heap; replaced under the session's lock
+        private volatile SessionHistoryBuffer buffer;
+        
+        // Set while the session is off the heap; guarded by the session's lock
+        private OffHeapHistoryArena.Entry offHeap;
+        
+        private volatile long lastAccess = System.nanoTime();
+        
+        // Set under lruLock once the session is in the LRU order
+        private volatile boolean registered;
+        
+        // Set under lruLock and the session's lock when the session has been evicted or cleared
+        private volatile boolean retired;
+        
+        Session(int capacity, int compressAbove) {
+            this.buffer = new SessionHistoryBuffer(capacity, compressAbove);
+        }
+        
+        boolean isIdle(long now, long ttlNanos) {
+            return now - lastAccess > ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary layout of history log records.
+ * <pre>
+ * int    payload length (0 = end of segment)
+ * int    CRC32C of the payload
+ * payload:
+ *   byte   type (APPEND, CLEAR, RELOCATE)
+ *   long   write time, epoch millis
+ *   str16  session id
+ *   long   original position (RELOCATE only)
+ *   str16  role, long timestamp, str16 message id, str32 content (APPEND and RELOCATE)
+ * </pre>
+ * Strings are UTF-8 with a short (str16) or int (str32) length prefix; -1 stands for null.
+ * A position packs the segment id in the high 32 bits and the record offset in the low 32.
+ */
+final class LogRecord {
+
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    static final byte APPEND = 1;
+
+    static final byte CLEAR = 2;
+
+    // A live record copied out of a segment being compacted
+    static final byte RELOCATE = 3;
+
+    final byte type;
+
+    final long writeTime;
+
+    final String sessionId;
+
+    final long origin;
+
+    // Offset of the message fields within the segment, for decoding on demand
+    private final ByteBuffer segment;
+
+    private final int messageOffset;
+
+    private LogRecord(byte type, long writeTime, String sessionId, long origin, ByteBuffer segment, int messageOffset) {
+        this.type = type;
+        this.writeTime = writeTime;
+        this.sessionId = sessionId;
+        this.origin = origin;
+        this.segment = segment;
+        this.messageOffset = messageOffset;
+    }
+
+    static long position(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+
+    static int offset(long position) {
+        return (int) position;
+    }
+
+    static byte[] message(byte type, long writeTime, String sessionId, long origin, ChatMessage message) {
+        byte[] session = utf8(sessionId);
+        byte[] role = utf8(message.getRole());
+        byte[] messageId = utf8(message.getMessageId());
+        byte[] content = utf8(message.getContent());
+        int payload = 1 + Long.BYTES + str16(session) + (type == RELOCATE ? Long.BYTES : 0)
+            + str16(role) + Long.BYTES + str16(messageId) + Integer.BYTES + length(content);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + payload);
+        out.position(HEADER_BYTES);
+        out.put(type).putLong(writeTime);
+        putShort(out, session);
+        if (type == RELOCATE) {
+            out.putLong(origin);
+        }
+        putShort(out, role);
+        out.putLong(message.getTimestamp() != null ? message.getTimestamp().getTime() : writeTime);
+        putShort(out, messageId);
+        out.putInt(content == null ? -1 : content.length);
+        if (content != null) {
+            out.put(content);
+        }
+        return seal(out);
+    }
+
+    static byte[] clear(long writeTime, String sessionId) {
+        byte[] session = utf8(sessionId);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + 1 + Long.BYTES + str16(session));
+        out.position(HEADER_BYTES);
+        out.put(CLEAR).putLong(writeTime);
+        putShort(out, session);
+        return seal(out);
+    }
+
+    /**
+     * Copy of a stored message record re-tagged as a relocation of {@code origin}
+     */
+    static byte[] relocate(ByteBuffer segment, int offset, long origin) {
+        LogRecord record = read(segment, offset, false);
+        return message(RELOCATE, record.writeTime, record.sessionId, origin, record.message());
+    }
+
+    /**
+     * Total size of the record at {@code offset}, header included
+     */
+    static int size(ByteBuffer segment, int offset) {
+        return HEADER_BYTES + segment.getInt(offset);
+    }
+
+    /**
+     * Read the record at {@code offset}
+     * @param verify Check the CRC; done when recovering the log tail
+     * @return The record, or null at the end of the written data or on a torn or corrupt record
+     */
+    static LogRecord read(ByteBuffer segment, int offset, boolean verify) {
+        if (offset + HEADER_BYTES > segment.capacity()) {
+            return null;
+        }
+        int length = segment.getInt(offset);
+        int start = offset + HEADER_BYTES;
+        if (length <= 0 || start + length > segment.capacity()) {
+            return null;
+        }
+        if (verify) {
+            CRC32C crc = new CRC32C();
+            crc.update(segment.slice(start, length));
+            if ((int) crc.getValue() != segment.getInt(offset + Integer.BYTES)) {
+                return null;
+            }
+        }
+        byte type = segment.get(start);
+        if (type != APPEND && type != CLEAR && type != RELOCATE) {
+            return null;
+        }
+        long writeTime = segment.getLong(start + 1);
+        int cursor = start + 1 + Long.BYTES;
+        int sessionLength = segment.getShort(cursor);
+        String sessionId = string(segment, cursor + Short.BYTES, sessionLength);
+        cursor += Short.BYTES + Math.max(0, sessionLength);
+        long origin = -1;
+        if (type == RELOCATE) {
+            origin = segment.getLong(cursor);
+            cursor += Long.BYTES;
+        }
+        return new LogRecord(type, writeTime, sessionId, origin, segment, cursor);
+    }
+
+    /**
+     * Decode the message fields of an APPEND or RELOCATE record
+     */
+    ChatMessage message() {
+        int cursor = messageOffset;
+        int roleLength = segment.getShort(cursor);
+        String role = string(segment, cursor + Short.BYTES, roleLength);
+        cursor += Short.BYTES + Math.max(0, roleLength);
+        long timestamp = segment.getLong(cursor);
+        cursor += Long.BYTES;
+        int idLength = segment.getShort(cursor);
+        String messageId = string(segment, cursor + Short.BYTES, idLength);
+        cursor += Short.BYTES + Math.max(0, idLength);
+        int contentLength = segment.getInt(cursor);
+        String content = string(segment, cursor + Integer.BYTES, contentLength);
+        return new ChatMessage(role, content, new Date(timestamp), messageId);
+    }
+
+    private static byte[] seal(ByteBuffer out) {
+        int payload = out.capacity() - HEADER_BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(out.array(), HEADER_BYTES, payload);
+        out.putInt(0, payload).putInt(Integer.BYTES, (int) crc.getValue());
+        return out.array();
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static int str16(byte[] bytes) {
+        if (bytes != null && bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("히스토리 필드가 너무 깁니다: " + bytes.length + " bytes");
+        }
+        return Short.BYTES + length(bytes);
+    }
+
+    private static void putShort(ByteBuffer out, byte[] bytes) {
+        out.putShort((short) (bytes == null ? -1 : bytes.length));
+        if (bytes != null) {
+            out.put(bytes);
+        }
+    }
+
+    private static String string(ByteBuffer segment, int offset, int length) {
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        segment.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
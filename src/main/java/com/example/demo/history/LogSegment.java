@@ -0,0 +1,139 @@
+package com.example.demo.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One fixed-size file of the history log, memory-mapped for both writes and
+ * reads. The file is created at its full size (sparse on most file systems);
+ * a zero length word marks the end of the records written so far.
+ * <p>
+ * Not thread-safe on its own: FileChatHistoryStore serializes writers and
+ * keeps segments alive while readers use them.
+ */
+final class LogSegment {
+
+    private final int id;
+
+    private final Path path;
+
+    private final MappedByteBuffer buffer;
+
+    // Offset of the next record; the end of the valid data
+    private int end;
+
+    // Bytes of records still referenced by the session index
+    private long liveBytes;
+
+    // Bytes written since the last force(); cleared by the flusher without the store lock
+    private volatile boolean dirty;
+
+    private LogSegment(int id, Path path, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    static Path path(Path dir, int id) {
+        return dir.resolve(String.format("segment-%010d.log", id));
+    }
+
+    /**
+     * Map a segment file, creating it at {@code capacity} bytes if it does not exist
+     */
+    static LogSegment open(Path dir, int id, int capacity) {
+        Path path = path(dir, id);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            int size = (int) Math.max(channel.size(), capacity);
+            // The mapping stays valid after the channel is closed
+            return new LogSegment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException("히스토리 세그먼트 열기 실패: " + path, e);
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    int end() {
+        return end;
+    }
+
+    void setEnd(int end) {
+        this.end = end;
+    }
+
+    long liveBytes() {
+        return liveBytes;
+    }
+
+    void addLive(long bytes) {
+        liveBytes += bytes;
+    }
+
+    boolean hasRoom(int recordBytes) {
+        // Keep room for the zero end marker
+        return end + recordBytes + Integer.BYTES <= buffer.capacity();
+    }
+
+    /**
+     * Write an encoded record at the end
+     * @return Offset of the record
+     */
+    int append(byte[] record) {
+        int offset = end;
+        buffer.put(offset, record);
+        end += record.length;
+        dirty = true;
+        return offset;
+    }
+
+    /**
+     * Zero the bytes from {@code from} to {@code to}, e.g. a torn record after a crash
+     */
+    void clear(int from, int to) {
+        byte[] zeros = new byte[Math.min(to - from, 64 * 1024)];
+        for (int offset = from; offset < to; offset += zeros.length) {
+            buffer.put(offset, zeros, 0, Math.min(zeros.length, to - offset));
+        }
+        dirty = true;
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Flush written bytes to the device. Synchronized so that a caller finding
+     * the segment clean does not return while another caller's sync is still
+     * in progress.
+     */
+    synchronized void force() {
+        if (dirty) {
+            dirty = false;
+            buffer.force();
+        }
+    }
+
+    /**
+     * Remove the file; the mapping itself is released once the buffer is collected
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("히스토리 세그먼트 삭제 실패: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo.history;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-size blocks of direct memory holding the histories of cold sessions.
+ * <p>
+ * Memory is reserved in chunks of {@link #CHUNK_BLOCKS} blocks as it is
+ * needed, up to the budget, and never returned to the OS; freed blocks go
+ * on a free list for the next entry. An entry is the list of its blocks, so
+ * fragmentation costs at most part of one block per entry and entries never
+ * need to be moved. Allocation is synchronized; copying in and out uses
+ * absolute access to blocks owned by a single entry and takes no lock.
+ */
+final class OffHeapHistoryArena {
+
+    // A deflated session of short turns takes about a kilobyte
+    static final int BLOCK_BYTES = 512;
+
+    // 1MB chunks
+    static final int CHUNK_BLOCKS = 2048;
+
+    static final long CHUNK_BYTES = (long) BLOCK_BYTES * CHUNK_BLOCKS;
+
+    private final int maxBlocks;
+
+    // Replaced, never modified, when a chunk is added
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    // Free block numbers, used as a stack; guarded by this
+    private int[] free = new int[CHUNK_BLOCKS];
+
+    private int freeCount;
+
+    private volatile int usedBlocks;
+
+    private volatile int entries;
+
+    /**
+     * @param budgetBytes Upper bound on direct memory reserved; rounded down to whole chunks
+     */
+    OffHeapHistoryArena(long budgetBytes) {
+        long chunks = budgetBytes / CHUNK_BYTES;
+        this.maxBlocks = (int) Math.min(Integer.MAX_VALUE / CHUNK_BLOCKS, chunks) * CHUNK_BLOCKS;
+    }
+
+    /**
+     * Copy the data into the arena
+     * @return The entry, or null when the budget has no room for it
+     */
+    Entry store(byte[] data) {
+        int[] blocks = allocate((data.length + BLOCK_BYTES - 1) / BLOCK_BYTES);
+        if (blocks == null) {
+            return null;
+        }
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * BLOCK_BYTES;
+            block(blocks[i]).put(0, data, offset, Math.min(BLOCK_BYTES, data.length - offset));
+        }
+        return new Entry(blocks, data.length);
+    }
+
+    /**
+     * Copy an entry's data back onto the heap
+     */
+    byte[] load(Entry entry) {
+        byte[] data = new byte[entry.length];
+        for (int i = 0; i < entry.blocks.length; i++) {
+            int offset = i * BLOCK_BYTES;
+            block(entry.blocks[i]).get(0, data, offset, Math.min(BLOCK_BYTES, data.length - offset));
+        }
+        return data;
+    }
+
+    /**
+     * Return an entry's blocks to the free list; the entry must not be used afterwards
+     */
+    synchronized void free(Entry entry) {
+        for (int block : entry.blocks) {
+            free[freeCount++] = block;
+        }
+        usedBlocks -= entry.blocks.length;
+        entries--;
+    }
+
+    /**
+     * @return Bytes of the blocks held by entries
+     */
+    long usedBytes() {
+        return (long) usedBlocks * BLOCK_BYTES;
+    }
+
+    /**
+     * @return Direct memory reserved so far
+     */
+    long reservedBytes() {
+        return (long) chunks.length * CHUNK_BLOCKS * BLOCK_BYTES;
+    }
+
+    int entryCount() {
+        return entries;
+    }
+
+    private synchronized int[] allocate(int count) {
+        while (freeCount < count && chunks.length * CHUNK_BLOCKS < maxBlocks) {
+            addChunk();
+        }
+        if (freeCount < count) {
+            return null;
+        }
+        int[] blocks = new int[count];
+        for (int i = 0; i < count; i++) {
+            blocks[i] = free[--freeCount];
+        }
+        usedBlocks += count;
+        entries++;
+        return blocks;
+    }
+
+    // Caller holds the lock
+    private void addChunk() {
+        int first = chunks.length * CHUNK_BLOCKS;
+        ByteBuffer[] grownChunks = Arrays.copyOf(chunks, chunks.length + 1);
+        grownChunks[chunks.length] = ByteBuffer.allocateDirect(CHUNK_BLOCKS * BLOCK_BYTES);
+        chunks = grownChunks;
+        if (free.length < first + CHUNK_BLOCKS) {
+            free = Arrays.copyOf(free, first + CHUNK_BLOCKS);
+        }
+        // Pushed in reverse so that blocks are handed out in address order
+        for (int block = first + CHUNK_BLOCKS - 1; block >= first; block--) {
+            free[freeCount++] = block;
+        }
+    }
+
+    private ByteBuffer block(int block) {
+        return chunks[block / CHUNK_BLOCKS].slice((block % CHUNK_BLOCKS) * BLOCK_BYTES, BLOCK_BYTES);
+    }
+
+    /**
+     * Blocks and length of one stored entry
+     */
+    static final class Entry {
+
+        private final int[] blocks;
+
+        private final int length;
+
+        private Entry(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+
+        int length() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring buffer holding one session's most recent messages.
+ * <p>
+ * Writers claim a range of sequence numbers with a single atomic add, fill
+ * their slots and then publish in claim order, so a multi-message append
+ * (a user/assistant turn) becomes visible all at once and concurrent turns
+ * never interleave. No locks are taken: a writer only spins while an earlier
+ * writer finishes publishing. Trimming is implicit; the oldest slot is simply
+ * overwritten.
+ * <p>
+ * Readers copy the published range and discard any leading entries that a
+ * concurrent writer may have overwritten meanwhile, so a snapshot is always a
+ * contiguous, ordered suffix of the session's history.
+ * <p>
+ * Messages are held as {@link StoredMessage}s, encoded before a writer claims
+ * its slots; a snapshot turns them back into ChatMessages as they are read.
+ * The messages decoded by the latest snapshot are kept and handed to the next
+ * one, so a session in active use decodes each message once rather than on
+ * every turn; {@link #releaseDecoded()} drops them once the session goes idle.
+ * <p>
+ * A buffer can be sealed to move its session off the heap: appends then fail
+ * with {@link #SEALED} and must go to the buffer that replaces it, while
+ * snapshots keep returning its final contents.
+ */
+final class SessionHistoryBuffer {
+    
+    private static final int SPINS_BEFORE_YIELD = 64;
+    
+    // Returned by append once the buffer is sealed
+    static final long SEALED = Long.MIN_VALUE;
+    
+    private final int capacity;
+    
+    // JSON length above which messages are compressed; 0 never compresses
+    private final int compressAbove;
+    
+    private final AtomicReferenceArray<StoredMessage> slots;
+    
+    // Next sequence number to hand out; -1 - next once sealed
+    private final AtomicLong claimed = new AtomicLong();
+    
+    // All sequence numbers below this are written and visible to readers
+    private volatile long published;
+    
+    private final AtomicLong bytes = new AtomicLong();
+    
+    // Messages decoded by the latest snapshot, reused by the next one; null once released
+    private volatile Snapshot decoded;
+    
+    SessionHistoryBuffer(int capacity) {
+        this(capacity, 0);
+    }
+    
+    SessionHistoryBuffer(int capacity, int compressAbove) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.compressAbove = compressAbove;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+    
+    /**
+     * Buffer holding the given messages, as returned by {@link #seal()}
+     */
+    SessionHistoryBuffer(int capacity, int compressAbove, List<StoredMessage> messages) {
+        this(capacity, compressAbove);
+        int skip = Math.max(0, messages.size() - capacity);
+        long total = 0;
+        for (int i = skip; i < messages.size(); i++) {
+            slots.set(i - skip, messages.get(i));
+            total += messages.get(i).footprint();
+        }
+        claimed.set(messages.size() - skip);
+        bytes.set(total);
+        published = messages.size() - skip;
+    }
+    
+    /**
+     * Append messages as one atomic unit
+     * @return Change in estimated bytes held by the buffer, or {@link #SEALED}
+     *         without appending when the buffer is sealed
+     */
+    long append(List<ChatMessage> messages) {
+        // Only the newest `capacity` messages can survive the append
+        int skip = Math.max(0, messages.size() - capacity);
+        int count = messages.size() - skip;
+        if (count == 0) {
+            return 0;
+        }
+        StoredMessage[] stored = new StoredMessage[count];
+        for (int i = 0; i < count; i++) {
+            stored[i] = StoredMessage.of(messages.get(skip + i), compressAbove);
+        }
+        
+        long start;
+        do {
+            start = claimed.get();
+            if (start < 0) {
+                return SEALED;
+            }
+        } while (!claimed.compareAndSet(start, start + count));
+        long end = start + count;
+        
+        // The slots we reuse must hold published entries, not an earlier writer's pending ones
+        awaitPublished(end - capacity);
+        
+        long delta = 0;
+        for (int i = 0; i < count; i++) {
+            StoredMessage evicted = slots.getAndSet(index(start + i), stored[i]);
+            delta += stored[i].footprint();
+            if (evicted != null) {
+                delta -= evicted.footprint();
+            }
+        }
+        
+        // Counted before publishing, so that seal() sees the bytes of every append it waited for
+        bytes.addAndGet(delta);
+        // Publish in claim order
+        awaitPublished(start);
+        published = end;
+        return delta;
+    }
+    
+    /**
+     * @return Ordered copy of the currently visible messages, oldest first. Each
+     *         message is decoded on first access, so entries a caller never reads
+     *         (history that does not fit the prompt) cost nothing.
+     */
+    List<ChatMessage> snapshot() {
+        long end = published;
+        long start = Math.max(0, end - capacity);
+        StoredMessage[] copy = new StoredMessage[(int) (end - start)];
+        for (long seq = start; seq < end; seq++) {
+            copy[(int) (seq - start)] = slots.get(index(seq));
+        }
+        // A writer that claimed sequence s + capacity may already have replaced entry s
+        long overwrittenBelow = claimedCount() - capacity;
+        int stale = (int) Math.max(0, Math.min(copy.length, overwrittenBelow - start));
+        Snapshot snapshot = new Snapshot(copy, stale, start + stale, decoded);
+        decoded = snapshot;
+        return snapshot;
+    }
+    
+    /**
+     * Stop further appends and wait for the ones in progress
+     * @return The messages held, oldest first, or null if already sealed
+     */
+    List<StoredMessage> seal() {
+        long end;
+        do {
+            end = claimed.get();
+            if (end < 0) {
+                return null;
+            }
+        } while (!claimed.compareAndSet(end, -1 - end));
+        awaitPublished(end);
+        long start = Math.max(0, end - capacity);
+        List<StoredMessage> messages = new ArrayList<>((int) (end - start));
+        for (long seq = start; seq < end; seq++) {
+            messages.add(slots.get(index(seq)));
+        }
+        return messages;
+    }
+    
+    /**
+     * Drop the decoded messages kept for the next snapshot
+     */
+    void releaseDecoded() {
+        decoded = null;
+    }
+    
+    /**
+     * @return Number of published messages currently held
+     */
+    int size() {
+        return (int) Math.min(published, capacity);
+    }
+    
+    /**
+     * @return Estimated bytes of the messages currently held
+     */
+    long bytes() {
+        return bytes.get();
+    }
+    
+    int capacity() {
+        return capacity;
+    }
+    
+    private long claimedCount() {
+        long value = claimed.get();
+        return value < 0 ? -1 - value : value;
+    }
+    
+    private int index(long sequence) {
+        return (int) (sequence % capacity);
+    }
+    
+    private void awaitPublished(long sequence) {
+        int spins = 0;
+        while (published < sequence) {
+            if (++spins < SPINS_BEFORE_YIELD) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+    
+    /**
+     * Read-only view over copied slots that decodes each message once, on first
+     * access, or takes it from the previous snapshot when that one decoded it
+     */
+    private static final class Snapshot extends AbstractList<ChatMessage> implements RandomAccess {
+        
+        private final StoredMessage[] stored;
+        
+        private final int offset;
+        
+        // Sequence number of the first message in the view
+        private final long first;
+        
+        private final AtomicReferenceArray<ChatMessage> messages;
+        
+        Snapshot(StoredMessage[] stored, int offset, long first, Snapshot previous) {
+            this.stored = stored;
+            this.offset = offset;
+            this.first = first;
+            this.messages = new AtomicReferenceArray<>(stored.length - offset);
+            if (previous != null) {
+                // Sequence numbers are never reused, so an overlapping entry is the same message
+                long from = Math.max(first, previous.first);
+                long to = Math.min(first + messages.length(), previous.first + previous.messages.length());
+                for (long seq = from; seq < to; seq++) {
+                    messages.lazySet((int) (seq - first), previous.messages.get((int) (seq - previous.first)));
+                }
+            }
+        }
+        
+        @Override
+        public ChatMessage get(int index) {
+            ChatMessage message = messages.get(index);
+            if (message == null) {
+                // Racing readers may both decode; either copy is equivalent
+                message = stored[offset + index].toChatMessage();
+                messages.set(index, message);
+            }
+            return message;
+        }
+        
+        @Override
+        public int size() {
+            return messages.length();
+        }
+    }
+}
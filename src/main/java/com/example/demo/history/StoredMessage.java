@@ -0,0 +1,240 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact in-memory form of a history message.
+ * <p>
+ * A {@link ChatMessage} holds a Date, a UTF-16 content String and, once it
+ * has been in a prompt, the message's chat/completions JSON as well. Here the
+ * role is a byte, the timestamp an epoch long, and role and content are kept
+ * only as that JSON object, {@code {"role":..,"content":..}} in UTF-8, which
+ * is both the content and the prompt fragment. Data above the compression
+ * threshold is deflated when that makes it smaller.
+ * <p>
+ * {@link #toChatMessage()} rebuilds the DTO when history is read, with the
+ * token estimate and, for user and assistant messages, the JSON fragment
+ * already set. {@link #writeTo} and {@link #readFrom} copy the fields as they
+ * are, for sessions moved off the heap.
+ */
+final class StoredMessage {
+
+    static final byte USER = 0;
+
+    static final byte ASSISTANT = 1;
+
+    static final byte SYSTEM = 2;
+
+    // Any other role; its name is read back from the JSON
+    static final byte OTHER = 3;
+
+    private static final String[] ROLE_NAMES = {"user", "assistant", "system"};
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    // Object header, fields and the data array header, with compressed oops
+    private static final int OVERHEAD_BYTES = 40 + 16;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final long timestamp;
+
+    private final byte role;
+
+    private final boolean compressed;
+
+    private final int tokenCount;
+
+    // Length of the JSON before compression
+    private final int length;
+
+    private final byte[] data;
+
+    private final String messageId;
+
+    private StoredMessage(long timestamp, byte role, boolean compressed, int tokenCount, int length, byte[] data,
+                          String messageId) {
+        this.timestamp = timestamp;
+        this.role = role;
+        this.compressed = compressed;
+        this.tokenCount = tokenCount;
+        this.length = length;
+        this.data = data;
+        this.messageId = messageId;
+    }
+
+    /**
+     * @param compressAbove JSON length in bytes above which it is deflated; 0 never compresses
+     */
+    static StoredMessage of(ChatMessage message, int compressAbove) {
+        byte role = roleCode(message.getRole());
+        byte[] json = encode(message.getRole(), message.getContent());
+        byte[] data = json;
+        if (compressAbove > 0 && json.length > compressAbove) {
+            data = deflate(json);
+        }
+        long timestamp = message.getTimestamp() != null ? message.getTimestamp().getTime() : NO_TIMESTAMP;
+        return new StoredMessage(timestamp, role, data != json, message.getTokenCount(), json.length, data,
+            message.getMessageId());
+    }
+
+    /**
+     * Rebuild the public DTO
+     */
+    ChatMessage toChatMessage() {
+        byte[] json = compressed ? inflate(data, length) : data;
+        String[] fields = decode(json);
+        ChatMessage message = new ChatMessage(role == OTHER ? fields[0] : ROLE_NAMES[role], fields[1],
+            timestamp != NO_TIMESTAMP ? new Date(timestamp) : null, messageId);
+        message.setTokenCount(tokenCount);
+        if (role == USER || role == ASSISTANT) {
+            message.setJsonFragment(json);
+        }
+        return message;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return Bytes {@link #writeTo} takes
+     */
+    int serializedSize() {
+        return Long.BYTES + 2 + 3 * Integer.BYTES + data.length + Short.BYTES
+            + (messageId != null ? messageId.getBytes(StandardCharsets.UTF_8).length : 0);
+    }
+
+    /**
+     * Write the fields: timestamp, role, compressed flag, token count, length, data and message id
+     */
+    void writeTo(ByteBuffer out) {
+        out.putLong(timestamp).put(role).put((byte) (compressed ? 1 : 0))
+            .putInt(tokenCount).putInt(length).putInt(data.length).put(data);
+        if (messageId == null) {
+            out.putShort((short) -1);
+        } else {
+            byte[] id = messageId.getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) id.length).put(id);
+        }
+    }
+
+    static StoredMessage readFrom(ByteBuffer in) {
+        long timestamp = in.getLong();
+        byte role = in.get();
+        boolean compressed = in.get() != 0;
+        int tokenCount = in.getInt();
+        int length = in.getInt();
+        byte[] data = new byte[in.getInt()];
+        in.get(data);
+        short idLength = in.getShort();
+        String messageId = null;
+        if (idLength >= 0) {
+            byte[] id = new byte[idLength];
+            in.get(id);
+            messageId = new String(id, StandardCharsets.UTF_8);
+        }
+        return new StoredMessage(timestamp, role, compressed, tokenCount, length, data, messageId);
+    }
+
+    /**
+     * @return Estimated heap bytes retained by this message
+     */
+    long footprint() {
+        return OVERHEAD_BYTES + align(data.length) + (messageId != null ? 40 + align(messageId.length()) : 0);
+    }
+
+    private static byte roleCode(String role) {
+        for (byte i = 0; i < ROLE_NAMES.length; i++) {
+            if (ROLE_NAMES[i].equals(role)) {
+                return i;
+            }
+        }
+        return OTHER;
+    }
+
+    private static byte[] encode(String role, String content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + (content != null ? content.length() : 0));
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("role", role);
+            generator.writeStringField("content", content);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // Role and content, in the order encode() writes them
+    private static String[] decode(byte[] json) {
+        String[] fields = new String[2];
+        try (JsonParser parser = JSON.createParser(json)) {
+            parser.nextToken();
+            for (int i = 0; i < fields.length; i++) {
+                parser.nextToken();
+                JsonToken value = parser.nextToken();
+                fields[i] = value == JsonToken.VALUE_NULL ? null : parser.getText();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fields;
+    }
+
+    /**
+     * @return The deflated bytes, or the input itself when deflating does not make it smaller
+     */
+    static byte[] deflate(byte[] json) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(json);
+            deflater.finish();
+            byte[] out = new byte[json.length];
+            int size = deflater.deflate(out);
+            // Incompressible: keep it as is
+            return deflater.finished() && size < json.length ? Arrays.copyOf(out, size) : json;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Inflate data whose original length is {@code length}
+     */
+    static byte[] inflate(byte[] data, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] json = new byte[length];
+            int size = inflater.inflate(json);
+            if (size != length) {
+                throw new IllegalStateException("압축된 히스토리 메시지 길이 불일치: " + size + " != " + length);
+            }
+            return json;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("압축된 히스토리 메시지를 읽을 수 없습니다", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long align(int bytes) {
+        return (bytes + 7L) & ~7L;
+    }
+}
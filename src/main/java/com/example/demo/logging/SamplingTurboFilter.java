@@ -0,0 +1,61 @@
+package com.example.demo.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps a random fraction of verbose events.
+ * <p>
+ * Events at or below {@code maxLevel} (INFO by default) from loggers under
+ * one of the {@code sampled} prefixes are passed with probability
+ * {@code rate} and denied otherwise; WARN and above, and all other loggers,
+ * are left to the normal level checks. Runs before the message is formatted,
+ * so dropped events cost one random draw.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+    
+    private final List<String> sampled = new ArrayList<>();
+    
+    private Level maxLevel = Level.INFO;
+    
+    private double rate = 0.01;
+    
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (!isStarted() || level == null || level.toInt() > maxLevel.toInt() || !isSampled(logger.getName())) {
+            return FilterReply.NEUTRAL;
+        }
+        return ThreadLocalRandom.current().nextDouble() < rate ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+    
+    private boolean isSampled(String loggerName) {
+        for (String prefix : sampled) {
+            if (loggerName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Logger name prefix to sample; may be given several times
+     */
+    public void addSampled(String prefix) {
+        sampled.add(prefix);
+    }
+    
+    public void setMaxLevel(String maxLevel) {
+        this.maxLevel = Level.toLevel(maxLevel, Level.INFO);
+    }
+    
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Chat and upstream LLM meters.
+ * <p>
+ * Upstream meters are tagged by model and mode ({@code call}, {@code stream}):
+ * <ul>
+ *   <li>{@code openrouter.request.duration} - full upstream latency, with outcome, as a histogram</li>
+ *   <li>{@code openrouter.ttft} - time to the first streamed token</li>
+ *   <li>{@code openrouter.tokens} - prompt/completion tokens from the {@code usage} field</li>
+ *   <li>{@code openrouter.tokens.per.second} - completion tokens over generation time</li>
+ *   <li>{@code openrouter.requests.in-flight} - upstream calls currently open</li>
+ *   <li>{@code openrouter.requests.cancelled} - calls aborted because the caller went away, and
+ *       {@code openrouter.tokens.saved}, the completion budget they left unused</li>
+ * </ul>
+ * Service-level meters are tagged by path ({@code blocking}, {@code reactive}, {@code stream}):
+ * {@code chat.requests.active} (long task timer) and {@code chat.responses} by outcome
+ * ({@code success}, {@code error}, {@code cancelled} when the client disconnected), since
+ * ChatService reports failures as error bodies rather than HTTP errors. Per SSE stream,
+ * {@code chat.stream.deltas}, {@code chat.stream.frames} and {@code chat.stream.flushes} show how
+ * well deltas are coalesced. HTTP-level latency and status per endpoint come from the actuator's
+ * {@code http.server.requests}.
+ */
+@Component
+public class ChatMetrics {
+    
+    public static final String CALL = "call";
+    
+    public static final String STREAM = "stream";
+    
+    private final MeterRegistry registry;
+    
+    public ChatMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+    
+    /**
+     * Record a finished upstream call
+     * @param model Upstream model id
+     * @param mode {@link #CALL} or {@link #STREAM}
+     * @param elapsedNanos Time from sending the request to the end of the response
+     * @param error Failure, or null on success
+     */
+    public void recordUpstream(String model, String mode, long elapsedNanos, Throwable error) {
+        Timer.builder("openrouter.request.duration")
+            .description("Upstream chat completion latency")
+            .tag("model", model)
+            .tag("mode", mode)
+            .tag("outcome", error == null ? "success" : "error")
+            .tag("exception", error == null ? "none" : error.getClass().getSimpleName())
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(50))
+            .maximumExpectedValue(Duration.ofMinutes(2))
+            .register(registry)
+            .record(Duration.ofNanos(elapsedNanos));
+    }
+    
+    /**
+     * Record an upstream call aborted because its caller cancelled (client gone, lost hedge)
+     * @param generatedTokens Completion tokens received before the abort (streamed deltas)
+     * @param maxTokens Completion budget of the request, or null when unset. What is left of it is
+     *                  counted as saved: an upper bound on the tokens that were not generated.
+     */
+    public void recordUpstreamCancelled(String model, String mode, int generatedTokens, Integer maxTokens) {
+        Counter.builder("openrouter.requests.cancelled")
+            .description("Upstream calls aborted because the caller cancelled")
+            .tag("model", model)
+            .tag("mode", mode)
+            .register(registry)
+            .increment();
+        if (maxTokens != null && maxTokens > generatedTokens) {
+            Counter.builder("openrouter.tokens.saved")
+                .description("Unused completion budget of cancelled upstream calls")
+                .tag("model", model)
+                .register(registry)
+                .increment(maxTokens - generatedTokens);
+        }
+    }
+    
+    public void recordTimeToFirstToken(String model, long nanos) {
+        Timer.builder("openrouter.ttft")
+            .description("Time from request to the first streamed token")
+            .tag("model", model)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(50))
+            .maximumExpectedValue(Duration.ofSeconds(60))
+            .register(registry)
+            .record(Duration.ofNanos(nanos));
+    }
+    
+    /**
+     * Record token usage reported by the upstream
+     * @param generationNanos Time spent generating the completion (after the first token when streamed)
+     */
+    public void recordUsage(String model, String mode, int promptTokens, int completionTokens, long generationNanos) {
+        tokens(model, "prompt").increment(promptTokens);
+        tokens(model, "completion").increment(completionTokens);
+        if (completionTokens > 0 && generationNanos > 0) {
+            DistributionSummary.builder("openrouter.tokens.per.second")
+                .description("Completion tokens generated per second")
+                .tag("model", model)
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(completionTokens * 1e9 / generationNanos);
+        }
+    }
+    
+    public <T> void registerInFlight(String client, T source, ToDoubleFunction<T> count) {
+        Gauge.builder("openrouter.requests.in-flight", source, count)
+            .description("Upstream calls currently open")
+            .tag("client", client)
+            .register(registry);
+    }
+    
+    /**
+     * Start timing a chat request; stop the returned sample when it completes
+     */
+    public LongTaskTimer.Sample startRequest(String path) {
+        return LongTaskTimer.builder("chat.requests.active")
+            .description("Chat requests in progress")
+            .tag("path", path)
+            .register(registry)
+            .start();
+    }
+    
+    public void recordResponse(String path, boolean error) {
+        responses(path, error ? "error" : "success").increment();
+    }
+    
+    /**
+     * Record a chat request abandoned by its client before the response was complete
+     */
+    public void recordCancelled(String path) {
+        responses(path, "cancelled").increment();
+    }
+    
+    /**
+     * Record the output of a finished SSE stream
+     * @param deltas Upstream deltas received
+     * @param frames Data events written, each holding one or more deltas
+     * @param flushes Writes flushed to the client: frames plus heartbeats
+     */
+    public void recordStreamFrames(int deltas, int frames, int flushes) {
+        perStream("chat.stream.deltas", "Upstream deltas per SSE stream").record(deltas);
+        perStream("chat.stream.frames", "SSE data events per stream").record(frames);
+        perStream("chat.stream.flushes", "Flushed writes per SSE stream").record(flushes);
+    }
+    
+    private DistributionSummary perStream(String name, String description) {
+        return DistributionSummary.builder(name)
+            .description(description)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+    
+    private Counter responses(String path, String outcome) {
+        return Counter.builder("chat.responses")
+            .description("Chat responses by outcome")
+            .tag("path", path)
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+    
+    private Counter tokens(String model, String type) {
+        return Counter.builder("openrouter.tokens")
+            .description("Tokens reported in upstream usage")
+            .tag("model", model)
+            .tag("type", type)
+            .register(registry);
+    }
+}
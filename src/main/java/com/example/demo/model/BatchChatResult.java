@@ -0,0 +1,10 @@
+package com.example.demo.model;
+
+/**
+ * Outcome of one item of a batch request, written as one NDJSON line.
+ * {@code index} is the item's position in the submitted list; results arrive
+ * in completion order. On failure {@code error} is true and {@code message}
+ * describes the problem.
+ */
+public record BatchChatResult(int index, String message, String model, boolean error, long durationMs) {
+}
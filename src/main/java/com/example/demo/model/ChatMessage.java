@@ -1,5 +1,7 @@
 package com.example.demo.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.Date;
 
 public class ChatMessage {
@@ -8,6 +10,12 @@ public class ChatMessage {
     private Date timestamp;
     private String messageId;
     
+    // Cached token estimate (-1 = not yet computed), see TokenEstimator
+    private transient int tokenCount = -1;
+    
+    // Cached chat/completions JSON encoding of this message, see PromptFragments
+    private transient volatile byte[] jsonFragment;
+    
     // Builder pattern
     public static Builder builder() {
         return new Builder();
@@ -74,6 +82,7 @@ public class ChatMessage {
     
     public void setRole(String role) {
         this.role = role;
+        this.jsonFragment = null;
     }
     
     public String getContent() {
@@ -82,6 +91,8 @@ public class ChatMessage {
     
     public void setContent(String content) {
         this.content = content;
+        this.tokenCount = -1;
+        this.jsonFragment = null;
     }
     
     public Date getTimestamp() {
@@ -100,6 +111,26 @@ public class ChatMessage {
         this.messageId = messageId;
     }
     
+    @JsonIgnore
+    public int getTokenCount() {
+        return tokenCount;
+    }
+    
+    @JsonIgnore
+    public void setTokenCount(int tokenCount) {
+        this.tokenCount = tokenCount;
+    }
+    
+    @JsonIgnore
+    public byte[] getJsonFragment() {
+        return jsonFragment;
+    }
+    
+    @JsonIgnore
+    public void setJsonFragment(byte[] jsonFragment) {
+        this.jsonFragment = jsonFragment;
+    }
+    
     @Override
     public String toString() {
         return "ChatMessage{" +
@@ -8,6 +8,7 @@ public class ChatRequest {
     private Double temperature;
     private Integer maxTokens;
     private String sessionId;
+    private boolean skipCache;
 
     // Default constructor
     public ChatRequest() {}
@@ -92,6 +93,15 @@ public class ChatRequest {
         this.sessionId = sessionId;
     }
 
+    // Bypass the response cache for this request
+    public boolean isSkipCache() {
+        return skipCache;
+    }
+
+    public void setSkipCache(boolean skipCache) {
+        this.skipCache = skipCache;
+    }
+
     @Override
     public String toString() {
         return "ChatRequest{" +
@@ -102,6 +112,7 @@ public class ChatRequest {
                 ", temperature=" + temperature +
                 ", maxTokens=" + maxTokens +
                 ", sessionId='" + sessionId + '\'' +
+                ", skipCache=" + skipCache +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.example.demo.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit for upstream calls that follows the upstream's health.
+ * <p>
+ * Calls beyond the current limit are rejected at once rather than queued. The
+ * limit moves with every completed call:
+ * <ul>
+ *   <li>latency: a short and a long EWMA of call latency are compared; while
+ *   the short one stays within {@code tolerance} of the long one and the limit
+ *   is actually in use, the limit grows by about its square root, and when
+ *   latency rises it shrinks in proportion (gradient)</li>
+ *   <li>failures: any error or timeout multiplies the limit by
+ *   {@code backoff-ratio} (multiplicative decrease)</li>
+ * </ul>
+ * The limit stays within {@code min-limit} and {@code max-limit}.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    
+    private static final double SHORT_ALPHA = 0.1;
+    
+    private static final double LONG_ALPHA = 0.01;
+    
+    // Weight of each new limit estimate
+    private static final double SMOOTHING = 0.2;
+    
+    private final boolean enabled;
+    
+    private final double minLimit;
+    
+    private final double maxLimit;
+    
+    private final double tolerance;
+    
+    private final double backoffRatio;
+    
+    private final Duration retryAfter;
+    
+    private double limit;
+    
+    private int inFlight;
+    
+    private double shortLatency;
+    
+    private double longLatency;
+    
+    private final LongAdder rejected = new LongAdder();
+    
+    public AdaptiveConcurrencyLimiter(@Value("${openrouter.limiter.enabled:true}") boolean enabled,
+                                      @Value("${openrouter.limiter.initial-limit:20}") int initialLimit,
+                                      @Value("${openrouter.limiter.min-limit:2}") int minLimit,
+                                      @Value("${openrouter.limiter.max-limit:${openrouter.upstream.max-in-flight:100}}") int maxLimit,
+                                      @Value("${openrouter.limiter.tolerance:2.0}") double tolerance,
+                                      @Value("${openrouter.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${openrouter.limiter.retry-after:1s}") Duration retryAfter) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.retryAfter = retryAfter;
+    }
+    
+    /**
+     * Take a slot for one upstream call
+     * @return Whether the call was in use of at least half the limit when admitted,
+     *         to be passed back to {@link #release}
+     * @throws UpstreamUnavailableException (429) if the limit is reached
+     */
+    public synchronized boolean acquire() {
+        if (!enabled) {
+            inFlight++;
+            return false;
+        }
+        if (inFlight >= (int) limit) {
+            rejected.increment();
+            throw UpstreamUnavailableException.limitReached((int) limit, retryAfter);
+        }
+        inFlight++;
+        return inFlight * 2 >= limit;
+    }
+    
+    /**
+     * Return a slot and adjust the limit
+     * @param saturated Value returned by {@link #acquire}; the limit only grows when it is being used
+     * @param latencyNanos Latency of the call, or a negative value when it should not be sampled
+     * @param failed Whether the upstream failed or timed out
+     */
+    public synchronized void release(boolean saturated, long latencyNanos, boolean failed) {
+        inFlight--;
+        if (!enabled) {
+            return;
+        }
+        double previous = limit;
+        if (failed) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (latencyNanos >= 0) {
+            if (longLatency == 0) {
+                shortLatency = latencyNanos;
+                longLatency = latencyNanos;
+            } else {
+                shortLatency += SHORT_ALPHA * (latencyNanos - shortLatency);
+                longLatency += LONG_ALPHA * (latencyNanos - longLatency);
+            }
+            // Let the baseline follow a lasting improvement instead of holding on to an old slow period
+            if (longLatency > shortLatency * 2) {
+                longLatency *= 0.95;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+            double estimate = limit * gradient + (saturated && gradient == 1.0 ? Math.sqrt(limit) : 0);
+            limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + estimate * SMOOTHING));
+        }
+        if ((int) limit != (int) previous) {
+            logger.debug("동시 호출 한도 변경: {} -> {}", (int) previous, (int) limit);
+        }
+    }
+    
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+    
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("openrouter.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+            .description("Current adaptive limit on concurrent upstream calls")
+            .register(registry);
+        Gauge.builder("openrouter.limiter.in-flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+            .description("Upstream calls holding a limiter slot")
+            .register(registry);
+        FunctionCounter.builder("openrouter.limiter.rejected", rejected, LongAdder::sum)
+            .description("Upstream calls rejected because the limit was reached")
+            .register(registry);
+    }
+}
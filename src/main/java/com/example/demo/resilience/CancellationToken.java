@@ -0,0 +1,114 @@
+package com.example.demo.resilience;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Signals that the caller of an upstream call has gone away (client
+ * disconnect, a cancelled Flux, a lost hedge race) so the call can stop
+ * instead of running to completion.
+ * <p>
+ * Blocking code binds a token to its thread with {@link #bind()}; the
+ * upstream HTTP client picks it up through {@link #current()} and registers
+ * an abort of its exchange with {@link #onCancel(Runnable)}, which closes the
+ * connection at once instead of waiting for the next read to notice.
+ */
+public final class CancellationToken {
+
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    // Guarded by this; null once cancelled
+    private List<Runnable> actions = new ArrayList<>(2);
+
+    /**
+     * Token bound to the calling thread, or null
+     */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Whether the calling thread's work has been cancelled
+     */
+    public static boolean isCurrentCancelled() {
+        CancellationToken token = CURRENT.get();
+        return token != null && token.isCancelled();
+    }
+
+    /**
+     * Bind this token to the calling thread until the returned scope is closed
+     */
+    public Scope bind() {
+        CancellationToken previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    public synchronized boolean isCancelled() {
+        return actions == null;
+    }
+
+    /**
+     * Run {@code action} on cancellation, or right away if already cancelled
+     * @return Registration to close once the action is no longer needed
+     */
+    public Registration onCancel(Runnable action) {
+        synchronized (this) {
+            if (actions != null) {
+                actions.add(action);
+                return () -> {
+                    synchronized (this) {
+                        if (actions != null) {
+                            actions.remove(action);
+                        }
+                    }
+                };
+            }
+        }
+        action.run();
+        return () -> { };
+    }
+
+    /**
+     * Cancel and run the registered actions; later calls do nothing
+     */
+    public void cancel() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (actions == null) {
+                return;
+            }
+            pending = actions;
+            actions = null;
+        }
+        for (Runnable action : pending) {
+            action.run();
+        }
+    }
+
+    /**
+     * Thread binding from {@link #bind()}
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Registered cancellation action
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.demo.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker for one upstream model.
+ * <p>
+ * CLOSED: outcomes of the last {@code window} calls are kept; once at least
+ * {@code minCalls} are recorded and the failure share reaches
+ * {@code failureRate}, the circuit opens. OPEN: calls are refused until
+ * {@code openDuration} has passed. HALF_OPEN: up to {@code halfOpenCalls} trial
+ * calls are let through; if they all succeed the circuit closes, and any
+ * failure opens it again.
+ */
+public class CircuitBreaker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+    
+    private final String name;
+    
+    private final boolean[] outcomes;
+    
+    private final int minCalls;
+    
+    private final double failureRate;
+    
+    private final long openNanos;
+    
+    private final int halfOpenCalls;
+    
+    private final LongSupplier clock;
+    
+    private State state = State.CLOSED;
+    
+    private int next;
+    
+    private int recorded;
+    
+    private int failures;
+    
+    private long openedAt;
+    
+    private int trialsStarted;
+    
+    private int trialsSucceeded;
+    
+    private long rejected;
+    
+    CircuitBreaker(String name, int window, int minCalls, double failureRate, Duration openDuration,
+                   int halfOpenCalls, LongSupplier clock) {
+        this.name = name;
+        this.outcomes = new boolean[window];
+        this.minCalls = minCalls;
+        this.failureRate = failureRate;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+    }
+    
+    /**
+     * Admit one call
+     * @throws UpstreamUnavailableException (503) while the circuit is open or its trial calls are taken
+     */
+    public synchronized void acquire() {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openNanos - clock.getAsLong();
+            if (remaining > 0) {
+                rejected++;
+                throw UpstreamUnavailableException.circuitOpen(name, Duration.ofNanos(remaining));
+            }
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                rejected++;
+                throw UpstreamUnavailableException.circuitOpen(name, Duration.ofSeconds(1));
+            }
+            trialsStarted++;
+        }
+    }
+    
+    /**
+     * Record the outcome of an admitted call
+     */
+    public synchronized void onResult(boolean failed) {
+        switch (state) {
+            case HALF_OPEN -> {
+                if (failed) {
+                    open();
+                } else if (++trialsSucceeded >= halfOpenCalls) {
+                    reset();
+                }
+            }
+            case CLOSED -> {
+                if (recorded == outcomes.length && outcomes[next]) {
+                    failures--;
+                }
+                outcomes[next] = failed;
+                next = (next + 1) % outcomes.length;
+                recorded = Math.min(recorded + 1, outcomes.length);
+                if (failed) {
+                    failures++;
+                }
+                if (recorded >= minCalls && failures >= failureRate * recorded) {
+                    open();
+                }
+            }
+            case OPEN -> {
+                // A call admitted before the circuit opened; nothing to change
+            }
+        }
+    }
+    
+    /**
+     * Release a trial slot without an outcome (the call was cancelled)
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN && trialsStarted > 0) {
+            trialsStarted--;
+        }
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : (double) failures / recorded;
+    }
+    
+    public synchronized long getRejected() {
+        return rejected;
+    }
+    
+    private void open() {
+        if (state != State.OPEN) {
+            logger.warn("서킷 열림: {} (최근 실패율 {})", name, String.format("%.2f", getFailureRate()));
+        }
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+    
+    private void reset() {
+        logger.info("서킷 닫힘: {}", name);
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
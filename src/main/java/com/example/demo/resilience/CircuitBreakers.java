@@ -0,0 +1,124 @@
+package com.example.demo.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * One {@link CircuitBreaker} per upstream model, created on first use
+ */
+@Component
+public class CircuitBreakers implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreakers.class);
+    
+    private final boolean enabled;
+    
+    private final int window;
+    
+    private final int minCalls;
+    
+    private final double failureRate;
+    
+    private final Duration openDuration;
+    
+    private final int halfOpenCalls;
+    
+    private final LongSupplier clock;
+    
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    
+    private volatile MeterRegistry registry;
+    
+    @Autowired
+    public CircuitBreakers(@Value("${openrouter.circuit.enabled:true}") boolean enabled,
+                           @Value("${openrouter.circuit.window:20}") int window,
+                           @Value("${openrouter.circuit.min-calls:10}") int minCalls,
+                           @Value("${openrouter.circuit.failure-rate:0.5}") double failureRate,
+                           @Value("${openrouter.circuit.open-duration:30s}") Duration openDuration,
+                           @Value("${openrouter.circuit.half-open-calls:3}") int halfOpenCalls) {
+        this(enabled, window, minCalls, failureRate, openDuration, halfOpenCalls, System::nanoTime);
+    }
+    
+    CircuitBreakers(boolean enabled, int window, int minCalls, double failureRate, Duration openDuration,
+                    int halfOpenCalls, LongSupplier clock) {
+        this.enabled = enabled;
+        this.window = window;
+        this.minCalls = minCalls;
+        this.failureRate = failureRate;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public CircuitBreaker get(String model) {
+        return breakers.computeIfAbsent(model, name -> {
+            CircuitBreaker breaker = new CircuitBreaker(name, window, minCalls, failureRate, openDuration,
+                halfOpenCalls, clock);
+            MeterRegistry current = registry;
+            if (current != null) {
+                bind(current, name, breaker);
+            }
+            return breaker;
+        });
+    }
+    
+    /**
+     * Whether a call failure says something about the upstream's health;
+     * request errors (4xx other than 408/429) do not
+     */
+    public static boolean isUpstreamFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpClientErrorException clientError) {
+                int status = clientError.getStatusCode().value();
+                return status == 408 || status == 429;
+            }
+            // The same for the reactive client
+            if (cause instanceof WebClientResponseException responseError
+                    && responseError.getStatusCode().is4xxClientError()) {
+                int status = responseError.getStatusCode().value();
+                return status == 408 || status == 429;
+            }
+        }
+        return error != null;
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        breakers.forEach((name, breaker) -> bind(registry, name, breaker));
+    }
+    
+    private static void bind(MeterRegistry registry, String name, CircuitBreaker breaker) {
+        Gauge.builder("openrouter.circuit.state", breaker, b -> b.getState().ordinal())
+            .description("Circuit state: 0 closed, 1 open, 2 half-open")
+            .tag("model", name)
+            .register(registry);
+        Gauge.builder("openrouter.circuit.failure.rate", breaker, CircuitBreaker::getFailureRate)
+            .description("Failure share of the recent calls in the breaker window")
+            .tag("model", name)
+            .register(registry);
+        FunctionCounter.builder("openrouter.circuit.rejected", breaker, CircuitBreaker::getRejected)
+            .description("Calls refused while the circuit was open")
+            .tag("model", name)
+            .register(registry);
+        logger.debug("서킷 브레이커 등록: {}", name);
+    }
+}
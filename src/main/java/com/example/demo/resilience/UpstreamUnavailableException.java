@@ -0,0 +1,48 @@
+package com.example.demo.resilience;
+
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+/**
+ * An upstream call was refused locally instead of being attempted: the
+ * concurrency limit or a client's rate limit is reached (429), or the model's
+ * circuit is open (503). Carries the delay after which a retry is worth trying.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+    
+    private final HttpStatus status;
+    
+    private final Duration retryAfter;
+    
+    public UpstreamUnavailableException(HttpStatus status, Duration retryAfter, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+    
+    public static UpstreamUnavailableException limitReached(int limit, Duration retryAfter) {
+        return new UpstreamUnavailableException(HttpStatus.TOO_MANY_REQUESTS, retryAfter,
+            "OpenRouter 동시 호출 한도(" + limit + ") 초과");
+    }
+    
+    public static UpstreamUnavailableException circuitOpen(String model, Duration retryAfter) {
+        return new UpstreamUnavailableException(HttpStatus.SERVICE_UNAVAILABLE, retryAfter,
+            "모델 " + model + " 일시 차단 중 (circuit open)");
+    }
+    
+    public HttpStatus getStatus() {
+        return status;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+    
+    /**
+     * Retry-After header value: whole seconds, at least 1
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.demo.routing;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * When and how often to hedge an upstream call.
+ * <p>
+ * The hedge delay is a percentile ({@code openrouter.hedge.percentile}) of the
+ * most recent latencies for the same model and mode, so only calls that are
+ * already slower than usual get a second attempt. Until enough samples exist
+ * {@code initial-delay} is used. Hedges are paid for from a token bucket: every
+ * call deposits {@code budget} tokens (capped at {@code max-tokens}) and every
+ * hedge spends one, which bounds extra upstream load to about
+ * {@code budget} of the traffic.
+ */
+@Component
+public class HedgePolicy implements MeterBinder {
+    
+    private final boolean enabled;
+    
+    private final double percentile;
+    
+    private final double budget;
+    
+    private final double maxTokens;
+    
+    private final long minDelayNanos;
+    
+    private final long initialDelayNanos;
+    
+    private final int window;
+    
+    private final int minSamples;
+    
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    
+    private double tokens;
+    
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder won = new LongAdder();
+    
+    public HedgePolicy(@Value("${openrouter.hedge.enabled:false}") boolean enabled,
+                       @Value("${openrouter.hedge.percentile:0.95}") double percentile,
+                       @Value("${openrouter.hedge.budget:0.05}") double budget,
+                       @Value("${openrouter.hedge.max-tokens:10}") double maxTokens,
+                       @Value("${openrouter.hedge.min-delay:50ms}") Duration minDelay,
+                       @Value("${openrouter.hedge.initial-delay:10s}") Duration initialDelay,
+                       @Value("${openrouter.hedge.window:512}") int window,
+                       @Value("${openrouter.hedge.min-samples:20}") int minSamples) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budget = budget;
+        this.maxTokens = maxTokens;
+        this.minDelayNanos = minDelay.toNanos();
+        this.initialDelayNanos = initialDelay.toNanos();
+        this.window = window;
+        this.minSamples = minSamples;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * How long to wait on the first attempt before hedging
+     * @param key Model id and mode, e.g. {@code anthropic/claude-3.5-sonnet/call}
+     */
+    public Duration delay(String key) {
+        LatencyWindow samples = latencies.get(key);
+        long nanos = samples != null ? samples.percentile(percentile, minSamples) : -1;
+        return Duration.ofNanos(Math.max(minDelayNanos, nanos < 0 ? initialDelayNanos : nanos));
+    }
+    
+    /**
+     * Record the latency of a completed attempt (time to first token for streams)
+     */
+    public void record(String key, long nanos) {
+        latencies.computeIfAbsent(key, k -> new LatencyWindow(window)).add(nanos);
+    }
+    
+    /**
+     * Count a hedgeable call and deposit its share of the budget
+     */
+    public synchronized void onCall() {
+        calls.increment();
+        tokens = Math.min(maxTokens, tokens + budget);
+    }
+    
+    /**
+     * Take one token for a hedge
+     * @return false if the budget is spent; the call then keeps waiting on its first attempt
+     */
+    public synchronized boolean tryHedge() {
+        if (tokens < 1) {
+            denied.increment();
+            return false;
+        }
+        tokens -= 1;
+        fired.increment();
+        return true;
+    }
+    
+    public void onHedgeWon() {
+        won.increment();
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("openrouter.hedge.calls", calls, LongAdder::sum)
+            .description("Upstream calls eligible for hedging")
+            .register(registry);
+        FunctionCounter.builder("openrouter.hedge.fired", fired, LongAdder::sum)
+            .description("Second attempts started")
+            .register(registry);
+        FunctionCounter.builder("openrouter.hedge.denied", denied, LongAdder::sum)
+            .description("Hedges skipped because the budget was spent")
+            .register(registry);
+        FunctionCounter.builder("openrouter.hedge.won", won, LongAdder::sum)
+            .description("Calls answered by the second attempt")
+            .register(registry);
+    }
+    
+    /**
+     * Ring buffer of the latest samples; the percentile is recomputed every
+     * few samples instead of on every lookup
+     */
+    private static final class LatencyWindow {
+        
+        private final long[] samples;
+        
+        private int next;
+        
+        private int size;
+        
+        private int sinceSorted;
+        
+        private double cachedFor = Double.NaN;
+        
+        private long cached = -1;
+        
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+        
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+            sinceSorted++;
+        }
+        
+        synchronized long percentile(double p, int minSamples) {
+            if (size < minSamples) {
+                return -1;
+            }
+            if (p != cachedFor || cached < 0 || sinceSorted >= Math.max(1, size / 16)) {
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                cached = sorted[Math.min(size - 1, (int) Math.ceil(p * size) - 1)];
+                cachedFor = p;
+                sinceSorted = 0;
+            }
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.demo.routing;
+
+/**
+ * A routable model: where to send it and under which upstream name
+ *
+ * @param id Name clients use and metrics are tagged with
+ * @param upstreamModel Model name in the upstream request body
+ * @param group Equivalence group, or null
+ * @param baseUrl Endpoint base URL
+ * @param apiKey Endpoint bearer token
+ */
+public record ModelRoute(String id, String upstreamModel, String group, String baseUrl, String apiKey) {
+    
+    @Override
+    public String toString() {
+        return "ModelRoute{id='" + id + "', upstreamModel='" + upstreamModel + "', group='" + group
+            + "', baseUrl='" + baseUrl + "'}";
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.demo.routing;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Resolves ChatRequest.model to an upstream route.
+ * <p>
+ * A model id is always honored as given. A group name (or the default, when
+ * it names a group) is routed to the member with the lowest cost, where cost
+ * is a peak-sensitive EWMA of its latency times its outstanding calls plus an
+ * error-rate penalty. Averages decay with {@code chat.router.decay}: a slow
+ * sample raises a model's latency at once, faster ones bring it down
+ * gradually, and a model that stops receiving traffic drifts back towards
+ * zero cost so it is probed again. Callers report each routed call through
+ * {@link #complete} or {@link #abandon}.
+ */
+@Component
+public class ModelRouter implements MeterBinder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+    
+    static final String DEFAULT_ENDPOINT = "openrouter";
+    
+    private final Map<String, ModelRoute> routes = new LinkedHashMap<>();
+    
+    private final Map<String, List<ModelRoute>> groups = new LinkedHashMap<>();
+    
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    
+    private final String defaultModel;
+    
+    private final double decayNanos;
+    
+    private final double errorPenaltyNanos;
+    
+    private final LongSupplier clock;
+    
+    @Autowired
+    public ModelRouter(ModelRouterProperties properties,
+                       @Value("${spring.ai.openai.base-url}") String baseUrl,
+                       @Value("${spring.ai.openai.api-key}") String apiKey,
+                       @Value("${spring.ai.openai.chat.options.model}") String model) {
+        this(routes(properties, baseUrl, apiKey, model),
+            properties.defaultModel() != null ? properties.defaultModel() : model,
+            properties.decay(), properties.errorPenalty());
+    }
+    
+    public ModelRouter(List<ModelRoute> routes, String defaultModel, Duration decay, Duration errorPenalty) {
+        this(routes, defaultModel, decay, errorPenalty, System::nanoTime);
+    }
+    
+    ModelRouter(List<ModelRoute> routes, String defaultModel, Duration decay, Duration errorPenalty,
+                LongSupplier clock) {
+        for (ModelRoute route : routes) {
+            this.routes.put(route.id(), route);
+            this.stats.put(route.id(), new Stats());
+            if (route.group() != null) {
+                this.groups.computeIfAbsent(route.group(), group -> new ArrayList<>()).add(route);
+            }
+        }
+        if (!this.routes.containsKey(defaultModel) && !this.groups.containsKey(defaultModel)) {
+            throw new IllegalArgumentException("기본 모델이 등록되어 있지 않습니다: " + defaultModel);
+        }
+        this.defaultModel = defaultModel;
+        this.decayNanos = decay.toNanos();
+        this.errorPenaltyNanos = errorPenalty.toNanos();
+        this.clock = clock;
+        logger.info("모델 라우터 초기화 - 모델 {}, 그룹 {}, 기본 {}", this.routes.keySet(), this.groups.keySet(), defaultModel);
+    }
+    
+    /**
+     * Pick the route for a requested model and count it as outstanding
+     * @param requested Model id or group name, or null for the default
+     * @throws IllegalArgumentException if the name is neither a model nor a group
+     */
+    public ModelRoute select(String requested) {
+        ModelRoute route = resolve(requested);
+        Stats routeStats = stats.get(route.id());
+        routeStats.outstanding.incrementAndGet();
+        routeStats.selections.increment();
+        return route;
+    }
+    
+    /**
+     * The route {@link #select} would pick right now, without counting a call
+     */
+    public ModelRoute resolve(String requested) {
+        String name = requested != null ? requested : defaultModel;
+        ModelRoute route = routes.get(name);
+        if (route != null) {
+            return route;
+        }
+        List<ModelRoute> members = groups.get(name);
+        if (members == null) {
+            throw new IllegalArgumentException("알 수 없는 모델: " + name);
+        }
+        return cheapest(members, null);
+    }
+    
+    /**
+     * Another route for the same request: the cheapest other member when the
+     * request names a group, otherwise the same route
+     */
+    public ModelRoute alternate(String requested, ModelRoute exclude) {
+        List<ModelRoute> members = groups.get(requested != null ? requested : defaultModel);
+        if (members == null || members.size() < 2) {
+            return exclude;
+        }
+        return cheapest(members, exclude);
+    }
+    
+    /**
+     * Record the outcome of a call routed by {@link #select}
+     * @param latencyNanos Observed latency (time to first token for streams)
+     * @param error Failure, or null on success
+     */
+    public void complete(ModelRoute route, long latencyNanos, Throwable error) {
+        Stats routeStats = stats.get(route.id());
+        routeStats.outstanding.decrementAndGet();
+        routeStats.observe(clock.getAsLong(), latencyNanos, error != null);
+    }
+    
+    /**
+     * Release a routed call that was cancelled before it produced a usable sample
+     */
+    public void abandon(ModelRoute route) {
+        stats.get(route.id()).outstanding.decrementAndGet();
+    }
+    
+    /**
+     * Model ids followed by group names, as accepted in ChatRequest.model
+     */
+    public List<String> getModelNames() {
+        List<String> names = new ArrayList<>(routes.keySet());
+        names.addAll(groups.keySet());
+        return names;
+    }
+    
+    public String getDefaultModel() {
+        return defaultModel;
+    }
+    
+    /**
+     * Current ranking cost of a model in nanoseconds; lower is preferred
+     */
+    double cost(String id) {
+        return stats.get(id).cost(clock.getAsLong());
+    }
+    
+    private ModelRoute cheapest(List<ModelRoute> members, ModelRoute exclude) {
+        long now = clock.getAsLong();
+        // Random starting point so equal costs (e.g. unsampled models) share the traffic
+        int offset = ThreadLocalRandom.current().nextInt(members.size());
+        ModelRoute best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < members.size(); i++) {
+            ModelRoute candidate = members.get((offset + i) % members.size());
+            if (candidate.equals(exclude)) {
+                continue;
+            }
+            double cost = stats.get(candidate.id()).cost(now);
+            if (cost < bestCost) {
+                best = candidate;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+    
+    private static List<ModelRoute> routes(ModelRouterProperties properties, String baseUrl, String apiKey,
+                                           String model) {
+        Map<String, ModelRouterProperties.Endpoint> endpoints = new LinkedHashMap<>();
+        endpoints.put(DEFAULT_ENDPOINT, new ModelRouterProperties.Endpoint(baseUrl, apiKey));
+        if (properties.endpoints() != null) {
+            endpoints.putAll(properties.endpoints());
+        }
+        Map<String, ModelRoute> routes = new LinkedHashMap<>();
+        if (properties.models() != null) {
+            for (ModelRouterProperties.Model configured : properties.models()) {
+                String endpointName = configured.endpoint() != null ? configured.endpoint() : DEFAULT_ENDPOINT;
+                ModelRouterProperties.Endpoint endpoint = endpoints.get(endpointName);
+                if (endpoint == null) {
+                    throw new IllegalArgumentException(
+                        "모델 " + configured.id() + "의 엔드포인트가 없습니다: " + endpointName);
+                }
+                routes.put(configured.id(), new ModelRoute(configured.id(),
+                    configured.upstreamModel() != null ? configured.upstreamModel() : configured.id(),
+                    configured.group(), endpoint.baseUrl(), endpoint.apiKey()));
+            }
+        }
+        routes.putIfAbsent(model, new ModelRoute(model, model, null, baseUrl, apiKey));
+        return new ArrayList<>(routes.values());
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        stats.forEach((id, routeStats) -> {
+            Gauge.builder("chat.router.latency", routeStats,
+                    s -> s.latency(clock.getAsLong()) / TimeUnit.SECONDS.toNanos(1))
+                .description("Decayed peak-EWMA upstream latency used for routing")
+                .baseUnit("seconds")
+                .tag("model", id)
+                .register(registry);
+            Gauge.builder("chat.router.error.rate", routeStats, s -> s.errorRate(clock.getAsLong()))
+                .description("Decayed upstream error rate used for routing")
+                .tag("model", id)
+                .register(registry);
+            FunctionCounter.builder("chat.router.selections", routeStats.selections, LongAdder::sum)
+                .description("Calls routed to the model")
+                .tag("model", id)
+                .register(registry);
+        });
+    }
+    
+    /**
+     * Per-model averages; both decay towards zero with the time since the last sample
+     */
+    private final class Stats {
+        
+        final AtomicInteger outstanding = new AtomicInteger();
+        
+        final LongAdder selections = new LongAdder();
+        
+        private boolean sampled;
+        
+        private long stamp;
+        
+        private double latency;
+        
+        private double errorRate;
+        
+        synchronized void observe(long now, long latencyNanos, boolean failed) {
+            double weight = weight(now);
+            double error = failed ? 1 : 0;
+            if (!sampled) {
+                sampled = true;
+                errorRate = error;
+                latency = failed ? 0 : latencyNanos;
+            } else {
+                errorRate = errorRate * weight + error * (1 - weight);
+                // Failures say nothing about speed; a fast connection error must not look attractive
+                if (!failed) {
+                    latency = latencyNanos > latency * weight ? latencyNanos : latency * weight + latencyNanos * (1 - weight);
+                } else {
+                    latency = latency * weight;
+                }
+            }
+            stamp = now;
+        }
+        
+        synchronized double cost(long now) {
+            if (!sampled) {
+                return 0;
+            }
+            double weight = weight(now);
+            return latency * weight * (outstanding.get() + 1) + errorRate * weight * errorPenaltyNanos;
+        }
+        
+        synchronized double latency(long now) {
+            return sampled ? latency * weight(now) : 0;
+        }
+        
+        synchronized double errorRate(long now) {
+            return sampled ? errorRate * weight(now) : 0;
+        }
+        
+        private double weight(long now) {
+            return Math.exp(-Math.max(0, now - stamp) / decayNanos);
+        }
+    }
+}
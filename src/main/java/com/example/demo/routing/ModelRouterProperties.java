@@ -0,0 +1,46 @@
+package com.example.demo.routing;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upstream endpoints and the models served through them ({@code chat.router.*}).
+ * <p>
+ * Models that share a {@code group} are treated as interchangeable: a request
+ * naming the group is routed to whichever member currently looks fastest. The
+ * endpoint {@code openrouter} and the model {@code spring.ai.openai.chat.options.model}
+ * are always registered from the {@code spring.ai.openai.*} settings.
+ *
+ * @param defaultModel Model id or group used when a request names none; defaults to spring.ai.openai.chat.options.model
+ * @param endpoints OpenAI-compatible endpoints by name
+ * @param models Routable models
+ * @param decay Time constant of the latency and error-rate averages
+ * @param errorPenalty Latency charged to a model per unit of error rate when ranking
+ */
+@ConfigurationProperties("chat.router")
+public record ModelRouterProperties(String defaultModel,
+                                    Map<String, Endpoint> endpoints,
+                                    List<Model> models,
+                                    @DefaultValue("10s") Duration decay,
+                                    @DefaultValue("10s") Duration errorPenalty) {
+    
+    /**
+     * @param baseUrl Base URL that chat/completions is resolved against
+     * @param apiKey Bearer token for the endpoint
+     */
+    public record Endpoint(String baseUrl, String apiKey) {
+    }
+    
+    /**
+     * @param id Name clients send in ChatRequest.model
+     * @param endpoint Endpoint name; defaults to openrouter
+     * @param upstreamModel Model name sent upstream; defaults to the id
+     * @param group Optional equivalence group
+     */
+    public record Model(String id, String endpoint, String upstreamModel, String group) {
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.demo.service;
+
+import com.example.demo.model.BatchChatResult;
+import com.example.demo.model.ChatRequest;
+import com.example.demo.model.ChatResponse;
+import com.example.demo.resilience.CancellationToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of independent chat requests with bounded parallelism.
+ * <p>
+ * Each item goes through {@link ChatService#chat(ChatRequest, String)} (prompt
+ * building, caches, the blocking upstream model) on its own worker, with at
+ * most {@code concurrency} items in flight. Results are emitted as they
+ * complete; an item that fails or exceeds the per-item timeout yields an error
+ * result and does not affect the rest of the batch. Cancelling the returned
+ * Flux stops scheduling new items and aborts the upstream calls of the ones
+ * in flight, as does an item timing out.
+ */
+@Service
+public class BatchChatService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BatchChatService.class);
+    
+    private final ChatService chatService;
+    
+    private final int defaultConcurrency;
+    
+    private final int maxConcurrency;
+    
+    private final int maxItems;
+    
+    private final Duration itemTimeout;
+    
+    private final Duration batchTimeout;
+    
+    // Items block on the upstream call; virtual threads when spring.threads.virtual.enabled=true
+    private final Scheduler scheduler;
+    
+    public BatchChatService(ChatService chatService,
+                            @Value("${chat.batch.concurrency:8}") int defaultConcurrency,
+                            @Value("${chat.batch.max-concurrency:32}") int maxConcurrency,
+                            @Value("${chat.batch.max-items:1000}") int maxItems,
+                            @Value("${chat.batch.item-timeout:60s}") Duration itemTimeout,
+                            @Value("${chat.batch.timeout:30m}") Duration batchTimeout,
+                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.chatService = chatService;
+        this.defaultConcurrency = defaultConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.maxItems = maxItems;
+        this.itemTimeout = itemTimeout;
+        this.batchTimeout = batchTimeout;
+        this.scheduler = virtualThreads
+            ? Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "batch-vt")
+            : Schedulers.boundedElastic();
+    }
+    
+    public int getMaxItems() {
+        return maxItems;
+    }
+    
+    /**
+     * Upper bound on a whole batch response, independent of spring.mvc.async.request-timeout
+     */
+    public Duration getBatchTimeout() {
+        return batchTimeout;
+    }
+    
+    /**
+     * Run the batch
+     * @param requests Items to run; each is answered independently
+     * @param concurrency Items in flight at once, or null for the default; capped at chat.batch.max-concurrency
+     * @return One result per item, in completion order
+     */
+    public Flux<BatchChatResult> run(List<ChatRequest> requests, Integer concurrency) {
+        int parallelism = Math.max(1, Math.min(concurrency != null ? concurrency : defaultConcurrency, maxConcurrency));
+        long start = System.nanoTime();
+        AtomicInteger failures = new AtomicInteger();
+        logger.info("배치 요청 시작 - {}건, 동시 실행 {}", requests.size(), parallelism);
+        return Flux.range(0, requests.size())
+            .flatMap(index -> runItem(index, requests.get(index)), parallelism)
+            .doOnNext(result -> {
+                if (result.error()) {
+                    failures.incrementAndGet();
+                }
+            })
+            .doOnComplete(() -> logger.info("배치 요청 완료 - {}건 (실패 {}), {} ms",
+                requests.size(), failures.get(), Duration.ofNanos(System.nanoTime() - start).toMillis()));
+    }
+    
+    private Mono<BatchChatResult> runItem(int index, ChatRequest request) {
+        if (!chatService.isValidRequest(request)) {
+            return Mono.just(new BatchChatResult(index, "Invalid request: message is required", null, true, 0));
+        }
+        long start = System.nanoTime();
+        return Mono.defer(() -> {
+            CancellationToken token = new CancellationToken();
+            return Mono.fromCallable(() -> {
+                try (CancellationToken.Scope scope = token.bind()) {
+                    return chatService.chat(request, request.getSessionId());
+                }
+            })
+                .subscribeOn(scheduler)
+                .doOnCancel(token::cancel);
+        })
+            .timeout(itemTimeout)
+            .map(response -> result(index, response, start))
+            .onErrorResume(e -> Mono.just(new BatchChatResult(index,
+                e instanceof TimeoutException ? "Timed out after " + itemTimeout.toMillis() + " ms" : e.getMessage(),
+                null, true, elapsedMillis(start))));
+    }
+    
+    private static BatchChatResult result(int index, ChatResponse response, long start) {
+        return new BatchChatResult(index, response.getMessage(), response.getModel(), response.isError(),
+            elapsedMillis(start));
+    }
+    
+    private static long elapsedMillis(long start) {
+        return Duration.ofNanos(System.nanoTime() - start).toMillis();
+    }
+}
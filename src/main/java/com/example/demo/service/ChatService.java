@@ -1,14 +1,24 @@
 package com.example.demo.service;
 
 import com.example.demo.OpenRouterChatModel;
+import com.example.demo.PromptFragments;
+import com.example.demo.ReactiveOpenRouterChatModel;
+import com.example.demo.cache.ChatResponseCache;
+import com.example.demo.cache.SemanticResponseCache;
+import com.example.demo.history.ChatHistoryStore;
+import com.example.demo.metrics.ChatMetrics;
 import com.example.demo.model.ChatRequest;
 import com.example.demo.model.ChatResponse;
 import com.example.demo.model.ChatMessage;
-import org.springframework.ai.chat.messages.AssistantMessage;
+import com.example.demo.resilience.CancellationToken;
+import com.example.demo.resilience.UpstreamUnavailableException;
+import com.example.demo.routing.ModelRouter;
+import io.micrometer.core.instrument.LongTaskTimer;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,9 +26,10 @@ import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,12 +37,32 @@ public class ChatService {
     
     private static final Logger logger = LoggerFactory.getLogger(ChatService.class);
     
-    // Chat history storage (session-based)
-    private final Map<String, List<ChatMessage>> chatHistories = new ConcurrentHashMap<>();
+    // Message and prompt text; enable with logging.level.chat.content=DEBUG
+    private static final Logger contentLogger = LoggerFactory.getLogger("chat.content");
+    
+    // One event per completed request
+    private static final Logger requestLogger = LoggerFactory.getLogger("chat.request");
+    
+    // Chat history storage (session-based, bounded by the store)
+    private final ChatHistoryStore historyStore;
     
     private final OpenRouterChatModel chatModel;
     
-    @Value("${spring.ai.openai.chat.options.model:gpt-3.5-turbo}")
+    private final ReactiveOpenRouterChatModel reactiveChatModel;
+    
+    private final ContextWindowManager contextWindowManager;
+    
+    private final ConversationSummarizer summarizer;
+    
+    private final ChatResponseCache responseCache;
+    
+    private final SemanticResponseCache semanticCache;
+    
+    private final ChatMetrics metrics;
+    
+    private final ModelRouter router;
+    
+    @Value("${chat.router.default-model:${spring.ai.openai.chat.options.model:gpt-3.5-turbo}}")
     private String defaultModel;
     
     @Value("${spring.ai.openai.chat.options.temperature:0.7}")
@@ -44,8 +75,21 @@ public class ChatService {
     private static final String DEFAULT_SYSTEM_PROMPT = 
         "You are a helpful AI assistant. Please provide clear, accurate, and helpful responses.";
     
-    public ChatService(OpenRouterChatModel chatModel) {
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+    
+    public ChatService(OpenRouterChatModel chatModel, ReactiveOpenRouterChatModel reactiveChatModel,
+                       ChatHistoryStore historyStore, ContextWindowManager contextWindowManager,
+                       ConversationSummarizer summarizer, ChatResponseCache responseCache,
+                       SemanticResponseCache semanticCache, ChatMetrics metrics, ModelRouter router) {
         this.chatModel = chatModel;
+        this.reactiveChatModel = reactiveChatModel;
+        this.historyStore = historyStore;
+        this.contextWindowManager = contextWindowManager;
+        this.summarizer = summarizer;
+        this.responseCache = responseCache;
+        this.semanticCache = semanticCache;
+        this.metrics = metrics;
+        this.router = router;
         logger.info("ChatService initialized with OpenRouterChatModel");
     }
     
@@ -65,9 +109,10 @@ public class ChatService {
      * @return ChatResponse with the AI's response
      */
     public ChatResponse chat(ChatRequest request, String sessionId) {
+        LongTaskTimer.Sample active = metrics.startRequest("blocking");
         try {
             logger.info("=== 채팅 요청 처리 시작 ===");
-            logger.info("사용자 메시지: {}", request.getMessage());
+            contentLogger.debug("사용자 메시지: {}", request.getMessage());
             logger.info("세션 ID: {}", sessionId);
             logger.info("요청 모델: {}", request.getModel() != null ? request.getModel() : defaultModel);
             
@@ -80,18 +125,19 @@ public class ChatService {
             
             // Call the AI model
             logger.info("AI 모델 호출 중...");
-            org.springframework.ai.chat.model.ChatResponse aiResponse = chatModel.call(prompt);
-            
-            String responseText = aiResponse.getResult().getOutput().getText();
-            logger.info("AI 응답 생성 완료: {}",
-                responseText.length() > 100 ? responseText.substring(0, 100) + "..." : responseText);
+            String responseText = useCache(request)
+                ? responseCache.get(ChatResponseCache.key(model(request), prompt), () -> callModel(request, prompt))
+                : callModel(request, prompt);
+            logger.info("AI 응답 생성 완료: {}자", responseText.length());
+            contentLogger.debug("AI 응답: {}", responseText);
             
             // Store conversation history if session is provided
             if (sessionId != null) {
-                addToHistory(sessionId, request.getMessage(), responseText);
+                addToHistory(sessionId, request, responseText);
             }
             
             // Create and return response
+            complete("blocking", active, sessionId, request, responseText.length(), null);
             return ChatResponse.builder()
                 .message(responseText)
                 .model(request.getModel() != null ? request.getModel() : defaultModel)
@@ -99,16 +145,74 @@ public class ChatService {
                 .timestamp(new Date())
                 .build();
                 
+        } catch (UpstreamUnavailableException e) {
+            // Shed load: surfaced as 429/503 with Retry-After instead of an error message
+            complete("blocking", active, sessionId, request, 0, e);
+            throw e;
         } catch (Exception e) {
-            logger.error("Error processing chat request: ", e);
+            if (CancellationToken.isCurrentCancelled()) {
+                // The caller is gone and the upstream exchange was aborted
+                logger.info("채팅 요청 취소됨 - 세션 ID: {}", sessionId);
+                cancelled("blocking", active, sessionId, request, 0);
+            } else {
+                logger.error("Error processing chat request: ", e);
+                complete("blocking", active, sessionId, request, 0, e);
+            }
             return ChatResponse.builder()
                 .message("Sorry, I encountered an error processing your request: " + e.getMessage())
                 .error(true)
                 .timestamp(new Date())
                 .build();
+        } finally {
+            active.stop();
         }
     }
     
+    /**
+     * Process a chat request without blocking the calling thread
+     * @param request The chat request
+     * @param sessionId Optional session ID for maintaining conversation history
+     * @return Mono emitting the AI's response once the upstream call completes
+     */
+    public Mono<ChatResponse> chatReactive(ChatRequest request, String sessionId) {
+        return Mono.using(() -> metrics.startRequest("reactive"), active -> Mono.defer(() -> {
+            logger.info("=== 비동기 채팅 요청 처리 시작 === 세션 ID: {}", sessionId);
+            Prompt prompt = buildPrompt(request, sessionId);
+            Mono<String> upstream = Mono.defer(() -> reactiveChatModel.call(prompt))
+                .map(aiResponse -> aiResponse.getResult().getOutput().getText());
+            return useCache(request)
+                ? responseCache.getReactive(ChatResponseCache.key(model(request), prompt), () -> upstream)
+                : upstream;
+        })
+            // Client gone: the cancel reaches the upstream exchange, which is closed
+            .doOnCancel(() -> cancelled("reactive", active, sessionId, request, 0))
+            .map(responseText -> {
+                if (sessionId != null) {
+                    addToHistory(sessionId, request, responseText);
+                }
+                complete("reactive", active, sessionId, request, responseText.length(), null);
+                return ChatResponse.builder()
+                    .message(responseText)
+                    .model(request.getModel() != null ? request.getModel() : defaultModel)
+                    .sessionId(sessionId)
+                    .timestamp(new Date())
+                    .build();
+            })
+            .onErrorResume(e -> {
+                complete("reactive", active, sessionId, request, 0, e);
+                if (e instanceof UpstreamUnavailableException) {
+                    // Shed load: surfaced as 429/503 with Retry-After, as chat() does
+                    return Mono.error(e);
+                }
+                logger.error("Error processing reactive chat request: ", e);
+                return Mono.just(ChatResponse.builder()
+                    .message("Sorry, I encountered an error processing your request: " + e.getMessage())
+                    .error(true)
+                    .timestamp(new Date())
+                    .build());
+            }), LongTaskTimer.Sample::stop);
+    }
+    
     /**
      * Stream chat responses (for real-time streaming)
      * @param request The chat request
@@ -116,30 +220,42 @@ public class ChatService {
      * @return Flux of response chunks
      */
     public Flux<String> streamChat(ChatRequest request, String sessionId) {
-        try {
-            logger.info("Starting streaming chat - Message: {}", request.getMessage());
+        return Flux.using(() -> metrics.startRequest("stream"), active -> Flux.defer(() -> {
+            logger.info("Starting streaming chat - session: {}", sessionId);
+            contentLogger.debug("Streaming chat message: {}", request.getMessage());
             
             // Build the prompt
             Prompt prompt = buildPrompt(request, sessionId);
             
-            // For now, return a single response as streaming is not directly supported
-            // This can be enhanced when streaming is available in the model
-            org.springframework.ai.chat.model.ChatResponse aiResponse = chatModel.call(prompt);
-            String response = aiResponse.getResult().getOutput().getText();
+            // Forward upstream deltas as they arrive; history is committed once the stream completes
+            String cacheKey = useCache(request) ? ChatResponseCache.key(model(request), prompt) : null;
+            StringBuilder response = new StringBuilder();
+            Flux<String> upstream = reactiveChatModel.stream(prompt)
+                .map(chunk -> chunk.getResult().getOutput().getText())
+                .filter(text -> text != null && !text.isEmpty())
+                .doOnNext(response::append)
+                .doOnComplete(() -> {
+                    if (cacheKey != null) {
+                        responseCache.put(cacheKey, response.toString());
+                    }
+                });
             
-            // Store in history
-            if (sessionId != null) {
-                addToHistory(sessionId, request.getMessage(), response);
-            }
-            
-            // Simulate streaming by breaking response into chunks
-            return Flux.fromIterable(Arrays.asList(response.split(" ")))
-                .map(word -> word + " ");
-                
-        } catch (Exception e) {
+            // A cache hit (or an identical call already in flight) is sent as a single chunk
+            Flux<String> texts = cacheKey == null ? upstream
+                : responseCache.lookup(cacheKey).doOnNext(response::append).flux().switchIfEmpty(upstream);
+            // A disconnected client cancels the stream, which aborts the upstream generation;
+            // nothing is added to the history then
+            return texts.doOnComplete(() -> {
+                if (sessionId != null) {
+                    addToHistory(sessionId, request, response.toString());
+                }
+                complete("stream", active, sessionId, request, response.length(), null);
+            }).doOnCancel(() -> cancelled("stream", active, sessionId, request, response.length()));
+        }).onErrorResume(e -> {
             logger.error("Error in streaming chat: ", e);
+            complete("stream", active, sessionId, request, 0, e);
             return Flux.just("Error: " + e.getMessage());
-        }
+        }), LongTaskTimer.Sample::stop);
     }
     
     /**
@@ -148,7 +264,7 @@ public class ChatService {
      * @return List of chat messages in the session
      */
     public List<ChatMessage> getChatHistory(String sessionId) {
-        return chatHistories.getOrDefault(sessionId, new ArrayList<>());
+        return historyStore.getHistory(sessionId);
     }
     
     /**
@@ -156,83 +272,169 @@ public class ChatService {
      * @param sessionId The session ID
      */
     public void clearChatHistory(String sessionId) {
-        chatHistories.remove(sessionId);
+        historyStore.clear(sessionId);
+        summarizer.clear(sessionId);
         logger.info("Cleared chat history for session: {}", sessionId);
     }
     
     /**
-     * Build a prompt with conversation context
+     * Build a prompt with conversation context that fits the model's token budget
      */
-    private Prompt buildPrompt(ChatRequest request, String sessionId) {
+    Prompt buildPrompt(ChatRequest request, String sessionId) {
         List<Message> messages = new ArrayList<>();
+        String model = request.getModel() != null ? request.getModel() : defaultModel;
         
         // Add system message
-        String systemPrompt = request.getSystemPrompt() != null ?
-            request.getSystemPrompt() : DEFAULT_SYSTEM_PROMPT;
-        messages.add(new SystemMessage(systemPrompt));
-        logger.debug("시스템 프롬프트 추가: {}", systemPrompt);
+        String systemPrompt = systemPrompt(request);
+        messages.add(PromptFragments.system(systemPrompt));
+        contentLogger.debug("시스템 프롬프트 추가: {}", systemPrompt);
         
-        // Add conversation history if available
-        if (sessionId != null) {
-            List<ChatMessage> history = getChatHistory(sessionId);
-            logger.debug("대화 히스토리 개수: {}", history.size());
-            for (ChatMessage msg : history) {
-                if ("user".equalsIgnoreCase(msg.getRole())) {
-                    messages.add(new UserMessage(msg.getContent()));
-                    logger.debug("히스토리 - 사용자: {}", msg.getContent());
-                } else if ("assistant".equalsIgnoreCase(msg.getRole())) {
-                    messages.add(new AssistantMessage(msg.getContent()));
-                    logger.debug("히스토리 - AI: {}", msg.getContent());
-                }
+        // Older turns that no longer fit are represented by the rolling summary
+        String summary = summarizer.getSummary(sessionId);
+        if (summary != null) {
+            messages.add(new SystemMessage(SUMMARY_PREFIX + summary));
+        }
+        
+        // Add as much recent conversation history as the budget allows
+        List<ChatMessage> history = sessionId != null ? getChatHistory(sessionId) : List.of();
+        ContextWindowManager.ContextWindow window = contextWindowManager.fit(
+            model, request.getMaxTokens(), systemPrompt, summary, history, request.getMessage());
+        logger.debug("대화 히스토리 개수: {} (포함 {}, 제외 {})",
+            history.size(), window.kept().size(), window.dropped().size());
+        // History messages reuse their encoded JSON, so only the new message is serialized per turn
+        for (ChatMessage msg : window.kept()) {
+            Message message = PromptFragments.history(msg);
+            if (message != null) {
+                messages.add(message);
+                contentLogger.debug("히스토리 - {}: {}", msg.getRole(), msg.getContent());
             }
         }
         
         // Add current user message - 이 부분이 중요: 사용자의 현재 메시지가 프롬프트에 포함됨
         messages.add(new UserMessage(request.getMessage()));
-        logger.info("현재 사용자 메시지를 프롬프트에 추가: {}", request.getMessage());
+        contentLogger.debug("현재 사용자 메시지를 프롬프트에 추가: {}", request.getMessage());
+        logger.debug("예상 프롬프트 토큰: {}, 응답 예약 토큰: {}", window.promptTokens(), window.completionTokens());
         
-        return new Prompt(messages);
+        // The model (id or group) is resolved to an endpoint by the ModelRouter
+        ChatOptions options = ChatOptions.builder()
+            .model(model)
+            .temperature(request.getTemperature() != null ? request.getTemperature() : temperature)
+            .maxTokens(window.completionTokens())
+            .build();
+        return new Prompt(messages, options);
     }
     
     /**
-     * Add messages to chat history
+     * Add messages to chat history and refresh the rolling summary in the background
      */
-    private void addToHistory(String sessionId, String userMessage, String assistantMessage) {
-        List<ChatMessage> history = chatHistories.computeIfAbsent(sessionId, k -> new ArrayList<>());
-        
-        // Add user message
-        history.add(ChatMessage.builder()
+    void addToHistory(String sessionId, ChatRequest request, String assistantMessage) {
+        // The store keeps the time as epoch millis, so one Date serves the whole turn; the ids tell
+        // the two messages apart (see ConversationSummarizer)
+        Date now = new Date();
+        ChatMessage question = ChatMessage.builder()
             .role("user")
-            .content(userMessage)
-            .timestamp(new Date())
-            .build());
-        
-        // Add assistant message
-        history.add(ChatMessage.builder()
+            .content(request.getMessage())
+            .timestamp(now)
+            .messageId(UUID.randomUUID().toString())
+            .build();
+        ChatMessage answer = ChatMessage.builder()
             .role("assistant")
             .content(assistantMessage)
-            .timestamp(new Date())
-            .build());
+            .timestamp(now)
+            .messageId(UUID.randomUUID().toString())
+            .build();
+        // Measured once here; the estimate is stored with the message for every later prompt
+        TokenEstimator.estimate(question);
+        TokenEstimator.estimate(answer);
+        historyStore.append(sessionId, List.of(question, answer));
         
-        // Limit history size to prevent memory issues (keep last 20 messages)
-        if (history.size() > 20) {
-            history.subList(0, history.size() - 20).clear();
+        summarizer.onTurnCompleted(sessionId,
+            request.getModel() != null ? request.getModel() : defaultModel,
+            request.getMaxTokens(), systemPrompt(request));
+    }
+    
+    /**
+     * Call the model unless a similar first-turn prompt has already been answered
+     */
+    private String callModel(ChatRequest request, Prompt prompt) {
+        String partition = useCache(request) ? semanticCache.partition(model(request), prompt) : null;
+        // Embedded once for the lookup and, on a miss, the store
+        SemanticResponseCache.Query query = partition != null
+            ? semanticCache.query(partition, request.getMessage()) : null;
+        if (query != null) {
+            Optional<String> cached = semanticCache.lookup(query);
+            if (cached.isPresent()) {
+                logger.info("시맨틱 캐시 적중");
+                return cached.get();
+            }
+        }
+        long start = System.nanoTime();
+        String responseText = callModel(prompt);
+        if (query != null) {
+            semanticCache.store(query, responseText, System.nanoTime() - start);
         }
+        return responseText;
+    }
+    
+    /**
+     * Record the outcome of a request: response metrics and one summary log event
+     * carrying ids, sizes and timing but no message content
+     */
+    private void complete(String path, LongTaskTimer.Sample active, String sessionId, ChatRequest request,
+                          int responseChars, Throwable error) {
+        metrics.recordResponse(path, error != null);
+        logOutcome(path, active, sessionId, request, responseChars, error == null ? "success" : "error", error);
+    }
+    
+    /**
+     * Record a request abandoned by its client
+     */
+    private void cancelled(String path, LongTaskTimer.Sample active, String sessionId, ChatRequest request,
+                           int responseChars) {
+        metrics.recordCancelled(path);
+        logOutcome(path, active, sessionId, request, responseChars, "cancelled", null);
+    }
+    
+    private void logOutcome(String path, LongTaskTimer.Sample active, String sessionId, ChatRequest request,
+                            int responseChars, String outcome, Throwable error) {
+        if (requestLogger.isInfoEnabled()) {
+            long durationMs = (long) active.duration(TimeUnit.MILLISECONDS);
+            requestLogger.atInfo()
+                .addKeyValue("path", path)
+                .addKeyValue("sessionId", sessionId)
+                .addKeyValue("model", model(request))
+                .addKeyValue("requestChars", request.getMessage().length())
+                .addKeyValue("responseChars", responseChars)
+                .addKeyValue("durationMs", durationMs)
+                .addKeyValue("outcome", outcome)
+                .addKeyValue("error", error != null ? error.getClass().getSimpleName() : null)
+                .log("chat {} {} in {} ms (session {}, {} -> {} chars)",
+                    path, outcome, durationMs, sessionId, request.getMessage().length(), responseChars);
+        }
+    }
+    
+    private String callModel(Prompt prompt) {
+        return chatModel.call(prompt).getResult().getOutput().getText();
+    }
+    
+    private boolean useCache(ChatRequest request) {
+        return responseCache.isEnabled() && !request.isSkipCache();
+    }
+    
+    private String model(ChatRequest request) {
+        return request.getModel() != null ? request.getModel() : defaultModel;
+    }
+    
+    private String systemPrompt(ChatRequest request) {
+        return request.getSystemPrompt() != null ? request.getSystemPrompt() : DEFAULT_SYSTEM_PROMPT;
     }
     
     /**
-     * Get available models (for future multi-model support)
+     * Get the models a request may name: model ids, then groups of equivalent models
      * @return List of available model names
      */
     public List<String> getAvailableModels() {
-        return Arrays.asList(
-            "gpt-3.5-turbo",
-            "gpt-4",
-            "claude-3-opus",
-            "claude-3-sonnet",
-            "gemini-pro",
-            "mistral-medium"
-        );
+        return router.getModelNames();
     }
     
     /**
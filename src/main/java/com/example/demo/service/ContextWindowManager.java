@@ -0,0 +1,108 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fits conversation history into a per-model token budget.
+ * <p>
+ * The prompt budget is the model's context budget minus the tokens reserved
+ * for the completion (ChatRequest.maxTokens, or the configured default). The
+ * system prompt, the rolling summary (if any) and the current user message
+ * are always kept; history is added newest first and the oldest messages are
+ * dropped once the budget is exhausted.
+ */
+@Component
+public class ContextWindowManager {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ContextWindowManager.class);
+    
+    private final int defaultContextTokens;
+    
+    private final Map<String, Integer> modelContextTokens;
+    
+    private final int defaultCompletionTokens;
+    
+    public ContextWindowManager(@Value("${chat.context.default-budget:8000}") int defaultContextTokens,
+                                @Value("#{${chat.context.model-budgets:{:}}}") Map<String, Integer> modelContextTokens,
+                                @Value("${spring.ai.openai.chat.options.max-tokens:2000}") int defaultCompletionTokens) {
+        this.defaultContextTokens = defaultContextTokens;
+        this.modelContextTokens = Map.copyOf(modelContextTokens);
+        this.defaultCompletionTokens = defaultCompletionTokens;
+    }
+    
+    /**
+     * Select the history that fits the prompt budget
+     * @param model Model the prompt is sent to
+     * @param maxTokens Requested completion tokens, or null for the default
+     * @param systemPrompt System prompt text
+     * @param summary Rolling summary of older turns, or null
+     * @param history Session history, oldest first
+     * @param userMessage Current user message
+     * @return The kept and dropped history plus the estimated prompt size
+     */
+    public ContextWindow fit(String model, Integer maxTokens, String systemPrompt, String summary,
+                             List<ChatMessage> history, String userMessage) {
+        int completionTokens = completionTokens(maxTokens);
+        int promptBudget = Math.max(0, contextTokens(model) - completionTokens);
+        
+        int used = TokenEstimator.estimateMessage(systemPrompt) + TokenEstimator.estimateMessage(userMessage);
+        if (summary != null) {
+            used += TokenEstimator.estimateMessage(summary);
+        }
+        
+        // Walk back from the newest message until the budget runs out
+        int first = history.size();
+        while (first > 0) {
+            int tokens = TokenEstimator.estimate(history.get(first - 1));
+            if (used + tokens > promptBudget) {
+                break;
+            }
+            used += tokens;
+            first--;
+        }
+        // Never start the window with an assistant reply whose question was dropped
+        if (first < history.size() && first > 0 && "assistant".equalsIgnoreCase(history.get(first).getRole())) {
+            used -= TokenEstimator.estimate(history.get(first));
+            first++;
+        }
+        
+        if (first > 0) {
+            logger.debug("컨텍스트 예산 초과로 오래된 메시지 {}개 제외 (model: {}, budget: {})",
+                first, model, promptBudget);
+        }
+        return new ContextWindow(history.subList(first, history.size()), history.subList(0, first),
+            used, completionTokens);
+    }
+    
+    /**
+     * Total context tokens for a model (prompt + completion)
+     */
+    public int contextTokens(String model) {
+        return model != null ? modelContextTokens.getOrDefault(model, defaultContextTokens) : defaultContextTokens;
+    }
+    
+    /**
+     * Tokens reserved for the completion
+     */
+    public int completionTokens(Integer maxTokens) {
+        return maxTokens != null && maxTokens > 0 ? maxTokens : defaultCompletionTokens;
+    }
+    
+    /**
+     * Result of fitting history into the budget
+     * @param kept History that goes into the prompt, oldest first
+     * @param dropped Older history that did not fit, oldest first
+     * @param promptTokens Estimated tokens of system prompt, summary, kept history and user message
+     * @param completionTokens Tokens reserved for the completion
+     */
+    public record ContextWindow(List<ChatMessage> kept, List<ChatMessage> dropped,
+                                int promptTokens, int completionTokens) {
+    }
+}
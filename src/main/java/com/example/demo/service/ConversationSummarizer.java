@@ -0,0 +1,213 @@
+package com.example.demo.service;
+
+import com.example.demo.history.ChatHistoryStore;
+import com.example.demo.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Compresses turns that fall out of the context window into a rolling
+ * per-session summary.
+ * <p>
+ * After a response completes, the session's history is re-fitted to the
+ * budget in the background; messages that no longer fit and come after the
+ * summary's watermark are folded into the summary with one extra model
+ * call. The watermark is the id of the newest message summarized so far,
+ * found again by its position in the history: both messages of a turn carry
+ * the same timestamp, so time cannot tell whether the second was covered. The request path only reads the cached summary, which buildPrompt
+ * injects as a system message. At most one summarization per session runs at
+ * a time; a turn that arrives meanwhile is picked up by the next one.
+ */
+@Component
+public class ConversationSummarizer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ConversationSummarizer.class);
+    
+    private static final String SUMMARY_INSTRUCTIONS =
+        "You maintain a running summary of a conversation between a user and an AI assistant. "
+            + "Merge the existing summary with the new messages into one concise summary. Keep facts, "
+            + "names, decisions, open questions and user preferences; drop pleasantries. "
+            + "Reply with the summary only, in the language of the conversation.";
+    
+    private final ChatModel chatModel;
+    
+    private final ChatHistoryStore historyStore;
+    
+    private final ContextWindowManager contextWindowManager;
+    
+    private final Executor executor;
+    
+    private final boolean enabled;
+    
+    private final int summaryMaxTokens;
+    
+    private final long idleTtlMillis;
+    
+    private final Map<String, Summary> summaries = new ConcurrentHashMap<>();
+    
+    // Sessions with a summarization in progress
+    private final Map<String, Boolean> running = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public ConversationSummarizer(@Qualifier("openRouterChatModel") ChatModel chatModel,
+                                  ChatHistoryStore historyStore,
+                                  ContextWindowManager contextWindowManager,
+                                  @Value("${chat.summary.enabled:true}") boolean enabled,
+                                  @Value("${chat.summary.max-tokens:300}") int summaryMaxTokens,
+                                  @Value("${chat.history.idle-ttl:30m}") Duration idleTtl) {
+        this(chatModel, historyStore, contextWindowManager, Executors.newVirtualThreadPerTaskExecutor(),
+            enabled, summaryMaxTokens, idleTtl);
+    }
+    
+    ConversationSummarizer(ChatModel chatModel, ChatHistoryStore historyStore,
+                           ContextWindowManager contextWindowManager, Executor executor,
+                           boolean enabled, int summaryMaxTokens, Duration idleTtl) {
+        this.chatModel = chatModel;
+        this.historyStore = historyStore;
+        this.contextWindowManager = contextWindowManager;
+        this.executor = executor;
+        this.enabled = enabled;
+        this.summaryMaxTokens = summaryMaxTokens;
+        this.idleTtlMillis = idleTtl.toMillis();
+    }
+    
+    /**
+     * @return The cached summary text of older turns, or null if there is none yet
+     */
+    public String getSummary(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        Summary summary = summaries.get(sessionId);
+        if (summary == null) {
+            return null;
+        }
+        summary.lastUsed = System.currentTimeMillis();
+        return summary.text;
+    }
+    
+    /**
+     * Schedule a background summary update after a completed turn
+     */
+    public void onTurnCompleted(String sessionId, String model, Integer maxTokens, String systemPrompt) {
+        if (!enabled || sessionId == null || running.putIfAbsent(sessionId, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    summarize(sessionId, model, maxTokens, systemPrompt);
+                } catch (Exception e) {
+                    logger.warn("대화 요약 실패 (session: {}): {}", sessionId, e.getMessage());
+                } finally {
+                    running.remove(sessionId);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.remove(sessionId);
+            throw e;
+        }
+    }
+    
+    /**
+     * Forget the summary of a session
+     */
+    public void clear(String sessionId) {
+        summaries.remove(sessionId);
+    }
+    
+    /**
+     * Drop summaries of sessions that have been idle past the history TTL
+     */
+    @Scheduled(fixedDelayString = "${chat.history.sweep-interval:60s}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTtlMillis;
+        summaries.values().removeIf(summary -> summary.lastUsed < cutoff);
+    }
+    
+    private void summarize(String sessionId, String model, Integer maxTokens, String systemPrompt) {
+        Summary previous = summaries.get(sessionId);
+        String previousText = previous != null ? previous.text : null;
+        
+        // Fit as if for the next turn; what no longer fits is due for summarization
+        List<ChatMessage> history = historyStore.getHistory(sessionId);
+        ContextWindowManager.ContextWindow window =
+            contextWindowManager.fit(model, maxTokens, systemPrompt, previousText, history, "");
+        List<ChatMessage> dropped = window.dropped();
+        List<ChatMessage> pending = dropped.subList(
+            firstPending(history, dropped.size(), previous != null ? previous.coveredThrough : null),
+            dropped.size());
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        StringBuilder transcript = new StringBuilder();
+        if (previousText != null) {
+            transcript.append("Existing summary:\n").append(previousText).append("\n\n");
+        }
+        transcript.append("New messages:\n");
+        for (ChatMessage message : pending) {
+            transcript.append(message.getRole()).append(": ").append(message.getContent()).append('\n');
+        }
+        
+        Prompt prompt = new Prompt(
+            List.of(new SystemMessage(SUMMARY_INSTRUCTIONS), new UserMessage(transcript.toString())),
+            ChatOptions.builder().model(model).temperature(0.2).maxTokens(summaryMaxTokens).build());
+        String text = chatModel.call(prompt).getResult().getOutput().getText();
+        
+        if (text != null && !text.isBlank()) {
+            summaries.put(sessionId, new Summary(text.trim(), pending.get(pending.size() - 1).getMessageId()));
+            logger.debug("대화 요약 갱신 (session: {}, 새로 요약된 메시지 {}개)", sessionId, pending.size());
+        }
+    }
+    
+    /**
+     * Index of the first dropped message the summary does not cover yet
+     * @param dropped Number of dropped messages; they are the oldest of the history
+     * @param watermark Id of the newest summarized message, or null
+     */
+    private static int firstPending(List<ChatMessage> history, int dropped, String watermark) {
+        if (watermark == null) {
+            return 0;
+        }
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (watermark.equals(history.get(i).getMessageId())) {
+                return Math.min(i + 1, dropped);
+            }
+        }
+        // Trimmed from the history, so everything still in it is newer
+        return 0;
+    }
+    
+    private static final class Summary {
+        
+        private final String text;
+        
+        // Id of the newest message folded into the summary; null if it had none
+        private final String coveredThrough;
+        
+        private volatile long lastUsed = System.currentTimeMillis();
+        
+        Summary(String text, String coveredThrough) {
+            this.text = text;
+            this.coveredThrough = coveredThrough;
+        }
+    }
+}
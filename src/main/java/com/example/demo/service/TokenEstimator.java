@@ -0,0 +1,58 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ChatMessage;
+
+/**
+ * Cheap tokenizer-free token estimate.
+ * <p>
+ * BPE vocabularies average roughly four ASCII characters per token, while
+ * Hangul, CJK and other non-ASCII characters usually cost about one token
+ * each. Every chat message also carries a few tokens of role framing.
+ */
+public final class TokenEstimator {
+    
+    static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    
+    private TokenEstimator() {
+    }
+    
+    /**
+     * Estimate tokens for a piece of text, without message framing
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+    
+    /**
+     * Estimate tokens for a chat message including framing. The result is
+     * cached on the message so history is only measured once.
+     */
+    public static int estimate(ChatMessage message) {
+        int cached = message.getTokenCount();
+        if (cached >= 0) {
+            return cached;
+        }
+        int tokens = estimate(message.getContent()) + MESSAGE_OVERHEAD_TOKENS;
+        message.setTokenCount(tokens);
+        return tokens;
+    }
+    
+    /**
+     * Estimate tokens for a raw message text including framing
+     */
+    public static int estimateMessage(String text) {
+        return estimate(text) + MESSAGE_OVERHEAD_TOKENS;
+    }
+}
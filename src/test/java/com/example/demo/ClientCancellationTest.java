@@ -0,0 +1,126 @@
+package com.example.demo;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.demo.resilience.CancellationToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * A caller that goes away aborts the upstream exchange of OpenRouterChatModel
+ * and ReactiveOpenRouterChatModel right away instead of letting the generation run to completion.
+ */
+class ClientCancellationTest {
+
+    private final Logger modelLogger = (Logger) LoggerFactory.getLogger(OpenRouterChatModel.class);
+
+    private StubOpenRouterServer stub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        modelLogger.setLevel(Level.OFF);
+        stub = StubOpenRouterServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+        modelLogger.setLevel(null);
+    }
+
+    @Test
+    void cancellingAReactiveStreamClosesTheUpstreamConnection() throws InterruptedException {
+        stub.setReply("word ".repeat(50).trim());
+        stub.setChunkDelay(Duration.ofMillis(100));
+        ReactiveOpenRouterChatModel model = stub.reactiveChatModel();
+
+        long start = System.nanoTime();
+        List<ChatResponse> received = model.stream(prompt(100)).take(2).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(received).hasSize(2);
+        // The stub notices on its next write, long before the 5 s the whole answer takes
+        awaitTrue(() -> stub.abortedStreams() == 1);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(model.getInFlightCount()).isZero();
+        assertThat(stub.meterRegistry().get("openrouter.requests.cancelled").tag("mode", "stream").counter().count())
+            .isEqualTo(1);
+        assertThat(stub.meterRegistry().get("openrouter.tokens.saved").counter().count()).isEqualTo(98);
+    }
+
+    @Test
+    void cancellingTheCallersTokenAbortsABlockingCall() throws Exception {
+        stub.setLatency(Duration.ofSeconds(5));
+        OpenRouterChatModel model = stub.chatModel(8);
+        CancellationToken token = new CancellationToken();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            long start = System.nanoTime();
+            Future<ChatResponse> call = caller.submit(() -> {
+                try (CancellationToken.Scope scope = token.bind()) {
+                    return model.call(prompt(200));
+                }
+            });
+            awaitTrue(() -> model.getInFlightCount() == 1 && stub.requestCount() == 1);
+            token.cancel();
+
+            assertThatThrownBy(() -> call.get(2, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3));
+            assertThat(model.getInFlightCount()).isZero();
+            assertThat(stub.meterRegistry().get("openrouter.requests.cancelled").tag("mode", "call").counter()
+                .count()).isEqualTo(1);
+            assertThat(stub.meterRegistry().get("openrouter.tokens.saved").counter().count()).isEqualTo(200);
+            // Not reported as an upstream failure
+            assertThat(stub.meterRegistry().find("openrouter.request.duration").timers()).isEmpty();
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    void tokenRunsActionsOnceAndStopsAtRegistrationClose() {
+        CancellationToken token = new CancellationToken();
+        int[] runs = new int[3];
+        token.onCancel(() -> runs[0]++);
+        token.onCancel(() -> runs[1]++).close();
+
+        token.cancel();
+        token.cancel();
+        token.onCancel(() -> runs[2]++);
+
+        assertThat(runs).containsExactly(1, 0, 1);
+        assertThat(token.isCancelled()).isTrue();
+        try (CancellationToken.Scope scope = token.bind()) {
+            assertThat(CancellationToken.isCurrentCancelled()).isTrue();
+        }
+        assertThat(CancellationToken.current()).isNull();
+    }
+
+    private static Prompt prompt(int maxTokens) {
+        return new Prompt("hello", ChatOptions.builder().maxTokens(maxTokens).build());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.demo;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.demo.routing.HedgePolicy;
+import com.example.demo.routing.ModelRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hedging against stubs where every tenth request is slow: hedged calls stop
+ * paying for the slow ones, within the hedge budget. Calls are hedged by
+ * OpenRouterChatModel and streams by ReactiveOpenRouterChatModel.
+ */
+class HedgedRequestTest {
+
+    private static final Duration FAST = Duration.ofMillis(5);
+
+    private static final Duration SLOW = Duration.ofMillis(800);
+
+    private final Logger modelLogger = (Logger) LoggerFactory.getLogger(OpenRouterChatModel.class);
+
+    private StubOpenRouterServer stub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        modelLogger.setLevel(Level.WARN);
+        stub = StubOpenRouterServer.start();
+        stub.setLatency(FAST);
+        stub.setSlowEvery(10, SLOW);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+        modelLogger.setLevel(null);
+    }
+
+    @Test
+    void hedgingCutsTheTail() {
+        OpenRouterChatModel plain = stub.chatModel(16);
+        OpenRouterChatModel hedged = stub.chatModel(16, stub.router(), hedging(0.2));
+        Prompt prompt = new Prompt("hello");
+
+        long plainMax = maxLatencyMillis(plain, prompt, 40);
+        // Warm-up: enough samples for the percentile before measuring
+        maxLatencyMillis(hedged, prompt, 30);
+        stub.resetStats();
+        long hedgedMax = maxLatencyMillis(hedged, prompt, 40);
+
+        assertThat(plainMax).isGreaterThanOrEqualTo(SLOW.toMillis());
+        assertThat(hedgedMax).isLessThan(SLOW.toMillis() / 2);
+        // Each slow request costs one extra attempt, nothing more
+        assertThat(stub.requestCount()).isLessThanOrEqualTo(40 + 8);
+    }
+
+    @Test
+    void spentBudgetFallsBackToWaiting() {
+        OpenRouterChatModel hedged = stub.chatModel(16, stub.router(), hedging(0.0));
+        Prompt prompt = new Prompt("hello");
+
+        maxLatencyMillis(hedged, prompt, 30);
+        stub.resetStats();
+        long hedgedMax = maxLatencyMillis(hedged, prompt, 20);
+
+        assertThat(hedgedMax).isGreaterThanOrEqualTo(SLOW.toMillis());
+        assertThat(stub.requestCount()).isEqualTo(20);
+    }
+
+    @Test
+    void hedgesToAnAlternateModelOfTheGroup() throws Exception {
+        try (StubOpenRouterServer alternate = StubOpenRouterServer.start()) {
+            stub.setSlowEvery(0, Duration.ZERO);
+            stub.setLatency(SLOW);
+            alternate.setReply("alternate reply");
+            ModelRouter router = new ModelRouter(List.of(stub.route("primary", "pool"),
+                alternate.route("alternate", "pool")), "pool", Duration.ofSeconds(10), Duration.ofSeconds(10));
+            HedgePolicy hedging = new HedgePolicy(true, 0.95, 1.0, 10, Duration.ofMillis(20),
+                Duration.ofMillis(100), 512, 20);
+            OpenRouterChatModel model = stub.chatModel(16, router, hedging);
+            Prompt prompt = new Prompt("hello", ChatOptions.builder().model("pool").build());
+
+            // Whichever member the router starts with, the answer comes from the fast one
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                ChatResponse response = model.call(prompt);
+                long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+                assertThat(response.getResult().getOutput().getText()).isEqualTo("alternate reply");
+                assertThat(elapsedMillis).isLessThan(SLOW.toMillis());
+            }
+        }
+    }
+
+    @Test
+    void streamsAreHedgedOnTheFirstToken() throws Exception {
+        try (StubOpenRouterServer alternate = StubOpenRouterServer.start()) {
+            stub.setSlowEvery(0, Duration.ZERO);
+            stub.setLatency(SLOW);
+            alternate.setReply("from the alternate");
+            ModelRouter router = new ModelRouter(List.of(stub.route("primary", "pool"),
+                alternate.route("alternate", "pool")), "primary", Duration.ofSeconds(10), Duration.ofSeconds(10));
+            HedgePolicy hedging = new HedgePolicy(true, 0.95, 1.0, 10, Duration.ofMillis(20),
+                Duration.ofMillis(100), 512, 20);
+            ReactiveOpenRouterChatModel model = stub.reactiveChatModel(router, hedging);
+
+            long start = System.nanoTime();
+            String text = model.stream(new Prompt("hello", ChatOptions.builder().model("pool").build()))
+                .map(chunk -> chunk.getResult().getOutput().getText())
+                .collect(Collectors.joining())
+                .block();
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            assertThat(text).isEqualTo("from the alternate ");
+            assertThat(elapsedMillis).isLessThan(SLOW.toMillis());
+            // The losing attempt is cancelled and its exchange closed
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (model.getInFlightCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(model.getInFlightCount()).isZero();
+        }
+    }
+
+    @Test
+    void failedStreamHedgeLeavesTheFirstAttempt() throws Exception {
+        try (StubOpenRouterServer alternate = StubOpenRouterServer.start()) {
+            stub.setSlowEvery(0, Duration.ZERO);
+            stub.setLatency(Duration.ofMillis(300));
+            stub.setReply("from the primary");
+            alternate.setFailureStatus(500);
+            ModelRouter router = new ModelRouter(List.of(stub.route("primary", "pool"),
+                alternate.route("alternate", "pool")), "primary", Duration.ofSeconds(10), Duration.ofSeconds(10));
+            // A past failure makes the group start on the primary and hedge to the alternate
+            router.complete(router.select("alternate"), Duration.ofMillis(5).toNanos(), new RuntimeException());
+            HedgePolicy hedging = new HedgePolicy(true, 0.95, 1.0, 10, Duration.ofMillis(20),
+                Duration.ofMillis(50), 512, 20);
+            ReactiveOpenRouterChatModel model = stub.reactiveChatModel(router, hedging);
+
+            String text = model.stream(new Prompt("hello", ChatOptions.builder().model("pool").build()))
+                .map(chunk -> chunk.getResult().getOutput().getText())
+                .collect(Collectors.joining())
+                .block();
+
+            assertThat(text).isEqualTo("from the primary ");
+            assertThat(alternate.requestCount()).isEqualTo(1);
+        }
+    }
+
+    private static HedgePolicy hedging(double budget) {
+        return new HedgePolicy(true, 0.8, budget, 10, Duration.ofMillis(20), Duration.ofSeconds(10), 512, 20);
+    }
+
+    private static long maxLatencyMillis(OpenRouterChatModel model, Prompt prompt, int calls) {
+        long max = 0;
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            model.call(prompt);
+            max = Math.max(max, Duration.ofNanos(System.nanoTime() - start).toMillis());
+        }
+        return max;
+    }
+}
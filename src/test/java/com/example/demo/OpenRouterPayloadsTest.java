@@ -0,0 +1,279 @@
+package com.example.demo;
+
+import com.example.demo.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenRouterPayloadsTest {
+
+    private static final String RESPONSE = """
+        {"id":"gen-1729000000-abcdefghijklmnop","provider":"Anthropic","model":"anthropic/claude-3.5-sonnet",
+         "object":"chat.completion","created":1729000000,
+         "choices":[{"logprobs":null,"finish_reason":"stop","native_finish_reason":"end_turn","index":0,
+           "message":{"role":"assistant","content":"Swing is a GUI toolkit for Java. It provides lightweight components.",
+             "refusal":null,"reasoning":null,"annotations":[{"type":"url_citation","url":"https://example.com"}]}}],
+         "usage":{"prompt_tokens":412,"completion_tokens":18,"total_tokens":430,
+           "prompt_tokens_details":{"cached_tokens":0},"completion_tokens_details":{"reasoning_tokens":0}}}
+        """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesTypedRequestWithRolesFromMessageType() throws IOException {
+        Prompt prompt = new Prompt(List.of(
+            new SystemMessage("Be brief."),
+            new UserMessage("Hi \"there\""),
+            new AssistantMessage("Hello!"),
+            new UserMessage("안녕하세요")),
+            ChatOptions.builder().temperature(0.2).maxTokens(64).build());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OpenRouterPayloads.write(OpenRouterPayloads.CompletionRequest.of(prompt, "m", true), out);
+        JsonNode json = objectMapper.readTree(out.toByteArray());
+
+        assertThat(json.path("model").asText()).isEqualTo("m");
+        assertThat(json.path("temperature").asDouble()).isEqualTo(0.2);
+        assertThat(json.path("max_tokens").asInt()).isEqualTo(64);
+        assertThat(json.path("stream").asBoolean()).isTrue();
+        assertThat(json.path("messages").findValuesAsText("role"))
+            .containsExactly("system", "user", "assistant", "user");
+        assertThat(json.path("messages").findValuesAsText("content"))
+            .containsExactly("Be brief.", "Hi \"there\"", "Hello!", "안녕하세요");
+        assertThat(json.path("stream_options").path("include_usage").asBoolean()).isTrue();
+        assertThat(out.toString(StandardCharsets.UTF_8)).contains("\"stream\":true");
+    }
+
+    @Test
+    void defaultsTemperatureAndOmitsUnsetFields() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OpenRouterPayloads.write(OpenRouterPayloads.CompletionRequest.of(new Prompt("q"), "m", false), out);
+        JsonNode json = objectMapper.readTree(out.toByteArray());
+
+        assertThat(json.path("temperature").asDouble()).isEqualTo(0.7);
+        assertThat(json.has("max_tokens")).isFalse();
+        assertThat(json.has("stream")).isFalse();
+        assertThat(json.has("stream_options")).isFalse();
+    }
+
+    @Test
+    void cachedFragmentsWriteTheSameBytesAsEncodingEachMessage() throws IOException {
+        List<ChatMessage> history = List.of(
+            new ChatMessage("user", "Hi \"there\"\n\ttab \u0001 안녕하세요 😀"),
+            new ChatMessage("assistant", "x".repeat(20_000)),
+            new ChatMessage("USER", "</script>\\"),
+            new ChatMessage("system", "not part of the history"));
+        List<Message> cached = new ArrayList<>();
+        List<Message> plain = new ArrayList<>();
+        cached.add(PromptFragments.system("Be brief."));
+        plain.add(new SystemMessage("Be brief."));
+        for (ChatMessage message : history) {
+            Message fragment = PromptFragments.history(message);
+            if (fragment != null) {
+                cached.add(fragment);
+                plain.add("assistant".equals(message.getRole())
+                    ? new AssistantMessage(message.getContent()) : new UserMessage(message.getContent()));
+            }
+        }
+        cached.add(new UserMessage("new question"));
+        plain.add(new UserMessage("new question"));
+        ChatOptions options = ChatOptions.builder().temperature(0.3).maxTokens(100).build();
+
+        ByteArrayOutputStream fromFragments = new ByteArrayOutputStream();
+        OpenRouterPayloads.write(OpenRouterPayloads.CompletionRequest.of(new Prompt(cached, options), "m", true),
+            fromFragments);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        OpenRouterPayloads.write(OpenRouterPayloads.CompletionRequest.of(new Prompt(plain, options), "m", true),
+            encoded);
+
+        assertThat(cached).hasSize(5);
+        assertThat(fromFragments.toByteArray()).isEqualTo(encoded.toByteArray());
+    }
+
+    @Test
+    void fragmentsAreEncodedOnceAndInvalidatedByEdits() {
+        ChatMessage message = new ChatMessage("user", "first");
+        byte[] fragment = PromptFragments.fragment(PromptFragments.history(message));
+
+        assertThat(PromptFragments.fragment(PromptFragments.history(message))).isSameAs(fragment);
+        assertThat(PromptFragments.system("Be brief.")).isSameAs(PromptFragments.system("Be brief."));
+
+        message.setContent("second");
+        assertThat(new String(PromptFragments.fragment(PromptFragments.history(message)), StandardCharsets.UTF_8))
+            .isEqualTo("{\"role\":\"user\",\"content\":\"second\"}");
+        assertThat(PromptFragments.fragment(new UserMessage("plain"))).isNull();
+    }
+
+    @Test
+    void rawFragmentsBehaveLikeTheSameTextInEveryForm() throws IOException {
+        String text = "{\"role\":\"user\",\"content\":\"스윙 \\\"quoted\\\"\"}";
+        OpenRouterPayloads.RawFragment raw = new OpenRouterPayloads.RawFragment(text.getBytes(StandardCharsets.UTF_8));
+        SerializedString expected = new SerializedString(text);
+
+        assertThat(raw.getValue()).isEqualTo(text);
+        assertThat(raw.charLength()).isEqualTo(text.length());
+        assertThat(raw.asQuotedChars()).isEqualTo(expected.asQuotedChars());
+        assertThat(raw.asQuotedUTF8()).isEqualTo(expected.asQuotedUTF8());
+        byte[] bytes = new byte[256];
+        assertThat(raw.appendQuotedUTF8(bytes, 3)).isEqualTo(expected.asQuotedUTF8().length);
+        char[] chars = new char[256];
+        assertThat(raw.appendQuoted(chars, 0)).isEqualTo(expected.asQuotedChars().length);
+        assertThat(raw.appendUnquoted(chars, 0)).isEqualTo(text.length());
+        ByteArrayOutputStream quoted = new ByteArrayOutputStream();
+        raw.writeQuotedUTF8(quoted);
+        assertThat(quoted.toByteArray()).isEqualTo(expected.asQuotedUTF8());
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        assertThat(raw.putQuotedUTF8(buffer)).isEqualTo(expected.asQuotedUTF8().length);
+
+        // A char-based generator takes the decoded text; as a string value it is escaped
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(writer)) {
+            generator.writeStartArray();
+            generator.writeRawValue(raw);
+            generator.writeString(raw);
+            generator.writeEndArray();
+        }
+        JsonNode array = objectMapper.readTree(writer.toString());
+        assertThat(array.get(0).get("content").asText()).isEqualTo("스윙 \"quoted\"");
+        assertThat(array.get(1).asText()).isEqualTo(text);
+    }
+
+    @Test
+    void readsContentAndUsageSkippingOtherFields() throws IOException {
+        OpenRouterPayloads.Completion completion =
+            OpenRouterPayloads.readCompletion(RESPONSE.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(completion.content()).startsWith("Swing is a GUI toolkit");
+        assertThat(completion.usage()).isEqualTo(new OpenRouterPayloads.Usage(412, 18));
+    }
+
+    @Test
+    void readsDeltaChunks() throws IOException {
+        assertThat(OpenRouterPayloads.readChunk(
+            "{\"id\":\"x\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"Hel\"}}]}"))
+            .isEqualTo(new OpenRouterPayloads.Chunk("Hel", null));
+        assertThat(OpenRouterPayloads.readChunk(
+            "{\"choices\":[{\"delta\":{},\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":7,\"completion_tokens\":3}}"))
+            .isEqualTo(new OpenRouterPayloads.Chunk("", new OpenRouterPayloads.Usage(7, 3)));
+        assertThat(OpenRouterPayloads.readChunk("{\"choices\":[]}").content()).isEmpty();
+    }
+
+    @Test
+    void errorBodiesAreReported() {
+        assertThatThrownBy(() -> OpenRouterPayloads.readChunk("{\"error\":{\"code\":502,\"message\":\"Provider down\"}}"))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("Provider down");
+        assertThatThrownBy(() -> OpenRouterPayloads.readCompletion(
+            "{\"error\":{\"message\":\"Rate limited\"}}".getBytes(StandardCharsets.UTF_8)))
+            .hasMessage("Rate limited");
+    }
+
+    /**
+     * Per-call heap allocation of encoding a ten-message request and decoding a
+     * typical response, compared with the previous Map-based payloads
+     */
+    @Test
+    void allocatesLessThanMapBasedPayloads() throws IOException {
+        Prompt prompt = conversation();
+        byte[] response = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        int iterations = 20_000;
+
+        long mapBased = 0;
+        long streaming = 0;
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up both paths
+            mapBased = allocatedPerCall(iterations, () -> mapBasedRoundTrip(prompt, response));
+            streaming = allocatedPerCall(iterations, () -> streamingRoundTrip(prompt, response));
+        }
+
+        // Zero would mean the JVM does not report thread allocation and nothing was compared
+        assertThat(streaming).isPositive();
+        assertThat(streaming).isLessThan(mapBased / 2);
+    }
+
+    private String streamingRoundTrip(Prompt prompt, byte[] response) throws IOException {
+        OpenRouterPayloads.write(OpenRouterPayloads.CompletionRequest.of(prompt, "m", false),
+            OutputStream.nullOutputStream());
+        return OpenRouterPayloads.readCompletion(response).content();
+    }
+
+    // Equivalent of the previous requestBody()/content() helpers
+    @SuppressWarnings("unchecked")
+    private String mapBasedRoundTrip(Prompt prompt, byte[] response) throws IOException {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "m");
+        requestBody.put("temperature", prompt.getOptions().getTemperature());
+        requestBody.put("max_tokens", prompt.getOptions().getMaxTokens());
+        List<Map<String, String>> messages = new ArrayList<>();
+        for (Message instruction : prompt.getInstructions()) {
+            Map<String, String> message = new HashMap<>();
+            switch (instruction.getClass().getSimpleName()) {
+                case "SystemMessage" -> message.put("role", "system");
+                case "AssistantMessage" -> message.put("role", "assistant");
+                default -> message.put("role", "user");
+            }
+            message.put("content", instruction.getText());
+            messages.add(message);
+        }
+        requestBody.put("messages", messages);
+        objectMapper.writeValue(OutputStream.nullOutputStream(), requestBody);
+
+        Map<String, Object> body = objectMapper.readValue(response, Map.class);
+        Map<String, Object> choice = (Map<String, Object>) ((List<?>) body.get("choices")).get(0);
+        return (String) ((Map<String, Object>) choice.get("message")).get("content");
+    }
+
+    private static long allocatedPerCall(int iterations, IoCall call) throws IOException {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += call.run().length();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertThat(sink).isPositive();
+        return allocated / iterations;
+    }
+
+    private static Prompt conversation() {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new SystemMessage("You are a helpful AI assistant. Please provide clear, accurate, and helpful responses."));
+        for (int i = 0; i < 4; i++) {
+            messages.add(new UserMessage("Question " + i + ": how do layout managers work in Swing?"));
+            messages.add(new AssistantMessage("Answer " + i + ": a layout manager positions and sizes components."));
+        }
+        messages.add(new UserMessage("And what about GridBagLayout?"));
+        return new Prompt(messages, ChatOptions.builder().temperature(0.7).maxTokens(2000).build());
+    }
+
+    @FunctionalInterface
+    private interface IoCall {
+        String run() throws IOException;
+    }
+}
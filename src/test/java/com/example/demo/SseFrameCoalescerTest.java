@@ -0,0 +1,134 @@
+package com.example.demo;
+
+import com.example.demo.metrics.ChatMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseFrameCoalescerTest {
+
+    private final Scheduler scheduler = Schedulers.newSingle("coalescer-test");
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.dispose();
+    }
+
+    @Test
+    void fullFramesAreEmittedWithoutWaitingForTheWindow() {
+        SseFrameCoalescer coalescer = coalescer(10, Duration.ofMinutes(1));
+
+        List<String> frames = coalescer.coalesce(Flux.range(0, 12).map(i -> "word ")).collectList()
+            .block(Duration.ofSeconds(5));
+
+        // 5-byte deltas: two per 10-byte frame
+        assertThat(frames).hasSize(6).allMatch("word word "::equals);
+    }
+
+    @Test
+    void framesAreSizedInUtf8Bytes() {
+        SseFrameCoalescer coalescer = coalescer(6, Duration.ofMinutes(1));
+
+        List<String> frames = coalescer.coalesce(Flux.just("안녕", "하세요", "a", "b")).collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(frames).containsExactly("안녕", "하세요", "ab");
+    }
+
+    @Test
+    void partialFrameIsFlushedWhenItsWindowElapses() throws InterruptedException {
+        SseFrameCoalescer coalescer = coalescer(64, Duration.ofMillis(50));
+        Sinks.Many<String> deltas = Sinks.many().unicast().onBackpressureBuffer();
+        List<String> frames = new CopyOnWriteArrayList<>();
+        coalescer.coalesce(deltas.asFlux()).subscribe(frames::add);
+
+        deltas.tryEmitNext("Hello");
+        deltas.tryEmitNext(", ");
+        assertThat(frames).isEmpty();
+        awaitTrue(() -> frames.size() == 1);
+        deltas.tryEmitNext("world");
+        deltas.tryEmitComplete();
+
+        assertThat(frames).containsExactly("Hello, ", "world");
+    }
+
+    @Test
+    void slowReaderStopsPullingDeltasOnceTheFrameIsFull() throws InterruptedException {
+        SseFrameCoalescer coalescer = coalescer(20, Duration.ofMillis(10));
+        AtomicLong requested = new AtomicLong();
+        List<String> frames = new CopyOnWriteArrayList<>();
+        coalescer.coalesce(Flux.range(0, 1000).map(i -> "word ").doOnRequest(requested::addAndGet))
+            .subscribe(new BaseSubscriber<>() {
+                @Override
+                protected void hookOnSubscribe(Subscription subscription) {
+                    request(1);
+                }
+
+                @Override
+                protected void hookOnNext(String frame) {
+                    frames.add(frame);
+                }
+            });
+
+        awaitTrue(() -> frames.size() == 1);
+        Thread.sleep(100);
+
+        // One frame delivered and the next one filled; the rest of the answer is left upstream
+        assertThat(frames).hasSize(1);
+        assertThat(requested.get()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void framesRecordsDeltaFrameAndFlushCounts() {
+        SseFrameCoalescer coalescer = coalescer(10, Duration.ofMinutes(1));
+
+        List<ServerSentEvent<String>> events = coalescer.frames(Flux.range(0, 12).map(i -> "word ")).collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(events).hasSize(6).allMatch(event -> "word word ".equals(event.data()));
+        assertThat(registry.get("chat.stream.deltas").summary().totalAmount()).isEqualTo(12);
+        assertThat(registry.get("chat.stream.frames").summary().totalAmount()).isEqualTo(6);
+        assertThat(registry.get("chat.stream.flushes").summary().totalAmount()).isEqualTo(6);
+    }
+
+    @Test
+    void zeroWindowSendsEveryDelta() {
+        SseFrameCoalescer coalescer = coalescer(64, Duration.ZERO);
+
+        List<String> frames = coalescer.coalesce(Flux.just("a", "b", "c")).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(frames).containsExactly("a", "b", "c");
+    }
+
+    private SseFrameCoalescer coalescer(int frameBytes, Duration frameWindow) {
+        return new SseFrameCoalescer(frameBytes, frameWindow, Duration.ofSeconds(5), new ChatMetrics(registry),
+            scheduler);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A browser closing /api/v1/chat/stream mid-answer: the heartbeat write
+ * fails, the stream is cancelled and the upstream generation is aborted.
+ */
+@SpringBootTest(classes = DemoApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "chat.stream.heartbeat-interval=100ms",
+        "chat.cache.enabled=false",
+        "chat.summary.enabled=false"
+    })
+class StreamDisconnectTest {
+
+    private static StubOpenRouterServer stub;
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry properties) throws IOException {
+        stub = StubOpenRouterServer.start();
+        stub.setReply("word ".repeat(30).trim());
+        stub.setChunkDelay(Duration.ofMillis(200));
+        properties.add("spring.ai.openai.base-url", stub::baseUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void disconnectedClientAbortsTheUpstreamStream() throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /api/v1/chat/stream?message=hi HTTP/1.1\r\nHost: localhost\r\n"
+                + "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+            // Raw chunked response: headers, heartbeat comments, then the first delta
+            String line;
+            while ((line = in.readLine()) != null && !line.contains("word")) {
+                assertThat(line).doesNotStartWith("data:Error");
+            }
+            assertThat(line).isNotNull();
+        }
+
+        // The whole answer takes 6 s; the abort reaches the stub within a few heartbeats and deltas
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (stub.abortedStreams() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(stub.abortedStreams()).isEqualTo(1);
+        while (registry.find("chat.responses").tag("outcome", "cancelled").counter() == null
+                && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(registry.get("chat.responses").tag("path", "stream").tag("outcome", "cancelled").counter()
+            .count()).isEqualTo(1);
+        assertThat(registry.get("openrouter.requests.cancelled").tag("mode", "stream").counter().count())
+            .isEqualTo(1);
+    }
+}
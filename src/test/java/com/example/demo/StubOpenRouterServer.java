@@ -0,0 +1,330 @@
+package com.example.demo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.example.demo.config.CancellableHttpClient;
+import com.example.demo.config.CancellationExecHandler;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.resilience.AdaptiveConcurrencyLimiter;
+import com.example.demo.resilience.CircuitBreakers;
+import com.example.demo.routing.HedgePolicy;
+import com.example.demo.routing.ModelRoute;
+import com.example.demo.routing.ModelRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the OpenRouter chat/completions endpoint. Answers both
+ * plain JSON and SSE ({@code "stream":true}) requests after a configurable
+ * latency and records how many requests were in flight at once. Faults can be
+ * injected by making it answer with an error status; streams can be slowed
+ * down per delta to observe clients that hang up mid-generation.
+ */
+public class StubOpenRouterServer implements AutoCloseable {
+
+    static {
+        // The JDK server closes keep-alive connections beyond 200 idle ones by default,
+        // which would surface as broken pipes on the client's pooled connections.
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "4096");
+        // Without TCP_NODELAY, small writes wait on delayed ACKs and every call takes ~40 ms.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private final AtomicInteger abortedStreams = new AtomicInteger();
+
+    private volatile Duration chunkDelay = Duration.ZERO;
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private volatile String reply = "stub reply";
+
+    private volatile int slowEvery;
+
+    private volatile Duration slowLatency = Duration.ZERO;
+
+    private volatile int failureStatus;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ChatMetrics metrics = new ChatMetrics(meterRegistry);
+
+    private ModelRouter router;
+
+    private StubOpenRouterServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/chat/completions", this::handle);
+        server.start();
+    }
+
+    public static StubOpenRouterServer start() throws IOException {
+        return new StubOpenRouterServer();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Make every n-th request take {@code slow} instead of the normal latency (0 disables)
+     */
+    public void setSlowEvery(int n, Duration slow) {
+        this.slowEvery = n;
+        this.slowLatency = slow;
+    }
+
+    /**
+     * Answer every request with this HTTP status instead of a completion (0 disables)
+     */
+    public void setFailureStatus(int status) {
+        this.failureStatus = status;
+    }
+
+    public void setReply(String reply) {
+        this.reply = reply;
+    }
+
+    /**
+     * Pause before each streamed delta
+     */
+    public void setChunkDelay(Duration chunkDelay) {
+        this.chunkDelay = chunkDelay;
+    }
+
+    /**
+     * Streams whose client closed the connection before the last delta
+     */
+    public int abortedStreams() {
+        return abortedStreams.get();
+    }
+
+    public int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Metrics recorded by the models this stub creates
+     */
+    public ChatMetrics metrics() {
+        return metrics;
+    }
+
+    public SimpleMeterRegistry meterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * Route for a model served by this stub, for building multi-model routers
+     */
+    public ModelRoute route(String id, String group) {
+        return new ModelRoute(id, id, group, baseUrl(), "test-key");
+    }
+
+    /**
+     * Router with the single model {@code stub/model} served by this stub
+     */
+    public synchronized ModelRouter router() {
+        if (router == null) {
+            router = new ModelRouter(List.of(route("stub/model", null)), "stub/model",
+                Duration.ofSeconds(10), Duration.ofSeconds(10));
+        }
+        return router;
+    }
+
+    public void resetStats() {
+        peakInFlight.set(0);
+        requestCount.set(0);
+    }
+
+    /**
+     * Blocking model wired to this stub through a pool large enough not to be the bottleneck
+     */
+    public OpenRouterChatModel chatModel(int maxInFlight) {
+        return chatModel(maxInFlight, router());
+    }
+
+    /**
+     * Blocking model routed by the given router (which may point at other stubs too)
+     */
+    public OpenRouterChatModel chatModel(int maxInFlight, ModelRouter router) {
+        return chatModel(maxInFlight, router, new HedgePolicy(false, 0.95, 0.05, 10, Duration.ofMillis(50),
+            Duration.ofSeconds(10), 512, 20));
+    }
+
+    /**
+     * Blocking model with the given router and hedging policy; no concurrency limit or circuit breaking
+     */
+    public OpenRouterChatModel chatModel(int maxInFlight, ModelRouter router, HedgePolicy hedging) {
+        return chatModel(maxInFlight, router, hedging,
+            new AdaptiveConcurrencyLimiter(false, 20, 2, maxInFlight, 2.0, 0.9, Duration.ofSeconds(1)),
+            new CircuitBreakers(false, 20, 10, 0.5, Duration.ofSeconds(30), 3));
+    }
+
+    /**
+     * Blocking model guarded by the given limiter and circuit breakers
+     */
+    public OpenRouterChatModel chatModel(int maxInFlight, ModelRouter router, AdaptiveConcurrencyLimiter limiter,
+                                         CircuitBreakers breakers) {
+        return chatModel(maxInFlight, router, new HedgePolicy(false, 0.95, 0.05, 10, Duration.ofMillis(50),
+            Duration.ofSeconds(10), 512, 20), limiter, breakers);
+    }
+
+    /**
+     * Blocking model whose callers give up after waiting the given time for one of its permits
+     */
+    public OpenRouterChatModel chatModel(int maxInFlight, Duration acquireTimeout) {
+        return chatModel(maxInFlight, router(), new HedgePolicy(false, 0.95, 0.05, 10, Duration.ofMillis(50),
+            Duration.ofSeconds(10), 512, 20),
+            new AdaptiveConcurrencyLimiter(false, 20, 2, maxInFlight, 2.0, 0.9, Duration.ofSeconds(1)),
+            new CircuitBreakers(false, 20, 10, 0.5, Duration.ofSeconds(30), 3), acquireTimeout);
+    }
+
+    private OpenRouterChatModel chatModel(int maxInFlight, ModelRouter router, HedgePolicy hedging,
+                                          AdaptiveConcurrencyLimiter limiter, CircuitBreakers breakers) {
+        return chatModel(maxInFlight, router, hedging, limiter, breakers, Duration.ofSeconds(30));
+    }
+
+    private OpenRouterChatModel chatModel(int maxInFlight, ModelRouter router, HedgePolicy hedging,
+                                          AdaptiveConcurrencyLimiter limiter, CircuitBreakers breakers,
+                                          Duration acquireTimeout) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(
+            HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(4096)
+                    .setMaxConnPerRoute(4096)
+                    .build())
+                .addExecInterceptorFirst("cancellation", new CancellationExecHandler())
+                .build()));
+        return new OpenRouterChatModel(restTemplate, metrics, router, hedging, limiter, breakers, maxInFlight,
+            acquireTimeout, false);
+    }
+
+    /**
+     * Non-blocking model wired to this stub
+     */
+    public ReactiveOpenRouterChatModel reactiveChatModel() {
+        return reactiveChatModel(router(), new HedgePolicy(false, 0.95, 0.05, 10, Duration.ofMillis(50),
+            Duration.ofSeconds(10), 512, 20));
+    }
+
+    /**
+     * Non-blocking model with the given router and hedging policy; no concurrency limit or circuit breaking
+     */
+    public ReactiveOpenRouterChatModel reactiveChatModel(ModelRouter router, HedgePolicy hedging) {
+        return reactiveChatModel(router, hedging,
+            new AdaptiveConcurrencyLimiter(false, 20, 2, 100, 2.0, 0.9, Duration.ofSeconds(1)),
+            new CircuitBreakers(false, 20, 10, 0.5, Duration.ofSeconds(30), 3));
+    }
+
+    /**
+     * Non-blocking model guarded by the given limiter and circuit breakers
+     */
+    public ReactiveOpenRouterChatModel reactiveChatModel(ModelRouter router, AdaptiveConcurrencyLimiter limiter,
+                                                         CircuitBreakers breakers) {
+        return reactiveChatModel(router, new HedgePolicy(false, 0.95, 0.05, 10, Duration.ofMillis(50),
+            Duration.ofSeconds(10), 512, 20), limiter, breakers);
+    }
+
+    private ReactiveOpenRouterChatModel reactiveChatModel(ModelRouter router, HedgePolicy hedging,
+                                                          AdaptiveConcurrencyLimiter limiter,
+                                                          CircuitBreakers breakers) {
+        ReactiveOpenRouterChatModel model = new ReactiveOpenRouterChatModel(WebClient.builder()
+            .clientConnector(new JdkClientHttpConnector(new CancellableHttpClient(HttpClient.newHttpClient())))
+            .baseUrl(baseUrl())
+            .build(), metrics, router, hedging, limiter, breakers);
+        ReflectionTestUtils.setField(model, "readTimeout", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(model, "totalTimeout", Duration.ofSeconds(60));
+        return model;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int sequence = requestCount.incrementAndGet();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            int n = slowEvery;
+            Thread.sleep(n > 0 && sequence % n == 0 ? slowLatency.toMillis() : latency.toMillis());
+            int status = failureStatus;
+            if (status != 0) {
+                exchange.sendResponseHeaders(status, -1);
+            } else if (body.contains("\"stream\":true")) {
+                writeStream(exchange);
+            } else {
+                writeCompletion(exchange);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void writeCompletion(HttpExchange exchange) throws IOException {
+        byte[] json = ("{\"id\":\"stub\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\""
+            + reply + "\"}}],\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}}")
+            .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, json.length);
+        exchange.getResponseBody().write(json);
+    }
+
+    private void writeStream(HttpExchange exchange) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write(": OPENROUTER PROCESSING\n\n".getBytes(StandardCharsets.UTF_8));
+        for (String word : reply.split(" ")) {
+            Thread.sleep(chunkDelay.toMillis());
+            String chunk = "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + word + " \"}}]}\n\n";
+            try {
+                out.write(chunk.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                abortedStreams.incrementAndGet();
+                throw e;
+            }
+        }
+        String usage = "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":"
+            + reply.split(" ").length + ",\"total_tokens\":" + (10 + reply.split(" ").length) + "}}\n\n";
+        out.write(usage.getBytes(StandardCharsets.UTF_8));
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.demo;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.demo.admission.AdmissionControl;
+import com.example.demo.cache.ChatResponseCache;
+import com.example.demo.cache.HashingTextEmbedder;
+import com.example.demo.cache.SemanticResponseCache;
+import com.example.demo.history.InMemoryChatHistoryStore;
+import com.example.demo.model.BatchChatResult;
+import com.example.demo.model.ChatRequest;
+import com.example.demo.model.ChatResponse;
+import com.example.demo.resilience.AdaptiveConcurrencyLimiter;
+import com.example.demo.resilience.CircuitBreakers;
+import com.example.demo.resilience.UpstreamUnavailableException;
+import com.example.demo.service.BatchChatService;
+import com.example.demo.service.ChatService;
+import com.example.demo.service.ContextWindowManager;
+import com.example.demo.service.ConversationSummarizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Load shedding in OpenRouterChatModel and ReactiveOpenRouterChatModel against
+ * a fault-injecting stub: an overloaded or failing upstream is answered locally
+ * with 429/503 instead of queueing more calls on it.
+ */
+class UpstreamResilienceTest {
+
+    private final Logger modelLogger = (Logger) LoggerFactory.getLogger(OpenRouterChatModel.class);
+
+    private StubOpenRouterServer stub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        modelLogger.setLevel(Level.OFF);
+        stub = StubOpenRouterServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+        modelLogger.setLevel(null);
+    }
+
+    @Test
+    void failingUpstreamOpensTheCircuit() {
+        stub.setFailureStatus(500);
+        CircuitBreakers breakers = new CircuitBreakers(true, 10, 5, 0.5, Duration.ofSeconds(30), 2);
+        breakers.bindTo(stub.meterRegistry());
+        OpenRouterChatModel model = stub.chatModel(16, stub.router(), disabledLimiter(), breakers);
+
+        int rejected = 0;
+        for (int i = 0; i < 20; i++) {
+            try {
+                model.call(new Prompt("hello"));
+            } catch (UpstreamUnavailableException e) {
+                assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                assertThat(e.getRetryAfterSeconds()).isBetween(1L, 30L);
+                rejected++;
+            } catch (RuntimeException e) {
+                // Upstream 500
+            }
+        }
+
+        // Only the calls needed to open the circuit reached the upstream
+        assertThat(stub.requestCount()).isEqualTo(5);
+        assertThat(rejected).isEqualTo(15);
+        assertThat(stub.meterRegistry().get("openrouter.circuit.state").tag("model", "stub/model")
+            .gauge().value()).isEqualTo(1);
+        assertThat(stub.meterRegistry().get("openrouter.circuit.rejected").tag("model", "stub/model")
+            .functionCounter().count()).isEqualTo(15);
+    }
+
+    @Test
+    void requestErrorsDoNotOpenTheCircuit() {
+        stub.setFailureStatus(400);
+        CircuitBreakers breakers = new CircuitBreakers(true, 10, 5, 0.5, Duration.ofSeconds(30), 2);
+        OpenRouterChatModel model = stub.chatModel(16, stub.router(), disabledLimiter(), breakers);
+
+        for (int i = 0; i < 20; i++) {
+            catchThrowableOfType(RuntimeException.class, () -> model.call(new Prompt("hello")));
+        }
+
+        assertThat(stub.requestCount()).isEqualTo(20);
+    }
+
+    @Test
+    void permitTimeoutIsA429WithRetryAfter() throws Exception {
+        stub.setLatency(Duration.ofMillis(500));
+        OpenRouterChatModel model = stub.chatModel(1, Duration.ofMillis(50));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> holder = executor.submit(() -> model.call(new Prompt("hello")));
+            while (model.getInFlightCount() == 0) {
+                Thread.sleep(5);
+            }
+
+            UpstreamUnavailableException e = catchThrowableOfType(UpstreamUnavailableException.class,
+                () -> model.call(new Prompt("hello")));
+
+            assertThat(e).isNotNull();
+            assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+            assertThat(e.getRetryAfterSeconds()).isEqualTo(1);
+            holder.get();
+        }
+        assertThat(stub.requestCount()).isEqualTo(1);
+        assertThat(model.getInFlightCount()).isZero();
+    }
+
+    @Test
+    void overloadFailsFastWith429() throws Exception {
+        stub.setLatency(Duration.ofMillis(300));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 4, 2, 4, 2.0, 0.9,
+            Duration.ofSeconds(1));
+        limiter.bindTo(stub.meterRegistry());
+        OpenRouterChatModel model = stub.chatModel(64, stub.router(), limiter, disabledBreakers());
+
+        List<Future<Long>> calls = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 16; i++) {
+                calls.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        model.call(new Prompt("hello"));
+                        return -1L;
+                    } catch (UpstreamUnavailableException e) {
+                        assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                        return Duration.ofNanos(System.nanoTime() - start).toMillis();
+                    }
+                }));
+            }
+        }
+
+        List<Long> rejectedMillis = new ArrayList<>();
+        for (Future<Long> call : calls) {
+            if (call.get() >= 0) {
+                rejectedMillis.add(call.get());
+            }
+        }
+        assertThat(stub.peakInFlight()).isLessThanOrEqualTo(4);
+        assertThat(rejectedMillis).hasSizeGreaterThanOrEqualTo(12)
+            .allSatisfy(millis -> assertThat(millis).isLessThan(100));
+        assertThat(stub.meterRegistry().get("openrouter.limiter.rejected").functionCounter().count())
+            .isEqualTo(rejectedMillis.size());
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void reactiveStreamsShareTheCircuit() {
+        stub.setFailureStatus(500);
+        CircuitBreakers breakers = new CircuitBreakers(true, 10, 5, 0.5, Duration.ofSeconds(30), 2);
+        ReactiveOpenRouterChatModel model = stub.reactiveChatModel(stub.router(), disabledLimiter(), breakers);
+
+        int rejected = 0;
+        for (int i = 0; i < 20; i++) {
+            Throwable failure = catchThrowableOfType(RuntimeException.class,
+                () -> model.stream(new Prompt("hello")).blockLast(Duration.ofSeconds(5)));
+            if (failure instanceof UpstreamUnavailableException e) {
+                assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                rejected++;
+            }
+        }
+
+        assertThat(stub.requestCount()).isEqualTo(5);
+        assertThat(rejected).isEqualTo(15);
+    }
+
+    @Test
+    void reactiveCallsShareTheLimiter() {
+        stub.setLatency(Duration.ofMillis(300));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 4, 2, 4, 2.0, 0.9,
+            Duration.ofSeconds(1));
+        ReactiveOpenRouterChatModel model = stub.reactiveChatModel(stub.router(), limiter, disabledBreakers());
+
+        List<String> outcomes = Flux.range(0, 16)
+            .flatMap(i -> model.call(new Prompt("hello"))
+                .map(response -> "ok")
+                .onErrorResume(UpstreamUnavailableException.class, e -> Mono.just(e.getStatus().name())), 16)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertThat(stub.peakInFlight()).isLessThanOrEqualTo(4);
+        assertThat(outcomes).filteredOn("TOO_MANY_REQUESTS"::equals).hasSizeGreaterThanOrEqualTo(12);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void rejectedCallsMapToStatusWithRetryAfter() throws Exception {
+        ChatService chatService = mock(ChatService.class);
+        when(chatService.isValidRequest(any())).thenReturn(true);
+        when(chatService.chat(any(ChatRequest.class), any()))
+            .thenThrow(UpstreamUnavailableException.limitReached(4, Duration.ofMillis(1500)));
+        ChatController controller = new ChatController(chatService, mock(BatchChatService.class),
+            mock(AdmissionControl.class), mock(SseFrameCoalescer.class));
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        mvc.perform(post("/api/v1/chat").contentType(MediaType.APPLICATION_JSON).content("{\"message\":\"hi\"}"))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "2"))
+            .andExpect(jsonPath("$.error").value(true));
+
+        when(chatService.chat(any(ChatRequest.class), any()))
+            .thenThrow(UpstreamUnavailableException.circuitOpen("m", Duration.ofSeconds(30)));
+        mvc.perform(post("/api/chat").contentType(MediaType.APPLICATION_JSON).content("{\"message\":\"hi\"}"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "30"));
+    }
+
+    @Test
+    void reactiveEndpointAnswersShedLoadWith429() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 1, 1, 1, 2.0, 0.9,
+            Duration.ofSeconds(1));
+        ChatService chatService = chatService(stub.reactiveChatModel(stub.router(), limiter, disabledBreakers()));
+        ChatController controller = new ChatController(chatService, mock(BatchChatService.class),
+            mock(AdmissionControl.class), mock(SseFrameCoalescer.class));
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(controller).build();
+        // The only permit is taken
+        limiter.acquire();
+
+        MvcResult pending = mvc.perform(post("/api/v1/chat/reactive")
+                .contentType(MediaType.APPLICATION_JSON).content("{\"message\":\"hi\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mvc.perform(asyncDispatch(pending))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "1"))
+            .andExpect(jsonPath("$.error").value(true));
+
+        assertThat(stub.requestCount()).isZero();
+    }
+
+    @Test
+    void nonBlockingEndpointsHoldTheirAdmissionPermitUntilDone() throws Exception {
+        ChatService chatService = mock(ChatService.class);
+        when(chatService.isValidRequest(any())).thenReturn(true);
+        when(chatService.chatReactive(any(ChatRequest.class), any()))
+            .thenReturn(Mono.just(ChatResponse.builder().message("ok").build()));
+        when(chatService.streamChat(any(ChatRequest.class), any())).thenReturn(Flux.just("o", "k"));
+        BatchChatService batchChatService = mock(BatchChatService.class);
+        when(batchChatService.getMaxItems()).thenReturn(10);
+        when(batchChatService.getBatchTimeout()).thenReturn(Duration.ofMinutes(1));
+        when(batchChatService.run(any(), any()))
+            .thenReturn(Flux.just(new BatchChatResult(0, "ok", "stub/model", false, 1)));
+        SseFrameCoalescer frameCoalescer = mock(SseFrameCoalescer.class);
+        when(frameCoalescer.frames(any())).thenAnswer(invocation -> invocation.<Flux<String>>getArgument(0)
+            .map(text -> ServerSentEvent.builder(text).build()));
+        AdmissionControl admission = mock(AdmissionControl.class);
+        List<AdmissionControl.Permit> permits = new ArrayList<>();
+        when(admission.admit(any(), any(), anyInt())).thenAnswer(invocation -> {
+            AdmissionControl.Permit permit = mock(AdmissionControl.Permit.class);
+            permits.add(permit);
+            return permit;
+        });
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(
+            new ChatController(chatService, batchChatService, admission, frameCoalescer)).build();
+
+        complete(mvc, post("/api/v1/chat/reactive").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"message\":\"hi\"}"));
+        complete(mvc, get("/api/v1/chat/stream").param("message", "hi"));
+        complete(mvc, post("/api/v1/chat/batch").contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"message\":\"hi\"},{\"message\":\"there\"}]"));
+
+        assertThat(permits).hasSize(3);
+        for (AdmissionControl.Permit permit : permits) {
+            verify(permit).close();
+        }
+    }
+
+    @Test
+    void rejectedStreamsMapToStatusWithRetryAfter() throws Exception {
+        AdmissionControl admission = mock(AdmissionControl.class);
+        when(admission.admit(any(), any(), anyInt()))
+            .thenThrow(UpstreamUnavailableException.limitReached(4, Duration.ofSeconds(3)));
+        ChatService chatService = mock(ChatService.class);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new ChatController(chatService, mock(BatchChatService.class),
+            admission, mock(SseFrameCoalescer.class))).build();
+
+        mvc.perform(get("/api/v1/chat/stream").param("message", "hi"))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "3"));
+        verify(chatService, never()).streamChat(any(), any());
+    }
+
+    private static void complete(MockMvc mvc, MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult pending = mvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        pending.getAsyncResult(5000);
+        mvc.perform(asyncDispatch(pending)).andExpect(status().isOk());
+    }
+
+    private ChatService chatService(ReactiveOpenRouterChatModel reactiveChatModel) {
+        InMemoryChatHistoryStore store = new InMemoryChatHistoryStore(40, 1000, Duration.ofHours(1),
+            DataSize.ofMegabytes(16));
+        ContextWindowManager contextWindowManager = new ContextWindowManager(8000, Map.of(), 2000);
+        ChatService chatService = new ChatService(stub.chatModel(4), reactiveChatModel, store, contextWindowManager,
+            mock(ConversationSummarizer.class), new ChatResponseCache(false, 1, Duration.ofMinutes(1)),
+            new SemanticResponseCache(new HashingTextEmbedder(64), false, 0.9, Duration.ofMinutes(1), 1, 1),
+            stub.metrics(), stub.router());
+        ReflectionTestUtils.setField(chatService, "defaultModel", "stub/model");
+        ReflectionTestUtils.setField(chatService, "temperature", 0.7);
+        ReflectionTestUtils.setField(chatService, "maxTokens", 2000);
+        return chatService;
+    }
+
+    private static AdaptiveConcurrencyLimiter disabledLimiter() {
+        return new AdaptiveConcurrencyLimiter(false, 20, 2, 100, 2.0, 0.9, Duration.ofSeconds(1));
+    }
+
+    private static CircuitBreakers disabledBreakers() {
+        return new CircuitBreakers(false, 20, 10, 0.5, Duration.ofSeconds(30), 3);
+    }
+}
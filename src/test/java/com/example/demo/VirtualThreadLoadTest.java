@@ -0,0 +1,102 @@
+package com.example.demo;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares how many concurrent chat sessions the blocking path sustains on the
+ * default 200-thread platform pool (Tomcat's server.tomcat.threads.max) versus
+ * virtual threads, against a stub upstream with a fixed 200 ms latency.
+ */
+class VirtualThreadLoadTest {
+
+    private static final int SESSIONS = 1000;
+
+    private static final int PLATFORM_THREADS = 200;
+
+    private static final Duration LATENCY = Duration.ofMillis(200);
+
+    // Per-call INFO logging would serialize the run on the console appender
+    private final Logger modelLogger = (Logger) LoggerFactory.getLogger(OpenRouterChatModel.class);
+
+    private StubOpenRouterServer upstream;
+
+    @BeforeEach
+    void startUpstream() throws Exception {
+        modelLogger.setLevel(Level.WARN);
+        upstream = StubOpenRouterServer.start();
+        upstream.setLatency(LATENCY);
+    }
+
+    @AfterEach
+    void stopUpstream() {
+        upstream.close();
+        modelLogger.setLevel(null);
+    }
+
+    @Test
+    void virtualThreadsSustainMoreConcurrentSessionsThanPlatformPool() throws Exception {
+        OpenRouterChatModel chatModel = upstream.chatModel(SESSIONS);
+
+        LoadResult platform = run(Executors.newFixedThreadPool(PLATFORM_THREADS), chatModel);
+        LoadResult virtual = run(Executors.newVirtualThreadPerTaskExecutor(), chatModel);
+
+        assertThat(platform.failures()).isZero();
+        assertThat(virtual.failures()).isZero();
+        assertThat(platform.peakConcurrency()).isLessThanOrEqualTo(PLATFORM_THREADS);
+        assertThat(virtual.peakConcurrency()).isGreaterThan(PLATFORM_THREADS);
+        // The pool works through the sessions in waves of PLATFORM_THREADS calls
+        assertThat(platform.elapsedMillis())
+            .isGreaterThanOrEqualTo(SESSIONS / PLATFORM_THREADS * LATENCY.toMillis());
+    }
+
+    @Test
+    void semaphoreCapsInFlightUpstreamCalls() throws Exception {
+        OpenRouterChatModel chatModel = upstream.chatModel(50);
+
+        LoadResult result = run(Executors.newVirtualThreadPerTaskExecutor(), chatModel);
+
+        assertThat(result.failures()).isZero();
+        assertThat(result.peakConcurrency()).isLessThanOrEqualTo(50);
+        assertThat(chatModel.getInFlightCount()).isZero();
+    }
+
+    private LoadResult run(ExecutorService executor, OpenRouterChatModel chatModel) throws Exception {
+        upstream.resetStats();
+        long start = System.nanoTime();
+        int failures = 0;
+        try (executor) {
+            List<Future<String>> results = new ArrayList<>(SESSIONS);
+            for (int i = 0; i < SESSIONS; i++) {
+                Prompt prompt = new Prompt("session " + i);
+                results.add(executor.submit(() -> chatModel.call(prompt).getResult().getOutput().getText()));
+            }
+            for (Future<String> result : results) {
+                try {
+                    result.get();
+                } catch (Exception e) {
+                    failures++;
+                }
+            }
+        }
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        return new LoadResult(upstream.peakInFlight(), elapsedMillis, failures);
+    }
+
+    private record LoadResult(int peakConcurrency, long elapsedMillis, int failures) {
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.demo.admission;
+
+import com.example.demo.resilience.UpstreamUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void sessionRequestRateIsEnforcedWithRetryAfter() {
+        AdmissionControl admission = admission(new AdmissionControl.Rates(3, 100_000), 4);
+
+        for (int i = 0; i < 3; i++) {
+            admission.admit("s1", "10.0.0.1", 10).close();
+        }
+        assertThatThrownBy(() -> admission.admit("s1", "10.0.0.1", 10))
+            .isInstanceOfSatisfying(UpstreamUnavailableException.class, e -> {
+                assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                assertThat(e.getRetryAfterSeconds()).isEqualTo(20);
+            });
+        // Another session from the same address is unaffected
+        admission.admit("s2", "10.0.0.1", 10).close();
+
+        clock.addAndGet(Duration.ofSeconds(20).toNanos());
+        admission.admit("s1", "10.0.0.1", 10).close();
+        assertThat(rejected("session-requests")).isEqualTo(1);
+    }
+
+    @Test
+    void tokenBudgetCountsPromptAndExpectedOutput() {
+        AdmissionControl admission = admission(new AdmissionControl.Rates(100, 1000), 100);
+
+        // 300 prompt + 100 expected output tokens each
+        admission.admit("s1", "10.0.0.1", 300).close();
+        admission.admit("s1", "10.0.0.1", 300).close();
+        assertThatThrownBy(() -> admission.admit("s1", "10.0.0.1", 300))
+            .isInstanceOf(UpstreamUnavailableException.class);
+        assertThat(rejected("session-tokens")).isEqualTo(1);
+
+        // The rejected request did not spend the session's request budget
+        admission.admit("s1", "10.0.0.1", 0).close();
+    }
+
+    @Test
+    void clientAddressIsLimitedAcrossSessions() {
+        AdmissionControl admission = new AdmissionControl(true, new AdmissionControl.Rates(100, 100_000),
+            new AdmissionControl.Rates(5, 100_000), 0, new FairQueue(4, 10, 1000), Duration.ofMillis(50),
+            Duration.ofMinutes(10), clock::get);
+        admission.bindTo(registry);
+
+        for (int i = 0; i < 5; i++) {
+            admission.admit("s" + i, "10.0.0.1", 10).close();
+        }
+        assertThatThrownBy(() -> admission.admit("fresh", "10.0.0.1", 10))
+            .isInstanceOf(UpstreamUnavailableException.class);
+        admission.admit("fresh", "10.0.0.2", 10).close();
+        assertThat(rejected("client-requests")).isEqualTo(1);
+    }
+
+    @Test
+    void requestsBeyondTheConcurrencyAreQueuedThenRejected() {
+        AdmissionControl admission = admission(new AdmissionControl.Rates(100, 100_000), 1);
+
+        AdmissionControl.Permit first = admission.admit("s1", "10.0.0.1", 10);
+        assertThat(registry.get("chat.admission.in-use").gauge().value()).isEqualTo(1);
+        assertThatThrownBy(() -> admission.admit("s2", "10.0.0.2", 10))
+            .isInstanceOf(UpstreamUnavailableException.class);
+        assertThat(rejected("queue-timeout")).isEqualTo(1);
+
+        first.close();
+        admission.admit("s2", "10.0.0.2", 10).close();
+        assertThat(registry.get("chat.admission.in-use").gauge().value()).isZero();
+    }
+
+    @Test
+    void requestsTurnedAwayByTheQueueAreRefunded() {
+        AdmissionControl admission = admission(new AdmissionControl.Rates(2, 100_000), 1);
+
+        AdmissionControl.Permit first = admission.admit("s1", "10.0.0.1", 10);
+        assertThatThrownBy(() -> admission.admit("s1", "10.0.0.1", 10))
+            .isInstanceOf(UpstreamUnavailableException.class);
+        first.close();
+
+        // Two requests a minute: the one that timed out in the queue did not spend one
+        admission.admit("s1", "10.0.0.1", 10).close();
+        assertThat(rejected("session-requests")).isZero();
+    }
+
+    @Test
+    void interruptedWaitIsA429() {
+        AdmissionControl admission = admission(new AdmissionControl.Rates(2, 100_000), 1);
+        AdmissionControl.Permit first = admission.admit("s1", "10.0.0.1", 10);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> admission.admit("s2", "10.0.0.2", 10))
+                .isInstanceOfSatisfying(UpstreamUnavailableException.class,
+                    e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+        first.close();
+        admission.admit("s2", "10.0.0.2", 10).close();
+        admission.admit("s2", "10.0.0.2", 10).close();
+    }
+
+    @Test
+    void disabledAdmissionLetsEverythingThrough() {
+        AdmissionControl admission = new AdmissionControl(false, new AdmissionControl.Rates(1, 1),
+            new AdmissionControl.Rates(1, 1), 0, new FairQueue(1, 1, 1), Duration.ZERO, Duration.ofMinutes(10),
+            clock::get);
+
+        for (int i = 0; i < 10; i++) {
+            admission.admit("s1", "10.0.0.1", 1000);
+        }
+        assertThat(admission.getTrackedKeys()).isZero();
+    }
+
+    private AdmissionControl admission(AdmissionControl.Rates sessionRates, int maxConcurrent) {
+        AdmissionControl admission = new AdmissionControl(true, sessionRates, new AdmissionControl.Rates(1000, 1_000_000),
+            100, new FairQueue(maxConcurrent, 10, 1000), Duration.ofMillis(50), Duration.ofMinutes(10), clock::get);
+        admission.bindTo(registry);
+        return admission;
+    }
+
+    private double rejected(String reason) {
+        return registry.get("chat.admission.rejected").tag("reason", reason).functionCounter().count();
+    }
+}
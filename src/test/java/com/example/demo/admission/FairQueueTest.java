@@ -0,0 +1,96 @@
+package com.example.demo.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FairQueueTest {
+
+    @Test
+    void freeSlotsAreTakenWithoutQueueing() throws Exception {
+        FairQueue queue = new FairQueue(2, 10, 100);
+
+        assertThat(queue.acquire("a", 100, Duration.ZERO)).isEqualTo(FairQueue.Outcome.ACQUIRED);
+        assertThat(queue.acquire("a", 100, Duration.ZERO)).isEqualTo(FairQueue.Outcome.ACQUIRED);
+        assertThat(queue.acquire("b", 100, Duration.ofMillis(20))).isEqualTo(FairQueue.Outcome.TIMED_OUT);
+        assertThat(queue.getInUse()).isEqualTo(2);
+        assertThat(queue.getQueued()).isZero();
+
+        queue.release();
+        assertThat(queue.acquire("b", 100, Duration.ZERO)).isEqualTo(FairQueue.Outcome.ACQUIRED);
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() throws Exception {
+        FairQueue queue = new FairQueue(1, 1, 100);
+        queue.acquire("a", 100, Duration.ZERO);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> queue.acquire("a", 100, Duration.ofSeconds(5)));
+            awaitQueued(queue, 1);
+
+            assertThat(queue.acquire("b", 100, Duration.ofSeconds(5))).isEqualTo(FairQueue.Outcome.QUEUE_FULL);
+            queue.release();
+        }
+    }
+
+    @Test
+    void waitingFlowsAreServedInTurnByCost() throws Exception {
+        FairQueue queue = new FairQueue(1, 100, 100);
+        queue.acquire("hog", 100, Duration.ZERO);
+        List<String> served = new CopyOnWriteArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // One flow queues ten requests before two others arrive, one of them with double-cost requests
+            submit(executor, queue, "hog", 100, 10, served);
+            submit(executor, queue, "light", 100, 3, served);
+            submit(executor, queue, "heavy", 200, 3, served);
+            awaitQueued(queue, 16);
+
+            queue.release();
+            while (served.size() < 16) {
+                Thread.sleep(1);
+            }
+        }
+
+        // Arrival order would serve all ten hog requests first
+        List<String> firstSix = served.subList(0, 6);
+        assertThat(firstSix).filteredOn("light"::equals).hasSize(2);
+        assertThat(firstSix).filteredOn("hog"::equals).hasSizeLessThanOrEqualTo(3);
+        assertThat(firstSix).filteredOn("heavy"::equals).hasSize(1);
+        assertThat(served.subList(0, 9)).contains("light", "light", "light");
+    }
+
+    /**
+     * Queue requests of one flow in order; each releases its slot as soon as it gets it
+     */
+    private static void submit(ExecutorService executor, FairQueue queue, String flow, long cost, int count,
+                               List<String> served) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            int before = queue.getQueued();
+            executor.submit(() -> {
+                if (queue.acquire(flow, cost, Duration.ofSeconds(10)) == FairQueue.Outcome.ACQUIRED) {
+                    served.add(flow);
+                    queue.release();
+                }
+                return null;
+            });
+            awaitQueued(queue, before + 1);
+        }
+    }
+
+    private static void awaitQueued(FairQueue queue, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.getQueued() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(queue.getQueued()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private final AtomicLong clock = new AtomicLong(-5_000_000_000L);
+
+    @Test
+    void allowsABurstUpToCapacityThenReportsTheWait() {
+        TokenBucket bucket = new TokenBucket(10, 60, clock::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.tryAcquire(1)).isZero();
+        }
+        assertThat(bucket.tryAcquire(1)).isEqualTo(Duration.ofSeconds(1).toNanos());
+        assertThat(bucket.available()).isZero();
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(10, 60, clock::get);
+        assertThat(bucket.tryAcquire(10)).isZero();
+
+        clock.addAndGet(Duration.ofMillis(3500).toNanos());
+        assertThat(bucket.available()).isEqualTo(3);
+        assertThat(bucket.tryAcquire(3)).isZero();
+        assertThat(bucket.tryAcquire(1)).isEqualTo(Duration.ofMillis(500).toNanos());
+
+        // Idle time never banks more than the capacity
+        clock.addAndGet(Duration.ofMinutes(5).toNanos());
+        assertThat(bucket.available()).isEqualTo(10);
+    }
+
+    @Test
+    void oversizedRequestsTakeTheWholeBucketAndRefundsGiveBack() {
+        TokenBucket bucket = new TokenBucket(1000, 60_000, clock::get);
+
+        assertThat(bucket.tryAcquire(5000)).isZero();
+        assertThat(bucket.available()).isZero();
+
+        bucket.refund(400);
+        assertThat(bucket.available()).isEqualTo(400);
+    }
+
+    @Test
+    void concurrentCallersNeverOverdraw() throws Exception {
+        TokenBucket bucket = new TokenBucket(10_000, 1, System::nanoTime);
+
+        List<Future<Integer>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                workers.add(executor.submit(() -> {
+                    int granted = 0;
+                    for (int i = 0; i < 5_000; i++) {
+                        if (bucket.tryAcquire(1) == 0) {
+                            granted++;
+                        }
+                    }
+                    return granted;
+                }));
+            }
+        }
+
+        int granted = 0;
+        for (Future<Integer> worker : workers) {
+            granted += worker.get();
+        }
+        assertThat(granted).isEqualTo(10_000);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatResponseCacheTest {
+
+    private final ChatResponseCache cache = new ChatResponseCache(true, 100, Duration.ofMinutes(5));
+
+    @Test
+    void keyIgnoresWhitespaceButNotOptionsOrModel() {
+        String key = ChatResponseCache.key("m", prompt("Be brief.", "What is  Swing?", 0.7));
+
+        assertThat(ChatResponseCache.key("m", prompt(" Be brief.", "What is Swing?\n", 0.7))).isEqualTo(key);
+        assertThat(ChatResponseCache.key("m", prompt("Be brief.", "What is Swing?", 0.2))).isNotEqualTo(key);
+        assertThat(ChatResponseCache.key("other", prompt("Be brief.", "What is Swing?", 0.7))).isNotEqualTo(key);
+        assertThat(ChatResponseCache.key("m", prompt("Be verbose.", "What is Swing?", 0.7))).isNotEqualTo(key);
+    }
+
+    @Test
+    void secondIdenticalCallIsServedFromCache() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String first = cache.get("k", () -> "answer " + calls.incrementAndGet());
+        String second = cache.get("k", () -> "answer " + calls.incrementAndGet());
+
+        assertThat(first).isEqualTo("answer 1");
+        assertThat(second).isEqualTo("answer 1");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentIdenticalMissesShareOneUpstreamCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.get("k", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "answer";
+                })));
+            }
+            // Let every caller reach the cache before the single load completes
+            while (cache.getMissCount() + cache.getCoalescedCount() < 8) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("answer");
+            }
+            assertThat(calls).hasValue(1);
+            assertThat(cache.getCoalescedCount()).isEqualTo(7);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        assertThatThrownBy(() -> cache.get("k", () -> {
+            throw new IllegalStateException("upstream down");
+        })).hasMessage("upstream down");
+
+        assertThat(cache.get("k", () -> "recovered")).isEqualTo("recovered");
+    }
+
+    @Test
+    void reactiveCallersShareInFlightLoad() {
+        Sinks.One<String> upstream = Sinks.one();
+        AtomicInteger subscriptions = new AtomicInteger();
+
+        Mono<String> first = cache.getReactive("k",
+            () -> upstream.asMono().doOnSubscribe(s -> subscriptions.incrementAndGet())).cache();
+        first.subscribe();
+        Mono<String> second = cache.getReactive("k", () -> Mono.just("unused"));
+        Mono<String> streamed = cache.lookup("k");
+
+        upstream.tryEmitValue("answer");
+
+        assertThat(first.block(Duration.ofSeconds(5))).isEqualTo("answer");
+        assertThat(second.block(Duration.ofSeconds(5))).isEqualTo("answer");
+        assertThat(streamed.block(Duration.ofSeconds(5))).isEqualTo("answer");
+        assertThat(subscriptions).hasValue(1);
+    }
+
+    @Test
+    void lookupIsEmptyOnMiss() {
+        assertThat(cache.lookup("absent").blockOptional()).isEmpty();
+
+        cache.put("k", "streamed answer");
+
+        assertThat(cache.lookup("k").block()).isEqualTo("streamed answer");
+    }
+
+    private static Prompt prompt(String system, String user, double temperature) {
+        return new Prompt(List.of(new SystemMessage(system), new UserMessage(user)),
+            ChatOptions.builder().temperature(temperature).maxTokens(100).build());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.demo.cache;
+
+import java.util.Locale;
+
+/**
+ * Deterministic, dependency-free embedder based on feature hashing, for tests
+ * and benchmarks.
+ * <p>
+ * Word unigrams and character trigrams of the lower-cased text are hashed
+ * into a fixed number of signed buckets and the result is L2-normalized.
+ * It captures lexical rather than semantic similarity: rephrasings that
+ * share most of their wording score high, but so do questions of opposite
+ * meaning ("sort ascending" / "sort descending"), which is why it is not
+ * offered as a production embedder.
+ */
+public class HashingTextEmbedder implements TextEmbedder {
+
+    private static final float WORD_WEIGHT = 1.0f;
+
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+
+    private final int dimensions;
+
+    public HashingTextEmbedder(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        String normalized = normalize(text);
+        
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean boundary = i == normalized.length() || normalized.charAt(i) == ' ';
+            if (!boundary && start < 0) {
+                start = i;
+            } else if (boundary && start >= 0) {
+                add(vector, normalized.substring(start, i).hashCode(), WORD_WEIGHT);
+                start = -1;
+            }
+        }
+        
+        String padded = " " + normalized + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            add(vector, padded.substring(i, i + 3).hashCode() * 31 + 7, TRIGRAM_WEIGHT);
+        }
+        
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private void add(float[] vector, int hash, float weight) {
+        int mixed = hash * 0x9E3779B9;
+        mixed ^= mixed >>> 16;
+        int bucket = Math.floorMod(mixed, dimensions);
+        vector[bucket] += (mixed & 0x40000000) == 0 ? weight : -weight;
+    }
+
+    // Lower-case, keep letters and digits of any script, collapse everything else to single spaces
+    private static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    void emptyIndexFindsNothing() {
+        assertThat(new HnswIndex<String>(8, 50, 1).search(unit(new Random(1)), 3, 10)).isEmpty();
+    }
+
+    @Test
+    void findsExactVector() {
+        Random random = new Random(7);
+        HnswIndex<Integer> index = new HnswIndex<>(8, 50, 1);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            float[] vector = unit(random);
+            vectors.add(vector);
+            index.add(vector, i);
+        }
+
+        List<HnswIndex.Match<Integer>> matches = index.search(vectors.get(123), 1, 50);
+
+        assertThat(matches).hasSize(1);
+        assertThat(matches.get(0).value()).isEqualTo(123);
+        assertThat(matches.get(0).similarity()).isCloseTo(1f, org.assertj.core.data.Offset.offset(1e-5f));
+    }
+
+    @Test
+    void nearestNeighbourRecallMatchesBruteForce() {
+        Random random = new Random(42);
+        HnswIndex<Integer> index = new HnswIndex<>(16, 100, 1);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            float[] vector = unit(random);
+            vectors.add(vector);
+            index.add(vector, i);
+        }
+
+        int found = 0;
+        int queries = 200;
+        for (int q = 0; q < queries; q++) {
+            float[] query = unit(random);
+            int expected = 0;
+            for (int i = 1; i < vectors.size(); i++) {
+                if (HnswIndex.dot(query, vectors.get(i)) > HnswIndex.dot(query, vectors.get(expected))) {
+                    expected = i;
+                }
+            }
+            if (index.search(query, 1, 50).get(0).value() == expected) {
+                found++;
+            }
+        }
+
+        assertThat((double) found / queries).isGreaterThanOrEqualTo(0.9);
+    }
+
+    private static float[] unit(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.demo.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SemanticResponseCacheTest {
+
+    private final HashingTextEmbedder embedder = new HashingTextEmbedder(384);
+
+    private final SemanticResponseCache cache =
+        new SemanticResponseCache(embedder, true, 0.85, Duration.ofMinutes(5), 100, 10);
+
+    @Test
+    void embedderIsDeterministicAndSimilarityReflectsWording() {
+        float[] a = embedder.embed("How do I reset my password?");
+
+        assertThat(embedder.embed("How do I reset my password?")).isEqualTo(a);
+        assertThat(HnswIndex.dot(a, embedder.embed("how do i reset my password"))).isGreaterThan(0.99f);
+        assertThat(HnswIndex.dot(a, embedder.embed("What is the weather in Seoul today?"))).isLessThan(0.5f);
+    }
+
+    @Test
+    void servesAnswerForRephrasedQuestionInSamePartition() {
+        String partition = cache.partition("m", firstTurn("Be brief.", "How do I reset my password?"));
+        cache.store(partition, "How do I reset my password?", "Use the reset link.", 2_000_000_000L);
+
+        assertThat(cache.lookup(partition, "how do I reset my password")).contains("Use the reset link.");
+        assertThat(cache.lookup(partition, "What is the weather in Seoul today?")).isEmpty();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitRatio()).isEqualTo(0.5);
+        assertThat(cache.getLatencySavedSeconds()).isGreaterThan(1.9);
+    }
+
+    @Test
+    void queryIsEmbeddedOnceForLookupAndStore() {
+        AtomicInteger embeddings = new AtomicInteger();
+        TextEmbedder counting = new TextEmbedder() {
+            @Override
+            public float[] embed(String text) {
+                embeddings.incrementAndGet();
+                return embedder.embed(text);
+            }
+
+            @Override
+            public int dimensions() {
+                return embedder.dimensions();
+            }
+        };
+        SemanticResponseCache counted = new SemanticResponseCache(counting, true, 0.85, Duration.ofMinutes(5), 100, 10);
+        String partition = counted.partition("m", firstTurn("Be brief.", "q"));
+
+        // Empty partition: nothing to compare against until the answer is stored
+        SemanticResponseCache.Query first = counted.query(partition, "How do I reset my password?");
+        assertThat(counted.lookup(first)).isEmpty();
+        counted.store(first, "Use the reset link.", 1);
+        assertThat(embeddings).hasValue(1);
+
+        SemanticResponseCache.Query second = counted.query(partition, "What is the weather in Seoul today?");
+        assertThat(counted.lookup(second)).isEmpty();
+        counted.store(second, "Sunny.", 1);
+        assertThat(embeddings).hasValue(2);
+        assertThat(counted.lookup(partition, "how do I reset my password")).contains("Use the reset link.");
+    }
+
+    @Test
+    void partitionsSeparateSystemPromptsAndModels() {
+        String partition = cache.partition("m", firstTurn("Be brief.", "q"));
+        cache.store(partition, "How do I reset my password?", "Use the reset link.", 1);
+
+        String otherPrompt = cache.partition("m", firstTurn("Answer in Korean.", "q"));
+        String otherModel = cache.partition("other", firstTurn("Be brief.", "q"));
+
+        assertThat(otherPrompt).isNotEqualTo(partition);
+        assertThat(otherModel).isNotEqualTo(partition);
+        assertThat(cache.lookup(otherPrompt, "How do I reset my password?")).isEmpty();
+        assertThat(cache.lookup(otherModel, "How do I reset my password?")).isEmpty();
+    }
+
+    @Test
+    void promptsWithHistoryAreNotEligible() {
+        Prompt withHistory = new Prompt(List.of(
+            new SystemMessage("Be brief."),
+            new UserMessage("Hi"),
+            new AssistantMessage("Hello!"),
+            new UserMessage("How do I reset my password?")));
+
+        assertThat(cache.partition("m", withHistory)).isNull();
+        assertThat(new SemanticResponseCache(embedder, false, 0.85, Duration.ofMinutes(5), 100, 10)
+            .partition("m", firstTurn("Be brief.", "q"))).isNull();
+    }
+
+    @Test
+    void expiredEntriesAreNotServedAndAreSweptAway() throws InterruptedException {
+        SemanticResponseCache shortLived =
+            new SemanticResponseCache(embedder, true, 0.85, Duration.ofMillis(20), 100, 10);
+        String partition = shortLived.partition("m", firstTurn("Be brief.", "q"));
+        shortLived.store(partition, "How do I reset my password?", "Use the reset link.", 1);
+
+        Thread.sleep(50);
+
+        assertThat(shortLived.lookup(partition, "How do I reset my password?")).isEmpty();
+        shortLived.evictExpired();
+        shortLived.store(partition, "How do I reset my password?", "New answer.", 1);
+        assertThat(shortLived.lookup(partition, "How do I reset my password?")).contains("New answer.");
+    }
+
+    @Test
+    void fullPartitionKeepsNewestEntries() {
+        SemanticResponseCache small = new SemanticResponseCache(embedder, true, 0.99, Duration.ofMinutes(5), 4, 10);
+        String partition = small.partition("m", firstTurn("Be brief.", "q"));
+        for (int i = 0; i < 5; i++) {
+            small.store(partition, "question number " + i + " about topic " + i, "answer " + i, 1);
+        }
+
+        assertThat(small.lookup(partition, "question number 0 about topic 0")).isEmpty();
+        assertThat(small.lookup(partition, "question number 4 about topic 4")).contains("answer 4");
+    }
+
+    /**
+     * Questions of opposite meaning that the embedder places close together
+     * must miss. The threshold is low enough for every pair to match on
+     * similarity alone; one pair scores above the shipped 0.9.
+     */
+    @Test
+    void negatedAndAntonymQuestionsMiss() {
+        SemanticResponseCache lenient = new SemanticResponseCache(embedder, true, 0.6, Duration.ofMinutes(5), 100, 10);
+        String partition = lenient.partition("m", firstTurn("Be brief.", "q"));
+        String[][] opposites = {
+            {"sort ascending", "sort descending"},
+            {"is it safe", "is it not safe"},
+            {"How do I sort the list ascending?", "How do I sort the list descending?"},
+            {"Is it safe to call repaint off the EDT?", "Is it not safe to call repaint off the EDT?"},
+            {"Should I enable double buffering here?", "Should I disable double buffering here?"},
+            {"Why does the table refresh?", "Why doesn't the table refresh?"},
+            {"리스트를 오름차순으로 정렬하려면?", "리스트를 내림차순으로 정렬하려면?"},
+            {"버튼이 화면에 보이나요?", "버튼이 화면에 보이지 않나요?"}
+        };
+        for (String[] pair : opposites) {
+            lenient.store(partition, pair[0], "answer to " + pair[0], 1);
+        }
+
+        for (String[] pair : opposites) {
+            assertThat(lenient.lookup(partition, pair[1])).as(pair[1]).isEmpty();
+            assertThat(lenient.lookup(partition, pair[0])).as(pair[0]).contains("answer to " + pair[0]);
+        }
+        for (String[] pair : opposites) {
+            assertThat(HnswIndex.dot(embedder.embed(pair[0]), embedder.embed(pair[1]))).isGreaterThan(0.6f);
+        }
+        assertThat(HnswIndex.dot(embedder.embed(opposites[3][0]), embedder.embed(opposites[3][1])))
+            .isGreaterThan(0.9f);
+    }
+
+    @Test
+    void polarityCheckKeepsRephrasingsAndDoubleNegations() {
+        assertThat(PolarityCheck.contradicts("How do I reset my password?", "how do i reset my password")).isFalse();
+        assertThat(PolarityCheck.contradicts("Is it safe?", "Isn't it not safe?")).isFalse();
+        assertThat(PolarityCheck.contradicts("Sort the rows ascending", "sort rows in ascending order")).isFalse();
+        assertThat(PolarityCheck.contradicts("Is it safe?", "Is it unsafe?")).isTrue();
+    }
+
+    @Test
+    void enablingWithoutAnEmbeddingModelFailsAtStartup() {
+        ObjectProvider<EmbeddingModel> none = new StaticListableBeanFactory().getBeanProvider(EmbeddingModel.class);
+
+        assertThatThrownBy(() -> new SemanticResponseCache(none, true, 0.9, Duration.ofMinutes(5), 100, 10))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("EmbeddingModel");
+        assertThat(new SemanticResponseCache(none, false, 0.9, Duration.ofMinutes(5), 100, 10)
+            .partition("m", firstTurn("Be brief.", "q"))).isNull();
+    }
+
+    @Test
+    void embeddingModelVectorsAreNormalized() {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed("hi")).thenReturn(new float[] {3, 4});
+
+        assertThat(new EmbeddingModelTextEmbedder(model).embed("hi")).containsExactly(0.6f, 0.8f);
+    }
+
+    private static Prompt firstTurn(String system, String user) {
+        return new Prompt(List.of(new SystemMessage(system), new UserMessage(user)),
+            ChatOptions.builder().temperature(0.7).build());
+    }
+}
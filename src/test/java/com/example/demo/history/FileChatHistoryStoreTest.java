@@ -0,0 +1,288 @@
+package com.example.demo.history;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.example.demo.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileChatHistoryStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    void keepsTheNewestMessagesOfEachSession() {
+        try (FileChatHistoryStore store = store(4)) {
+            for (int i = 0; i < 5; i++) {
+                store.append("s1", turn(i));
+            }
+            store.append("s2", turn(9));
+
+            assertThat(store.getHistory("s1")).extracting(ChatMessage::getContent)
+                .containsExactly("question 3", "answer 3", "question 4", "answer 4");
+            assertThat(store.getHistory("s2")).extracting(ChatMessage::getRole).containsExactly("user", "assistant");
+            assertThat(store.getHistory("unknown")).isEmpty();
+            assertThat(store.sessionCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void roundTripsAllMessageFields() {
+        ChatMessage message = new ChatMessage("assistant", "안녕하세요 😀 multi\nline", new Date(1234567L), "m-1");
+        ChatMessage bare = new ChatMessage("user", null, new Date(42L), null);
+        try (FileChatHistoryStore store = store(10)) {
+            store.append("세션", List.of(message, bare));
+
+            List<ChatMessage> history = store.getHistory("세션");
+            assertThat(history.get(0)).usingRecursiveComparison().ignoringFields("tokenCount").isEqualTo(message);
+            assertThat(history.get(1)).usingRecursiveComparison().ignoringFields("tokenCount").isEqualTo(bare);
+        }
+    }
+
+    @Test
+    void historySurvivesARestartFromTheSnapshotAndTheLogTail() throws IOException {
+        Path snapshot = dir.resolve("index.snapshot");
+        Path saved = dir.resolve("saved.snapshot");
+        try (FileChatHistoryStore store = store(4)) {
+            store.append("s1", turn(1));
+            store.append("s2", turn(2));
+            store.checkpoint();
+            Files.copy(snapshot, saved);
+            // Written after the checkpoint: recovered by replaying the log
+            store.append("s1", turn(3));
+            store.clear("s2");
+            store.append("s3", turn(4));
+            store.flush();
+        }
+        // Simulate a crash: the snapshot written on close is replaced by the older one
+        Files.move(saved, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChatHistoryStore reopened = store(4)) {
+            assertThat(reopened.getHistory("s1")).extracting(ChatMessage::getContent)
+                .containsExactly("question 1", "answer 1", "question 3", "answer 3");
+            assertThat(reopened.getHistory("s2")).isEmpty();
+            assertThat(reopened.getHistory("s3")).hasSize(2);
+        }
+    }
+
+    @Test
+    void recoversWithoutASnapshotByReplayingTheWholeLog() throws IOException {
+        try (FileChatHistoryStore store = store(4)) {
+            for (int i = 0; i < 50; i++) {
+                store.append("s" + (i % 5), turn(i));
+            }
+        }
+        Files.delete(dir.resolve("index.snapshot"));
+
+        try (FileChatHistoryStore reopened = store(4)) {
+            assertThat(reopened.getRecoveredRecords()).isEqualTo(100);
+            assertThat(reopened.sessionCount()).isEqualTo(5);
+            assertThat(reopened.getHistory("s4")).extracting(ChatMessage::getContent)
+                .containsExactly("question 44", "answer 44", "question 49", "answer 49");
+        }
+    }
+
+    @Test
+    void discardsATornRecordAtTheTail() throws IOException {
+        long tornAt;
+        try (FileChatHistoryStore store = store(10)) {
+            store.append("s1", turn(1));
+            store.checkpoint();
+            tornAt = store.getLogBytes();
+            store.append("s1", turn(2));
+        }
+        Files.delete(dir.resolve("index.snapshot"));
+        // Corrupt the second-to-last record, as an interrupted write would
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            file.seek(tornAt + 40);
+            file.write(new byte[] {1, 2, 3, 4});
+        }
+
+        try (FileChatHistoryStore reopened = store(10)) {
+            assertThat(reopened.getHistory("s1")).extracting(ChatMessage::getContent)
+                .containsExactly("question 1", "answer 1");
+            reopened.append("s1", turn(3));
+            assertThat(reopened.getHistory("s1")).hasSize(4);
+        }
+        try (FileChatHistoryStore again = store(10)) {
+            assertThat(again.getHistory("s1")).extracting(ChatMessage::getContent).endsWith("answer 3");
+        }
+    }
+
+    @Test
+    void compactionReclaimsSegmentsAndKeepsLiveHistory() throws IOException {
+        try (FileChatHistoryStore store = store(2)) {
+            for (int i = 0; i < 200; i++) {
+                store.append("busy", turn(i));
+                store.append("s" + i, turn(i));
+                if (i % 2 == 0) {
+                    store.clear("s" + i);
+                }
+            }
+            int segmentsBefore = store.getSegmentCount();
+            long bytesBefore = store.getLogBytes();
+
+            store.compact();
+
+            assertThat(store.getSegmentCount()).isLessThan(segmentsBefore / 2);
+            assertThat(store.getLogBytes()).isLessThan(bytesBefore / 2);
+            assertThat(segmentFiles()).hasSize(store.getSegmentCount());
+            assertThat(store.getHistory("busy")).extracting(ChatMessage::getContent)
+                .containsExactly("question 199", "answer 199");
+            assertThat(store.getHistory("s1")).hasSize(2);
+            assertThat(store.getHistory("s2")).isEmpty();
+        }
+        // Relocated records are found again after a restart
+        try (FileChatHistoryStore reopened = store(2)) {
+            assertThat(reopened.getHistory("s1")).extracting(ChatMessage::getContent)
+                .containsExactly("question 1", "answer 1");
+            assertThat(reopened.sessionCount()).isEqualTo(101);
+        }
+    }
+
+    /**
+     * Scheduled checkpoints race the ones compaction takes while writers keep
+     * appending. Every checkpoint must complete, and the last snapshot must
+     * cover the final state.
+     */
+    @Test
+    void concurrentCheckpointsAndCompactionsLeaveARecoverableSnapshot() throws Exception {
+        Logger storeLogger = (Logger) LoggerFactory.getLogger(FileChatHistoryStore.class);
+        ListAppender<ILoggingEvent> warnings = new ListAppender<>();
+        warnings.start();
+        storeLogger.addAppender(warnings);
+        try (FileChatHistoryStore store = store(2)) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            AtomicBoolean running = new AtomicBoolean(true);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int c = 0; c < 2; c++) {
+                tasks.add(executor.submit(() -> {
+                    while (running.get()) {
+                        store.checkpoint();
+                    }
+                }));
+            }
+            tasks.add(executor.submit(() -> {
+                while (running.get()) {
+                    store.compact();
+                }
+            }));
+            for (int i = 0; i < 3_000; i++) {
+                store.append("busy", turn(i));
+                store.append("s" + (i % 50), turn(i));
+            }
+            running.set(false);
+            for (Future<?> task : tasks) {
+                task.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+
+            store.compact();
+            assertThat(Files.exists(dir.resolve("index.snapshot.tmp"))).isFalse();
+            assertThat(segmentFiles()).hasSize(store.getSegmentCount());
+        } finally {
+            storeLogger.detachAppender(warnings);
+        }
+        // No checkpoint failed on a temp file another one had moved or was writing
+        assertThat(warnings.list).extracting(ILoggingEvent::getLevel).doesNotContain(Level.WARN);
+        try (FileChatHistoryStore reopened = store(2)) {
+            assertThat(reopened.getRecoveredRecords()).isZero();
+            assertThat(reopened.sessionCount()).isEqualTo(51);
+            assertThat(reopened.getHistory("busy")).extracting(ChatMessage::getContent)
+                .containsExactly("question 2999", "answer 2999");
+            assertThat(reopened.getHistory("s49")).extracting(ChatMessage::getContent)
+                .containsExactly("question 2999", "answer 2999");
+        }
+    }
+
+    @Test
+    void sessionsExpireAfterTheRetention() {
+        try (FileChatHistoryStore store = store(4)) {
+            store.append("old", turn(1));
+            clock.addAndGet(Duration.ofDays(2).toMillis());
+            store.append("new", turn(2));
+
+            assertThat(store.getHistory("old")).isEmpty();
+            store.compact();
+            assertThat(store.sessionCount()).isEqualTo(1);
+
+            // Writing to an expired session starts it over
+            store.append("new", turn(3));
+            clock.addAndGet(Duration.ofDays(2).toMillis());
+            store.append("new", turn(4));
+            assertThat(store.getHistory("new")).extracting(ChatMessage::getContent)
+                .containsExactly("question 4", "answer 4");
+        }
+    }
+
+    @Test
+    void compactionKeepsTheMostRecentlyWrittenSessions() throws IOException {
+        try (FileChatHistoryStore store = store(4, 3)) {
+            for (int i = 0; i < 5; i++) {
+                store.append("s" + i, turn(i));
+                clock.incrementAndGet();
+            }
+            // Written last, so s1 is now newer than s2 and s3
+            store.append("s1", turn(9));
+            store.flush();
+
+            store.compact();
+
+            assertThat(store.sessionCount()).isEqualTo(3);
+            assertThat(store.getHistory("s0")).isEmpty();
+            assertThat(store.getHistory("s2")).isEmpty();
+            assertThat(store.getHistory("s1")).hasSize(4);
+            assertThat(store.getHistory("s4")).hasSize(2);
+        }
+        // The evictions are in the log, not only in the snapshot
+        Files.delete(dir.resolve("index.snapshot"));
+        try (FileChatHistoryStore reopened = store(4, 3)) {
+            assertThat(reopened.sessionCount()).isEqualTo(3);
+            assertThat(reopened.getHistory("s0")).isEmpty();
+        }
+    }
+
+    private FileChatHistoryStore store(int maxMessages) {
+        return store(maxMessages, 1000);
+    }
+
+    private FileChatHistoryStore store(int maxMessages, int maxSessions) {
+        return new FileChatHistoryStore(dir, maxMessages, maxSessions, DataSize.ofKilobytes(4), Duration.ofDays(1),
+            0.5, clock::get);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static List<ChatMessage> turn(int i) {
+        return List.of(new ChatMessage("user", "question " + i), new ChatMessage("assistant", "answer " + i));
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryChatHistoryStoreTest {
+
+    @Test
+    void trimsSessionToMaxMessages() {
+        InMemoryChatHistoryStore store = store(4, 100, Duration.ofMinutes(5), DataSize.ofMegabytes(1));
+
+        for (int i = 0; i < 5; i++) {
+            store.append("s1", turn(i));
+        }
+
+        List<ChatMessage> history = store.getHistory("s1");
+        assertThat(history).extracting(ChatMessage::getContent)
+            .containsExactly("question 3", "answer 3", "question 4", "answer 4");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedSessionBeyondMaxSessions() {
+        InMemoryChatHistoryStore store = store(20, 2, Duration.ofMinutes(5), DataSize.ofMegabytes(1));
+
+        store.append("s1", turn(1));
+        store.append("s2", turn(2));
+        store.getHistory("s1");
+        store.append("s3", turn(3));
+
+        assertThat(store.sessionCount()).isEqualTo(2);
+        assertThat(store.getHistory("s2")).isEmpty();
+        assertThat(store.getHistory("s1")).hasSize(2);
+        assertThat(store.getHistory("s3")).hasSize(2);
+        assertThat(store.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void evictsWhenByteBudgetIsExceeded() {
+        long turnBytes = turn(0).stream().mapToLong(InMemoryChatHistoryStore::estimateBytes).sum();
+        InMemoryChatHistoryStore store = store(20, 100, Duration.ofMinutes(5), DataSize.ofBytes(turnBytes * 3));
+
+        for (int i = 0; i < 5; i++) {
+            store.append("s" + i, turn(i));
+        }
+
+        assertThat(store.sessionCount()).isEqualTo(3);
+        assertThat(store.getTotalBytes()).isLessThanOrEqualTo(turnBytes * 3);
+        assertThat(store.getHistory("s0")).isEmpty();
+        assertThat(store.getHistory("s4")).hasSize(2);
+    }
+
+    @Test
+    void expiresIdleSessions() throws InterruptedException {
+        InMemoryChatHistoryStore store = store(20, 100, Duration.ofMillis(50), DataSize.ofMegabytes(1));
+        store.append("s1", turn(1));
+        store.append("s2", turn(2));
+
+        Thread.sleep(100);
+        store.evictExpired();
+
+        assertThat(store.sessionCount()).isZero();
+        assertThat(store.getTotalBytes()).isZero();
+        assertThat(store.getHistory("s1")).isEmpty();
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        InMemoryChatHistoryStore store = store(20, 100, Duration.ofMinutes(5), DataSize.ofMegabytes(1));
+        store.append("s1", turn(1));
+
+        store.getHistory("s1");
+        store.getHistory("unknown");
+
+        assertThat(store.getHitCount()).isEqualTo(1);
+        assertThat(store.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void clearReleasesBytes() {
+        InMemoryChatHistoryStore store = store(20, 100, Duration.ofMinutes(5), DataSize.ofMegabytes(1));
+        store.append("s1", turn(1));
+
+        store.clear("s1");
+
+        assertThat(store.sessionCount()).isZero();
+        assertThat(store.getTotalBytes()).isZero();
+    }
+
+    @Test
+    void idleSessionsMoveOffHeapAndBackOnTheNextRead() throws InterruptedException {
+        InMemoryChatHistoryStore store = tieredStore(DataSize.ofMegabytes(1));
+        store.append("s1", turn(1));
+        store.append("s2", turn(2));
+
+        Thread.sleep(50);
+        store.evictExpired();
+
+        assertThat(store.getOffHeapSessionCount()).isEqualTo(2);
+        assertThat(store.getTotalBytes()).isZero();
+        assertThat(store.sessionCount()).isEqualTo(2);
+
+        assertThat(store.getHistory("s1")).extracting(ChatMessage::getContent)
+            .containsExactly("question 1", "answer 1");
+        assertThat(store.getOffHeapSessionCount()).isEqualTo(1);
+        assertThat(store.getOffHeapLookupCount()).isEqualTo(1);
+        assertThat(store.getTotalBytes()).isEqualTo(bytes(turn(1)));
+    }
+
+    @Test
+    void appendToAnOffHeapSessionKeepsItsHistory() throws InterruptedException {
+        InMemoryChatHistoryStore store = tieredStore(DataSize.ofMegabytes(1));
+        store.append("s1", turn(1));
+        Thread.sleep(50);
+        store.evictExpired();
+
+        store.append("s1", turn(2));
+
+        assertThat(store.getOffHeapSessionCount()).isZero();
+        assertThat(store.getHistory("s1")).extracting(ChatMessage::getContent)
+            .containsExactly("question 1", "answer 1", "question 2", "answer 2");
+    }
+
+    @Test
+    void clearingAnOffHeapSessionFreesItsBlocks() throws InterruptedException {
+        InMemoryChatHistoryStore store = tieredStore(DataSize.ofMegabytes(1));
+        store.append("s1", turn(1));
+        Thread.sleep(50);
+        store.evictExpired();
+
+        store.clear("s1");
+
+        assertThat(store.getOffHeapSessionCount()).isZero();
+        assertThat(store.getHistory("s1")).isEmpty();
+    }
+
+    @Test
+    void sessionsStayOnTheHeapWhenTheOffHeapBudgetIsFull() throws InterruptedException {
+        InMemoryChatHistoryStore store = new InMemoryChatHistoryStore(20, 100, Duration.ofMinutes(5),
+            DataSize.ofMegabytes(16), DataSize.ofBytes(0), Duration.ofMillis(20), DataSize.ofMegabytes(1));
+        // Random text deflates to more than the single chunk of the budget
+        byte[] noise = new byte[1536 * 1024];
+        new Random(7).nextBytes(noise);
+        List<ChatMessage> large = List.of(new ChatMessage("user", Base64.getEncoder().encodeToString(noise)),
+            new ChatMessage("assistant", "answer"));
+        store.append("s1", large);
+        Thread.sleep(50);
+        store.evictExpired();
+        store.append("s1", turn(2));
+
+        assertThat(store.getOffHeapSessionCount()).isZero();
+        assertThat(store.getHistory("s1")).hasSize(4);
+        assertThat(store.getTotalBytes()).isEqualTo(bytes(large) + bytes(turn(2)));
+    }
+
+    @Test
+    void budgetBelowOneChunkTurnsTieringOff() {
+        SimpleMeterRegistry belowOneChunk = new SimpleMeterRegistry();
+        tieredStore(DataSize.ofKilobytes(1)).bindTo(belowOneChunk);
+        SimpleMeterRegistry oneChunk = new SimpleMeterRegistry();
+        tieredStore(DataSize.ofMegabytes(1)).bindTo(oneChunk);
+
+        // The off-heap meters exist only while sessions can be moved off the heap
+        assertThat(belowOneChunk.find("chat.history.off-heap.sessions").gauge()).isNull();
+        assertThat(oneChunk.find("chat.history.off-heap.sessions").gauge()).isNotNull();
+    }
+
+    @Test
+    void byteBudgetEvictionKeepsOffHeapSessions() throws InterruptedException {
+        long turnBytes = bytes(turn(0));
+        InMemoryChatHistoryStore store = new InMemoryChatHistoryStore(20, 100, Duration.ofMinutes(5),
+            DataSize.ofBytes(turnBytes * 2), DataSize.ofBytes(0), Duration.ofMillis(20), DataSize.ofMegabytes(1));
+        store.append("cold1", turn(1));
+        store.append("cold2", turn(2));
+        Thread.sleep(50);
+        store.evictExpired();
+
+        for (int i = 0; i < 4; i++) {
+            store.append("hot" + i, turn(i));
+        }
+
+        // Heap sessions are evicted to fit the budget; the older off-heap ones are left alone
+        assertThat(store.getOffHeapSessionCount()).isEqualTo(2);
+        assertThat(store.getTotalBytes()).isLessThanOrEqualTo(turnBytes * 2);
+        assertThat(store.getHistory("hot0")).isEmpty();
+        assertThat(store.getHistory("hot3")).hasSize(2);
+        assertThat(store.getHistory("cold1")).extracting(ChatMessage::getContent)
+            .containsExactly("question 1", "answer 1");
+        assertThat(store.getHistory("cold2")).hasSize(2);
+    }
+
+    /**
+     * Writers keep appending while the sweep moves every session off the heap
+     * as soon as it can; no turn may be lost on either side of a move.
+     */
+    @Test
+    void appendsRacingWithMovesOffHeapAreKept() throws Exception {
+        InMemoryChatHistoryStore store = new InMemoryChatHistoryStore(1000, 100, Duration.ofMinutes(5),
+            DataSize.ofMegabytes(8), DataSize.ofBytes(0), Duration.ofNanos(1), DataSize.ofMegabytes(8));
+        int writers = 4;
+        int turns = 400;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Future<?> sweeper = executor.submit(() -> {
+            while (writing.get()) {
+                store.evictExpired();
+            }
+        });
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String session = "s" + w;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < turns; i++) {
+                    store.append(session, turn(i));
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        sweeper.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        for (int w = 0; w < writers; w++) {
+            assertThat(store.getHistory("s" + w)).hasSize(2 * turns);
+        }
+        assertThat(store.getOffHeapLookupCount()).isPositive();
+        // Every session is back on the heap, and the running total must match without a sweep
+        assertThat(store.getTotalBytes()).isEqualTo(writers * IntStream.range(0, turns)
+            .mapToLong(i -> bytes(turn(i))).sum());
+    }
+
+    private static InMemoryChatHistoryStore tieredStore(DataSize offHeapBudget) {
+        return new InMemoryChatHistoryStore(20, 100, Duration.ofMinutes(5), DataSize.ofMegabytes(1),
+            DataSize.ofBytes(0), Duration.ofMillis(20), offHeapBudget);
+    }
+
+    private static long bytes(List<ChatMessage> messages) {
+        return messages.stream().mapToLong(InMemoryChatHistoryStore::estimateBytes).sum();
+    }
+
+    private static InMemoryChatHistoryStore store(int maxMessages, int maxSessions, Duration ttl, DataSize maxBytes) {
+        return new InMemoryChatHistoryStore(maxMessages, maxSessions, ttl, maxBytes);
+    }
+
+    private static List<ChatMessage> turn(int i) {
+        return List.of(new ChatMessage("user", "question " + i), new ChatMessage("assistant", "answer " + i));
+    }
+}
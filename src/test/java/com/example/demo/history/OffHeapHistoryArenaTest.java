@@ -0,0 +1,60 @@
+package com.example.demo.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapHistoryArenaTest {
+
+    private static final long CHUNK_BYTES = (long) OffHeapHistoryArena.BLOCK_BYTES * OffHeapHistoryArena.CHUNK_BLOCKS;
+
+    @Test
+    void entriesSpanningBlocksReadBackIntact() {
+        OffHeapHistoryArena arena = new OffHeapHistoryArena(CHUNK_BYTES);
+        byte[] small = bytes(10, 1);
+        byte[] large = bytes(OffHeapHistoryArena.BLOCK_BYTES * 3 + 17, 2);
+
+        OffHeapHistoryArena.Entry first = arena.store(small);
+        OffHeapHistoryArena.Entry second = arena.store(large);
+
+        assertThat(arena.load(first)).isEqualTo(small);
+        assertThat(arena.load(second)).isEqualTo(large);
+        assertThat(arena.entryCount()).isEqualTo(2);
+        assertThat(arena.usedBytes()).isEqualTo(5L * OffHeapHistoryArena.BLOCK_BYTES);
+        assertThat(arena.reservedBytes()).isEqualTo(CHUNK_BYTES);
+    }
+
+    @Test
+    void refusesEntriesBeyondTheBudgetAndReusesFreedBlocks() {
+        OffHeapHistoryArena arena = new OffHeapHistoryArena(CHUNK_BYTES);
+        byte[] half = bytes((int) CHUNK_BYTES / 2, 3);
+
+        OffHeapHistoryArena.Entry first = arena.store(half);
+        OffHeapHistoryArena.Entry second = arena.store(half);
+
+        assertThat(arena.store(bytes(1, 4))).isNull();
+
+        arena.free(first);
+        OffHeapHistoryArena.Entry third = arena.store(bytes(100, 5));
+        assertThat(third).isNotNull();
+        assertThat(arena.load(second)).isEqualTo(half);
+        assertThat(arena.load(third)).isEqualTo(bytes(100, 5));
+        assertThat(arena.reservedBytes()).isEqualTo(CHUNK_BYTES);
+    }
+
+    @Test
+    void budgetBelowOneChunkHoldsNothing() {
+        OffHeapHistoryArena arena = new OffHeapHistoryArena(CHUNK_BYTES - 1);
+
+        assertThat(arena.store(bytes(1, 6))).isNull();
+        assertThat(arena.reservedBytes()).isZero();
+    }
+
+    private static byte[] bytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionHistoryBufferTest {
+
+    @Test
+    void keepsNewestMessagesInOrder() {
+        SessionHistoryBuffer buffer = new SessionHistoryBuffer(4);
+
+        for (int i = 0; i < 3; i++) {
+            buffer.append(turn(0, i));
+        }
+
+        assertThat(buffer.snapshot()).extracting(ChatMessage::getContent)
+            .containsExactly("0:1:q", "0:1:a", "0:2:q", "0:2:a");
+        assertThat(buffer.size()).isEqualTo(4);
+    }
+
+    @Test
+    void tracksBytesOfRetainedMessages() {
+        SessionHistoryBuffer buffer = new SessionHistoryBuffer(4);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.append(turn(0, i));
+        }
+
+        long expected = buffer.snapshot().stream().mapToLong(InMemoryChatHistoryStore::estimateBytes).sum();
+        assertThat(buffer.bytes()).isEqualTo(expected);
+    }
+
+    @Test
+    void appendLargerThanCapacityKeepsTail() {
+        SessionHistoryBuffer buffer = new SessionHistoryBuffer(2);
+
+        buffer.append(List.of(msg("a"), msg("b"), msg("c")));
+
+        assertThat(buffer.snapshot()).extracting(ChatMessage::getContent).containsExactly("b", "c");
+    }
+
+    @Test
+    void laterSnapshotsReuseDecodedMessagesUntilReleased() {
+        SessionHistoryBuffer buffer = new SessionHistoryBuffer(3);
+        buffer.append(List.of(msg("a"), msg("b")));
+        List<ChatMessage> first = buffer.snapshot();
+        first.forEach(ChatMessage::getContent);
+
+        buffer.append(List.of(msg("c"), msg("d")));
+        List<ChatMessage> second = buffer.snapshot();
+
+        // "a" was overwritten; "b" is the same decoded instance, shifted to the front
+        assertThat(second).extracting(ChatMessage::getContent).containsExactly("b", "c", "d");
+        assertThat(second.get(0)).isSameAs(first.get(1));
+
+        buffer.releaseDecoded();
+        ChatMessage decodedAgain = buffer.snapshot().get(0);
+        assertThat(decodedAgain).isNotSameAs(second.get(0));
+        assertThat(decodedAgain.getContent()).isEqualTo("b");
+    }
+
+    /**
+     * Writers append whole turns while readers snapshot continuously. Every
+     * snapshot must consist of complete turns, and each writer's turns must
+     * appear in the order they were appended.
+     */
+    @Test
+    void concurrentAppendsAndSnapshotsStayConsistent() throws Exception {
+        int capacity = 20;
+        int writers = 8;
+        int turnsPerWriter = 20_000;
+        int readers = 4;
+        SessionHistoryBuffer buffer = new SessionHistoryBuffer(capacity);
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        CountDownLatch startGate = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong snapshots = new AtomicLong();
+        ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+
+        List<Future<?>> writerTasks = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            writerTasks.add(executor.submit(() -> {
+                await(startGate);
+                for (int i = 0; i < turnsPerWriter; i++) {
+                    buffer.append(turn(writer, i));
+                }
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            executor.submit(() -> {
+                await(startGate);
+                while (writing.get()) {
+                    String problem = check(buffer.snapshot(), capacity);
+                    if (problem != null) {
+                        violations.add(problem);
+                    }
+                    snapshots.incrementAndGet();
+                }
+            });
+        }
+
+        startGate.countDown();
+        for (Future<?> task : writerTasks) {
+            task.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(violations).isEmpty();
+        assertThat(snapshots.get()).isPositive();
+        List<ChatMessage> last = buffer.snapshot();
+        assertThat(last).hasSize(capacity);
+        assertThat(check(last, capacity)).isNull();
+        assertThat(buffer.bytes())
+            .isEqualTo(last.stream().mapToLong(InMemoryChatHistoryStore::estimateBytes).sum());
+    }
+
+    @Test
+    void storeToleratesConcurrentTurnsOnOneSession() throws Exception {
+        InMemoryChatHistoryStore store = new InMemoryChatHistoryStore(
+            20, 100, Duration.ofMinutes(5), DataSize.ofMegabytes(8));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < 8; w++) {
+            int writer = w;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    store.append("shared", turn(writer, i));
+                    assertThat(check(store.getHistory("shared"), 20)).isNull();
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(store.getHistory("shared")).hasSize(20);
+    }
+
+    /**
+     * @return Description of the first inconsistency, or null
+     */
+    private static String check(List<ChatMessage> snapshot, int capacity) {
+        if (snapshot.size() > capacity || snapshot.size() % 2 != 0) {
+            return "bad size " + snapshot.size();
+        }
+        Map<String, Integer> lastTurnByWriter = new HashMap<>();
+        for (int i = 0; i < snapshot.size(); i += 2) {
+            String[] question = snapshot.get(i).getContent().split(":");
+            String[] answer = snapshot.get(i + 1).getContent().split(":");
+            if (!"q".equals(question[2]) || !"a".equals(answer[2])
+                    || !question[0].equals(answer[0]) || !question[1].equals(answer[1])) {
+                return "torn turn at " + i + ": " + snapshot;
+            }
+            int turn = Integer.parseInt(question[1]);
+            Integer previous = lastTurnByWriter.put(question[0], turn);
+            if (previous != null && previous >= turn) {
+                return "out of order for writer " + question[0] + ": " + snapshot;
+            }
+        }
+        return null;
+    }
+
+    private static List<ChatMessage> turn(int writer, int i) {
+        return List.of(msg(writer + ":" + i + ":q"), msg(writer + ":" + i + ":a"));
+    }
+
+    private static ChatMessage msg(String content) {
+        return new ChatMessage("user", content);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
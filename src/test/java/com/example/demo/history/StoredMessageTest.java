@@ -0,0 +1,94 @@
+package com.example.demo.history;
+
+import com.example.demo.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StoredMessageTest {
+
+    @Test
+    void roundTripsEveryField() {
+        ChatMessage message = new ChatMessage("assistant", "줄바꿈\n\"따옴표\" and emoji 😀", new Date(1_700_000_000_123L),
+            "m-1");
+        message.setTokenCount(17);
+
+        ChatMessage restored = StoredMessage.of(message, 0).toChatMessage();
+
+        assertThat(restored.getRole()).isEqualTo("assistant");
+        assertThat(restored.getContent()).isEqualTo(message.getContent());
+        assertThat(restored.getTimestamp()).isEqualTo(message.getTimestamp());
+        assertThat(restored.getMessageId()).isEqualTo("m-1");
+        assertThat(restored.getTokenCount()).isEqualTo(17);
+        assertThat(new String(restored.getJsonFragment(), StandardCharsets.UTF_8))
+            .startsWith("{\"role\":\"assistant\",\"content\":\"");
+    }
+
+    @Test
+    void keepsUncommonRolesAndMissingValues() {
+        ChatMessage restored = StoredMessage.of(new ChatMessage("tool", null, null, null), 0).toChatMessage();
+
+        assertThat(restored.getRole()).isEqualTo("tool");
+        assertThat(restored.getContent()).isNull();
+        assertThat(restored.getTimestamp()).isNull();
+        assertThat(restored.getTokenCount()).isEqualTo(-1);
+        // Only user and assistant entries carry a prompt fragment
+        assertThat(restored.getJsonFragment()).isNull();
+    }
+
+    @Test
+    void compressesOnlyAboveTheThreshold() {
+        ChatMessage large = new ChatMessage("assistant", "BorderLayout splits a container into regions. ".repeat(100));
+        ChatMessage small = new ChatMessage("user", "How does BorderLayout work?");
+
+        StoredMessage compressed = StoredMessage.of(large, 1024);
+        StoredMessage plain = StoredMessage.of(small, 1024);
+
+        assertThat(compressed.isCompressed()).isTrue();
+        assertThat(compressed.footprint()).isLessThan(StoredMessage.of(large, 0).footprint() / 4);
+        assertThat(compressed.toChatMessage().getContent()).isEqualTo(large.getContent());
+        assertThat(plain.isCompressed()).isFalse();
+        assertThat(plain.toChatMessage().getContent()).isEqualTo(small.getContent());
+    }
+
+    @Test
+    void serializedFormReadsBackAsTheSameMessage() {
+        ChatMessage message = new ChatMessage("assistant", "Use a JSplitPane. ".repeat(300), new Date(42L), "아이디-1");
+        message.setTokenCount(900);
+        StoredMessage stored = StoredMessage.of(message, 1024);
+        ByteBuffer buffer = ByteBuffer.allocate(stored.serializedSize());
+
+        stored.writeTo(buffer);
+        StoredMessage read = StoredMessage.readFrom(buffer.flip());
+
+        assertThat(buffer.hasRemaining()).isFalse();
+        assertThat(read.isCompressed()).isTrue();
+        assertThat(read.footprint()).isEqualTo(stored.footprint());
+        ChatMessage restored = read.toChatMessage();
+        assertThat(restored.getContent()).isEqualTo(message.getContent());
+        assertThat(restored.getTimestamp()).isEqualTo(new Date(42L));
+        assertThat(restored.getMessageId()).isEqualTo("아이디-1");
+        assertThat(restored.getTokenCount()).isEqualTo(900);
+    }
+
+    @Test
+    void storeReturnsEqualMessagesFromCompressedHistory() {
+        InMemoryChatHistoryStore store = new InMemoryChatHistoryStore(20, 100, Duration.ofMinutes(5),
+            DataSize.ofMegabytes(1), DataSize.ofBytes(256), Duration.ZERO, DataSize.ofBytes(0));
+        String answer = "GridBagLayout places components in a grid of cells. ".repeat(20);
+
+        store.append("s1", List.of(new ChatMessage("user", "GridBagLayout?"),
+            new ChatMessage("assistant", answer)));
+
+        assertThat(store.getHistory("s1")).extracting(ChatMessage::getContent).containsExactly("GridBagLayout?", answer);
+        assertThat(store.getTotalBytes()).isLessThan(answer.length());
+    }
+}
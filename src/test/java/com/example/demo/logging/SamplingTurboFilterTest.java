@@ -0,0 +1,60 @@
+package com.example.demo.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SamplingTurboFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+
+    private final SamplingTurboFilter filter = new SamplingTurboFilter();
+
+    @BeforeEach
+    void setUp() {
+        filter.setContext(context);
+        filter.addSampled("com.example.demo");
+    }
+
+    @Test
+    void dropsSampledEventsAtZeroRate() {
+        filter.setRate(0.0);
+        filter.start();
+        Logger logger = context.getLogger("com.example.demo.service.ChatService");
+
+        assertThat(filter.decide(null, logger, Level.INFO, "step", null, null)).isEqualTo(FilterReply.DENY);
+        assertThat(filter.decide(null, logger, Level.DEBUG, "step", null, null)).isEqualTo(FilterReply.DENY);
+    }
+
+    @Test
+    void leavesWarningsAndOtherLoggersAlone() {
+        filter.setRate(0.0);
+        filter.start();
+
+        assertThat(filter.decide(null, context.getLogger("com.example.demo.service.ChatService"),
+            Level.WARN, "failed", null, null)).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(filter.decide(null, context.getLogger("chat.request"),
+            Level.INFO, "summary", null, null)).isEqualTo(FilterReply.NEUTRAL);
+    }
+
+    @Test
+    void keepsRoughlyTheConfiguredFraction() {
+        filter.setRate(0.1);
+        filter.start();
+        Logger logger = context.getLogger("com.example.demo.OpenRouterChatModel");
+
+        int kept = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.decide(null, logger, Level.INFO, "step", null, null) == FilterReply.NEUTRAL) {
+                kept++;
+            }
+        }
+
+        assertThat(kept).isBetween(9_000, 11_000);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.demo.metrics;
+
+import com.example.demo.OpenRouterChatModel;
+import com.example.demo.ReactiveOpenRouterChatModel;
+import com.example.demo.StubOpenRouterServer;
+import com.example.demo.routing.ModelRoute;
+import com.example.demo.routing.ModelRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatMetricsTest {
+
+    private StubOpenRouterServer stub;
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = StubOpenRouterServer.start();
+        registry = stub.meterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void blockingCallRecordsLatencyAndUsage() {
+        OpenRouterChatModel model = stub.chatModel(4);
+
+        var response = model.call(new Prompt("hello"));
+
+        assertThat(response.getMetadata().getUsage().getCompletionTokens()).isEqualTo(5);
+        assertThat(registry.get("openrouter.request.duration")
+            .tags("model", "stub/model", "mode", "call", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(registry.get("openrouter.tokens").tags("type", "prompt").counter().count()).isEqualTo(10);
+        assertThat(registry.get("openrouter.tokens").tags("type", "completion").counter().count()).isEqualTo(5);
+        assertThat(registry.get("openrouter.tokens.per.second").tags("mode", "call").summary().count()).isEqualTo(1);
+        assertThat(registry.get("openrouter.requests.in-flight").tags("client", "blocking").gauge().value()).isZero();
+    }
+
+    @Test
+    void streamsRecordTimeToFirstTokenAndUsage() {
+        stub.setReply("one two three four");
+        stub.setLatency(Duration.ofMillis(20));
+        ReactiveOpenRouterChatModel model = stub.reactiveChatModel();
+
+        long chunks = model.stream(new Prompt("hello")).count().block();
+
+        assertThat(chunks).isEqualTo(4);
+        assertThat(registry.get("openrouter.ttft").timer().totalTime(TimeUnit.MILLISECONDS))
+            .isGreaterThanOrEqualTo(20);
+        assertThat(registry.get("openrouter.tokens").tags("type", "completion").counter().count()).isEqualTo(4);
+        assertThat(registry.get("openrouter.request.duration")
+            .tags("mode", "stream", "outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedCallIsTaggedAsError() {
+        OpenRouterChatModel model = stub.chatModel(4, new ModelRouter(
+            List.of(new ModelRoute("stub/model", "stub/model", null, stub.baseUrl() + "/missing", "test-key")),
+            "stub/model", Duration.ofSeconds(10), Duration.ofSeconds(10)));
+
+        try {
+            model.call(new Prompt("hello"));
+        } catch (RuntimeException expected) {
+            // recorded below
+        }
+
+        assertThat(registry.get("openrouter.request.duration").tags("outcome", "error").timer().count())
+            .isEqualTo(1);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo.resilience;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long STEADY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void rejectsBeyondTheLimitWithRetryAfter() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 50);
+        limiter.acquire();
+        limiter.acquire();
+
+        assertThatThrownBy(limiter::acquire)
+            .isInstanceOfSatisfying(UpstreamUnavailableException.class, e -> {
+                assertThat(e.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                assertThat(e.getRetryAfterSeconds()).isEqualTo(1);
+            });
+
+        limiter.release(true, -1, false);
+        limiter.acquire();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    void growsWhileLatencyIsSteadyAndTheLimitIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 50);
+
+        for (int round = 0; round < 50; round++) {
+            runRound(limiter, STEADY);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(50);
+    }
+
+    @Test
+    void doesNotGrowWhenTheLimitIsNotUsed() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 50);
+
+        for (int i = 0; i < 200; i++) {
+            boolean saturated = limiter.acquire();
+            limiter.release(saturated, STEADY, false);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 20);
+        for (int round = 0; round < 20; round++) {
+            runRound(limiter, STEADY);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(20);
+
+        for (int round = 0; round < 5; round++) {
+            runRound(limiter, STEADY * 10);
+        }
+
+        assertThat(limiter.getLimit()).isLessThan(10);
+    }
+
+    @Test
+    void failuresBackOffMultiplicativelyDownToTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 50);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.release(limiter.acquire(), -1, true);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(11);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.release(limiter.acquire(), -1, true);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    /**
+     * Fill the current limit, then complete every call with the given latency
+     */
+    private static void runRound(AdaptiveConcurrencyLimiter limiter, long latencyNanos) {
+        int slots = limiter.getLimit();
+        boolean[] saturated = new boolean[slots];
+        for (int i = 0; i < slots; i++) {
+            saturated[i] = limiter.acquire();
+        }
+        for (int i = 0; i < slots; i++) {
+            limiter.release(saturated[i], latencyNanos, false);
+        }
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxLimit) {
+        return new AdaptiveConcurrencyLimiter(true, initialLimit, 2, maxLimit, 2.0, 0.9, Duration.ofSeconds(1));
+    }
+}
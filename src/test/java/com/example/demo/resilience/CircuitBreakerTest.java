@@ -0,0 +1,115 @@
+package com.example.demo.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final CircuitBreakers breakers = new CircuitBreakers(true, 10, 5, 0.5, Duration.ofSeconds(30), 2,
+        clock::get);
+
+    @Test
+    void opensOnceTheFailureRateIsReached() {
+        CircuitBreaker breaker = breakers.get("m");
+        for (int i = 0; i < 4; i++) {
+            record(breaker, true);
+        }
+        // Fewer than min-calls outcomes: still closed
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        record(breaker, false);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThatThrownBy(breaker::acquire)
+            .isInstanceOfSatisfying(UpstreamUnavailableException.class, e -> {
+                assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                assertThat(e.getRetryAfterSeconds()).isEqualTo(20);
+            });
+        assertThat(breaker.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    void occasionalFailuresKeepItClosed() {
+        CircuitBreaker breaker = breakers.get("m");
+        for (int i = 0; i < 100; i++) {
+            record(breaker, i % 3 == 0);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getFailureRate()).isLessThan(0.5);
+    }
+
+    @Test
+    void halfOpenTrialsCloseOrReopenTheCircuit() {
+        CircuitBreaker breaker = breakers.get("m");
+        for (int i = 0; i < 5; i++) {
+            record(breaker, true);
+        }
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        // Two trial calls are admitted, a third is not
+        breaker.acquire();
+        breaker.acquire();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(breaker::acquire).isInstanceOf(UpstreamUnavailableException.class);
+        breaker.onResult(false);
+        breaker.onResult(true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        record(breaker, false);
+        record(breaker, false);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getFailureRate()).isZero();
+    }
+
+    @Test
+    void onlyUpstreamErrorsCountAsFailures() {
+        assertThat(CircuitBreakers.isUpstreamFailure(null)).isFalse();
+        assertThat(CircuitBreakers.isUpstreamFailure(new RuntimeException("wrapped",
+            HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "bad", null, null, null)))).isFalse();
+        assertThat(CircuitBreakers.isUpstreamFailure(
+            HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "slow down", null, null, null))).isTrue();
+        assertThat(CircuitBreakers.isUpstreamFailure(
+            HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "down", null, null, null))).isTrue();
+        assertThat(CircuitBreakers.isUpstreamFailure(new ResourceAccessException("timeout"))).isTrue();
+        assertThat(CircuitBreakers.isUpstreamFailure(
+            WebClientResponseException.create(400, "bad", null, null, null))).isFalse();
+        assertThat(CircuitBreakers.isUpstreamFailure(
+            WebClientResponseException.create(503, "down", null, null, null))).isTrue();
+    }
+
+    @Test
+    void exposesStatePerModel() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        breakers.get("a");
+        breakers.bindTo(registry);
+        CircuitBreaker b = breakers.get("b");
+        for (int i = 0; i < 5; i++) {
+            record(b, true);
+        }
+
+        assertThat(registry.get("openrouter.circuit.state").tag("model", "a").gauge().value()).isZero();
+        assertThat(registry.get("openrouter.circuit.state").tag("model", "b").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("openrouter.circuit.failure.rate").tag("model", "b").gauge().value()).isEqualTo(1);
+    }
+
+    private static void record(CircuitBreaker breaker, boolean failed) {
+        breaker.acquire();
+        breaker.onResult(failed);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.demo.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgePolicyTest {
+
+    @Test
+    void delayIsRecentPercentileOnceEnoughSamplesExist() {
+        HedgePolicy policy = policy(0.05, 10);
+        for (int i = 1; i <= 19; i++) {
+            policy.record("m/call", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(policy.delay("m/call")).isEqualTo(Duration.ofSeconds(2));
+
+        for (int i = 20; i <= 100; i++) {
+            policy.record("m/call", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(policy.delay("m/call")).isEqualTo(Duration.ofMillis(95));
+        assertThat(policy.delay("other/call")).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void delayFollowsTheWindowAndHasAFloor() {
+        HedgePolicy policy = policy(0.05, 10);
+        for (int i = 0; i < 100; i++) {
+            policy.record("m/call", TimeUnit.MILLISECONDS.toNanos(500));
+        }
+        // The window holds 100 samples: after 100 fast ones the slow history is gone
+        for (int i = 0; i < 100; i++) {
+            policy.record("m/call", TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        assertThat(policy.delay("m/call")).isEqualTo(Duration.ofMillis(20));
+    }
+
+    @Test
+    void budgetBoundsHedgesToAFractionOfCalls() {
+        HedgePolicy policy = policy(0.05, 2);
+
+        int hedges = 0;
+        for (int i = 0; i < 1000; i++) {
+            policy.onCall();
+            if (policy.tryHedge()) {
+                hedges++;
+            }
+        }
+
+        assertThat(hedges).isEqualTo(50);
+    }
+
+    @Test
+    void unusedBudgetIsCapped() {
+        HedgePolicy policy = policy(0.05, 2);
+        for (int i = 0; i < 1000; i++) {
+            policy.onCall();
+        }
+
+        assertThat(policy.tryHedge()).isTrue();
+        assertThat(policy.tryHedge()).isTrue();
+        assertThat(policy.tryHedge()).isFalse();
+    }
+
+    private static HedgePolicy policy(double budget, double maxTokens) {
+        return new HedgePolicy(true, 0.95, budget, maxTokens, Duration.ofMillis(20), Duration.ofSeconds(2), 100, 20);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.demo.routing;
+
+import com.example.demo.OpenRouterChatModel;
+import com.example.demo.StubOpenRouterServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ModelRouterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+
+    private final ModelRouter router = new ModelRouter(
+        List.of(route("a", "fast"), route("b", "fast"), route("c", null)),
+        "fast", Duration.ofSeconds(10), Duration.ofSeconds(10), clock::get);
+
+    @Test
+    void modelIdIsHonoredAndGroupsAreResolved() {
+        assertThat(router.select("c").id()).isEqualTo("c");
+        assertThat(router.select("b").id()).isEqualTo("b");
+        assertThat(router.select("fast").id()).isIn("a", "b");
+        assertThat(router.select(null).group()).isEqualTo("fast");
+        assertThat(router.getModelNames()).containsExactly("a", "b", "c", "fast");
+        assertThatThrownBy(() -> router.select("unknown")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void slowModelLosesTrafficUntilItsLatencyDecays() {
+        sample("a", 100 * MS, false);
+        sample("b", 1000 * MS, false);
+
+        for (int i = 0; i < 20; i++) {
+            ModelRoute route = router.select("fast");
+            assertThat(route.id()).isEqualTo("a");
+            router.complete(route, 100 * MS, null);
+        }
+
+        // No traffic for b for 30s: its average decays below a's fresh one and it is probed again
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        sample("a", 100 * MS, false);
+        assertThat(router.select("fast").id()).isEqualTo("b");
+    }
+
+    @Test
+    void slowSampleRaisesLatencyAtOnce() {
+        sample("a", 100 * MS, false);
+        sample("b", 150 * MS, false);
+
+        sample("a", 2000 * MS, false);
+
+        assertThat(router.cost("a")).isGreaterThan(router.cost("b"));
+        assertThat(router.select("fast").id()).isEqualTo("b");
+    }
+
+    @Test
+    void errorsMoveTrafficAway() {
+        sample("a", 100 * MS, false);
+        sample("b", 300 * MS, false);
+        for (int i = 0; i < 3; i++) {
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            sample("a", 5 * MS, true);
+        }
+
+        assertThat(router.select("fast").id()).isEqualTo("b");
+    }
+
+    @Test
+    void outstandingCallsSpreadLoad() {
+        sample("a", 100 * MS, false);
+        sample("b", 150 * MS, false);
+
+        ModelRoute first = router.select("fast");
+        ModelRoute second = router.select("fast");
+
+        assertThat(first.id()).isEqualTo("a");
+        assertThat(second.id()).isEqualTo("b");
+    }
+
+    @Test
+    void registersConfiguredModelsAndTheSpringAiDefault() {
+        ModelRouterProperties properties = new ModelRouterProperties(null,
+            Map.of("local", new ModelRouterProperties.Endpoint("http://localhost:8000/v1", "none")),
+            List.of(new ModelRouterProperties.Model("llama", "local", "meta-llama/Llama-3-8B", "fast"),
+                new ModelRouterProperties.Model("haiku", null, "anthropic/claude-3.5-haiku", "fast")),
+            Duration.ofSeconds(10), Duration.ofSeconds(10));
+
+        ModelRouter configured = new ModelRouter(properties, "https://openrouter.ai/api/v1", "key", "sonnet");
+
+        assertThat(configured.getDefaultModel()).isEqualTo("sonnet");
+        assertThat(configured.getModelNames()).containsExactly("llama", "haiku", "sonnet", "fast");
+        assertThat(configured.select("llama")).satisfies(route -> {
+            assertThat(route.baseUrl()).isEqualTo("http://localhost:8000/v1");
+            assertThat(route.upstreamModel()).isEqualTo("meta-llama/Llama-3-8B");
+        });
+        assertThat(configured.select("haiku").baseUrl()).isEqualTo("https://openrouter.ai/api/v1");
+        assertThat(configured.select(null).id()).isEqualTo("sonnet");
+    }
+
+    @Test
+    void routesGroupTrafficToTheFasterStub() throws Exception {
+        try (StubOpenRouterServer fast = StubOpenRouterServer.start();
+             StubOpenRouterServer slow = StubOpenRouterServer.start()) {
+            fast.setLatency(Duration.ofMillis(5));
+            slow.setLatency(Duration.ofMillis(150));
+            // Warm up class loading and connections so a cold first call does not set a latency peak
+            for (int i = 0; i < 3; i++) {
+                fast.chatModel(1).call(new Prompt("warm-up"));
+                slow.chatModel(1).call(new Prompt("warm-up"));
+            }
+            fast.resetStats();
+            slow.resetStats();
+            ModelRouter stubRouter = new ModelRouter(List.of(fast.route("fast-model", "pool"),
+                slow.route("slow-model", "pool")), "pool", Duration.ofSeconds(1), Duration.ofSeconds(10));
+            OpenRouterChatModel chatModel = fast.chatModel(8, stubRouter);
+            Prompt prompt = new Prompt("hello", ChatOptions.builder().model("pool").build());
+
+            for (int i = 0; i < 30; i++) {
+                chatModel.call(prompt);
+            }
+
+            assertThat(fast.requestCount() + slow.requestCount()).isEqualTo(30);
+            assertThat(slow.requestCount()).isLessThanOrEqualTo(3);
+        }
+    }
+
+    private void sample(String id, long latencyNanos, boolean failed) {
+        ModelRoute route = router.select(id);
+        router.complete(route, latencyNanos, failed ? new RuntimeException("upstream") : null);
+    }
+
+    private static ModelRoute route(String id, String group) {
+        return new ModelRoute(id, id, group, "http://localhost/" + id, "key");
+    }
+}
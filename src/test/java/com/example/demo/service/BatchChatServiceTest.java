@@ -0,0 +1,124 @@
+package com.example.demo.service;
+
+import com.example.demo.StubOpenRouterServer;
+import com.example.demo.cache.ChatResponseCache;
+import com.example.demo.cache.HashingTextEmbedder;
+import com.example.demo.cache.SemanticResponseCache;
+import com.example.demo.history.InMemoryChatHistoryStore;
+import com.example.demo.model.BatchChatResult;
+import com.example.demo.model.ChatRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchChatServiceTest {
+
+    private StubOpenRouterServer stub;
+
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = StubOpenRouterServer.start();
+        InMemoryChatHistoryStore store = new InMemoryChatHistoryStore(40, 1000, Duration.ofHours(1), DataSize.ofMegabytes(16));
+        ContextWindowManager contextWindowManager = new ContextWindowManager(8000, Map.of(), 2000);
+        ConversationSummarizer summarizer = new ConversationSummarizer(stub.chatModel(64), store,
+            contextWindowManager, Runnable::run, false, 300, Duration.ofHours(1));
+        chatService = new ChatService(stub.chatModel(64), stub.reactiveChatModel(), store, contextWindowManager,
+            summarizer, new ChatResponseCache(false, 1, Duration.ofMinutes(1)),
+            new SemanticResponseCache(new HashingTextEmbedder(64), false, 0.9, Duration.ofMinutes(1), 1, 1),
+            stub.metrics(), stub.router());
+        ReflectionTestUtils.setField(chatService, "defaultModel", "stub/model");
+        ReflectionTestUtils.setField(chatService, "temperature", 0.7);
+        ReflectionTestUtils.setField(chatService, "maxTokens", 2000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void throughputScalesWithConcurrency() {
+        stub.setLatency(Duration.ofMillis(100));
+        List<ChatRequest> requests = requests(20);
+
+        long sequential = timeMillis(() -> batch(Duration.ofSeconds(10)).run(requests, 1).collectList().block());
+        stub.resetStats();
+        List<BatchChatResult> results = new ArrayList<>();
+        long parallel = timeMillis(() -> results.addAll(batch(Duration.ofSeconds(10)).run(requests, 10).collectList().block()));
+
+        assertThat(results).hasSize(20).noneMatch(BatchChatResult::error);
+        assertThat(results).extracting(BatchChatResult::index).containsExactlyInAnyOrderElementsOf(
+            IntStream.range(0, 20).boxed().toList());
+        assertThat(stub.peakInFlight()).isBetween(2, 10);
+        assertThat(parallel).isLessThan(sequential / 3);
+    }
+
+    @Test
+    void concurrencyDefaultsAndIsCappedByConfiguration() {
+        stub.setLatency(Duration.ofMillis(50));
+
+        assertThat(batch(Duration.ofSeconds(10)).run(requests(24), null).collectList().block()).hasSize(24);
+        assertThat(stub.peakInFlight()).isLessThanOrEqualTo(4);
+
+        stub.resetStats();
+        assertThat(batch(Duration.ofSeconds(10)).run(requests(24), 1000).collectList().block()).hasSize(24);
+        assertThat(stub.peakInFlight()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void failedItemsAreReportedWithoutFailingTheBatch() {
+        List<ChatRequest> requests = new ArrayList<>(requests(3));
+        requests.add(1, new ChatRequest("  "));
+
+        List<BatchChatResult> results = batch(Duration.ofSeconds(10)).run(requests, 2).collectList().block();
+
+        assertThat(results).hasSize(4);
+        assertThat(results).filteredOn(BatchChatResult::error)
+            .singleElement()
+            .satisfies(result -> {
+                assertThat(result.index()).isEqualTo(1);
+                assertThat(result.message()).contains("message is required");
+            });
+        assertThat(results).filteredOn(result -> !result.error())
+            .allSatisfy(result -> assertThat(result.message()).isEqualTo("stub reply"));
+    }
+
+    @Test
+    void slowItemsTimeOutIndividually() {
+        stub.setLatency(Duration.ofMillis(500));
+
+        List<BatchChatResult> results = batch(Duration.ofMillis(100)).run(requests(3), 3).collectList().block();
+
+        assertThat(results).hasSize(3).allSatisfy(result -> {
+            assertThat(result.error()).isTrue();
+            assertThat(result.message()).contains("Timed out");
+            assertThat(result.durationMs()).isLessThan(500);
+        });
+    }
+
+    private BatchChatService batch(Duration itemTimeout) {
+        return new BatchChatService(chatService, 4, 10, 100, itemTimeout, Duration.ofMinutes(1), false);
+    }
+
+    private static List<ChatRequest> requests(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new ChatRequest("Classify text #" + i)).toList();
+    }
+
+    private static long timeMillis(Runnable task) {
+        long start = System.nanoTime();
+        task.run();
+        return Duration.ofNanos(System.nanoTime() - start).toMillis();
+    }
+}
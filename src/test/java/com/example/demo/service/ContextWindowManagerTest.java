@@ -0,0 +1,80 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextWindowManagerTest {
+
+    // 40 ASCII chars = 10 tokens + 4 framing; history entries ("q1 " + TEXT) cost 15
+    private static final String TEXT = "0123456789012345678901234567890123456789";
+
+    private final ContextWindowManager manager =
+        new ContextWindowManager(100, Map.of("big/model", 1000), 20);
+
+    @Test
+    void keepsNewestHistoryWithinBudget() {
+        List<ChatMessage> history = history(10);
+
+        // budget 100 - 20 completion = 80; system + user = 28; three entries fit,
+        // and the orphaned answer a8 is dropped so the window starts on a question
+        ContextWindowManager.ContextWindow window = manager.fit("any", null, TEXT, null, history, TEXT);
+
+        assertThat(window.kept()).extracting(ChatMessage::getContent)
+            .containsExactly("q9 " + TEXT, "a9 " + TEXT);
+        assertThat(window.dropped()).hasSize(history.size() - window.kept().size());
+        assertThat(window.promptTokens()).isLessThanOrEqualTo(80);
+    }
+
+    @Test
+    void requestMaxTokensShrinksPromptBudget() {
+        List<ChatMessage> history = history(10);
+
+        ContextWindowManager.ContextWindow window = manager.fit("any", 60, TEXT, null, history, TEXT);
+
+        assertThat(window.completionTokens()).isEqualTo(60);
+        assertThat(window.promptTokens()).isLessThanOrEqualTo(40);
+        assertThat(window.kept()).isEmpty();
+    }
+
+    @Test
+    void usesPerModelBudget() {
+        List<ChatMessage> history = history(10);
+
+        ContextWindowManager.ContextWindow window = manager.fit("big/model", null, TEXT, null, history, TEXT);
+
+        assertThat(window.kept()).hasSize(20);
+        assertThat(window.dropped()).isEmpty();
+    }
+
+    @Test
+    void cachesTokenCountOnMessage() {
+        ChatMessage message = new ChatMessage("user", TEXT);
+
+        int tokens = TokenEstimator.estimate(message);
+
+        assertThat(message.getTokenCount()).isEqualTo(tokens);
+        message.setContent("short");
+        assertThat(message.getTokenCount()).isEqualTo(-1);
+    }
+
+    @Test
+    void countsNonAsciiCharactersAsTokens() {
+        assertThat(TokenEstimator.estimate("안녕하세요")).isEqualTo(5);
+        assertThat(TokenEstimator.estimate("abcdefgh")).isEqualTo(2);
+    }
+
+    private static List<ChatMessage> history(int turns) {
+        List<ChatMessage> history = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            history.add(new ChatMessage("user", "q" + i + " " + TEXT));
+            history.add(new ChatMessage("assistant", "a" + i + " " + TEXT));
+        }
+        return history;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.demo.service;
+
+import com.example.demo.history.InMemoryChatHistoryStore;
+import com.example.demo.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationSummarizerTest {
+
+    // 40 ASCII chars = 10 tokens + 4 framing; history entries ("q1 " + TEXT) cost 15
+    private static final String TEXT = "0123456789012345678901234567890123456789";
+
+    private final List<String> transcripts = new ArrayList<>();
+
+    private final ChatModel chatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            String transcript = prompt.getInstructions().get(1).getText();
+            transcripts.add(transcript);
+            return new ChatResponse(List.of(new Generation(
+                new AssistantMessage("summary #" + transcripts.size()))));
+        }
+    };
+
+    private final InMemoryChatHistoryStore store =
+        new InMemoryChatHistoryStore(40, 100, Duration.ofMinutes(5), DataSize.ofMegabytes(1));
+
+    // Budget 200 - 20 completion leaves room for a handful of turns
+    private final ContextWindowManager manager = new ContextWindowManager(200, Map.of(), 20);
+
+    private final ConversationSummarizer summarizer = new ConversationSummarizer(
+        chatModel, store, manager, Runnable::run, true, 100, Duration.ofMinutes(5));
+
+    @Test
+    void noSummaryWhileHistoryFits() {
+        appendTurns(0, 2);
+
+        summarizer.onTurnCompleted("s1", "any", null, TEXT);
+
+        assertThat(transcripts).isEmpty();
+        assertThat(summarizer.getSummary("s1")).isNull();
+    }
+
+    @Test
+    void summarizesTurnsThatFallOutOfTheWindow() {
+        appendTurns(0, 10);
+
+        summarizer.onTurnCompleted("s1", "any", null, TEXT);
+
+        assertThat(summarizer.getSummary("s1")).isEqualTo("summary #1");
+        assertThat(transcripts.get(0)).contains("q0 ").doesNotContain("Existing summary").doesNotContain("q9 ");
+    }
+
+    @Test
+    void laterRunsOnlyFoldInNewlyDroppedTurns() {
+        appendTurns(0, 10);
+        summarizer.onTurnCompleted("s1", "any", null, TEXT);
+
+        appendTurns(10, 2);
+        summarizer.onTurnCompleted("s1", "any", null, TEXT);
+
+        assertThat(transcripts).hasSize(2);
+        assertThat(transcripts.get(1))
+            .startsWith("Existing summary:\nsummary #1")
+            .doesNotContain("q0 ")
+            .doesNotContain("q11 ");
+        assertThat(summarizer.getSummary("s1")).isEqualTo("summary #2");
+    }
+
+    @Test
+    void turnsSharingATimestampAreFoldedInOnce() {
+        // A burst of turns within one millisecond, as one Date per turn allows
+        appendTurns(0, 10, 7L);
+        summarizer.onTurnCompleted("s1", "any", null, TEXT);
+
+        appendTurns(10, 2, 7L);
+        summarizer.onTurnCompleted("s1", "any", null, TEXT);
+
+        // The timestamp is the same on both sides of the watermark
+        assertThat(transcripts).hasSize(2);
+        assertThat(transcripts.get(0)).contains("a4 ").doesNotContain("q5 ");
+        assertThat(transcripts.get(1))
+            .contains("q5 ")
+            .doesNotContain("a4 ")
+            .doesNotContain("q11 ");
+    }
+
+    @Test
+    void clearForgetsSummary() {
+        appendTurns(0, 10);
+        summarizer.onTurnCompleted("s1", "any", null, TEXT);
+
+        summarizer.clear("s1");
+
+        assertThat(summarizer.getSummary("s1")).isNull();
+    }
+
+    @Test
+    void disabledSummarizerNeverCallsModel() {
+        ConversationSummarizer disabled = new ConversationSummarizer(
+            chatModel, store, manager, Runnable::run, false, 100, Duration.ofMinutes(5));
+        appendTurns(0, 10);
+
+        disabled.onTurnCompleted("s1", "any", null, TEXT);
+
+        assertThat(transcripts).isEmpty();
+    }
+
+    private void appendTurns(int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            appendTurns(i, 1, i);
+        }
+    }
+
+    // Both messages of a turn share its time, as in ChatService
+    private void appendTurns(int from, int count, long time) {
+        for (int i = from; i < from + count; i++) {
+            store.append("s1", List.of(
+                message("user", "q" + i + " " + TEXT, time, "q" + i),
+                message("assistant", "a" + i + " " + TEXT, time, "a" + i)));
+        }
+    }
+
+    private static ChatMessage message(String role, String content, long time, String id) {
+        return ChatMessage.builder().role(role).content(content).timestamp(new Date(time)).messageId(id).build();
+    }
+}
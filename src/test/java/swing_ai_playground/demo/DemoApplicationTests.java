@@ -1,9 +1,10 @@
 package swing_ai_playground.demo;
 
 import org.junit.jupiter.api.Test;
+import com.example.demo.DemoApplication;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(classes = DemoApplication.class)
 class DemoApplicationTests {
 
 	@Test